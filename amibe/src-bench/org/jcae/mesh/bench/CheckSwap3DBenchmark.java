@@ -0,0 +1,86 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.HalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of {@link HalfEdge#checkSwap3D}.  Each invocation checks
+ * all inner edges of the mesh once, score is the time of a whole sweep.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class CheckSwap3DBenchmark
+{
+	@Param({"4", "5", "6"})
+	public int level;
+
+	private Mesh mesh;
+	private HalfEdge [] edges;
+
+	@Setup(Level.Trial)
+	public void createMesh()
+	{
+		mesh = SphereData.get(level).createMesh(MeshTraitsBuilder.getDefault3D(), true);
+		List<HalfEdge> list = new ArrayList<HalfEdge>(3 * mesh.getTriangles().size());
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			HalfEdge e = (HalfEdge) t.getAbstractHalfEdge();
+			for (int i = 0; i < 3; i++)
+			{
+				e = e.next();
+				if (!e.hasAttributes(AbstractHalfEdge.BOUNDARY | AbstractHalfEdge.NONMANIFOLD))
+					list.add(e);
+			}
+		}
+		edges = list.toArray(new HalfEdge[list.size()]);
+	}
+
+	@Benchmark
+	public double checkSwap3D()
+	{
+		double ret = 0.0;
+		for (HalfEdge e : edges)
+			ret += e.checkSwap3D(mesh, -2.0);
+		return ret;
+	}
+}
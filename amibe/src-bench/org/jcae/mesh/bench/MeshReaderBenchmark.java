@@ -0,0 +1,100 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.xmldata.MeshReader;
+import org.jcae.mesh.xmldata.MeshWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link MeshReader#readObject3D}.  The sphere is written
+ * once into a temporary directory, and read with or without building
+ * adjacency relations.  Files are likely to be in the page cache, this
+ * benchmark does not measure disk access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MeshReaderBenchmark
+{
+	@Param({"4", "5", "6"})
+	public int level;
+
+	@Param({"true", "false"})
+	public boolean adjacency;
+
+	private File dir;
+
+	@Setup(Level.Trial)
+	public void writeMesh() throws IOException
+	{
+		Mesh mesh = SphereData.get(level).createMesh(MeshTraitsBuilder.getDefault3D().addNodeList(), false);
+		dir = File.createTempFile("amibe", ".bench");
+		dir.delete();
+		dir.mkdirs();
+		MeshWriter.writeObject3D(mesh, dir.getPath(), null);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteMesh()
+	{
+		delete(dir);
+	}
+
+	private static void delete(File file)
+	{
+		File [] children = file.listFiles();
+		if (children != null)
+		{
+			for (File f : children)
+				delete(f);
+		}
+		file.delete();
+	}
+
+	@Benchmark
+	public Mesh readObject3D() throws IOException
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		MeshReader.readObject3D(mesh, dir.getPath(), adjacency);
+		return mesh;
+	}
+}
@@ -0,0 +1,91 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jcae.mesh.amibe.algos3d.QEMDecimateHalfEdge;
+import org.jcae.mesh.amibe.ds.HalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.util.BinaryHeapSortedTree;
+import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.PRedBlackSortedTree;
+import org.jcae.mesh.amibe.util.QSortedTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link QEMDecimateHalfEdge#compute}.  The sphere is
+ * decimated down to 10% of its triangles, with each container which can
+ * store edge costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QEMDecimateHalfEdgeBenchmark
+{
+	@Param({"4", "5", "6"})
+	public int level;
+
+	@Param({"PAVLSortedTree", "PRedBlackSortedTree", "BinaryHeapSortedTree"})
+	public String container;
+
+	private SphereData sphere;
+	private QEMDecimateHalfEdge algo;
+
+	@Setup(Level.Trial)
+	public void createSphere()
+	{
+		sphere = SphereData.get(level);
+	}
+
+	@Setup(Level.Iteration)
+	public void createAlgorithm()
+	{
+		Mesh mesh = sphere.createMesh(MeshTraitsBuilder.getDefault3D(), true);
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("maxtriangles", Integer.toString(sphere.getNumberOfTriangles() / 10));
+		algo = new QEMDecimateHalfEdge(mesh, options);
+		algo.setSortedTree(SortedTreeBenchmark.<HalfEdge>newSortedTree(container));
+	}
+
+	@Benchmark
+	public QEMDecimateHalfEdge compute()
+	{
+		algo.compute();
+		return algo;
+	}
+}
@@ -0,0 +1,117 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.bench;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jcae.mesh.amibe.util.BinaryHeapSortedTree;
+import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.PRedBlackSortedTree;
+import org.jcae.mesh.amibe.util.QSortedCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Comparison of {@link QSortedCollection} implementations.  The workload mimics
+ * {@link org.jcae.mesh.amibe.algos3d.AbstractAlgoHalfEdge}: all objects
+ * are inserted, then the object with the lowest cost is repeatedly
+ * removed and costs of a few other objects are updated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class SortedTreeBenchmark
+{
+	private static final int UPDATES = 6;
+
+	@Param({"PAVLSortedTree", "PRedBlackSortedTree", "BinaryHeapSortedTree"})
+	public String container;
+
+	@Param({"10000", "100000", "1000000"})
+	public int size;
+
+	private Integer [] objects;
+	private double [] costs;
+	private int [] updated;
+	private double [] updatedCosts;
+
+	static <E> QSortedCollection<E> newSortedTree(String name)
+	{
+		if ("PAVLSortedTree".equals(name))
+			return new PAVLSortedTree<E>();
+		else if ("PRedBlackSortedTree".equals(name))
+			return new PRedBlackSortedTree<E>();
+		else if ("BinaryHeapSortedTree".equals(name))
+			return new BinaryHeapSortedTree<E>();
+		throw new IllegalArgumentException("Unknown container: "+name);
+	}
+
+	@Setup(Level.Trial)
+	public void createData()
+	{
+		Random random = new Random(12345L);
+		objects = new Integer[size];
+		costs = new double[size];
+		for (int i = 0; i < size; i++)
+		{
+			objects[i] = Integer.valueOf(i);
+			costs[i] = random.nextDouble();
+		}
+		updated = new int[UPDATES * size];
+		updatedCosts = new double[UPDATES * size];
+		for (int i = 0; i < updated.length; i++)
+		{
+			updated[i] = random.nextInt(size);
+			updatedCosts[i] = random.nextDouble();
+		}
+	}
+
+	@Benchmark
+	public double insertUpdateRemove()
+	{
+		QSortedCollection<Integer> tree = newSortedTree(container);
+		for (int i = 0; i < size; i++)
+			tree.insert(objects[i], costs[i]);
+		double ret = 0.0;
+		int offset = 0;
+		while (!tree.isEmpty())
+		{
+			Iterator<? extends QSortedCollection.Entry<Integer>> it = tree.iterator();
+			QSortedCollection.Entry<Integer> first = it.next();
+			ret += first.getValue();
+			tree.remove(first.getData());
+			// Objects which have already been removed are ignored
+			for (int i = 0; i < UPDATES; i++, offset++)
+				tree.update(objects[updated[offset]], updatedCosts[offset]);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,173 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.bench;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+
+/**
+ * Triangulated sphere used as benchmark input.  Spheres are built by
+ * {@link SphereBuilder} by refining an icosahedron, a sphere of level
+ * <code>n</code> has <code>20*4^n</code> triangles.  As
+ * <code>SphereBuilder</code> goes through an OEMM on disk, spheres are
+ * computed once per JVM and kept as arrays, new <code>Mesh</code>
+ * instances are then created from these arrays.
+ */
+final class SphereData
+{
+	private static final Map<Integer, SphereData> CACHE = new HashMap<Integer, SphereData>();
+
+	private final double [] coordinates;
+	private final int [] triangles;
+	private final int [] groups;
+
+	private SphereData(Mesh mesh)
+	{
+		Map<Vertex, Integer> index = new IdentityHashMap<Vertex, Integer>();
+		int nrTriangles = 0;
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				nrTriangles++;
+		}
+		triangles = new int[3*nrTriangles];
+		groups = new int[nrTriangles];
+		double [] coord = new double[9*nrTriangles];
+		int nrVertices = 0;
+		int offset = 0;
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex v = t.getV(i);
+				Integer id = index.get(v);
+				if (id == null)
+				{
+					id = Integer.valueOf(nrVertices);
+					index.put(v, id);
+					coord[3*nrVertices]   = v.getX();
+					coord[3*nrVertices+1] = v.getY();
+					coord[3*nrVertices+2] = v.getZ();
+					nrVertices++;
+				}
+				triangles[3*offset+i] = id.intValue();
+			}
+			groups[offset] = t.getGroupId();
+			offset++;
+		}
+		coordinates = new double[3*nrVertices];
+		System.arraycopy(coord, 0, coordinates, 0, coordinates.length);
+	}
+
+	/**
+	 * Returns the sphere of a given level.
+	 *
+	 * @param level  number of refinements of the icosahedron
+	 */
+	static synchronized SphereData get(int level)
+	{
+		SphereData ret = CACHE.get(level);
+		if (ret == null)
+		{
+			ret = new SphereData(SphereBuilder.createSphereMesh(level));
+			CACHE.put(level, ret);
+		}
+		return ret;
+	}
+
+	int getNumberOfVertices()
+	{
+		return coordinates.length / 3;
+	}
+
+	int getNumberOfTriangles()
+	{
+		return groups.length;
+	}
+
+	/**
+	 * Creates a new mesh.
+	 *
+	 * @param mtb  traits of this mesh
+	 * @param adjacency  if <code>true</code>, adjacency relations are built
+	 * @return a new mesh
+	 */
+	Mesh createMesh(MeshTraitsBuilder mtb, boolean adjacency)
+	{
+		Mesh mesh = new Mesh(mtb);
+		Vertex [] vertices = new Vertex[getNumberOfVertices()];
+		for (int i = 0; i < vertices.length; i++)
+		{
+			vertices[i] = mesh.createVertex(coordinates[3*i], coordinates[3*i+1], coordinates[3*i+2]);
+			if (mesh.hasNodes())
+				mesh.add(vertices[i]);
+		}
+		for (int i = 0; i < groups.length; i++)
+		{
+			Triangle t = mesh.createTriangle(vertices[triangles[3*i]],
+				vertices[triangles[3*i+1]], vertices[triangles[3*i+2]]);
+			t.setGroupId(groups[i]);
+			mesh.add(t);
+		}
+		if (adjacency)
+			mesh.buildAdjacency();
+		return mesh;
+	}
+
+	/**
+	 * Creates random vertices near the sphere surface.  They are not
+	 * added to <code>mesh</code>.
+	 *
+	 * @param mesh  mesh used to create vertices
+	 * @param n  number of vertices
+	 * @param seed  seed of the random generator
+	 * @return an array of vertices
+	 */
+	static Vertex [] createRandomVertices(Mesh mesh, int n, long seed)
+	{
+		Random random = new Random(seed);
+		Vertex [] ret = new Vertex[n];
+		for (int i = 0; i < n; i++)
+		{
+			double x, y, z, norm;
+			do
+			{
+				x = 2.0 * random.nextDouble() - 1.0;
+				y = 2.0 * random.nextDouble() - 1.0;
+				z = 2.0 * random.nextDouble() - 1.0;
+				norm = Math.sqrt(x*x + y*y + z*z);
+			}
+			while (norm < 0.01 || norm > 1.0);
+			double radius = 0.9 + 0.2 * random.nextDouble();
+			ret[i] = mesh.createVertex(radius * x / norm, radius * y / norm, radius * z / norm);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,77 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.projection.TriangleKdTree;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of {@link TriangleKdTree#getClosestTriangle}.  Random points
+ * near the sphere are projected onto the mesh; score is the time of a
+ * single query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class TriangleKdTreeBenchmark
+{
+	private static final int QUERIES = 10000;
+
+	@Param({"4", "5", "6"})
+	public int level;
+
+	private TriangleKdTree kdTree;
+	private Vertex [] queries;
+	private final Location projection = new Location();
+
+	@Setup(Level.Trial)
+	public void createKdTree()
+	{
+		Mesh mesh = SphereData.get(level).createMesh(MeshTraitsBuilder.getDefault3D(), true);
+		kdTree = new TriangleKdTree(mesh);
+		queries = SphereData.createRandomVertices(mesh, QUERIES, 12345L);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public void getClosestTriangle(Blackhole bh)
+	{
+		for (Vertex v : queries)
+			bh.consume(kdTree.getClosestTriangle(v, projection, -1));
+	}
+}
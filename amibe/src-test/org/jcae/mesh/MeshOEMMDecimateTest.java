@@ -0,0 +1,126 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh;
+
+import gnu.trove.set.hash.TIntHashSet;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.jcae.mesh.amibe.algos3d.AbstractAlgoHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.oemm.Aggregate;
+import org.jcae.mesh.oemm.MeshReader;
+import org.jcae.mesh.oemm.OEMM;
+import org.jcae.mesh.oemm.RawStorage;
+import org.jcae.mesh.oemm.Storage;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MeshOEMMDecimateTest
+{
+	private static File tmpDir;
+	private static File oemmDir;
+
+	@BeforeClass public static void createOEMM() throws IOException
+	{
+		tmpDir = TestFiles.createTempDir("oemmdecimate");
+		String soupFile = new File(tmpDir, "soup").getPath();
+		TestFiles.writeSphereSoup(4, soupFile, 1);
+		oemmDir = new File(tmpDir, "oemm");
+		OEMM oemm = new OEMM(5);
+		// OEMM has no bounding box, it is computed by the first pass
+		// and triangles are counted by the second one
+		assertFalse(RawStorage.countTriangles(oemm, soupFile));
+		assertTrue(RawStorage.countTriangles(oemm, soupFile));
+		Aggregate.compute(oemm, 1000);
+		RawStorage.dispatch(oemm, soupFile, oemmDir+"-dispatched", oemmDir+"-dispatched.data");
+		RawStorage.indexOEMM(oemmDir+"-dispatched", oemmDir.getPath());
+	}
+
+	@AfterClass public static void deleteTmpDir()
+	{
+		TestFiles.delete(tmpDir);
+	}
+
+	private static void copy(File src, File dest) throws IOException
+	{
+		if (src.isDirectory())
+		{
+			dest.mkdirs();
+			for (String name : src.list())
+				copy(new File(src, name), new File(dest, name));
+			return;
+		}
+		InputStream in = new FileInputStream(src);
+		OutputStream out = new FileOutputStream(dest);
+		try
+		{
+			byte [] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) >= 0)
+				out.write(buffer, 0, n);
+		}
+		finally
+		{
+			in.close();
+			out.close();
+		}
+	}
+
+	/** Decimates a copy of OEMM and returns the whole mesh */
+	private static Mesh decimate(int threads) throws IOException
+	{
+		File dir = new File(tmpDir, "decimated"+threads);
+		copy(oemmDir, dir);
+		OEMM oemm = Storage.readOEMMStructure(dir.getPath());
+		MeshOEMMDecimate.decimateAll(oemm, 2, 0, threads);
+		// Read OEMM again to check saved structure
+		oemm = Storage.readOEMMStructure(dir.getPath());
+		TIntHashSet leaves = new TIntHashSet();
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
+			leaves.add(i);
+		return new MeshReader(oemm).buildMesh(leaves);
+	}
+
+	@Test public void parallel() throws IOException
+	{
+		OEMM oemm = Storage.readOEMMStructure(oemmDir.getPath());
+		assertTrue(oemm.getNumberOfLeaves() > 8);
+		int nrT = 0;
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
+			nrT += oemm.leaves[i].tn;
+
+		Mesh serial = decimate(1);
+		Mesh parallel = decimate(4);
+		assertTrue("Serial mesh is not valid", serial.isValid());
+		assertTrue("Parallel mesh is not valid", parallel.isValid());
+		int serialT = AbstractAlgoHalfEdge.countInnerTriangles(serial);
+		int parallelT = AbstractAlgoHalfEdge.countInnerTriangles(parallel);
+		assertTrue(serialT < nrT);
+		// Nodes of a round are not decimated in the same order, but
+		// each node only reads its own leaves
+		assertEquals("Serial and parallel results differ", serialT, parallelT);
+	}
+}
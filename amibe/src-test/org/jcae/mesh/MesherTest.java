@@ -32,6 +32,10 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.oemm.RawStorage;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import org.w3c.dom.Document;
@@ -458,6 +462,46 @@ public class MesherTest
 		runSingleTestTimer("shell_hole", 30L);
 	}
 
+	private static double[] sortedCoordinates(String outputDir) throws IOException
+	{
+		Mesh mesh = new Mesh(new MeshTraitsBuilder());
+		MeshReader.readObject3D(mesh, outputDir);
+		List<double[]> coords = new ArrayList<double[]>();
+		for (Vertex v: mesh.getNodes())
+			coords.add(new double[] { v.getX(), v.getY(), v.getZ() });
+		Collections.sort(coords, new Comparator<double[]>() {
+			public int compare(double[] a, double[] b)
+			{
+				for (int i = 0; i < 3; i++)
+				{
+					int c = Double.compare(a[i], b[i]);
+					if (c != 0)
+						return c;
+				}
+				return 0;
+			}
+		});
+		double[] ret = new double[3 * coords.size()];
+		for (int i = 0; i < coords.size(); i++)
+			System.arraycopy(coords.get(i), 0, ret, 3 * i, 3);
+		return ret;
+	}
+
+	// Faces are meshed independently, so the number of threads must not
+	// change the final mesh.
+	@Test public void threads() throws IOException
+	{
+		System.setProperty("org.jcae.mesh.Mesher.threads", "1");
+		String serialDir = runSingleTest("2cubes", 0.05, 0, 0.0);
+		stopLogger();
+		System.setProperty("org.jcae.mesh.Mesher.threads", "4");
+		String parallelDir = runSingleTest("2cubes", 0.05, 0, 0.0);
+		stopLogger();
+		System.setProperty("org.jcae.mesh.Mesher.threads", "1");
+		assertArrayEquals(MeshReader.getInfos(serialDir), MeshReader.getInfos(parallelDir));
+		assertArrayEquals(sortedCoordinates(serialDir), sortedCoordinates(parallelDir), 0.0);
+	}
+
 	@Test public void oemm()
 	{
 		String geoFile = getGeometryFile("15_cylinder_head");
@@ -0,0 +1,104 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.junit.Ignore;
+
+/**
+ * Temporary files and directories used by tests.
+ */
+@Ignore("Utility class")
+public class TestFiles
+{
+	private TestFiles()
+	{
+	}
+
+	/**
+	 * Creates an empty directory in the default temporary-file
+	 * directory.  It must be removed by {@link #delete}.
+	 */
+	public static File createTempDir(String prefix) throws IOException
+	{
+		File dir = File.createTempFile(prefix, ".dir");
+		dir.delete();
+		if (!dir.mkdir())
+			throw new IOException("Cannot create "+dir);
+		return dir;
+	}
+
+	/**
+	 * Deletes a file or a directory with its content.
+	 */
+	public static void delete(File f)
+	{
+		File [] children = f.listFiles();
+		if (children != null)
+			for (File c : children)
+				delete(c);
+		f.delete();
+	}
+
+	/**
+	 * Writes the triangle soup of a sphere, as read by
+	 * {@link org.jcae.mesh.oemm.RawStorage}.
+	 *
+	 * @param level  refinement level, see {@link SphereBuilder#createSphereMesh}
+	 * @param soupFile  output file
+	 * @param nrGroups  triangles are put into groups 1 to <code>nrGroups</code>
+	 * in turn
+	 */
+	public static void writeSphereSoup(int level, String soupFile, int nrGroups) throws IOException
+	{
+		Mesh mesh = SphereBuilder.createSphereMesh(level);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(soupFile)));
+		try
+		{
+			int cnt = 0;
+			for (Triangle t : mesh.getTriangles())
+			{
+				if (t.hasAttributes(AbstractHalfEdge.OUTER))
+					continue;
+				for (int i = 0; i < 3; i++)
+				{
+					out.writeDouble(t.getV(i).getX());
+					out.writeDouble(t.getV(i).getY());
+					out.writeDouble(t.getV(i).getZ());
+				}
+				out.writeInt(1 + cnt % nrGroups);
+				out.writeInt(0);
+				cnt++;
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.algos3d;
+
+import java.util.Random;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FuseTest
+{
+	/**
+	 * Creates a triangle soup, vertices of each triangle are moved by
+	 * less than <code>jitter</code>.
+	 */
+	private static Mesh createSoup(Mesh mesh, double jitter, int threads)
+	{
+		Random random = new Random(1L);
+		Mesh ret = new Mesh(MeshTraitsBuilder.getDefault3D());
+		ret.getMeshParameters().setThreads(threads);
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			Vertex [] v = new Vertex[3];
+			for (int i = 0; i < 3; i++)
+				v[i] = ret.createVertex(
+					t.getV(i).getX() + jitter * (random.nextDouble() - 0.5),
+					t.getV(i).getY() + jitter * (random.nextDouble() - 0.5),
+					t.getV(i).getZ() + jitter * (random.nextDouble() - 0.5));
+			ret.add(ret.createTriangle(v[0], v[1], v[2]));
+		}
+		return ret;
+	}
+
+	@Test public void soup()
+	{
+		Mesh sphere = SphereBuilder.createSphereMesh(3);
+		for (int threads = 1; threads <= 3; threads += 2)
+		{
+			Mesh mesh = createSoup(sphere, 1.e-6, threads);
+			int nrTriangles = mesh.getTriangles().size();
+			// First tolerance is too small
+			new Fuse(mesh, 1.e-9, 1.e-4).compute();
+			assertEquals(nrTriangles, mesh.getTriangles().size());
+			assertEquals(sphere.getNodes().size(), mesh.getOrComputeNodes(-1, null).size());
+			mesh.buildAdjacency();
+			assertTrue("Mesh is not valid", mesh.isValid());
+		}
+	}
+
+	@Test public void degenerated()
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		Vertex v0 = mesh.createVertex(0.0, 0.0, 0.0);
+		Vertex v1 = mesh.createVertex(1.0, 0.0, 0.0);
+		Vertex v2 = mesh.createVertex(0.0, 1.0, 0.0);
+		Vertex v3 = mesh.createVertex(0.0, 1.01, 0.0);
+		Vertex v4 = mesh.createVertex(0.0, 0.0, 1.0);
+		mesh.add(mesh.createTriangle(v0, v1, v2));
+		mesh.add(mesh.createTriangle(v1, v3, v2));
+		mesh.add(mesh.createTriangle(v0, v3, v4));
+		mesh.addBeam(v2, v3, 1);
+		mesh.addBeam(v3, v4, 1);
+		new Fuse(mesh, 0.1).compute();
+		// Second triangle and first beam are removed
+		assertEquals(2, mesh.getTriangles().size());
+		assertEquals(2, mesh.getBeams().size());
+		assertSame(v2, mesh.getBeams().get(0));
+		assertSame(v4, mesh.getBeams().get(1));
+		for (Triangle t : mesh.getTriangles())
+			for (int i = 0; i < 3; i++)
+				assertNotSame(v3, t.getV(i));
+	}
+}
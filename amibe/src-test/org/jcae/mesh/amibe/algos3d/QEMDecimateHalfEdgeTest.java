@@ -24,6 +24,9 @@ import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import static org.junit.Assert.*;
@@ -436,4 +439,37 @@ public class QEMDecimateHalfEdgeTest
 	}
 
 
+
+	// All containers sort edges with the same cost by insertion order,
+	// they give the same result
+	@Test public void sortedTreeOption()
+	{
+		List<List<String>> nodes = new ArrayList<List<String>>();
+		for (String tree : new String[] { "avl", "redblack", "heap" })
+		{
+			final Map<String, String> options = new HashMap<String, String>();
+			options.put("maxtriangles", "500");
+			options.put("sortedTree", tree);
+			mesh = SphereBuilder.createSphereMesh(3);
+			new QEMDecimateHalfEdge(mesh, options).compute();
+			assertTrue("Mesh is not valid", mesh.isValid());
+			List<String> coords = new ArrayList<String>();
+			for (Vertex n : mesh.getNodes())
+				coords.add(n.getX()+" "+n.getY()+" "+n.getZ());
+			Collections.sort(coords);
+			nodes.add(coords);
+		}
+		assertEquals(nodes.get(0), nodes.get(1));
+		assertEquals(nodes.get(0), nodes.get(2));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void unknownSortedTree()
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("size", "0.1");
+		options.put("sortedTree", "fibonacci");
+		mesh = new Mesh();
+		new QEMDecimateHalfEdge(mesh, options);
+	}
 }
@@ -0,0 +1,75 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.algos3d;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Vertex;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class QEMDecimateParallelTest
+{
+	private static void checkSphere(Mesh mesh, double tolerance)
+	{
+		for (Vertex v: mesh.getNodes())
+		{
+			double r = Math.sqrt(v.getX()*v.getX() + v.getY()*v.getY() + v.getZ()*v.getZ());
+			assertEquals(1.0, r, tolerance);
+		}
+	}
+
+	@Test public void maxTriangles()
+	{
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("maxtriangles", "500");
+		options.put("regions", "4");
+		Mesh mesh = SphereBuilder.createSphereMesh(4);
+		int nrVertices = mesh.getNodes().size();
+		assertTrue("Mesh is not valid", mesh.isValid());
+		new QEMDecimateParallel(mesh, options).compute();
+		assertTrue("Mesh is not valid", mesh.isValid());
+		int res = AbstractAlgoHalfEdge.countInnerTriangles(mesh);
+		assertTrue("Final number of triangles: "+res, res <= 500 && res > 450);
+		// Removed vertices are removed from node list
+		assertTrue(mesh.getNodes().size() < nrVertices);
+		assertEquals(res / 2 + 2, mesh.getNodes().size());
+		checkSphere(mesh, 0.05);
+	}
+
+	@Test public void tolerance()
+	{
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("size", "0.02");
+		Mesh serial = SphereBuilder.createSphereMesh(4);
+		new QEMDecimateHalfEdge(serial, options).compute();
+		int expected = AbstractAlgoHalfEdge.countInnerTriangles(serial);
+
+		options.put("regions", "3");
+		Mesh mesh = SphereBuilder.createSphereMesh(4);
+		new QEMDecimateParallel(mesh, options).compute();
+		assertTrue("Mesh is not valid", mesh.isValid());
+		int res = AbstractAlgoHalfEdge.countInnerTriangles(mesh);
+		assertTrue("Final number of triangles: "+res+", serial: "+expected,
+			res < 5120 && Math.abs(res - expected) < expected / 4);
+		checkSphere(mesh, 0.05);
+	}
+}
@@ -29,6 +29,9 @@ import org.jcae.mesh.xmldata.MeshReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.logging.Level;
@@ -144,6 +147,35 @@ public class RemeshTest
 		assertTrue("Mesh contains inverted triangles", newMesh.checkNoInvertedTriangles());
 	}
 	
+	/** Node coordinates, sorted lexicographically */
+	private static List<String> sortedNodes(Mesh mesh)
+	{
+		List<String> ret = new ArrayList<String>(mesh.getNodes().size());
+		for (Vertex n : mesh.getNodes())
+			ret.add(n.getX()+" "+n.getY()+" "+n.getZ());
+		Collections.sort(ret);
+		return ret;
+	}
+
+	@Test public void testSphereParallel()
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("size", "0.02");
+		List<List<String>> nodes = new ArrayList<List<String>>();
+		for (int threads : new int[] { 1, 4 })
+		{
+			bgMesh = SphereBuilder.createSphereMesh(3);
+			MeshLiaison liaison = MeshLiaison.create(bgMesh);
+			liaison.getMesh().getMeshParameters().setThreads(threads);
+			Mesh newMesh = new Remesh(liaison, options).compute().getOutputMesh();
+			assertTrue("Mesh is not valid", newMesh.isValid());
+			assertTrue("Mesh contains inverted triangles", newMesh.checkNoInvertedTriangles());
+			nodes.add(sortedNodes(newMesh));
+		}
+		// Candidates are inserted in the same order
+		assertEquals("Serial and parallel results differ", nodes.get(0), nodes.get(1));
+	}
+
 	@Test public void test4Neighbors()
 	{
 		/*   v2       v3
@@ -33,6 +33,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -157,6 +158,32 @@ public class SmoothNodes3DBgTest
 		assertTrue("Min. angle too small: "+(qmin*60.0), qmin > 0.85);
 	}
 	
+	private static Mesh smoothJacobi(Mesh m, int threads)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("iterations", "20");
+		options.put("check", "false");
+		options.put("refresh", "true");
+		options.put("relaxation", "1.0");
+		options.put("jacobi", "true");
+		options.put("threads", Integer.toString(threads));
+		return new SmoothNodes3DBg(MeshLiaison.create(m), options).compute().getOutputMesh();
+	}
+
+	@Test public void testSphereJacobi()
+	{
+		mesh = SphereBuilder.createShuffledSphereMesh(3);
+		Mesh expected = smoothJacobi(mesh, 1);
+		Mesh smoothedMesh = smoothJacobi(mesh, 4);
+		assertTrue("Mesh is not valid", smoothedMesh.isValid());
+		assertTrue("Inverted triangles", smoothedMesh.checkNoInvertedTriangles());
+		// Result must not depend on the number of threads
+		assertEquals(expected.getNodes().size(), smoothedMesh.getNodes().size());
+		Iterator<Vertex> it = expected.getNodes().iterator();
+		for (Vertex v : smoothedMesh.getNodes())
+			assertEquals(0.0, v.sqrDistance3D(it.next()), 0.0);
+	}
+
 	@Test public void test4Neighbors()
 	{
 		/*   v2       v3
@@ -24,12 +24,17 @@ import java.io.File;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.TriangleVH;
 import org.jcae.mesh.amibe.ds.Vertex;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
 import org.jcae.mesh.amibe.validation.MinAngleFace;
 import org.jcae.mesh.amibe.validation.QualityFloat;
 import org.jcae.mesh.xmldata.MeshReader;
@@ -138,6 +143,115 @@ public class SmoothNodes3DTest
 		assertTrue("Min. angle too small: "+(qmin*60.0), qmin > 0.85);
 	}
 
+	/** Copies a mesh, outer triangles are created by buildAdjacency */
+	private static Mesh copy(Mesh src, MeshTraitsBuilder mtb, Map<Vertex, Vertex> map)
+	{
+		Mesh ret = new Mesh(mtb);
+		for (Vertex v : src.getNodes())
+		{
+			Vertex w = ret.createVertex(v.getX(), v.getY(), v.getZ());
+			w.setRef(v.getRef());
+			w.setLabel(v.getLabel());
+			map.put(v, w);
+			if (ret.hasNodes())
+				ret.add(w);
+		}
+		for (Triangle t : src.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			Triangle c = ret.createTriangle(map.get(t.getV0()), map.get(t.getV1()), map.get(t.getV2()));
+			c.setGroupId(t.getGroupId());
+			ret.add(c);
+		}
+		ret.buildAdjacency();
+		return ret;
+	}
+
+	// SmoothNodes3D only uses AbstractHalfEdge, it must give the same
+	// result on compact meshes, which have no HalfEdge instances
+	@Test public void testSphereCompact()
+	{
+		Mesh sphere = SphereBuilder.createShuffledSphereMesh(3);
+		Map<Vertex, Vertex> halfEdgeMap = new HashMap<Vertex, Vertex>();
+		Map<Vertex, Vertex> compactMap = new HashMap<Vertex, Vertex>();
+		// Same containers as getCompact3D, only edges differ
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleList();
+		mtb.addNodeList();
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		ttb.addHalfEdge();
+		mtb.add(ttb);
+		Mesh [] meshes = new Mesh[] {
+			copy(sphere, mtb, halfEdgeMap),
+			copy(sphere, MeshTraitsBuilder.getCompact3D(), compactMap) };
+		assertTrue(meshes[1].getTriangles().iterator().next() instanceof TriangleVH);
+		for (Mesh m : meshes)
+		{
+			final Map<String, String> options = new HashMap<String, String>();
+			options.put("iterations", "20");
+			options.put("check", "false");
+			options.put("refresh", "true");
+			options.put("relaxation", "1.0");
+			new SmoothNodes3D(m, options).compute();
+			assertTrue("Mesh is not valid", m.isValid());
+		}
+		for (Vertex n : sphere.getNodes())
+		{
+			Vertex v = halfEdgeMap.get(n);
+			Vertex w = compactMap.get(n);
+			assertEquals(v.getX(), w.getX(), 0.0);
+			assertEquals(v.getY(), w.getY(), 0.0);
+			assertEquals(v.getZ(), w.getZ(), 0.0);
+		}
+	}
+
+	private static void smoothJacobi(Mesh m, int threads)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("iterations", "20");
+		options.put("check", "false");
+		options.put("refresh", "true");
+		options.put("relaxation", "1.0");
+		options.put("jacobi", "true");
+		options.put("threads", Integer.toString(threads));
+		new SmoothNodes3D(m, options).compute();
+	}
+
+	@Test public void testSphereJacobi()
+	{
+		mesh = SphereBuilder.createShuffledSphereMesh(3);
+		List<Vertex> nodes = new ArrayList<Vertex>(mesh.getNodes());
+		double [] initial = new double[3*nodes.size()];
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			Vertex v = nodes.get(i);
+			initial[3*i] = v.getX();
+			initial[3*i+1] = v.getY();
+			initial[3*i+2] = v.getZ();
+		}
+		smoothJacobi(mesh, 1);
+		double [] expected = new double[3*nodes.size()];
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			Vertex v = nodes.get(i);
+			expected[3*i] = v.getX();
+			expected[3*i+1] = v.getY();
+			expected[3*i+2] = v.getZ();
+			v.moveTo(initial[3*i], initial[3*i+1], initial[3*i+2]);
+		}
+		smoothJacobi(mesh, 4);
+		assertTrue("Mesh is not valid", mesh.isValid());
+		assertTrue("Inverted triangles", mesh.checkNoInvertedTriangles());
+		// Result must not depend on the number of threads
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			assertEquals(expected[3*i], nodes.get(i).getX(), 0.0);
+			assertEquals(expected[3*i+1], nodes.get(i).getY(), 0.0);
+			assertEquals(expected[3*i+2], nodes.get(i).getZ(), 0.0);
+		}
+	}
+
 	static void shuffleTorus(Mesh mesh, double radiusIn, double radiusOut)
 	{
 		for (Vertex v : mesh.getNodes())
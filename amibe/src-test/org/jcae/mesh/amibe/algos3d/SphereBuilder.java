@@ -26,11 +26,12 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.MeshOEMMIndex;
+import org.jcae.mesh.TestFiles;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
@@ -94,7 +95,9 @@ public class SphereBuilder
 		 4,  8, 10,
 		 4, 10,  2
 	};
-	private final Set<UnindexedTriangle> triangles = new HashSet<UnindexedTriangle>();
+	// Keep insertion order so that generated meshes do not depend on
+	// identity hash codes
+	private final Set<UnindexedTriangle> triangles = new LinkedHashSet<UnindexedTriangle>();
 
 	@Ignore("Inner class")
 	private static class UnindexedTriangle
@@ -179,7 +182,7 @@ public class SphereBuilder
 		return true;
 	}
 	
-	private static Mesh createSphereMesh(int level)
+	public static Mesh createSphereMesh(int level)
 	{
 		SphereBuilder sphere = new SphereBuilder();
 		// Create icosahedron
@@ -215,6 +218,7 @@ public class SphereBuilder
 		MeshReader mr = new MeshReader(oemm);
 		Mesh toReturn = mr.buildWholeMesh();
 		// Clean up
+		TestFiles.delete(new File(tmpdir));
 		return toReturn;
 	}
 	
@@ -0,0 +1,272 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compare {@link AdjacencyBuilder} with {@link Mesh#glueSymmetricHalfEdges}
+ * and {@link Mesh#rebuildVertexLinks}.
+ */
+public class AdjacencyBuilderTest
+{
+	// Large enough so that loops are split between threads
+	private static final int N = 150;
+
+	private static MeshTraitsBuilder traits(boolean halfEdge, boolean nodes)
+	{
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		if (halfEdge)
+			ttb.addHalfEdge();
+		else
+			ttb.addVirtualHalfEdge();
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleList();
+		if (nodes)
+			mtb.addNodeList();
+		mtb.add(ttb);
+		return mtb;
+	}
+
+	/**
+	 * Creates a NxN shell with non-manifold fins and triangles which
+	 * share a single vertex with the shell.  Triangles are shuffled.
+	 */
+	private static Mesh createMesh(MeshTraitsBuilder mtb)
+	{
+		Mesh mesh = new Mesh(mtb);
+		List<Vertex> vertices = new ArrayList<Vertex>();
+		for (int j = 0; j <= N; j++)
+			for (int i = 0; i <= N; i++)
+				vertices.add(mesh.createVertex(i, j, 0.0));
+		List<Triangle> triangles = new ArrayList<Triangle>();
+		for (int j = 0; j < N; j++)
+		{
+			for (int i = 0; i < N; i++)
+			{
+				Vertex v0 = vertices.get(i + j * (N + 1));
+				Vertex v1 = vertices.get(i + 1 + j * (N + 1));
+				Vertex v2 = vertices.get(i + 1 + (j + 1) * (N + 1));
+				Vertex v3 = vertices.get(i + (j + 1) * (N + 1));
+				triangles.add(mesh.createTriangle(v0, v1, v2));
+				triangles.add(mesh.createTriangle(v0, v2, v3));
+			}
+		}
+		for (int j = 1; j < N; j += 7)
+		{
+			for (int i = 1; i < N - 1; i += 11)
+			{
+				// Interior edge with 1 to 3 fins, with both orientations
+				Vertex v0 = vertices.get(i + j * (N + 1));
+				Vertex v1 = vertices.get(i + 1 + j * (N + 1));
+				int nrFins = 1 + (i + j) % 3;
+				for (int k = 0; k < nrFins; k++)
+				{
+					Vertex apex = mesh.createVertex(i + 0.5, j, k + 1.0);
+					vertices.add(apex);
+					if (k % 2 == 0)
+						triangles.add(mesh.createTriangle(v0, v1, apex));
+					else
+						triangles.add(mesh.createTriangle(v1, v0, apex));
+				}
+			}
+		}
+		for (int i = 0; i <= N; i += 10)
+		{
+			// Fin on a boundary edge
+			Vertex v0 = vertices.get(i);
+			Vertex v1 = vertices.get(i + 1 <= N ? i + 1 : i - 1);
+			Vertex apex = mesh.createVertex(i, -1.0, 1.0);
+			vertices.add(apex);
+			triangles.add(mesh.createTriangle(v1, v0, apex));
+			// Triangle with a single vertex on the shell
+			Vertex v = vertices.get(i + (N / 2) * (N + 1));
+			Vertex a = mesh.createVertex(i, N / 2, 1.0);
+			Vertex b = mesh.createVertex(i + 0.5, N / 2, 1.0);
+			vertices.add(a);
+			vertices.add(b);
+			triangles.add(mesh.createTriangle(v, a, b));
+		}
+		Collections.shuffle(triangles, new Random(12345L));
+		for (Triangle t: triangles)
+			mesh.add(t);
+		if (mesh.hasNodes())
+		{
+			Collections.shuffle(vertices, new Random(6789L));
+			for (Vertex v: vertices)
+				mesh.add(v);
+		}
+		return mesh;
+	}
+
+	/** Previous implementation of Mesh.buildAdjacency */
+	private static void buildAdjacencyWithMap(Mesh mesh)
+	{
+		ArrayList<Triangle> newTri = new ArrayList<Triangle>();
+		Map<Vertex, Collection<Triangle>> tVertList = mesh.getMapVertexLinks();
+		mesh.glueSymmetricHalfEdges(tVertList, newTri);
+		mesh.connectBoundaryTriangles(newTri);
+		Mesh.rebuildVertexLinks(tVertList);
+		mesh.getTriangles().addAll(newTri);
+	}
+
+	private static void buildAdjacencyWithBuilder(Mesh mesh, boolean halfEdge, int threads)
+	{
+		ArrayList<Triangle> newTri = new ArrayList<Triangle>();
+		AdjacencyBuilder builder = new AdjacencyBuilder(mesh, threads);
+		try
+		{
+			builder.init(mesh.getTriangles(), mesh.hasNodes() ? mesh.getNodes() : null);
+			builder.glueSymmetricHalfEdges(halfEdge, newTri);
+			mesh.connectBoundaryTriangles(newTri);
+			builder.rebuildVertexLinks();
+		}
+		finally
+		{
+			builder.dispose();
+		}
+		mesh.getTriangles().addAll(newTri);
+	}
+
+	/**
+	 * Returns a description of adjacency relations and vertex links,
+	 * triangles and vertices are replaced by their index.
+	 */
+	private static List<String> describe(Mesh mesh)
+	{
+		TObjectIntHashMap<Triangle> triangles = new TObjectIntHashMap<Triangle>(100, 0.5f, -1);
+		TObjectIntHashMap<Vertex> vertices = new TObjectIntHashMap<Vertex>(100, 0.5f, -1);
+		List<Vertex> vertexList = new ArrayList<Vertex>();
+		for (Triangle t: mesh.getTriangles())
+		{
+			triangles.put(t, triangles.size());
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex v = t.getV(i);
+				if (v != mesh.outerVertex && !vertices.containsKey(v))
+				{
+					vertices.put(v, vertices.size());
+					vertexList.add(v);
+				}
+			}
+		}
+		List<String> ret = new ArrayList<String>();
+		AbstractHalfEdge ot = null;
+		for (Triangle t: mesh.getTriangles())
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 3; i++)
+				sb.append(' ').append(vertices.get(t.getV(i)));
+			ot = t.getAbstractHalfEdge(ot);
+			for (int i = 0; i < 3; i++)
+			{
+				ot = ot.next();
+				sb.append(" |");
+				for (int b = 0; b < 8; b++)
+					if (ot.hasAttributes(1 << b))
+						sb.append(' ').append(1 << b);
+				if (ot.hasSymmetricEdge())
+				{
+					AbstractHalfEdge sym = ot.sym();
+					sb.append(" sym ").append(triangles.get(sym.getTri()));
+					sb.append(' ').append(sym.getLocalNumber());
+				}
+			}
+			ret.add(sb.toString());
+		}
+		for (Vertex v: vertexList)
+		{
+			Object link = v.getLink();
+			if (link instanceof Triangle)
+				ret.add("link "+triangles.get((Triangle) link));
+			else if (link instanceof Triangle[])
+			{
+				StringBuilder sb = new StringBuilder("links");
+				for (Triangle t: (Triangle[]) link)
+					sb.append(' ').append(triangles.get(t));
+				ret.add(sb.toString());
+			}
+			else
+				ret.add("no link");
+		}
+		return ret;
+	}
+
+	private static void compare(boolean halfEdge, boolean nodes)
+	{
+		Mesh expectedMesh = createMesh(traits(halfEdge, nodes));
+		buildAdjacencyWithMap(expectedMesh);
+		List<String> expected = describe(expectedMesh);
+		int nrNonManifold = 0;
+		int nrBoundary = 0;
+		int nrNonManifoldVertices = 0;
+		for (String s: expected)
+		{
+			if (s.contains(" "+AbstractHalfEdge.NONMANIFOLD))
+				nrNonManifold++;
+			else if (s.contains(" "+AbstractHalfEdge.BOUNDARY))
+				nrBoundary++;
+			else if (s.startsWith("links"))
+				nrNonManifoldVertices++;
+		}
+		assertTrue(nrNonManifold > 0);
+		assertTrue(nrBoundary > 0);
+		assertTrue(nrNonManifoldVertices > 0);
+		for (int threads: new int[] { 1, 4 })
+		{
+			Mesh mesh = createMesh(traits(halfEdge, nodes));
+			buildAdjacencyWithBuilder(mesh, halfEdge, threads);
+			List<String> found = describe(mesh);
+			assertEquals(expected.size(), found.size());
+			for (int i = 0; i < expected.size(); i++)
+				assertEquals("threads="+threads+" line "+i, expected.get(i), found.get(i));
+		}
+	}
+
+	@Test public void halfEdge()
+	{
+		compare(true, false);
+	}
+
+	@Test public void halfEdgeWithNodes()
+	{
+		compare(true, true);
+	}
+
+	@Test public void virtualHalfEdge()
+	{
+		compare(false, false);
+	}
+
+	@Test public void virtualHalfEdgeWithNodes()
+	{
+		compare(false, true);
+	}
+}
@@ -21,6 +21,13 @@ package org.jcae.mesh.amibe.ds;
 
 import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -133,4 +140,134 @@ public class MeshTest
 		assertTrue("Wrong return value of scratchVirtualBoundaries (2 was expected): "+nr, 2 == nr);
 	}
 	
+	@Test public void compact3D()
+	{
+		mesh = new Mesh(MeshTraitsBuilder.getCompact3D());
+		createMxNShell(3, 3);
+		for (Vertex vv: v)
+			mesh.add(vv);
+		assertTrue("Wrong number of triangles: "+mesh.getTriangles().size(), 8 == mesh.getTriangles().size());
+		mesh.buildAdjacency();
+		assertTrue("Wrong number of triangles after buildAdjacency: "+mesh.getTriangles().size(), 16 == mesh.getTriangles().size());
+		assertTrue("Mesh is not valid", mesh.isValid());
+		for (Triangle t: mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			AbstractHalfEdge ot = t.getAbstractHalfEdge();
+			for (int i = 0; i < 3; i++)
+			{
+				ot = ot.next();
+				assertTrue("Adjacency is not symmetric", ot.sym().sym().getTri() == t);
+			}
+		}
+	}
+	
+	@Test public void groupIndex()
+	{
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleSet();
+		mesh = new Mesh(mtb);
+		createMxNShell(3, 4);
+		for (int i = 0; i < T.length; i++)
+			T[i].setGroupId(i % 3);
+		assertEquals(4, mesh.getNumberOfTrianglesByGroup(0));
+		assertEquals(0, mesh.getNumberOfTrianglesByGroup(3));
+		// Index is updated when triangles are added, removed or moved
+		Triangle t = mesh.createTriangle(v[0], v[4], v[1]);
+		t.setGroupId(2);
+		mesh.add(t);
+		mesh.remove(T[0]);
+		mesh.setGroupId(T[1], 0);
+		assertEquals(4, mesh.getNumberOfTrianglesByGroup(0));
+		assertEquals(3, mesh.getNumberOfTrianglesByGroup(1));
+		assertEquals(5, mesh.getNumberOfTrianglesByGroup(2));
+		assertTrue(mesh.getTrianglesByGroup(2).contains(t));
+		assertFalse(mesh.getTrianglesByGroup(0).contains(T[0]));
+		Set<Vertex> nodes = new HashSet<Vertex>();
+		for (Triangle tt: mesh.getTriangles())
+			if (tt.getGroupId() == 1)
+				nodes.addAll(Arrays.asList(tt.getV0(), tt.getV1(), tt.getV2()));
+		assertEquals(nodes, mesh.getOrComputeNodes(1, null));
+		mesh.copy(2, 4);
+		assertEquals(5, mesh.getNumberOfTrianglesByGroup(4));
+		// Triangles by position
+		int n = 0;
+		for (Triangle tt: mesh.getTriangles())
+			assertSame(tt, mesh.getTriangle(n++));
+		Collection<Triangle> sub = mesh.getTriangles(Arrays.asList(5, 1, 5));
+		assertEquals(Arrays.asList(mesh.getTriangle(1), mesh.getTriangle(5)), sub);
+		assertTrue(mesh.getTriangles(Arrays.asList(n)).isEmpty());
+	}
+
+	@Test public void groupIndexModifiedDirectly()
+	{
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleSet();
+		mesh = new Mesh(mtb);
+		createMxNShell(3, 4);
+		for (int i = 0; i < T.length; i++)
+			T[i].setGroupId(i % 3);
+		assertEquals(4, mesh.getNumberOfTrianglesByGroup(0));
+		// Group changed without calling Mesh.setGroupId
+		T[0].setGroupId(1);
+		assertEquals(3, mesh.getNumberOfTrianglesByGroup(0));
+		assertTrue(mesh.getTrianglesByGroup(1).contains(T[0]));
+		// Triangle list modified through an iterator, size is unchanged
+		assertSame(T[1], mesh.getTriangle(1));
+		for (Iterator<Triangle> it = mesh.getTriangles().iterator(); it.hasNext(); )
+		{
+			if (it.next() == T[1])
+				it.remove();
+		}
+		Triangle t = mesh.createTriangle(v[0], v[4], v[1]);
+		t.setGroupId(2);
+		mesh.getTriangles().add(t);
+		assertEquals(4, mesh.getNumberOfTrianglesByGroup(1));
+		assertEquals(5, mesh.getNumberOfTrianglesByGroup(2));
+		assertFalse(mesh.getTrianglesByGroup(1).contains(T[1]));
+		assertSame(T[2], mesh.getTriangle(1));
+		assertSame(t, mesh.getTriangle(T.length - 1));
+		// popGroup removes triangles of this group only
+		TDoubleArrayList coordinates = new TDoubleArrayList();
+		TIntArrayList triangles = new TIntArrayList();
+		mesh.popGroup(coordinates, triangles, null, 2);
+		assertEquals(15, triangles.size());
+		assertEquals(T.length - 5, mesh.getTriangles().size());
+		assertEquals(0, mesh.getNumberOfTrianglesByGroup(2));
+		assertEquals(4, mesh.getNumberOfTrianglesByGroup(1));
+		assertFalse(mesh.getTriangles().contains(t));
+	}
+
+	@Test public void groupIndexOfOtherMesh()
+	{
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleSet();
+		mesh = new Mesh(mtb);
+		createMxNShell(3, 4);
+		for (Triangle t: T)
+			t.setGroupId(0);
+		Mesh first = mesh;
+		Triangle [] firstT = T;
+		mesh = new Mesh(mtb);
+		createMxNShell(3, 4);
+		for (Triangle t: T)
+			t.setGroupId(0);
+		Collection<Triangle> group0 = first.getTrianglesByGroup(0);
+		assertEquals(firstT.length, group0.size());
+		assertEquals(T.length, mesh.getNumberOfTrianglesByGroup(0));
+		// Group changes in a mesh do not invalidate index of another mesh,
+		// so first mesh updates group0 instead of rebuilding its index
+		T[0].setGroupId(1);
+		first.setGroupId(firstT[0], 1);
+		assertEquals(firstT.length - 1, group0.size());
+		assertFalse(group0.contains(firstT[0]));
+		assertEquals(T.length - 1, mesh.getNumberOfTrianglesByGroup(0));
+		// Removed triangles are no more reported to index
+		first.remove(firstT[1]);
+		group0 = first.getTrianglesByGroup(0);
+		firstT[1].setGroupId(2);
+		first.setGroupId(firstT[2], 1);
+		assertEquals(firstT.length - 3, group0.size());
+	}
 }
@@ -0,0 +1,186 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jcae.mesh.TestFiles;
+import org.jcae.mesh.amibe.algos3d.QEMDecimateHalfEdge;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.projection.MeshLiaison;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TraceBinaryTest
+{
+	private static Mesh sphere;
+	private final List<File> tmpDirs = new ArrayList<File>();
+
+	@BeforeClass public static void createMesh()
+	{
+		sphere = SphereBuilder.createSphereMesh(2);
+	}
+
+	@After public void deleteTmpDirs()
+	{
+		for (File dir : tmpDirs)
+			TestFiles.delete(dir);
+	}
+
+	private File createTempDir() throws IOException
+	{
+		File dir = TestFiles.createTempDir("trace");
+		tmpDirs.add(dir);
+		return dir;
+	}
+
+	/* Performs some operations on a copy of sphere */
+	private static Mesh record(MeshTraitsBuilder mtb, String logName)
+	{
+		mtb.addNodeList();
+		MeshLiaison liaison = MeshLiaison.create(sphere, mtb);
+		Mesh mesh = liaison.getMesh();
+		TraceInterface trace = mesh.getTrace();
+		trace.setDisabled(false);
+		trace.setLogFile(logName);
+		trace.createMesh("mesh", mesh);
+		trace.setHooks(new String[] { "print 'hook'" });
+		mesh.buildRidges(0.95);
+		// Vertex splits
+		List<AbstractHalfEdge> edges = new ArrayList<AbstractHalfEdge>();
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER) && edges.size() < 20)
+				edges.add(t.getAbstractHalfEdge());
+		}
+		for (AbstractHalfEdge e : edges)
+		{
+			Vertex v = mesh.createVertex(0.0, 0.0, 0.0);
+			v.middle(e.origin(), e.destination());
+			mesh.vertexSplit(e, v);
+		}
+		// Vertex moves
+		int cnt = 0;
+		for (Vertex v : mesh.getNodes())
+		{
+			if (cnt++ % 7 != 0)
+				continue;
+			v.moveTo(1.01 * v.getX(), v.getY(), v.getZ());
+			trace.moveVertex(v);
+		}
+		// Edge collapses and swaps
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("size", "0.3");
+		new QEMDecimateHalfEdge(mesh, options).compute();
+		trace.finish();
+		return mesh;
+	}
+
+	private static String read(File f) throws IOException
+	{
+		byte [] ret = new byte[(int) f.length()];
+		FileInputStream in = new FileInputStream(f);
+		try
+		{
+			int offset = 0;
+			while (offset < ret.length)
+				offset += in.read(ret, offset, ret.length - offset);
+		}
+		finally
+		{
+			in.close();
+		}
+		return new String(ret, "UTF-8");
+	}
+
+	/* Python scripts contain their path */
+	private static void checkPythonFiles(File dir, File expectedDir) throws IOException
+	{
+		String [] names = expectedDir.list();
+		assertTrue(names.length > 2);
+		Arrays.sort(names);
+		for (String name : names)
+		{
+			File f = new File(dir, name);
+			assertTrue(name, f.exists());
+			String expected = read(new File(expectedDir, name)).replace(
+				expectedDir.getPath(), dir.getPath());
+			assertEquals(name, expected, read(f));
+		}
+	}
+
+	private static double[] sortedCoordinates(Mesh mesh)
+	{
+		List<double[]> list = new ArrayList<double[]>();
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			for (int i = 0; i < 3; i++)
+				list.add(new double[] { t.getV(i).getX(), t.getV(i).getY(), t.getV(i).getZ() });
+		}
+		double [] ret = new double[3 * list.size()];
+		for (int i = 0; i < list.size(); i++)
+			System.arraycopy(list.get(i), 0, ret, 3 * i, 3);
+		Arrays.sort(ret);
+		return ret;
+	}
+
+	@Test public void toPython() throws IOException
+	{
+		File expectedDir = createTempDir();
+		record(MeshTraitsBuilder.getDefault3D().addTraceRecord(),
+			new File(expectedDir, "trace").getPath());
+
+		File dir = createTempDir();
+		String logName = new File(dir, "trace").getPath();
+		record(MeshTraitsBuilder.getDefault3D().addTraceRecordBinary(), logName);
+		File bin = new File(logName + TraceBinary.EXTENSION);
+		assertTrue(bin.exists());
+		TraceBinary.toPython(bin.getPath(), null);
+		checkPythonFiles(dir, expectedDir);
+		// Binary trace is much smaller
+		long size = 0L;
+		for (File f : expectedDir.listFiles())
+			size += f.length();
+		assertTrue(bin.length()+" "+size, bin.length() * 4 < size);
+	}
+
+	@Test public void replay() throws IOException
+	{
+		File dir = createTempDir();
+		String logName = new File(dir, "trace").getPath();
+		Mesh expected = record(MeshTraitsBuilder.getDefault3D().addTraceRecordBinary(), logName);
+		Mesh mesh = TraceReplay.replay(logName + TraceBinary.EXTENSION);
+		assertTrue(mesh.isValid());
+		assertEquals(expected.getTriangles().size(), mesh.getTriangles().size());
+		assertEquals(expected.getNodes().size(), mesh.getNodes().size());
+		assertArrayEquals(sortedCoordinates(expected), sortedCoordinates(mesh), 0.0);
+	}
+}
@@ -0,0 +1,170 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.metrics;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.jcae.mesh.amibe.util.ParallelLoop;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ConcurrentKdTreeTest
+{
+	private static final double [] BBOX = new double[] { 0.0, 0.0, 0.0, 1.0, 1.0, 1.0 };
+	private final Metric metric = new EuclidianMetric3D();
+
+	private static List<Location> createPoints(int n, long seed)
+	{
+		Random random = new Random(seed);
+		List<Location> ret = new ArrayList<Location>(n);
+		for (int i = 0; i < n; i++)
+		{
+			// Use a coarse grid to have duplicate distances
+			ret.add(new Location(0.01 * random.nextInt(100),
+				0.01 * random.nextInt(100), 0.01 * random.nextInt(100)));
+		}
+		return ret;
+	}
+
+	private void checkNearest(KdTree<Location> expected, ConcurrentKdTree<Location> tree)
+	{
+		for (Location p : createPoints(1000, 2L))
+		{
+			assertSame(expected.getNearVertex(metric, p), tree.getNearVertex(metric, p));
+			assertSame(expected.getNearestVertex(metric, p), tree.getNearestVertex(metric, p));
+		}
+		assertEquals(expected.getAllVertices(0), tree.getAllVertices(0));
+	}
+
+	@Test public void empty()
+	{
+		ConcurrentKdTree<Location> tree = new ConcurrentKdTree<Location>(BBOX);
+		assertNull(tree.getNearestVertex(metric, new Location(0.5, 0.5, 0.5)));
+		assertTrue(tree.getAllVertices(0).isEmpty());
+	}
+
+	@Test public void addSequential()
+	{
+		KdTree<Location> expected = new KdTree<Location>(BBOX);
+		ConcurrentKdTree<Location> tree = new ConcurrentKdTree<Location>(BBOX);
+		for (Location p : createPoints(20000, 1L))
+		{
+			expected.add(p);
+			tree.add(p);
+		}
+		checkNearest(expected, tree);
+	}
+
+	@Test public void addAll()
+	{
+		List<Location> points = createPoints(20000, 1L);
+		KdTree<Location> expected = new KdTree<Location>(BBOX);
+		ConcurrentKdTree<Location> tree = new ConcurrentKdTree<Location>(BBOX);
+		ParallelLoop loop = new ParallelLoop(4, 1);
+		// Add vertices into a non-empty tree
+		for (Location p : points.subList(0, 15))
+		{
+			expected.add(p);
+			tree.add(p);
+		}
+		for (Location p : points.subList(15, points.size()))
+			expected.add(p);
+		tree.addAll(points.subList(15, points.size()), loop);
+		loop.shutdown();
+		checkNearest(expected, tree);
+	}
+
+	@Test public void remove()
+	{
+		List<Location> points = createPoints(5000, 1L);
+		KdTree<Location> expected = new KdTree<Location>(BBOX);
+		ConcurrentKdTree<Location> tree = new ConcurrentKdTree<Location>(BBOX);
+		for (Location p : points)
+		{
+			expected.add(p);
+			tree.add(p);
+		}
+		for (int i = 0; i < points.size(); i += 2)
+		{
+			expected.remove(points.get(i));
+			tree.remove(points.get(i));
+		}
+		for (Location p : createPoints(1000, 2L))
+			assertSame(expected.getNearestVertex(metric, p), tree.getNearestVertex(metric, p));
+		assertEquals(expected.getAllVertices(0), tree.getAllVertices(0));
+	}
+
+	@Test(expected=RuntimeException.class) public void removeMissing()
+	{
+		ConcurrentKdTree<Location> tree = new ConcurrentKdTree<Location>(BBOX);
+		tree.add(new Location(0.5, 0.5, 0.5));
+		tree.remove(new Location(0.5, 0.5, 0.5));
+	}
+
+	@Test public void concurrent() throws InterruptedException
+	{
+		final List<Location> points = createPoints(40000, 1L);
+		final ConcurrentKdTree<Location> tree = new ConcurrentKdTree<Location>(BBOX);
+		final int nrThreads = 4;
+		final Throwable [] errors = new Throwable[nrThreads];
+		Thread [] threads = new Thread[nrThreads];
+		for (int t = 0; t < nrThreads; t++)
+		{
+			final int id = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					try
+					{
+						for (int i = id; i < points.size(); i += nrThreads)
+						{
+							Location p = points.get(i);
+							tree.add(p);
+							// A vertex which has been added must be found
+							assertEquals(0.0, metric.distance2(p, tree.getNearestVertex(metric, p)), 0.0);
+							if (i % 3 == 0)
+								tree.remove(p);
+						}
+					}
+					catch (Throwable ex)
+					{
+						errors[id] = ex;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		for (Throwable ex : errors)
+			assertNull(ex);
+		Map<Location, Boolean> found = new IdentityHashMap<Location, Boolean>();
+		for (Location p : tree.getAllVertices(0))
+			found.put(p, Boolean.TRUE);
+		for (int i = 0; i < points.size(); i++)
+			assertEquals(i % 3 != 0, found.containsKey(points.get(i)));
+		assertEquals(points.size() - (points.size() + 2) / 3, found.size());
+	}
+}
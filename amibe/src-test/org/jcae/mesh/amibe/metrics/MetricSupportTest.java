@@ -0,0 +1,96 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.metrics;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class MetricSupportTest
+{
+	private static class CountingMetric extends MetricSupport.AnalyticMetric
+	{
+		private final AtomicInteger calls = new AtomicInteger();
+		@Override
+		public double getTargetSize(double x, double y, double z, int groupId)
+		{
+			calls.incrementAndGet();
+			return 0.1 + 0.01 * x;
+		}
+	}
+
+	@Test public void computeOncePerVertex()
+	{
+		Mesh mesh = SphereBuilder.createSphereMesh(3);
+		mesh.getMeshParameters().setThreads(3);
+		CountingMetric metric = new CountingMetric();
+		MetricSupport metrics = new MetricSupport(mesh, new HashMap<String, String>());
+		metrics.setAnalyticMetric(metric);
+		metrics.compute();
+		assertEquals(mesh.getNodes().size(), metric.calls.get());
+		for (Vertex v : mesh.getNodes())
+			assertEquals(0.1 + 0.01 * v.getX(), metrics.get(v).getUnitBallBBox()[0], 1.e-12);
+	}
+
+	@Test public void computeByGroup()
+	{
+		Mesh mesh = SphereBuilder.createSphereMesh(3);
+		mesh.getMeshParameters().setThreads(3);
+		Set<Vertex> group1 = new HashSet<Vertex>();
+		Set<Vertex> group2 = new HashSet<Vertex>();
+		for (Triangle t : mesh.getTriangles())
+		{
+			boolean first = t.getV0().getZ() + t.getV1().getZ() + t.getV2().getZ() > 0.0;
+			t.setGroupId(first ? 1 : 2);
+			for (int i = 0; i < 3; i++)
+				(first ? group1 : group2).add(t.getV(i));
+		}
+		CountingMetric metric1 = new CountingMetric();
+		CountingMetric metric2 = new CountingMetric() {
+			@Override
+			public double getTargetSize(double x, double y, double z, int groupId)
+			{
+				return super.getTargetSize(x, y, z, groupId) - 0.05;
+			}
+		};
+		MetricSupport metrics = new MetricSupport(mesh, new HashMap<String, String>());
+		metrics.setAnalyticMetric(1, metric1);
+		metrics.setAnalyticMetric(2, metric2);
+		metrics.compute();
+		// Each vertex is evaluated once by metrics of its groups, and
+		// the smallest size is kept
+		assertEquals(group1.size(), metric1.calls.get());
+		assertEquals(group2.size(), metric2.calls.get());
+		for (Vertex v : mesh.getNodes())
+		{
+			double expected = 0.1 + 0.01 * v.getX();
+			if (group2.contains(v))
+				expected -= 0.05;
+			assertEquals(expected, metrics.get(v).getUnitBallBBox()[0], 1.e-12);
+		}
+	}
+}
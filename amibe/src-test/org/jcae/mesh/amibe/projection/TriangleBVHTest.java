@@ -0,0 +1,238 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.projection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.util.ParallelLoop;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TriangleBVHTest
+{
+	private static Mesh mesh;
+	private static List<Triangle> triangles;
+	private final MeshLiaison.TriangleDistance distance = new MeshLiaison.TriangleDistance();
+	private final int[] index = new int[2];
+
+	@BeforeClass public static void createMesh()
+	{
+		mesh = SphereBuilder.createSphereMesh(3);
+		triangles = new ArrayList<Triangle>();
+		int i = 0;
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			t.setGroupId(i % 3);
+			triangles.add(t);
+			i++;
+		}
+	}
+
+	private static Location[] createPoints(int n, long seed)
+	{
+		Random random = new Random(seed);
+		Location[] ret = new Location[n];
+		for (int i = 0; i < n; i++)
+			ret[i] = new Location(3.0 * random.nextDouble() - 1.5,
+				3.0 * random.nextDouble() - 1.5, 3.0 * random.nextDouble() - 1.5);
+		return ret;
+	}
+
+	private double bruteForce(Location p, int group)
+	{
+		double ret = Double.POSITIVE_INFINITY;
+		for (Triangle t : triangles)
+		{
+			if (group < 0 || t.getGroupId() == group)
+				ret = Math.min(ret, distance.compute(p, t, index));
+		}
+		return ret;
+	}
+
+	private void checkClosest(TriangleBVH bvh, int group)
+	{
+		TriangleBVH.Query query = bvh.createQuery();
+		Location projection = new Location();
+		for (Location p : createPoints(500, 1L))
+		{
+			Triangle t = bvh.getClosestTriangle(p, projection, group, query);
+			assertNotNull(t);
+			if (group >= 0)
+				assertEquals(group, t.getGroupId());
+			double expected = bruteForce(p, group);
+			assertEquals(expected, query.getDistance2(), 1e-12);
+			assertEquals(expected, distance.compute(p, t, index), 1e-12);
+			assertEquals(expected, p.sqrDistance3D(projection), 1e-12);
+		}
+	}
+
+	@Test public void empty()
+	{
+		TriangleBVH bvh = new TriangleBVH(new ArrayList<Triangle>(), 1);
+		assertEquals(0, bvh.size());
+		assertNull(bvh.getClosestTriangle(new Location(), null, -1));
+		List<Triangle> result = new ArrayList<Triangle>();
+		bvh.getNearTriangles(new double[]{-1, -1, -1, 1, 1, 1}, result, -1);
+		assertTrue(result.isEmpty());
+	}
+
+	@Test public void closest()
+	{
+		TriangleBVH bvh = new TriangleBVH(mesh);
+		assertEquals(triangles.size(), bvh.size());
+		assertEquals(new HashSet<Triangle>(triangles), new HashSet<Triangle>(bvh.getTriangles()));
+		checkClosest(bvh, -1);
+		checkClosest(bvh, 1);
+	}
+
+	@Test public void parallelBuild()
+	{
+		TriangleBVH bvh1 = new TriangleBVH(triangles, 1);
+		TriangleBVH bvh4 = new TriangleBVH(triangles, 4);
+		assertEquals(bvh1.getTriangles(), bvh4.getTriangles());
+		assertEquals(bvh1.stats(), bvh4.stats());
+	}
+
+	@Test public void batch()
+	{
+		TriangleBVH bvh = new TriangleBVH(triangles, 1);
+		Location[] points = createPoints(2000, 2L);
+		Triangle[] result = new Triangle[points.length];
+		Location[] projections = new Location[points.length];
+		for (int i = 0; i < points.length; i++)
+			projections[i] = new Location();
+		ParallelLoop loop = new ParallelLoop(4, 16);
+		bvh.getClosestTriangles(points, result, projections, -1, loop);
+		loop.shutdown();
+		TriangleBVH.Query query = bvh.createQuery();
+		Location projection = new Location();
+		for (int i = 0; i < points.length; i++)
+		{
+			assertSame(bvh.getClosestTriangle(points[i], projection, -1, query), result[i]);
+			assertEquals(0.0, projection.sqrDistance3D(projections[i]), 0.0);
+		}
+	}
+
+	private static boolean intersect(double[] aabb, Triangle t)
+	{
+		for (int j = 0; j < 3; j++)
+		{
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < 3; i++)
+			{
+				min = Math.min(min, t.getV(i).get(j));
+				max = Math.max(max, t.getV(i).get(j));
+			}
+			if (max < aabb[j] || min > aabb[j + 3])
+				return false;
+		}
+		return true;
+	}
+
+	@Test public void near()
+	{
+		TriangleBVH bvh = new TriangleBVH(triangles, 1);
+		for (Location p : createPoints(100, 3L))
+		{
+			double[] aabb = new double[6];
+			for (int j = 0; j < 3; j++)
+			{
+				aabb[j] = p.get(j) - 0.2;
+				aabb[j + 3] = p.get(j) + 0.2;
+			}
+			Collection<Triangle> result = new ArrayList<Triangle>();
+			bvh.getNearTriangles(aabb, result, 2, true);
+			Set<Triangle> expected = new HashSet<Triangle>();
+			for (Triangle t : triangles)
+			{
+				if (t.getGroupId() != 2 && intersect(aabb, t))
+					expected.add(t);
+			}
+			assertEquals(expected.size(), result.size());
+			assertEquals(expected, new HashSet<Triangle>(result));
+		}
+	}
+
+	@Test public void refit()
+	{
+		Mesh sphere = SphereBuilder.createSphereMesh(2);
+		TriangleBVH bvh = new TriangleBVH(sphere);
+		// Move vertices of one hemisphere
+		Set<Vertex> moved = new HashSet<Vertex>();
+		List<Triangle> movedTriangles = new ArrayList<Triangle>();
+		for (Triangle t : sphere.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			boolean found = false;
+			for (int i = 0; i < 3; i++)
+			{
+				if (t.getV(i).getZ() > 0.0)
+				{
+					found = true;
+					moved.add(t.getV(i));
+				}
+			}
+			if (found)
+				movedTriangles.add(t);
+		}
+		// Also move triangles which share these vertices
+		for (Triangle t : sphere.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER) || movedTriangles.contains(t))
+				continue;
+			for (int i = 0; i < 3; i++)
+			{
+				if (moved.contains(t.getV(i)))
+				{
+					movedTriangles.add(t);
+					break;
+				}
+			}
+		}
+		for (Vertex v : moved)
+			v.moveTo(v.getX(), v.getY(), 2.0 * v.getZ());
+		bvh.refit(movedTriangles);
+		TriangleBVH rebuilt = new TriangleBVH(sphere);
+		TriangleBVH.Query query = bvh.createQuery();
+		for (Location p : createPoints(500, 4L))
+		{
+			bvh.getClosestTriangle(p, null, -1, query);
+			double d = query.getDistance2();
+			rebuilt.getClosestTriangle(p, null, -1, query);
+			assertEquals(query.getDistance2(), d, 1e-12);
+		}
+		assertArrayEquals(rebuilt.getBounds(), bvh.getBounds(), 0.0);
+	}
+}
@@ -0,0 +1,272 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2010, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import gnu.trove.impl.PrimeFinder;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.Before;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+public class BinaryHeapSortedTreeTest
+{
+	private QSortedCollection<Integer> tree;
+
+	@Before public void createTree()
+	{
+		tree = new BinaryHeapSortedTree<Integer>(4);
+	}
+
+	private Integer first()
+	{
+		return tree.iterator().next().getData();
+	}
+
+	@Test public void lowest()
+	{
+		tree.insert(Integer.valueOf(3), 3.0);
+		assertTrue(first().equals(Integer.valueOf(3)));
+		tree.insert(Integer.valueOf(2), 2.0);
+		assertTrue(first().equals(Integer.valueOf(2)));
+		tree.insert(Integer.valueOf(1), 1.0);
+		assertTrue(first().equals(Integer.valueOf(1)));
+		tree.remove(Integer.valueOf(1));
+		assertTrue(first().equals(Integer.valueOf(2)));
+		tree.update(Integer.valueOf(3), 0.0);
+		assertTrue(first().equals(Integer.valueOf(3)));
+	}
+
+	@Test public void iterator()
+	{
+		tree.insert(Integer.valueOf(6), 6.0);
+		tree.insert(Integer.valueOf(2), 2.0);
+		tree.insert(Integer.valueOf(7), 7.0);
+		tree.insert(Integer.valueOf(1), 1.0);
+		tree.insert(Integer.valueOf(4), 4.0);
+		tree.insert(Integer.valueOf(5), 5.0);
+		tree.insert(Integer.valueOf(3), 3.0);
+		int i = 1;
+		for (Iterator<? extends QSortedCollection.Entry<Integer>> it = tree.iterator(); it.hasNext(); i++)
+		{
+			QSortedCollection.Entry<Integer> entry = it.next();
+			assertTrue(entry.getData().equals(Integer.valueOf(i)));
+			assertTrue(entry.getValue() == (double) i);
+		}
+		assertTrue(i == 8);
+		assertTrue(tree.size() == 7);
+	}
+
+	@Test public void duplicates()
+	{
+		// Objects with the same value are sorted by insertion order
+		for (int i = 0; i < 20; i++)
+			tree.insert(Integer.valueOf(i), (double) (i % 2));
+		tree.update(Integer.valueOf(0), 0.0);
+		int [] expected = new int[] { 2, 4, 6, 8, 10, 12, 14, 16, 18, 0 };
+		Iterator<? extends QSortedCollection.Entry<Integer>> it = tree.iterator();
+		for (int i = 0; i < expected.length; i++)
+			assertTrue(it.next().getData().equals(Integer.valueOf(expected[i])));
+		assertTrue(it.next().getData().equals(Integer.valueOf(1)));
+	}
+
+	@Test public void removeDuringIteration()
+	{
+		Integer [] iii = new Integer[50];
+		for (int i = 0; i < iii.length; i++)
+		{
+			iii[i] = Integer.valueOf(i);
+			tree.insert(iii[i], (double) ((7 * i) % iii.length));
+		}
+		// Remove all objects but the ones with a value multiple of 5
+		int cnt = 0;
+		double last = -1.0;
+		for (Iterator<? extends QSortedCollection.Entry<Integer>> it = tree.iterator(); it.hasNext(); )
+		{
+			QSortedCollection.Entry<Integer> node = it.next();
+			assertTrue(node.getValue() > last);
+			last = node.getValue();
+			if (((int) node.getValue()) % 5 != 0)
+				tree.remove(node.getData());
+			cnt++;
+		}
+		assertTrue(cnt == iii.length);
+		assertTrue(tree.size() == 10);
+	}
+
+	@Test public void iteratorRemove()
+	{
+		for (int i = 0; i < 20; i++)
+			tree.insert(Integer.valueOf(i), (double) ((7 * i) % 20));
+		int cnt = 0;
+		for (Iterator<? extends QSortedCollection.Entry<Integer>> it = tree.iterator(); it.hasNext(); )
+		{
+			QSortedCollection.Entry<Integer> node = it.next();
+			assertTrue(node.getValue() == (double) cnt);
+			cnt++;
+			if (node.getData().intValue() % 2 == 0)
+			{
+				it.remove();
+				assertFalse(tree.contains(node.getData()));
+				try
+				{
+					it.remove();
+					fail("Object removed twice");
+				}
+				catch (IllegalStateException ex)
+				{
+				}
+			}
+		}
+		assertTrue(cnt == 20);
+		assertTrue(tree.size() == 10);
+	}
+
+	@Test public void modifyDuringIteration()
+	{
+		// Objects which are inserted or updated with a value greater than
+		// the last returned one must be returned later
+		int n = 2000;
+		Map<Integer, Double> values = new HashMap<Integer, Double>();
+		for (int i = 0; i < n; i++)
+		{
+			tree.insert(Integer.valueOf(i), (double) ((7 * i) % n));
+			values.put(Integer.valueOf(i), (double) ((7 * i) % n));
+		}
+		Map<Integer, Double> returned = new HashMap<Integer, Double>();
+		Set<Integer> skipped = new HashSet<Integer>();
+		double last = -1.0;
+		int next = n;
+		int nrUpdates = 0;
+		for (Iterator<? extends QSortedCollection.Entry<Integer>> it = tree.iterator(); it.hasNext(); )
+		{
+			QSortedCollection.Entry<Integer> node = it.next();
+			Integer data = node.getData();
+			assertTrue(node.getValue() >= last);
+			assertEquals(values.get(data), node.getValue(), 0.0);
+			last = node.getValue();
+			returned.put(data, last);
+			int k = data.intValue();
+			if (k % 3 == 0)
+			{
+				it.remove();
+				values.remove(data);
+			}
+			else if (k % 3 == 1 && next < 2 * n)
+			{
+				Integer o = Integer.valueOf(next);
+				tree.insert(o, last + (next % 17));
+				values.put(o, last + (next % 17));
+				next++;
+			}
+			// Update an object which may or may not have been returned
+			Integer u = Integer.valueOf((31 * k) % n);
+			if (u.intValue() % 3 != 0 && k % 5 == 0 && nrUpdates < n)
+			{
+				nrUpdates++;
+				tree.update(u, last + (k % 11) + 0.5);
+				values.put(u, last + (k % 11) + 0.5);
+				skipped.remove(u);
+			}
+			// Objects moved before the last returned one are skipped
+			u = Integer.valueOf((13 * k + 1) % n);
+			if (u.intValue() % 3 != 0 && k % 7 == 0 && last > 10.0)
+			{
+				tree.update(u, last - 1.0 - (k % 10));
+				values.put(u, last - 1.0 - (k % 10));
+				skipped.add(u);
+			}
+		}
+		assertEquals(values.size(), tree.size());
+		assertFalse(skipped.isEmpty());
+		for (Map.Entry<Integer, Double> e : values.entrySet())
+		{
+			if (!skipped.contains(e.getKey()))
+				assertEquals("Object not returned: "+e.getKey(), e.getValue(), returned.get(e.getKey()));
+		}
+	}
+
+	@Test public void update()
+	{
+		Integer [] iii = new Integer[100];
+		for (int i = 0; i < iii.length; i++)
+		{
+			iii[i] = Integer.valueOf(i);
+			tree.insert(iii[i], i);
+		}
+		for (int i = 0; i < iii.length; i++)
+			tree.update(iii[i], (double) (iii.length - i));
+		int i = iii.length - 1;
+		for (Iterator<? extends QSortedCollection.Entry<Integer>> it = tree.iterator(); it.hasNext(); i--)
+			assertTrue(it.next().getData().equals(iii[i]));
+		assertTrue(i == -1);
+	}
+
+	@Test public void clear()
+	{
+		for (int i = 0; i < 10; i++)
+			tree.insert(Integer.valueOf(i), i);
+		tree.clear();
+		assertTrue(tree.isEmpty());
+		assertFalse(tree.contains(Integer.valueOf(0)));
+		assertFalse(tree.iterator().hasNext());
+		tree.insert(Integer.valueOf(0), 0.0);
+		assertTrue(tree.contains(Integer.valueOf(0)));
+		assertTrue(tree.size() == 1);
+	}
+
+	@Test public void random()
+	{
+		// Insert and remove in random order, and check that iterator
+		// always returns objects in increasing order
+		for (int s = 3; s < 100; s+=2)
+		{
+			int prime = PrimeFinder.nextPrime(200);
+			Integer [] iii = new Integer[prime];
+			for (int i = 0; i < iii.length; i++)
+				iii[i] = Integer.valueOf(i);
+			int index = 1;
+			for (int i = 0; i < prime; i++)
+			{
+				index += s;
+				while (index >= prime)
+					index -= prime;
+				tree.insert(iii[index], index);
+			}
+			int i = 0;
+			for (Iterator<? extends QSortedCollection.Entry<Integer>> it = tree.iterator(); it.hasNext(); i++)
+				assertTrue(it.next().getData().equals(iii[i]));
+			assertTrue(i == prime);
+			index = 3;
+			for (i = 0; i < prime; i++)
+			{
+				index += s;
+				while (index >= prime)
+					index -= prime;
+				assertTrue(tree.remove(iii[index]));
+				assertFalse(tree.contains(iii[index]));
+			}
+			assertTrue("Tree not empty", tree.isEmpty());
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.bora.ds;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import org.jcae.mesh.TestFiles;
+import org.jcae.mesh.bora.xmldata.Storage;
+import org.jcae.mesh.cad.CADShapeEnum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link BModel} skips discretizations whose inputs did not
+ * change, and computes them again when a hypothesis is modified.
+ */
+public class BDiscretizationTest
+{
+	private static PolylineShapeFactory factory;
+	private File cadFile;
+	private File outDir;
+	private BModel model;
+
+	@BeforeClass public static void installFactory()
+	{
+		factory = PolylineShapeFactory.install();
+	}
+
+	@Before public void createModel() throws IOException
+	{
+		cadFile = File.createTempFile("polyline", ".brep");
+		outDir = File.createTempFile("polyline", ".dir");
+		outDir.delete();
+		factory.put(cadFile.getPath(), factory.newPolyline(new double[][] {
+			{ 0.0, 0.0, 0.0 }, { 1.0, 0.0, 0.0 }, { 1.0, 1.0, 0.0 } }, false));
+		model = new BModel(cadFile.getPath(), outDir.getPath());
+		BSubMesh submesh = model.newMesh();
+		for (Iterator<BCADGraphCell> it = model.getGraph().getRootCell().shapesExplorer(CADShapeEnum.EDGE); it.hasNext(); )
+		{
+			Hypothesis hyp = new Hypothesis();
+			hyp.setElement("E2");
+			hyp.setLength(0.1);
+			submesh.add(new Constraint(it.next(), hyp));
+		}
+		model.computeConstraints();
+	}
+
+	@After public void deleteFiles()
+	{
+		cadFile.delete();
+		TestFiles.delete(outDir);
+	}
+
+	private BDiscretization getDiscretization(CADShapeEnum cse, int index)
+	{
+		Iterator<BCADGraphCell> it = model.getGraph().getRootCell().shapesExplorer(cse);
+		for (int i = 0; i < index; i++)
+			it.next();
+		Iterator<BDiscretization> itd = it.next().getDiscretizations().iterator();
+		BDiscretization ret = itd.next();
+		assertFalse(itd.hasNext());
+		return ret;
+	}
+
+	/** Writes the files of an edge discretization and its fingerprint */
+	private void store(BDiscretization d) throws IOException
+	{
+		File dir = new File(model.getOutputDir(d));
+		dir.mkdirs();
+		assertTrue(new File(dir, "id").createNewFile());
+		Storage.writeFingerprint(d);
+	}
+
+	@Test public void edgeHypothesis() throws IOException
+	{
+		BDiscretization d0 = getDiscretization(CADShapeEnum.EDGE, 0);
+		BDiscretization d1 = getDiscretization(CADShapeEnum.EDGE, 1);
+		assertFalse(model.isUpToDate(d0));
+		store(d0);
+		store(d1);
+		assertTrue(model.isUpToDate(d0));
+		assertTrue(model.isUpToDate(d1));
+		assertFalse(d0.getFingerprint().equals(d1.getFingerprint()));
+
+		String fp0 = d0.getFingerprint();
+		d0.getConstraint().getHypothesis().setLength(0.2);
+		assertFalse(fp0.equals(d0.getFingerprint()));
+		assertFalse(model.isUpToDate(d0));
+		assertTrue(model.isUpToDate(d1));
+
+		// Back to the stored value
+		d0.getConstraint().getHypothesis().setLength(0.1);
+		assertEquals(fp0, d0.getFingerprint());
+		assertTrue(model.isUpToDate(d0));
+	}
+
+	@Test public void vertexHypothesis() throws IOException
+	{
+		BDiscretization d0 = getDiscretization(CADShapeEnum.EDGE, 0);
+		BDiscretization d1 = getDiscretization(CADShapeEnum.EDGE, 1);
+		store(d0);
+		store(d1);
+		// Vertex which bounds the second edge only
+		Collection<BDiscretization> vertices = d1.getBoundaryDiscretizations();
+		assertEquals(2, vertices.size());
+		vertices.removeAll(d0.getBoundaryDiscretizations());
+		assertEquals(1, vertices.size());
+		BDiscretization v = vertices.iterator().next();
+		assertEquals(CADShapeEnum.VERTEX, v.getGraphCell().getType());
+		v.getConstraint().getHypothesis().setLength(0.5);
+		assertTrue(model.isUpToDate(d0));
+		assertFalse(model.isUpToDate(d1));
+	}
+
+	@Test public void cadFile() throws IOException
+	{
+		BDiscretization d0 = getDiscretization(CADShapeEnum.EDGE, 0);
+		store(d0);
+		assertTrue(model.isUpToDate(d0));
+		assertTrue(cadFile.setLastModified(cadFile.lastModified() - 10000L));
+		assertFalse(model.isUpToDate(d0));
+	}
+}
@@ -0,0 +1,146 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.bora.ds;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link BModel#invokeAll}, which computes discretizations of the
+ * same dimension in parallel.
+ */
+public class BModelTest
+{
+	@Test public void allTasksRun() throws InterruptedException
+	{
+		final int n = 200;
+		final AtomicIntegerArray done = new AtomicIntegerArray(n);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int i = 0; i < n; i++)
+		{
+			final int index = i;
+			tasks.add(new Callable<Object>() {
+				public Object call() throws InterruptedException
+				{
+					Thread.sleep(index % 3);
+					done.incrementAndGet(index);
+					return null;
+				}
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		BModel.invokeAll(pool, tasks);
+		for (int i = 0; i < n; i++)
+			assertEquals(1, done.get(i));
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Runs 8 tasks on 8 threads.  Task 6 fails first, task 2 fails after
+	 * task 6 has failed, and task 7 never returns.
+	 */
+	private static void failingTasks(ExecutorService pool, final Exception error2)
+	{
+		final CountDownLatch failed6 = new CountDownLatch(1);
+		final CountDownLatch never = new CountDownLatch(1);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int i = 0; i < 8; i++)
+		{
+			final int index = i;
+			tasks.add(new Callable<Object>() {
+				public Object call() throws Exception
+				{
+					if (index == 2)
+					{
+						failed6.await();
+						throw error2;
+					}
+					else if (index == 6)
+					{
+						failed6.countDown();
+						throw new IllegalStateException("6");
+					}
+					else if (index == 7)
+						never.await();
+					return null;
+				}
+			});
+		}
+		BModel.invokeAll(pool, tasks);
+	}
+
+	@Test public void firstErrorInListOrder() throws InterruptedException
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try
+		{
+			failingTasks(pool, new IllegalArgumentException("2"));
+			fail();
+		}
+		catch (IllegalArgumentException ex)
+		{
+			assertEquals("2", ex.getMessage());
+		}
+		// Task 7 has been interrupted
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test public void checkedException() throws InterruptedException
+	{
+		IOException error = new IOException("2");
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try
+		{
+			failingTasks(pool, error);
+			fail();
+		}
+		catch (RuntimeException ex)
+		{
+			assertSame(error, ex.getCause());
+		}
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test public void interrupted() throws InterruptedException
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		Thread.currentThread().interrupt();
+		try
+		{
+			failingTasks(pool, new IllegalArgumentException("2"));
+			fail();
+		}
+		catch (RuntimeException ex)
+		{
+			assertTrue(ex.getCause() instanceof InterruptedException);
+		}
+		assertTrue(Thread.interrupted());
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,374 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.bora.ds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.jcae.mesh.cad.CADCompound;
+import org.jcae.mesh.cad.CADEdge;
+import org.jcae.mesh.cad.CADExplorer;
+import org.jcae.mesh.cad.CADFace;
+import org.jcae.mesh.cad.CADGeomCurve2D;
+import org.jcae.mesh.cad.CADGeomCurve3D;
+import org.jcae.mesh.cad.CADIterator;
+import org.jcae.mesh.cad.CADShape;
+import org.jcae.mesh.cad.CADShapeEnum;
+import org.jcae.mesh.cad.CADShapeFactory;
+import org.jcae.mesh.cad.CADVertex;
+import org.jcae.mesh.cad.CADWireExplorer;
+import org.junit.Ignore;
+
+/**
+ * CAD factory for tests which do not need OpenCASCADE.  Shapes are
+ * compounds of straight edges, they are registered with {@link #put}
+ * and returned by {@link #newShape(String)}.  Geometrical methods are
+ * not implemented.
+ */
+@Ignore("Utility class")
+public class PolylineShapeFactory extends CADShapeFactory
+{
+	private static PolylineShapeFactory instance;
+	private final List<CADShapeEnum> shapeEnums = new ArrayList<CADShapeEnum>();
+	private final Map<String, CADShape> files = new HashMap<String, CADShape>();
+
+	private PolylineShapeFactory()
+	{
+	}
+
+	/**
+	 * Installs this factory, it must be called before
+	 * {@link CADShapeEnum} is loaded.
+	 */
+	public static synchronized PolylineShapeFactory install()
+	{
+		if (instance == null)
+		{
+			instance = new PolylineShapeFactory();
+			CADShapeFactory.setFactory(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a compound of edges between consecutive points, the last
+	 * point is connected to the first one if <code>closed</code> is true.
+	 */
+	public CADShape newPolyline(double[][] points, boolean closed)
+	{
+		Vertex[] vertices = new Vertex[points.length];
+		for (int i = 0; i < points.length; i++)
+			vertices[i] = new Vertex(points[i]);
+		Compound ret = new Compound();
+		int nrEdges = closed ? points.length : points.length - 1;
+		for (int i = 0; i < nrEdges; i++)
+			ret.add(new Edge(vertices[i], vertices[(i + 1) % points.length]));
+		return ret;
+	}
+
+	/** Sets the shape returned by {@link #newShape(String)}. */
+	public void put(String fileName, CADShape shape)
+	{
+		files.put(fileName, shape);
+	}
+
+	@Override
+	public CADShape newShape(String fileName)
+	{
+		CADShape ret = files.get(fileName);
+		if (ret == null)
+			throw new IllegalArgumentException("Unknown file "+fileName);
+		return ret;
+	}
+
+	@Override
+	public CADShape newShape(Object o)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public CADShape newShape(CADShape s1, CADShape s2, char op)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public CADExplorer newExplorer()
+	{
+		return new Explorer();
+	}
+
+	@Override
+	public CADWireExplorer newWireExplorer()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public CADIterator newIterator()
+	{
+		return new ChildIterator();
+	}
+
+	@Override
+	public CADGeomCurve2D newCurve2D(CADEdge E, CADFace F)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public CADGeomCurve3D newCurve3D(CADEdge E)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected CADShapeEnum getShapeEnumInstance(String name)
+	{
+		CADShapeEnum ret = new ShapeEnum(name);
+		shapeEnums.add(ret);
+		return ret;
+	}
+
+	@Override
+	protected Iterator<CADShapeEnum> newShapeEnumIterator(CADShapeEnum start, CADShapeEnum end)
+	{
+		int s = shapeEnums.indexOf(start);
+		int e = shapeEnums.indexOf(end);
+		List<CADShapeEnum> ret = new ArrayList<CADShapeEnum>();
+		if (s <= e)
+			ret.addAll(shapeEnums.subList(s, e + 1));
+		else
+		{
+			for (int i = s; i >= e; i--)
+				ret.add(shapeEnums.get(i));
+		}
+		return ret.iterator();
+	}
+
+	@Ignore("Inner class")
+	private static class ShapeEnum extends CADShapeEnum
+	{
+		ShapeEnum(String name)
+		{
+			super(name);
+		}
+
+		@Override
+		public Class<? extends CADShape> asClass()
+		{
+			if (this == VERTEX)
+				return CADVertex.class;
+			else if (this == EDGE)
+				return CADEdge.class;
+			else if (this == COMPOUND)
+				return CADCompound.class;
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Ignore("Inner class")
+	private static abstract class Shape implements CADShape
+	{
+		final List<Shape> children = new ArrayList<Shape>();
+
+		abstract CADShapeEnum getType();
+
+		public double[] boundingBox()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public CADShape reversed()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public int orientation()
+		{
+			return 0;
+		}
+
+		public boolean isOrientationForward()
+		{
+			return true;
+		}
+
+		public boolean isSame(Object o)
+		{
+			return equals(o);
+		}
+
+		public void writeNative(String filename)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Ignore("Inner class")
+	private static class Vertex extends Shape implements CADVertex
+	{
+		private final double[] xyz;
+
+		Vertex(double[] xyz)
+		{
+			this.xyz = xyz.clone();
+		}
+
+		@Override
+		CADShapeEnum getType()
+		{
+			return CADShapeEnum.VERTEX;
+		}
+
+		public double[] parameters(CADFace that)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public double[] pnt()
+		{
+			return xyz.clone();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Vertex "+Arrays.toString(xyz);
+		}
+	}
+
+	@Ignore("Inner class")
+	private static class Edge extends Shape implements CADEdge
+	{
+		Edge(Vertex v1, Vertex v2)
+		{
+			children.add(v1);
+			children.add(v2);
+		}
+
+		@Override
+		CADShapeEnum getType()
+		{
+			return CADShapeEnum.EDGE;
+		}
+
+		public boolean isDegenerated()
+		{
+			return false;
+		}
+
+		public double[] range()
+		{
+			return new double[] { 0.0, 1.0 };
+		}
+
+		public CADVertex[] vertices()
+		{
+			return new CADVertex[] { (Vertex) children.get(0), (Vertex) children.get(1) };
+		}
+	}
+
+	@Ignore("Inner class")
+	private static class Compound extends Shape implements CADCompound
+	{
+		@Override
+		CADShapeEnum getType()
+		{
+			return CADShapeEnum.COMPOUND;
+		}
+
+		public boolean add(CADShape s)
+		{
+			return children.add((Shape) s);
+		}
+	}
+
+	/** Visits sub-shapes of a given type in depth-first order. */
+	@Ignore("Inner class")
+	private static class Explorer implements CADExplorer
+	{
+		private final List<Shape> found = new ArrayList<Shape>();
+		private int index;
+
+		public void init(CADShape shape, CADShapeEnum type)
+		{
+			found.clear();
+			index = 0;
+			collect((Shape) shape, type);
+		}
+
+		private void collect(Shape s, CADShapeEnum type)
+		{
+			if (s.getType() == type)
+				found.add(s);
+			for (Shape c : s.children)
+				collect(c, type);
+		}
+
+		public boolean more()
+		{
+			return index < found.size();
+		}
+
+		public void next()
+		{
+			index++;
+		}
+
+		public CADShape current()
+		{
+			return found.get(index);
+		}
+	}
+
+	/** Visits immediate sub-shapes. */
+	@Ignore("Inner class")
+	private static class ChildIterator implements CADIterator
+	{
+		private List<Shape> children;
+		private int index;
+
+		public void initialize(CADShape shape)
+		{
+			children = ((Shape) shape).children;
+			index = 0;
+		}
+
+		public boolean more()
+		{
+			return index < children.size();
+		}
+
+		public void next()
+		{
+			index++;
+		}
+
+		public CADShape value()
+		{
+			return children.get(index);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.oemm;
+
+import gnu.trove.set.hash.TIntHashSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jcae.mesh.TestFiles;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LeafCacheTest
+{
+	private static File tmpDir;
+	private static String oemmDir;
+
+	@BeforeClass public static void createOEMM() throws IOException
+	{
+		tmpDir = TestFiles.createTempDir("leafcache");
+		String soupFile = new File(tmpDir, "soup").getPath();
+		TestFiles.writeSphereSoup(3, soupFile, 1);
+		oemmDir = new File(tmpDir, "oemm").getPath();
+		OEMM oemm = new OEMM(5);
+		// OEMM has no bounding box, it is computed by the first pass
+		// and triangles are counted by the second one
+		assertFalse(RawStorage.countTriangles(oemm, soupFile));
+		assertTrue(RawStorage.countTriangles(oemm, soupFile));
+		Aggregate.compute(oemm, 100);
+		RawStorage.dispatch(oemm, soupFile, oemmDir+"-dispatched", oemmDir+"-dispatched.data");
+		RawStorage.indexOEMM(oemmDir+"-dispatched", oemmDir);
+	}
+
+	@AfterClass public static void deleteTmpDir()
+	{
+		TestFiles.delete(tmpDir);
+	}
+
+	private static Mesh read(OEMM oemm, TIntHashSet leaves)
+	{
+		MeshReader reader = new MeshReader(oemm);
+		reader.setLoadNonReadableTriangles(true);
+		return reader.buildMesh(leaves);
+	}
+
+	private static List<String> content(Mesh mesh)
+	{
+		List<String> ret = new ArrayList<String>();
+		for (Vertex v : mesh.getNodes())
+			ret.add(v.getLabel()+" "+v.getX()+" "+v.getY()+" "+v.getZ()+" "+v.isReadable()+" "+v.isWritable());
+		for (Triangle t : mesh.getTriangles())
+			ret.add(t.getV0().getLabel()+" "+t.getV1().getLabel()+" "+t.getV2().getLabel()+" "+
+				t.getGroupId()+" "+t.isReadable()+" "+t.isWritable());
+		Collections.sort(ret);
+		return ret;
+	}
+
+	@Test public void sameMesh()
+	{
+		OEMM oemm = Storage.readOEMMStructure(oemmDir);
+		assertTrue(oemm.getNumberOfLeaves() > 4);
+		TIntHashSet leaves = new TIntHashSet();
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i += 2)
+			leaves.add(i);
+		List<String> expected = content(read(oemm, leaves));
+
+		LeafCache cache = new LeafCache(oemm, 1L << 30);
+		oemm.setLeafCache(cache);
+		assertEquals(expected, content(read(oemm, leaves)));
+		long misses = cache.getMisses();
+		assertTrue(misses > 0L);
+		assertEquals(expected, content(read(oemm, leaves)));
+		assertEquals(misses, cache.getMisses());
+		assertTrue(cache.getHits() > 0L);
+		cache.dispose();
+	}
+
+	@Test public void eviction() throws IOException
+	{
+		OEMM oemm = Storage.readOEMMStructure(oemmDir);
+		long maxSize = 0L;
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
+			maxSize = Math.max(maxSize, LeafCache.read(oemm, oemm.leaves[i]).size());
+		LeafCache cache = new LeafCache(oemm, 1L);
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
+		{
+			LeafCache.Leaf leaf = cache.get(oemm.leaves[i]);
+			assertEquals(3 * oemm.leaves[i].vn, leaf.coords.length);
+			assertEquals(7 * oemm.leaves[i].tn, leaf.triangles.length);
+			// A single leaf is kept
+			assertTrue(cache.getSize() <= maxSize);
+			// Adjacent leaves do not fit into cache and are not prefetched
+			assertEquals(i + 1, cache.getMisses());
+		}
+		cache.dispose();
+	}
+
+	@Test public void failedPrefetch() throws Exception
+	{
+		OEMM oemm = Storage.readOEMMStructure(oemmDir);
+		OEMM.Node node = oemm.leaves[0];
+		assertTrue(node.adjLeaves.size() > 0);
+		OEMM.Node adj = oemm.leaves[node.adjLeaves.get(0)];
+		File vertices = Storage.getVerticesFile(oemm, adj);
+		File moved = new File(vertices.getPath()+".moved");
+		LeafCache cache = new LeafCache(oemm, 1L << 30);
+		assertTrue(vertices.renameTo(moved));
+		try
+		{
+			cache.get(node);
+			// Prefetching adjacent leaf fails, it must not be kept
+			long deadline = System.currentTimeMillis() + 10000L;
+			while (cache.contains(adj.leafIndex) && System.currentTimeMillis() < deadline)
+				Thread.sleep(10L);
+			assertFalse(cache.contains(adj.leafIndex));
+		}
+		finally
+		{
+			assertTrue(moved.renameTo(vertices));
+		}
+		LeafCache.Leaf leaf = cache.get(adj);
+		assertEquals(3 * adj.vn, leaf.coords.length);
+		cache.dispose();
+	}
+}
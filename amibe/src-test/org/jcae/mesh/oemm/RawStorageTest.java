@@ -0,0 +1,126 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.oemm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.jcae.mesh.TestFiles;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RawStorageTest
+{
+	private static File tmpDir;
+	private static String soupFile;
+
+	@BeforeClass public static void writeSoup() throws IOException
+	{
+		tmpDir = TestFiles.createTempDir("rawstorage");
+		soupFile = new File(tmpDir, "soup").getPath();
+		TestFiles.writeSphereSoup(3, soupFile, 3);
+	}
+
+	@AfterClass public static void deleteTmpDir()
+	{
+		TestFiles.delete(tmpDir);
+	}
+
+	private static void build(String name)
+	{
+		String dir = new File(tmpDir, name).getPath();
+		OEMM oemm = new OEMM(5);
+		// OEMM has no bounding box, it is computed by the first pass
+		// and triangles are counted by the second one
+		assertFalse(RawStorage.countTriangles(oemm, soupFile));
+		assertTrue(RawStorage.countTriangles(oemm, soupFile));
+		Aggregate.compute(oemm, 100);
+		RawStorage.dispatch(oemm, soupFile, dir+"-dispatched", dir+"-dispatched.data");
+		RawStorage.indexOEMM(dir+"-dispatched", dir);
+	}
+
+	private static byte[] read(File f) throws IOException
+	{
+		byte [] ret = new byte[(int) f.length()];
+		FileInputStream in = new FileInputStream(f);
+		try
+		{
+			int offset = 0;
+			while (offset < ret.length)
+				offset += in.read(ret, offset, ret.length - offset);
+		}
+		finally
+		{
+			in.close();
+		}
+		return ret;
+	}
+
+	private static void checkSameFiles(File expected, File dir) throws IOException
+	{
+		String [] names = expected.list();
+		Arrays.sort(names);
+		String [] found = dir.list();
+		Arrays.sort(found);
+		assertArrayEquals(names, found);
+		for (String name : names)
+		{
+			File f = new File(expected, name);
+			if (f.isDirectory())
+				checkSameFiles(f, new File(dir, name));
+			else
+				assertArrayEquals(f.getPath(), read(f), read(new File(dir, name)));
+		}
+	}
+
+	@Test public void concurrentBuilds() throws Exception
+	{
+		build("ref");
+		final Throwable [] errors = new Throwable[2];
+		Thread [] threads = new Thread[errors.length];
+		for (int i = 0; i < threads.length; i++)
+		{
+			final int index = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run()
+				{
+					try
+					{
+						build("oemm"+index);
+					}
+					catch (Throwable ex)
+					{
+						errors[index] = ex;
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i].join();
+			assertNull(errors[i]);
+			checkSameFiles(new File(tmpDir, "ref"), new File(tmpDir, "oemm"+i));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compare {@link ByteBufferWriter#putD25_16} with
+ * {@link MeshExporter.FormatD25_16}.
+ */
+public class ByteBufferWriterTest
+{
+	private final MeshExporter.FormatD25_16 format = new MeshExporter.FormatD25_16();
+
+	private void check(double v) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBufferWriter writer = new ByteBufferWriter(Channels.newChannel(out), 64);
+		writer.putD25_16(v);
+		writer.flush();
+		// Bytes written by a PrintStream with platform encoding
+		String expected = new String(format.format(v).getBytes());
+		assertEquals(Double.toString(v), expected, out.toString());
+	}
+
+	@Test public void specialValues() throws IOException
+	{
+		double[] values = {
+			0.0, -0.0, 1.0, -1.0, 0.1, 0.3, 1.0/3.0, 2.0/3.0, 100.0, 1.0e15,
+			1.0e-8, 1.0e-9, 1.0e22, 1.0e23, 9.999999999999999e22,
+			123456789012345.0, 1234567890123456.0, 12345678901234567.0,
+			0.999999999999999, 0.9999999999999999, 9.99999999999999e-9,
+			Math.PI, Math.E, Double.MIN_VALUE, Double.MAX_VALUE,
+			Double.MIN_NORMAL, Double.NaN, Double.POSITIVE_INFINITY,
+			Double.NEGATIVE_INFINITY
+		};
+		for (double v: values)
+		{
+			check(v);
+			check(-v);
+		}
+		for (int e = -30; e <= 30; e++)
+		{
+			check(Math.pow(10.0, e));
+			check(Math.nextUp(Math.pow(10.0, e)));
+			check(Math.nextAfter(Math.pow(10.0, e), 0.0));
+		}
+	}
+
+	/** Decimals with at most 15 significant digits */
+	@Test public void shortDecimals() throws IOException
+	{
+		Random random = new Random(1234L);
+		for (int i = 0; i < 200000; i++)
+		{
+			long m = random.nextLong() % 1000000000000000L;
+			for (int k = random.nextInt(15); k > 0; k--)
+				m /= 10L;
+			int e = random.nextInt(50) - 25;
+			check(Double.parseDouble(m+"E"+e));
+		}
+	}
+
+	@Test public void randomValues() throws IOException
+	{
+		Random random = new Random(5678L);
+		for (int i = 0; i < 200000; i++)
+		{
+			check((random.nextDouble() - 0.5) * Math.pow(10.0, random.nextInt(60) - 30));
+			check(Double.longBitsToDouble(random.nextLong()));
+		}
+	}
+}
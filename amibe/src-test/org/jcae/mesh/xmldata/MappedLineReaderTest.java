@@ -0,0 +1,163 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check that MappedLineReader and BufferedLineReader return the same
+ * lines and tokens, with windows of all sizes.
+ */
+public class MappedLineReaderTest
+{
+	private static final String TEXT =
+		"    -1\n" +
+		"  2411\n" +
+		"  12 -7 +3 0000000123 2147483647 45\r\n" +
+		"\n" +
+		"1.5D+00 -2.5e-3 3 0.1\n" +
+		"   blank  \t\n" +
+		"    -1";
+	private static final String[] LINES = {
+		"    -1", "  2411", "  12 -7 +3 0000000123 2147483647 45", "",
+		"1.5D+00 -2.5e-3 3 0.1", "   blank  \t", "    -1" };
+
+	private File file;
+	private FileInputStream in;
+
+	@Before public void writeFile() throws IOException
+	{
+		file = File.createTempFile("lines", ".txt");
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(TEXT.getBytes("US-ASCII"));
+		}
+		finally
+		{
+			out.close();
+		}
+		in = new FileInputStream(file);
+	}
+
+	@After public void deleteFile() throws IOException
+	{
+		in.close();
+		file.delete();
+	}
+
+	private void check(LineReader reader) throws IOException
+	{
+		for (int i = 0; i < LINES.length; i++)
+		{
+			assertTrue(reader.nextLine());
+			assertEquals(LINES[i], reader.getLine());
+			switch (i)
+			{
+				case 0:
+					assertTrue(reader.lineEquals("-1"));
+					assertFalse(reader.lineEquals("-"));
+					assertEquals('-', reader.firstNonBlank());
+					assertEquals(-1, reader.nextInt());
+					assertFalse(reader.hasMoreTokens());
+					break;
+				case 2:
+					assertEquals(12, reader.nextInt());
+					assertEquals(-7, reader.nextInt());
+					assertEquals(3, reader.nextInt());
+					assertEquals(123, reader.nextInt());
+					assertEquals(Integer.MAX_VALUE, reader.nextInt());
+					assertEquals(45, reader.nextInt());
+					assertFalse(reader.hasMoreTokens());
+					break;
+				case 3:
+					assertEquals(-1, reader.firstNonBlank());
+					assertFalse(reader.hasMoreTokens());
+					break;
+				case 4:
+					assertEquals(1.5, reader.nextDouble(), 0.0);
+					assertEquals(-2.5e-3, reader.nextDouble(), 0.0);
+					reader.skipToken();
+					assertEquals(0.1, reader.nextDouble(), 0.0);
+					assertFalse(reader.hasMoreTokens());
+					break;
+				case 5:
+					assertTrue(reader.lineEquals("blank"));
+					assertEquals('b', reader.firstNonBlank());
+					break;
+				default:
+					break;
+			}
+		}
+		assertFalse(reader.nextLine());
+	}
+
+	@Test public void buffered() throws IOException
+	{
+		check(new BufferedLineReader(new BufferedReader(new StringReader(TEXT))));
+	}
+
+	@Test public void mapped() throws IOException
+	{
+		FileChannel channel = in.getChannel();
+		check(new MappedLineReader(channel, 0L, channel.size()));
+	}
+
+	/** Lines and tokens must not be split at window boundaries */
+	@Test public void windows() throws IOException
+	{
+		FileChannel channel = in.getChannel();
+		for (int size = 38; size <= TEXT.length() + 1; size++)
+			check(new MappedLineReader(channel, 0L, channel.size(), size));
+	}
+
+	@Test public void region() throws IOException
+	{
+		FileChannel channel = in.getChannel();
+		long start = TEXT.indexOf("  2411");
+		long end = TEXT.indexOf("1.5D");
+		MappedLineReader reader = new MappedLineReader(channel, start, end, 40);
+		reader.readLine();
+		assertEquals(start, reader.getLineStart());
+		assertEquals(2411, reader.nextInt());
+		reader.readLine();
+		reader.readLine();
+		assertEquals("", reader.getLine());
+		assertEquals(end, reader.getPosition());
+		assertFalse(reader.nextLine());
+	}
+
+	@Test(expected=IOException.class) public void lineTooLong() throws IOException
+	{
+		FileChannel channel = in.getChannel();
+		MappedLineReader reader = new MappedLineReader(channel, 0L, channel.size(), 20);
+		while (reader.nextLine());
+	}
+}
@@ -0,0 +1,304 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import org.jcae.mesh.TestFiles;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compare exports with the PrintStream writers which were used before
+ * ByteBufferWriter.  Reference exporters only implement PrintStream hooks,
+ * so they also check the fallback of ByteBufferWriter hooks.
+ */
+public class MeshExporterTest
+{
+	private static File dir;
+
+	/** Write a 70x70 grid with 2 groups, more than a block of triangles */
+	@BeforeClass public static void writeMesh() throws IOException
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		int n = 70;
+		Vertex[] v = new Vertex[(n + 1) * (n + 1)];
+		for (int j = 0; j <= n; j++)
+			for (int i = 0; i <= n; i++)
+				v[i + j * (n + 1)] = mesh.createVertex(i / 7.0, j * 1.e-3, Math.sin(i + j) * 1.e5);
+		for (int j = 0; j < n; j++)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				int k = i + j * (n + 1);
+				Triangle t1 = mesh.createTriangle(v[k], v[k + 1], v[k + n + 2]);
+				Triangle t2 = mesh.createTriangle(v[k], v[k + n + 2], v[k + n + 1]);
+				t1.setGroupId(j < n / 2 ? 1 : 2);
+				t2.setGroupId(j < n / 2 ? 1 : 2);
+				mesh.add(t1);
+				mesh.add(t2);
+			}
+		}
+		mesh.setGroupName(1, "first");
+		mesh.setGroupName(2, "second");
+		dir = File.createTempFile("exporter", ".dir");
+		dir.delete();
+		MeshWriter.writeObject3D(mesh, dir.getPath(), null);
+	}
+
+	@AfterClass public static void deleteMesh()
+	{
+		TestFiles.delete(dir);
+	}
+
+	private static byte[] read(File f) throws IOException
+	{
+		byte [] ret = new byte[(int) f.length()];
+		FileInputStream in = new FileInputStream(f);
+		try
+		{
+			int offset = 0;
+			while (offset < ret.length)
+				offset += in.read(ret, offset, ret.length - offset);
+		}
+		finally
+		{
+			in.close();
+		}
+		return ret;
+	}
+
+	private static byte[] export(MeshExporter exporter) throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes);
+		exporter.write(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static void check(MeshExporter reference, MeshExporter exporter) throws Exception
+	{
+		byte[] expected = export(reference);
+		assertTrue(expected.length > 0);
+		for (int threads = 1; threads <= 3; threads += 2)
+		{
+			exporter.setThreads(threads);
+			assertArrayEquals(expected, export(exporter));
+		}
+	}
+
+	@Test public void unv() throws Exception
+	{
+		check(new UNVReference(dir.getPath()), new MeshExporter.UNV(dir.getPath()));
+	}
+
+	@Test public void stl() throws Exception
+	{
+		check(new STLReference(dir.getPath()), new MeshExporter.STL(dir.getPath()));
+	}
+
+	@Test public void mesh() throws Exception
+	{
+		check(new MESHReference(dir.getPath()), new MeshExporter.MESH(dir.getPath()));
+	}
+
+	@Test public void file() throws Exception
+	{
+		File f = new File(dir, "export.unv");
+		new MeshExporter.UNV(dir.getPath()).write(f.getPath());
+		assertArrayEquals(export(new UNVReference(dir.getPath())),
+			read(f));
+	}
+
+	/** UNV writer before ByteBufferWriter */
+	private static class UNVReference extends MeshExporter
+	{
+		UNVReference(String file)
+		{
+			super(file);
+		}
+
+		@Override
+		void writeInit(PrintStream arg0)
+		{
+			arg0.println("    -1");
+			arg0.println("   164");
+			arg0.println("         1Meter (newton)               2");
+			arg0.println("  1.00000000000000000D+00  1.00000000000000000D+00  1.00000000000000000D+00");
+			arg0.println("  2.73149999999999977D+02");
+			arg0.println("    -1");
+		}
+
+		@Override
+		protected void writeNodes(PrintStream out, int[] nodesID, TIntIntHashMap amibeToUNV) throws IOException
+		{
+			DoubleFileReader dfrN = subMesh.getNodes();
+			out.println("    -1");
+			out.println("  2411");
+			for(int i=0; i<nodesID.length; i++)
+			{
+				int iid=nodesID[i]*3;
+				amibeToUNV.put(nodesID[i], i+1);
+				UNV.writeSingleNode(out, i+1, dfrN.get(iid), dfrN.get(iid+1), dfrN.get(iid+2));
+			}
+			out.println("    -1");
+			dfrN.close();
+		}
+
+		@Override
+		protected void writeTriangles(PrintStream out, int[] triangles,
+			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+		{
+			out.println("    -1");
+			out.println("  2412");
+			int count=0;
+			int triaIndex=0;
+			for(int i=0; i<groups.length; i++)
+			{
+				for(int j=0; j<groups[i].length; j++)
+				{
+					count++;
+					amibeTriaToUNVTria.put(groups[i][j], count);
+					UNV.writeSingleTriangle(out, count,
+						amibeNodeToUNVNode.get(triangles[triaIndex++]),
+						amibeNodeToUNVNode.get(triangles[triaIndex++]),
+						amibeNodeToUNVNode.get(triangles[triaIndex++]));
+				}
+			}
+			out.println("    -1");
+		}
+
+		@Override
+		void writeGroups(PrintStream out, TIntIntHashMap amibeTriaToUNVTria)
+		{
+			out.println("    -1");
+			out.println("  2435");
+			for(int i=0;i<groups.length; i++)
+			{
+				int[] ids = new int[groups[i].length];
+				for(int j=0; j<ids.length; j++)
+					ids[j] = amibeTriaToUNVTria.get(groups[i][j]);
+				UNV.writeSingleGroup(out, i+1, groupsToExport.get(i).getName(), ids);
+			}
+			out.println("    -1");
+		}
+	}
+
+	/** STL writer before ByteBufferWriter */
+	private static class STLReference extends MeshExporter
+	{
+		STLReference(String file)
+		{
+			super(file);
+		}
+
+		@Override
+		protected void writeTriangles(PrintStream out, int[] triangles,
+			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+			throws IOException
+		{
+			DoubleFileReader dfrN = subMesh.getNodes();
+			out.println("solid export");
+			for(int count=0; count < triangles.length / 3; count++)
+			{
+				out.println("facet");
+				out.println("   outer loop");
+				for(int k=0; k < 3; k++)
+				{
+					int iid=triangles[count*3+k]*3;
+					out.println("     vertex "+dfrN.get(iid)+" "+dfrN.get(iid+1)+" "+dfrN.get(iid+2));
+				}
+				out.println("   endloop");
+				out.println("endfacet");
+			}
+			dfrN.close();
+			out.println("endsolid export");
+		}
+
+		@Override
+		protected void writeNodes(PrintStream out, int[] nodesID, TIntIntHashMap amibeToUNV)
+		{
+		}
+	}
+
+	/** MESH writer before ByteBufferWriter, without normals */
+	private static class MESHReference extends MeshExporter
+	{
+		MESHReference(String file)
+		{
+			super(file);
+		}
+
+		@Override
+		void writeInit(PrintStream out)
+		{
+			out.println("\nMeshVersionFormatted 1\n\nDimension\n3");
+		}
+
+		@Override
+		void writeFinish(PrintStream out)
+		{
+			out.println("\nEnd");
+		}
+
+		@Override
+		protected void writeNodes(PrintStream out, int[] nodesID, TIntIntHashMap amibeToUNV) throws IOException
+		{
+			DoubleFileReader dfrN = subMesh.getNodes();
+			out.println("\nVertices\n"+nodesID.length);
+			for(int i=0; i<nodesID.length; i++)
+			{
+				int iid=nodesID[i]*3;
+				amibeToUNV.put(nodesID[i], i+1);
+				out.println(dfrN.get(iid)+" "+dfrN.get(iid+1)+" "+dfrN.get(iid+2)+" 0");
+			}
+			dfrN.close();
+		}
+
+		@Override
+		protected void writeTriangles(PrintStream out, int[] triangles,
+			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+		{
+			out.println("\nTriangles\n"+(triangles.length / 3));
+			int triaIndex=0;
+			int count=0;
+			for(int i=0; i<groups.length; i++)
+			{
+				for(int j=0; j<groups[i].length; j++)
+				{
+					count++;
+					amibeTriaToUNVTria.put(groups[i][j], count);
+					out.println(amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+(i+1));
+				}
+			}
+		}
+	}
+}
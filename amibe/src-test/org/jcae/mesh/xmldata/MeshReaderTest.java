@@ -0,0 +1,192 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.jcae.mesh.TestFiles;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.MeshParameters;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import static org.junit.Assert.*;
+
+/**
+ * Compare {@link MeshReader#readObject3D} with the previous reader, which
+ * read values one at a time.
+ */
+public class MeshReaderTest
+{
+	private static final int N = 37;
+	// Neither the number of nodes nor the number of triangles is a
+	// multiple of this slab size
+	private static final int SLAB_SIZE = 100;
+	private static File dir;
+
+	/** Write a NxN grid with references, 2 groups and a node group */
+	@BeforeClass public static void writeMesh() throws IOException
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		mesh.setPersistentReferences(true);
+		Vertex[] v = new Vertex[(N + 1) * (N + 1)];
+		for (int j = 0; j <= N; j++)
+		{
+			for (int i = 0; i <= N; i++)
+			{
+				Vertex n = mesh.createVertex(i / 7.0, j * 1.e-3, Math.sin(i + j));
+				if (i == 0 || j == 0)
+					n.setRef(1 + i + j);
+				v[i + j * (N + 1)] = n;
+			}
+		}
+		for (int j = 0; j < N; j++)
+		{
+			for (int i = 0; i < N; i++)
+			{
+				int k = i + j * (N + 1);
+				Triangle t1 = mesh.createTriangle(v[k], v[k + 1], v[k + N + 2]);
+				Triangle t2 = mesh.createTriangle(v[k], v[k + N + 2], v[k + N + 1]);
+				t1.setGroupId(i < N / 3 ? 1 : 2);
+				t2.setGroupId(j < N / 2 ? 1 : 2);
+				mesh.add(t1);
+				mesh.add(t2);
+			}
+		}
+		mesh.setGroupName(1, "first");
+		mesh.setGroupName(2, "second");
+		for (int i = 0; i < v.length; i += 5)
+			mesh.setVertexGroup(v[i], "nodes");
+		dir = File.createTempFile("reader", ".dir");
+		dir.delete();
+		MeshWriter.writeObject3D(mesh, dir.getPath(), null);
+	}
+
+	@AfterClass public static void deleteMesh()
+	{
+		TestFiles.delete(dir);
+	}
+
+	/** Previous implementation of nodes and triangles reading */
+	private static Mesh readWithPreviousReader() throws IOException, SAXException
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D().addNodeList());
+		AmibeReader.Dim3 reader = new AmibeReader.Dim3(dir.getPath());
+		AmibeReader.SubMesh subMesh = reader.getSubmeshes().get(0);
+		int numberOfReferences = subMesh.getNumberOfReferences();
+		int[] refs = subMesh.getReferences();
+		DoubleFileReader dfrN = subMesh.getNodes();
+		int numberOfNodes = subMesh.getNumberOfNodes();
+		Vertex[] nodelist = new Vertex[numberOfNodes + 1];
+		nodelist[numberOfNodes] = mesh.outerVertex;
+		double[] coord = new double[3];
+		for (int i = 0; i < numberOfNodes; i++)
+		{
+			dfrN.get(coord);
+			nodelist[i] = mesh.createVertex(coord[0], coord[1], coord[2]);
+			if (i >= numberOfNodes - numberOfReferences)
+				nodelist[i].setRef(refs[i + numberOfReferences - numberOfNodes]);
+			mesh.add(nodelist[i]);
+		}
+		dfrN.close();
+		IntFileReader ifrT = subMesh.getTriangles();
+		int numberOfTriangles = subMesh.getNumberOfTrias();
+		Triangle[] facelist = new Triangle[numberOfTriangles];
+		for (int i = 0; i < numberOfTriangles; i++)
+		{
+			Vertex[] pts = new Vertex[3];
+			for (int j = 0; j < 3; j++)
+				pts[j] = nodelist[ifrT.get()];
+			facelist[i] = mesh.createTriangle(pts[0], pts[1], pts[2]);
+			mesh.add(facelist[i]);
+		}
+		ifrT.close();
+		int id = 1;
+		for (AmibeReader.Group g : subMesh.getGroups())
+		{
+			mesh.setGroupName(id, g.getName());
+			for (int j : g.readTria3Ids())
+				facelist[j].setGroupId(id);
+			for (int j : g.readNodesIds())
+				mesh.setVertexGroup(nodelist[j], g.getName());
+			id++;
+		}
+		return mesh;
+	}
+
+	/**
+	 * Returns a description of nodes, triangles and groups, vertices are
+	 * replaced by their index.
+	 */
+	private static List<String> describe(Mesh mesh)
+	{
+		List<String> ret = new ArrayList<String>();
+		TObjectIntHashMap<Vertex> index = new TObjectIntHashMap<Vertex>();
+		for (Vertex v: mesh.getNodes())
+		{
+			index.put(v, index.size());
+			ret.add(v.getX()+" "+v.getY()+" "+v.getZ()+" ref "+v.getRef());
+		}
+		for (Triangle t: mesh.getTriangles())
+			ret.add(index.get(t.getV0())+" "+index.get(t.getV1())+" "+
+				index.get(t.getV2())+" group "+mesh.getGroupName(t.getGroupId()));
+		for (Map.Entry<String, Collection<Vertex>> e: mesh.getVertexGroup().entrySet())
+		{
+			StringBuilder sb = new StringBuilder(e.getKey());
+			for (Vertex v: e.getValue())
+				sb.append(' ').append(index.get(v));
+			ret.add(sb.toString());
+		}
+		return ret;
+	}
+
+	@Test public void readBySlabs() throws IOException, SAXException
+	{
+		List<String> expected = describe(readWithPreviousReader());
+		assertTrue((N + 1) * (N + 1) % SLAB_SIZE != 0);
+		assertTrue(2 * N * N % SLAB_SIZE != 0);
+		assertEquals((N + 1) * (N + 1) + 2 * N * N + 1, expected.size());
+		for (int threads: new int[] { 1, 4 })
+		{
+			MeshParameters mp = new MeshParameters();
+			mp.setThreads(threads);
+			Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D().addNodeList(), mp);
+			MeshReader.readObject3D(mesh, dir.getPath(), false, SLAB_SIZE, 10);
+			assertTrue(mesh.hasPersistentReferences());
+			assertEquals("threads="+threads, expected, describe(mesh));
+		}
+	}
+
+	@Test public void readSingleSlab() throws IOException, SAXException
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D().addNodeList());
+		MeshReader.readObject3D(mesh, dir.getPath(), false);
+		assertEquals(describe(readWithPreviousReader()), describe(mesh));
+	}
+}
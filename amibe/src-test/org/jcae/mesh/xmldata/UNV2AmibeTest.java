@@ -0,0 +1,244 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import org.jcae.mesh.TestFiles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Import the same UNV file from a stream and by memory mapping, with
+ * small windows and chunks so that records cross their boundaries.
+ */
+public class UNV2AmibeTest
+{
+	/** Number of nodes along each side of the grid */
+	private static final int N = 10;
+	private static final int NB_TRIAS = 2 * (N - 1) * (N - 1);
+	private File dir;
+
+	@Before public void writeUNV() throws IOException
+	{
+		dir = TestFiles.createTempDir("unv2amibe");
+		PrintStream out = new PrintStream(new File(dir, "mesh.unv"));
+		out.println("    -1");
+		out.println("   164");
+		out.println("         1Meter (newton)               2");
+		out.println("  1.00000000000000000D+00  1.00000000000000000D+00  1.00000000000000000D+00");
+		out.println("  2.73149999999999977D+02");
+		out.println("    -1");
+		out.println("    -1");
+		out.println("  2411");
+		for (int j = 0; j < N; j++)
+		{
+			for (int i = 0; i < N; i++)
+			{
+				out.printf("%10d%10d%10d%10d%n", node(i, j), 1, 1, 11);
+				out.printf("%25.16E%25.16E%25.16E%n", 0.5 * i, 0.25 * j, Math.sin(i + j));
+			}
+		}
+		out.println("    -1");
+		out.println("    -1");
+		out.println("  2412");
+		int id = 1;
+		for (int j = 0; j < N - 1; j++)
+		{
+			for (int i = 0; i < N - 1; i++)
+			{
+				int type = (i + j) % 2 == 0 ? 91 : 41;
+				out.printf("%10d%10d%10d%10d%10d%10d%n", id++, type, 1, 1, 7, 3);
+				out.printf("%10d%10d%10d%n", node(i, j), node(i + 1, j), node(i + 1, j + 1));
+				out.printf("%10d%10d%10d%10d%10d%10d%n", id++, type, 1, 1, 7, 3);
+				out.printf("%10d%10d%10d%n", node(i, j), node(i + 1, j + 1), node(i, j + 1));
+			}
+		}
+		// Parabolic triangle
+		out.printf("%10d%10d%10d%10d%10d%10d%n", id++, 92, 1, 1, 7, 6);
+		out.printf("%10d%10d%10d%10d%10d%10d%n", node(0, 0), node(1, 0), node(2, 0),
+			node(1, 1), node(0, 2), node(0, 1));
+		// Linear and parabolic beams
+		for (int i = 0; i < N - 1; i++)
+		{
+			out.printf("%10d%10d%10d%10d%10d%10d%n", id++, 21, 1, 1, 7, 2);
+			out.printf("%10d%10d%10d%n", 0, 1, 1);
+			out.printf("%10d%10d%n", node(i, 0), node(i + 1, 0));
+		}
+		out.printf("%10d%10d%10d%10d%10d%10d%n", id++, 24, 1, 1, 7, 3);
+		out.printf("%10d%10d%10d%n", 0, 1, 1);
+		out.printf("%10d%10d%10d%n", node(0, 1), node(1, 1), node(2, 1));
+		// Ignored elements: parabolic quadrangle and tetrahedra,
+		// linear tetrahedron and an unknown type
+		out.printf("%10d%10d%10d%10d%10d%10d%n", id++, 94, 1, 1, 7, 8);
+		out.printf("%10d%10d%10d%10d%10d%10d%10d%10d%n", 1, 2, 3, 4, 5, 6, 7, 8);
+		out.printf("%10d%10d%10d%10d%10d%10d%n", id++, 118, 1, 1, 7, 10);
+		out.printf("%10d%10d%10d%10d%10d%10d%10d%10d%n", 1, 2, 3, 4, 5, 6, 7, 8);
+		out.printf("%10d%10d%n", 9, 10);
+		out.printf("%10d%10d%10d%10d%10d%10d%n", id++, 111, 1, 1, 7, 4);
+		out.printf("%10d%10d%10d%10d%n", 1, 2, 3, 4);
+		out.printf("%10d%10d%10d%10d%10d%10d%n", id++, 44, 1, 1, 7, 4);
+		out.printf("%10d%10d%10d%10d%n", 1, 2, 3, 4);
+		out.println("    -1");
+		out.println("    -1");
+		out.println("  2467");
+		// Triangles of first row and first beam
+		int[] first = new int[2 * (N - 1) + 1];
+		for (int i = 0; i < 2 * (N - 1); i++)
+			first[i] = i + 1;
+		first[2 * (N - 1)] = NB_TRIAS + 2;
+		writeGroup(out, 1, "first", 8, first);
+		writeGroup(out, 2, "nodes", 7, new int[]{ 1, 2, 3 });
+		out.println("    -1");
+		out.close();
+	}
+
+	private static int node(int i, int j)
+	{
+		return 1 + i + N * j;
+	}
+
+	private static void writeGroup(PrintStream out, int id, String name, int type, int[] ids)
+	{
+		out.printf("%10d%10d%10d%10d%10d%10d%10d%10d%n", id, 0, 0, 0, 0, 0, 0, ids.length);
+		out.println(name);
+		for (int i = 0; i < ids.length; i++)
+		{
+			out.printf("%10d%10d%10d%10d", type, ids[i], 0, 0);
+			if (i % 2 == 1 || i == ids.length - 1)
+				out.println();
+		}
+	}
+
+	@After public void deleteUNV()
+	{
+		TestFiles.delete(dir);
+	}
+
+	private static byte[] read(File f) throws IOException
+	{
+		byte [] ret = new byte[(int) f.length()];
+		FileInputStream in = new FileInputStream(f);
+		try
+		{
+			int offset = 0;
+			while (offset < ret.length)
+				offset += in.read(ret, offset, ret.length - offset);
+		}
+		finally
+		{
+			in.close();
+		}
+		return ret;
+	}
+
+	private static void assertSameFiles(File expected, File actual) throws IOException
+	{
+		String[] names = expected.list();
+		Arrays.sort(names);
+		String[] actualNames = actual.list();
+		Arrays.sort(actualNames);
+		assertArrayEquals(names, actualNames);
+		for (String name : names)
+		{
+			File f = new File(expected, name);
+			if (f.isDirectory())
+				assertSameFiles(f, new File(actual, name));
+			else
+				assertArrayEquals(name, read(f), read(new File(actual, name)));
+		}
+	}
+
+	private File importStream() throws IOException
+	{
+		File output = new File(dir, "stream");
+		UNV2Amibe u = new UNV2Amibe();
+		u.setStripedUnv(new File(output, "striped.unv").getPath());
+		BufferedReader in = new BufferedReader(new FileReader(new File(dir, "mesh.unv")));
+		try
+		{
+			u.importMesh(in, output.getPath());
+		}
+		finally
+		{
+			in.close();
+		}
+		return output;
+	}
+
+	private File importMapped(int threads, int windowSize) throws IOException
+	{
+		File output = new File(dir, "mapped" + threads + "-" + windowSize);
+		UNV2Amibe u = new UNV2Amibe();
+		u.setStripedUnv(new File(output, "striped.unv").getPath());
+		u.setThreads(threads);
+		u.chunkSize = 7;
+		u.windowSize = windowSize;
+		u.importMesh(new File(dir, "mesh.unv"), output.getPath());
+		return output;
+	}
+
+	@Test public void stream() throws Exception
+	{
+		File output = importStream();
+		AmibeReader.Dim3 reader = new AmibeReader.Dim3(output.getPath());
+		AmibeReader.SubMesh sm = reader.getSubmeshes().get(0);
+		assertEquals(N * N, sm.getNumberOfNodes());
+		assertEquals(NB_TRIAS + 1, sm.getNumberOfTrias());
+		assertEquals(N, sm.getNumberOfBeams());
+		List<AmibeReader.Group> groups = sm.getGroups();
+		assertEquals(2, groups.size());
+		AmibeReader.Group first = sm.getGroup("first");
+		assertEquals(2 * (N - 1), first.getNumberOfTrias());
+		assertEquals(1, first.getNumberOfBeams());
+		assertArrayEquals(new int[]{ 0, 1 }, first.readBeams());
+		assertEquals(3, sm.getGroup("nodes").getNumberOfNodes());
+		// Parabolic triangle and beams are kept in striped file
+		String striped = new String(read(new File(output, "striped.unv")), "US-ASCII");
+		assertTrue(striped.contains("        92"));
+		assertTrue(striped.contains("        24"));
+	}
+
+	@Test public void mapped() throws Exception
+	{
+		File expected = importStream();
+		assertSameFiles(expected, importMapped(1, MappedLineReader.WINDOW_SIZE));
+		assertSameFiles(expected, importMapped(3, MappedLineReader.WINDOW_SIZE));
+	}
+
+	/** Records cross boundaries of small windows */
+	@Test public void windows() throws Exception
+	{
+		File expected = importStream();
+		for (int size = 100; size < 110; size++)
+		{
+			assertSameFiles(expected, importMapped(1, size));
+			assertSameFiles(expected, importMapped(3, size));
+		}
+	}
+}
@@ -30,8 +30,18 @@ import org.jcae.mesh.amibe.algos3d.QEMDecimateHalfEdge;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
 import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 
 import java.io.File;
@@ -42,6 +52,9 @@ import java.util.logging.Logger;
 
 /**
  * Decimates all cells of an OEMM.
+ * If <code>org.jcae.mesh.MeshOEMMDecimate.threads</code> system property
+ * is set to a value greater than 1, octree nodes are decimated concurrently,
+ * see {@link #decimateParallel}.
  */
 public class MeshOEMMDecimate
 {
@@ -78,14 +91,244 @@ public class MeshOEMMDecimate
 		
 		logger.info("Read OEMM structure");
 		OEMM oemm = Storage.readOEMMStructure(dir);
+		int threads = Integer.getInteger("org.jcae.mesh.MeshOEMMDecimate.threads", 1).intValue();
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		decimateAll(oemm, scale, minimalNumberOfTriangles, threads);
+	}
+
+	/**
+	 * Decimates all octree nodes.
+	 *
+	 * @param oemm  OEMM instance
+	 * @param scale  decimation ratio
+	 * @param minTN  nodes with less triangles are not decimated
+	 * @param threads  number of worker threads
+	 */
+	static void decimateAll(OEMM oemm, int scale, int minTN, int threads)
+	{
 		// Count triangles in non-leaf nodes
 		CountProcedure c_proc = new CountProcedure();
 		oemm.walk(c_proc);
+		if (threads > 1)
+		{
+			logger.info("Decimate all octree nodes with "+threads+" threads");
+			decimateParallel(oemm, scale, minTN, threads);
+			return;
+		}
 		logger.info("Decimate all octree nodes");
-		MeshReader reader = new MeshReader(oemm);
-		DecimateProcedure d_proc = new DecimateProcedure(reader, scale, minimalNumberOfTriangles);
+		MeshReader reader = newMeshReader(oemm);
+		DecimateProcedure d_proc = new DecimateProcedure(reader, scale, minTN);
 		oemm.walk(d_proc);
 	}
+
+	/**
+	 * Decimates octree nodes concurrently.  Nodes are processed in rounds,
+	 * a node being processed after all its children, as in sequential mode.
+	 * Nodes of a round have disjoint sets of leaves, but
+	 * {@link Storage#saveNodes} also rewrites triangle files of adjacent
+	 * leaves.  Thus each task locks its leaves and their adjacent leaves
+	 * (see <code>OEMM.Node.adjLeaves</code>) in ascending order of leaf
+	 * indices before reading them, so that tasks touching common boundary
+	 * vertices are serialized and deadlocks cannot occur.  Meshes are
+	 * read and decimated concurrently, but they are saved one at a time
+	 * under a global lock, because saving a mesh updates adjacency of
+	 * leaves and may create new leaves; locks of these leaves are created
+	 * when needed.  Writing files is thus serial, and only reading and
+	 * decimation benefit from several threads.  Each task has its own
+	 * {@link MeshReader} and I/O buffers.  OEMM structure is stored once,
+	 * when all nodes have been decimated.
+	 *
+	 * @param oemm  OEMM instance
+	 * @param scale  decimation ratio
+	 * @param minTN  nodes with less triangles are not decimated
+	 * @param threads  number of worker threads
+	 */
+	private static void decimateParallel(final OEMM oemm, final int scale, final int minTN, int threads)
+	{
+		ScheduleProcedure s_proc = new ScheduleProcedure(minTN);
+		oemm.walk(s_proc);
+		final LeafLocks locks = new LeafLocks();
+		final Object saveLock = new Object();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try
+		{
+			for (List<OEMM.Node> round: s_proc.rounds)
+			{
+				List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(round.size());
+				for (OEMM.Node current: round)
+				{
+					final TIntHashSet leaves = new TIntHashSet();
+					if (current.isLeaf)
+						leaves.add(current.leafIndex);
+					else
+					{
+						// Children have been decimated, update current.tn
+						current.tn = 0;
+						for (OEMM.Node node: current.child)
+						{
+							if (node != null)
+								current.tn += node.tn;
+						}
+						if (current.tn <= minTN)
+							continue;
+						getChildLeaves(current, leaves);
+					}
+					results.add(pool.submit(new Callable<Boolean>() {
+						public Boolean call()
+						{
+							int [] locked = lockLeaves(oemm, leaves, locks, saveLock);
+							try
+							{
+								Mesh amesh = decimate(newMeshReader(oemm), newMeshTraitsBuilder(), leaves, scale);
+								synchronized (saveLock)
+								{
+									Storage.saveNodes(oemm, amesh, leaves, false);
+								}
+							}
+							finally
+							{
+								for (int i = locked.length - 1; i >= 0; i--)
+									locks.get(locked[i]).unlock();
+							}
+							return Boolean.TRUE;
+						}
+					}));
+				}
+				for (Future<Boolean> f: results)
+				{
+					try
+					{
+						f.get();
+					}
+					catch (InterruptedException ex)
+					{
+						Thread.currentThread().interrupt();
+						throw new RuntimeException(ex);
+					}
+					catch (ExecutionException ex)
+					{
+						throw new RuntimeException(ex.getCause());
+					}
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		Storage.storeOEMMStructure(oemm);
+	}
+
+	/**
+	 * Locks leaves and their adjacent leaves in ascending order.
+	 * Adjacency is read while holding <code>saveLock</code>, because it
+	 * is modified when meshes are saved.  It may change before locks are
+	 * acquired, so it is read again afterwards, and locks are released
+	 * and acquired again until it is stable.  Once all adjacent leaves
+	 * are locked, other tasks cannot add new neighbours to these leaves.
+	 * @return sorted array of locked leaf indices
+	 */
+	private static int [] lockLeaves(OEMM oemm, TIntHashSet leaves, LeafLocks locks, Object saveLock)
+	{
+		int [] ret = getNeighbours(oemm, leaves, saveLock);
+		while (true)
+		{
+			for (int leaf: ret)
+				locks.get(leaf).lock();
+			int [] check = getNeighbours(oemm, leaves, saveLock);
+			if (Arrays.equals(ret, check))
+				return ret;
+			for (int i = ret.length - 1; i >= 0; i--)
+				locks.get(ret[i]).unlock();
+			ret = check;
+		}
+	}
+
+	/**
+	 * Returns leaves and their adjacent leaves, sorted by leaf index.
+	 */
+	private static int [] getNeighbours(OEMM oemm, TIntHashSet leaves, Object saveLock)
+	{
+		TIntHashSet neighbours = new TIntHashSet(leaves);
+		synchronized (saveLock)
+		{
+			for (int leaf: leaves.toArray())
+			{
+				TIntArrayList adj = oemm.leaves[leaf].adjLeaves;
+				for (int i = 0, n = adj.size(); i < n; i++)
+					neighbours.add(adj.get(i));
+			}
+		}
+		int [] ret = neighbours.toArray();
+		Arrays.sort(ret);
+		return ret;
+	}
+
+	/**
+	 * Locks of leaves, indexed by leaf index.  Leaves may be created
+	 * during decimation, so locks are created on demand.
+	 */
+	private static class LeafLocks
+	{
+		private final List<ReentrantLock> locks = new ArrayList<ReentrantLock>();
+
+		public synchronized ReentrantLock get(int leaf)
+		{
+			while (locks.size() <= leaf)
+				locks.add(new ReentrantLock());
+			return locks.get(leaf);
+		}
+	}
+
+	/**
+	 * Creates a reader which loads coordinates of vertices from adjacent
+	 * leaves, otherwise triangles crossing boundaries would be
+	 * degenerated and checks of decimation algorithm would fail.
+	 */
+	private static MeshReader newMeshReader(OEMM oemm)
+	{
+		MeshReader reader = new MeshReader(oemm);
+		reader.setLoadNonReadableTriangles(true);
+		return reader;
+	}
+
+	private static MeshTraitsBuilder newMeshTraitsBuilder()
+	{
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		ttb.addHalfEdge();
+		mtb.add(ttb);
+		mtb.addTriangleSet();
+		mtb.addNodeSet();
+		return mtb;
+	}
+
+	private static void getChildLeaves(Node current, TIntHashSet leaves)
+	{
+		for (OEMM.Node node: current.child)
+		{
+			if (node == null)
+				continue;
+			if (node.isLeaf) {
+				leaves.add(node.leafIndex);
+			} else {
+				getChildLeaves(node, leaves);
+			}
+		}
+	}
+
+	private static Mesh decimate(MeshReader reader, MeshTraitsBuilder mtb,
+		TIntHashSet leaves, int scale)
+	{
+		Mesh amesh = reader.buildMesh(mtb, leaves);
+		int nrT = AbstractAlgoHalfEdge.countInnerTriangles(amesh);
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("maxtriangles", ""+(nrT / scale));
+		new QEMDecimateHalfEdge(amesh, options).compute();
+		return amesh;
+	}
 	
 	private static void deleteFiles(File decDir)
 	{
@@ -139,25 +382,69 @@ public class MeshOEMMDecimate
 			return OK;
 		}
 	}
+	/**
+	 * Sorts octree nodes to be decimated by height.  Leaves are put into
+	 * the first round, and a node is put into a round after all its
+	 * children.
+	 */
+	private static class ScheduleProcedure extends TraversalProcedure
+	{
+		private final int minTN;
+		private final Map<OEMM.Node, Integer> height = new HashMap<OEMM.Node, Integer>();
+		private final List<List<OEMM.Node>> rounds = new ArrayList<List<OEMM.Node>>();
+
+		public ScheduleProcedure(int minimalNumberOfTriangles)
+		{
+			minTN = minimalNumberOfTriangles;
+		}
+
+		@Override
+		public final int action(OEMM oemm, OEMM.Node current, int octant, int visit)
+		{
+			if (current.tn <= minTN && visit != POSTORDER)
+				return SKIPCHILD;
+			if (visit == LEAF)
+			{
+				schedule(current, 0);
+				return OK;
+			}
+			else if (visit != POSTORDER)
+				return OK;
+			int h = 0;
+			for (OEMM.Node node: current.child)
+			{
+				if (node == null)
+					continue;
+				Integer c = height.get(node);
+				if (c != null && c.intValue() >= h)
+					h = c.intValue() + 1;
+			}
+			schedule(current, h);
+			return OK;
+		}
+
+		private void schedule(OEMM.Node current, int h)
+		{
+			height.put(current, Integer.valueOf(h));
+			while (rounds.size() <= h)
+				rounds.add(new ArrayList<OEMM.Node>());
+			rounds.get(h).add(current);
+		}
+	}
+
 	private static class DecimateProcedure extends TraversalProcedure
 	{
 		private final MeshReader reader;
 		private final int scale;
 		private final int minTN;
 		private final TIntHashSet leaves = new TIntHashSet();
-		private final Map<String, String> options = new HashMap<String, String>();
-		private final MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		private final MeshTraitsBuilder mtb = newMeshTraitsBuilder();
 		
 		public DecimateProcedure(MeshReader mr, int s, int minimalNumberOfTriangles)
 		{
 			reader = mr;
 			scale = s;
 			minTN = minimalNumberOfTriangles;
-			TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
-			ttb.addHalfEdge();
-			mtb.add(ttb);
-			mtb.addTriangleSet();
-			mtb.addNodeSet();
 		}
 
 		@Override
@@ -185,32 +472,13 @@ public class MeshOEMMDecimate
 				return OK;
 			
 			leaves.clear();
-			getChildLeaves(current);
+			getChildLeaves(current, leaves);
 			process(oemm);
 			return OK;
 		}
-		private void getChildLeaves(Node current)
-		{
-			for (OEMM.Node node: current.child)
-			{
-				if (node == null)
-					continue;
-				if (node.isLeaf) {
-					leaves.add(node.leafIndex);
-				} else {
-					getChildLeaves(node);
-				}
-			}
-			
-		}
 		private void process(OEMM oemm)
 		{
-			Mesh amesh = reader.buildMesh(mtb, leaves);
-			int nrT = AbstractAlgoHalfEdge.countInnerTriangles(amesh);
-			options.clear();
-			options.put("maxtriangles", ""+(nrT / scale));
-			new QEMDecimateHalfEdge(amesh, options).compute();
-			Storage.saveNodes(oemm, amesh, leaves);
+			Storage.saveNodes(oemm, decimate(reader, mtb, leaves, scale), leaves);
 		}
 	}
 }
@@ -56,8 +56,7 @@ public class MeshOEMMIndex
 				throw new RuntimeException("Fatal error... aborting");
 		}
 		Aggregate.compute(oemm, triangles_max);
-		RawStorage.dispatch(oemm, soupFile, "dispatched", "dispatched.data");
-		RawStorage.indexOEMM("dispatched", outDir);
+		RawStorage.dispatchAndIndex(oemm, soupFile, outDir);
 		logger.info("End processing");
 	}
 	
@@ -50,10 +50,9 @@ public class MeshOEMMPopulate
 		RawStorage.countTriangles(oemm, soupFile, false);
 		if (oemm.getNumberOfLeaves() != save_nrLeaves)
 			throw new RuntimeException("Octree structure does not fit triangle soup");
-		// Convert triangle soup into an intermediate OEMM file
-		RawStorage.dispatch(oemm, soupFile, "dispatched", "dispatched.data");
-		// Convert intermediate OEMM file into final OEMM
-		RawStorage.indexOEMM("dispatched", outOEMM);
+		// Convert triangle soup into an intermediate OEMM file, and
+		// convert it into final OEMM
+		RawStorage.dispatchAndIndex(oemm, soupFile, outOEMM);
 		logger.info("End processing");
 	}
 
@@ -28,9 +28,16 @@ import java.io.PrintStream;
 import java.io.InputStream;
 import java.io.FileInputStream;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Properties;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.text.SimpleDateFormat;
 
 import org.jcae.mesh.amibe.patch.InitialTriangulationException;
@@ -97,6 +104,10 @@ public class Mesher
 	private int minFace=0;
 	private int maxFace=0;
 	private int numFace=0;
+	/** Number of threads used to compute 2D meshes */
+	private int threads=1;
+	/** Number of threads used to export meshes */
+	private int exportThreads=1;
 		
 	/**
 	 * Read system properties which affect the meshing behavior.
@@ -215,6 +226,26 @@ public class Mesher
 			System.setProperty("org.jcae.mesh.Mesher.quadrangles", quadranglesProp);
 		}
 		quadrangles=quadranglesProp.equals("true");
+		
+		String threadsProp = System.getProperty("org.jcae.mesh.Mesher.threads");
+		if (threadsProp == null)
+		{
+			threadsProp = "1";
+			System.setProperty("org.jcae.mesh.Mesher.threads", threadsProp);
+		}
+		threads=Integer.parseInt(threadsProp);
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		
+		String exportThreadsProp = System.getProperty("org.jcae.mesh.exportThreads");
+		if (exportThreadsProp == null)
+		{
+			exportThreadsProp = "1";
+			System.setProperty("org.jcae.mesh.exportThreads", exportThreadsProp);
+		}
+		exportThreads=Integer.parseInt(exportThreadsProp);
+		if (exportThreads <= 0)
+			exportThreads = Runtime.getRuntime().availableProcessors();
 	}
 	
 	/**
@@ -255,29 +286,39 @@ public class Mesher
 	final boolean mesh2D(int iFace, CADFace face, MMesh1D mesh1D, MeshParameters mp,
 		String brepFile, MeshTraitsBuilder mtb)
 	{
-		if(Boolean.getBoolean("org.jcae.mesh.Mesher.explodeBrep"))
-			face.writeNative("face."+iFace+".brep");
-		Mesh2D mesh = new Mesh2D(mtb, mp, face);
 		boolean toReturn=true;
-		try
-		{
-			new Initial(mesh, mtb, mesh1D).compute();
-		}
-		catch(InitialTriangulationException ex)
-		{
-			logger.severe("Face "+iFace+" cannot be triangulated, skipping...");
-			toReturn=false;
-		}
-		catch(InvalidFaceException ex)
-		{
-			logger.severe("Face "+iFace+" is invalid, skipping...");
-			toReturn=false;
-		}
-		catch(Exception ex)
+		Mesh2D mesh;
+		// Topological data is shared between faces, see mesh2DParallel
+		synchronized (mesh1D)
 		{
-			logger.severe("Unexpected error when triangulating face "+iFace+", skipping...");
-			ex.printStackTrace();
-			toReturn=false;
+			if(Boolean.getBoolean("org.jcae.mesh.Mesher.explodeBrep"))
+				face.writeNative("face."+iFace+".brep");
+			mesh = new Mesh2D(mtb, mp, face);
+			try
+			{
+				new Initial(mesh, mtb, mesh1D).compute();
+			}
+			catch(InitialTriangulationException ex)
+			{
+				logger.severe("Face "+iFace+" cannot be triangulated, skipping...");
+				toReturn=false;
+			}
+			catch(InvalidFaceException ex)
+			{
+				logger.severe("Face "+iFace+" is invalid, skipping...");
+				toReturn=false;
+			}
+			catch(Exception ex)
+			{
+				logger.severe("Unexpected error when triangulating face "+iFace+", skipping...");
+				ex.printStackTrace();
+				toReturn=false;
+			}
+			if (!toReturn)
+			{
+				// Creates an empty mesh to not break 3d conversion when some faces are missing
+				mesh = new Mesh2D(mtb, mp, face);
+			}
 		}
 		if (toReturn)
 		{
@@ -287,11 +328,6 @@ public class Mesher
 			if (mp.hasDeflection() && !mp.hasRelativeDeflection())
 				new EnforceAbsDeflection(mesh).compute();
 		}
-		else
-		{
-			// Creates an empty mesh to not break 3d conversion when some faces are missing
-			mesh = new Mesh2D(mtb, mp, face);
-		}
 		try
 		{
 			MeshWriter.writeObject(mesh, outputDir, brepFile, iFace);
@@ -303,6 +339,82 @@ public class Mesher
 		return toReturn;
 	}
 	
+	/**
+	 * Compute 2D meshes of several faces concurrently.
+	 * Faces are put into a shared queue and are picked by idle workers,
+	 * so that a thread which has meshed a small face immediately starts
+	 * working on the next one.  Each face gets its own
+	 * <code>MeshTraitsBuilder</code> and <code>MeshParameters</code>
+	 * instances, and output files are written by {@link #mesh2D} exactly
+	 * as in sequential mode.
+	 * <p>
+	 * The CAD kernel is not known to be thread-safe.  Calls which read
+	 * shared topology, that is creating the surface of a face and
+	 * computing its boundary nodes from <code>mesh1D</code>, are
+	 * serialized by locking <code>mesh1D</code>.  Afterwards each face
+	 * only evaluates its own <code>CADGeomSurface</code> instance, which
+	 * is assumed to be safe when faces do not share the same underlying
+	 * surface object.  Set <code>org.jcae.mesh.Mesher.threads</code>
+	 * to 1 if this does not hold for a given kernel.
+	 * </p>
+	 * @param faceIds ids of the faces to be meshed
+	 * @param faces topological faces, in the same order as <code>faceIds</code>
+	 * @param nrFaces total number of faces, for logging purpose
+	 * @param mesh1D the boundary mesh used to create 2D meshes
+	 * @param options2d meshing options
+	 * @param brepFile basename of the BRep file
+	 * @return the list of face ids on which the mesher failed, sorted in
+	 *   the same order as <code>faceIds</code>
+	 */
+	final TIntArrayList mesh2DParallel(final TIntArrayList faceIds, final List<CADFace> faces,
+		final int nrFaces, final MMesh1D mesh1D, final HashMap<String, String> options2d,
+		final String brepFile)
+	{
+		logger.info("Meshing "+faceIds.size()+" faces with "+threads+" threads");
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(faceIds.size());
+		for (int i = 0; i < faceIds.size(); i++)
+		{
+			final int iFace = faceIds.get(i);
+			final CADFace face = faces.get(i);
+			results.add(pool.submit(new Callable<Boolean>() {
+				public Boolean call()
+				{
+					logger.info("Meshing face " + iFace+"/"+nrFaces);
+					MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault2D();
+					MeshParameters mp = new MeshParameters(options2d);
+					return Boolean.valueOf(mesh2D(iFace, face, mesh1D, mp, brepFile, mtb));
+				}
+			}));
+		}
+		pool.shutdown();
+		// Results are collected in face order, so that the list of bad
+		// groups does not depend on thread scheduling.
+		TIntArrayList badGroups = new TIntArrayList();
+		for (int i = 0; i < faceIds.size(); i++)
+		{
+			boolean ok;
+			try
+			{
+				ok = results.get(i).get().booleanValue();
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				ok = false;
+			}
+			catch (ExecutionException ex)
+			{
+				logger.severe("Unexpected error when meshing face "+faceIds.get(i));
+				ex.getCause().printStackTrace();
+				ok = false;
+			}
+			if (!ok)
+				badGroups.add(faceIds.get(i));
+		}
+		return badGroups;
+	}
+	
 	/**
 	 * Export the created mesh to various format
 	 */
@@ -312,13 +424,17 @@ public class Mesher
 		{
 			logger.info("Exporting MESH");
 			String MESHName=geometryFile.substring(0, geometryFile.lastIndexOf('.'))+".mesh";
-			new MeshExporter.MESH(outputDir).write(MESHName);
+			MeshExporter exporter=new MeshExporter.MESH(outputDir);
+			exporter.setThreads(exportThreads);
+			exporter.write(MESHName);
 		}
 		if (exportSTL)
 		{
 			logger.info("Exporting STL");
 			String STLName=geometryFile.substring(0, geometryFile.lastIndexOf('.'))+".stl";
-			new MeshExporter.STL(outputDir).write(STLName);
+			MeshExporter exporter=new MeshExporter.STL(outputDir);
+			exporter.setThreads(exportThreads);
+			exporter.write(STLName);
 		}
 		if (exportPOLY)
 		{
@@ -426,6 +542,8 @@ public class Mesher
 				seen.add(expF.current());
 			nrFaces = seen.size();			
 			seen.clear();
+			TIntArrayList faceIds = new TIntArrayList();
+			List<CADFace> faces = new ArrayList<CADFace>();
 			for (expF.init(shape, CADShapeEnum.FACE); expF.more(); expF.next())
 			{
 				CADFace face = (CADFace) expF.current();
@@ -440,11 +558,20 @@ public class Mesher
 				if (seen.contains(face))
 					continue;
 				seen.add(face);
+				if (threads > 1)
+				{
+					faceIds.add(iFace);
+					faces.add(face);
+					continue;
+				}
 				logger.info("Meshing face " + iFace+"/"+nrFaces);
 				MeshParameters mp = new MeshParameters(options2d);
 				if(!mesh2D(iFace, face, mesh1D, mp, brepFile, mtb))
 					badGroups.add(iFace);
 			}
+			if (threads > 1)
+				badGroups.addAll(mesh2DParallel(faceIds, faces, nrFaces,
+					mesh1D, options2d, brepFile));
 		}
 
 		if (processMesh3d) {
@@ -28,8 +28,10 @@ import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
-import org.jcae.mesh.amibe.util.QSortedTree;
+import org.jcae.mesh.amibe.util.QSortedCollection;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.PRedBlackSortedTree;
+import org.jcae.mesh.amibe.util.BinaryHeapSortedTree;
 import java.util.Iterator;
 import java.io.ObjectOutputStream;
 import java.io.FileOutputStream;
@@ -57,7 +59,7 @@ public abstract class AbstractAlgoHalfEdge
 	private boolean noSwapAfterProcessing = false;
 	double minCos = 0.95;
 	boolean moreTriangles = false;
-	private QSortedTree<HalfEdge> tree = new PAVLSortedTree<HalfEdge>();
+	private QSortedCollection<HalfEdge> tree = new PAVLSortedTree<HalfEdge>();
 	
 	private final Collection<HalfEdge> notProcessedObjects = HashFactory.createSet();
 	protected abstract void preProcessAllHalfEdges();
@@ -250,12 +252,12 @@ public abstract class AbstractAlgoHalfEdge
 		{
 			preProcessEdge();
 			HalfEdge current = null;
-			Iterator<QSortedTree.Node<HalfEdge>> itt = tree.iterator();
+			Iterator<? extends QSortedCollection.Entry<HalfEdge>> itt = tree.iterator();
 			if (processed > 0 && (processed % progressBarStatus) == 0)
 				thisLogger().info("Edges processed: "+processed);
 			while (itt.hasNext())
 			{
-				QSortedTree.Node<HalfEdge> q = itt.next();
+				QSortedCollection.Entry<HalfEdge> q = itt.next();
 				current = q.getData();
 				assert current == uniqueOrientation(current);
 				cost = q.getValue();
@@ -353,6 +355,46 @@ public abstract class AbstractAlgoHalfEdge
 		return processed > 0;
 	}
 
+	/**
+	 * Set the container used to sort edges by cost.  By default, edges
+	 * are stored into a {@link PAVLSortedTree}; a
+	 * {@link org.jcae.mesh.amibe.util.BinaryHeapSortedTree} requires less
+	 * memory and is faster on large meshes.  This method must be called
+	 * before {@link #compute}.
+	 *
+	 * @param sortedTree  empty container
+	 */
+	public void setSortedTree(QSortedCollection<HalfEdge> sortedTree)
+	{
+		if (!sortedTree.isEmpty())
+			throw new IllegalArgumentException("Container must be empty");
+		tree = sortedTree;
+	}
+
+	/**
+	 * Processes options which are common to all subclasses.  Option
+	 * <code>sortedTree</code> selects the container used to sort edges,
+	 * see {@link #setSortedTree}: <code>avl</code> (default),
+	 * <code>redblack</code> or <code>heap</code>.
+	 *
+	 * @return <code>true</code> if this option is known
+	 */
+	final boolean processCommonOption(String key, String val)
+	{
+		if (!"sortedTree".equals(key))
+			return false;
+		if ("avl".equals(val))
+			setSortedTree(new PAVLSortedTree<HalfEdge>());
+		else if ("redblack".equals(val))
+			setSortedTree(new PRedBlackSortedTree<HalfEdge>());
+		else if ("heap".equals(val))
+			setSortedTree(new BinaryHeapSortedTree<HalfEdge>());
+		else
+			throw new IllegalArgumentException("Unknown sorted tree: "+val);
+		thisLogger().fine("Sorted tree: "+val);
+		return true;
+	}
+
 	public void setNoSwapAfterProcessing(boolean noSwapAfterProcessing)
 	{
 		this.noSwapAfterProcessing = noSwapAfterProcessing;
@@ -390,7 +432,7 @@ public abstract class AbstractAlgoHalfEdge
 			ObjectInputStream q = new ObjectInputStream(istream);
 			System.out.println("Loading restored state");
 			mesh = (Mesh) q.readObject();
-			tree = (QSortedTree<HalfEdge>) q.readObject();
+			tree = (QSortedCollection<HalfEdge>) q.readObject();
 			appendRestoreState(q);
 			System.out.println("... Done.");
 			q.close();
@@ -46,10 +46,10 @@ public abstract class Extruder {
 			int j = (i + 1) % getVertexNumber();
 			Triangle t1 = m.createTriangle(getVertex(i), getVertex(j), endVertices[j]);
 			Triangle t2 = m.createTriangle(getVertex(i), endVertices[j], endVertices[i]);
-			m.add(t1);
-			m.add(t2);
 			t1.setGroupId(group);
 			t2.setGroupId(group);
+			m.add(t1);
+			m.add(t2);
 		}
 	}
 
@@ -21,28 +21,39 @@
 
 package org.jcae.mesh.amibe.algos3d;
 
-import java.io.IOException;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
-import org.jcae.mesh.amibe.metrics.KdTree;
-import java.util.Map;
+import org.jcae.mesh.amibe.util.ParallelLoop;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
-import org.jcae.mesh.amibe.util.HashFactory;
-import org.jcae.mesh.xmldata.MeshReader;
-import org.jcae.mesh.xmldata.MeshWriter;
 
 /**
- * Fuse near nodes in a Mesh instance.
+ * Fuse near nodes in a Mesh instance.  Tolerances are processed in the
+ * given order; for each tolerance, nodes are visited in iteration order
+ * of mesh nodes and a node is merged into the nearest previous node which
+ * has not been removed, if it is closer than this tolerance.  Ties are
+ * broken by taking the first node.
+ *
+ * Nodes are put into a uniform grid whose cell size is the largest
+ * tolerance, so that close nodes can be found in adjacent cells.  Pairs
+ * of close nodes are computed only once for all tolerances, concurrently
+ * by {@link org.jcae.mesh.amibe.ds.MeshParameters#getThreads} threads,
+ * and vertices of triangles and beams are then replaced concurrently.
  */
 public class Fuse
 {
 	private static final Logger LOGGER=Logger.getLogger(Fuse.class.getName());
+	// Grid cells are packed into a long, with 21 bits per coordinate
+	private static final int GRID_BITS = 21;
+	private static final int MAX_CELLS = 1 << (GRID_BITS - 1);
+	private static final int MIN_CHUNK_SIZE = 1024;
 	private final Mesh mesh;
 	private final double[] tolerances;
 
@@ -64,78 +75,271 @@ public class Fuse
 	public void compute()
 	{
 		LOGGER.fine("Running Fuse");
-		double [] bmin = new double[3];
-		double [] bmax = new double[3];
+		Collection<Vertex> nodes = mesh.getOrComputeNodes(-1, null);
+		final int n = nodes.size();
+		if (n == 0 || tolerances.length == 0)
+			return;
+		final Vertex [] vertices = nodes.toArray(new Vertex[n]);
+		final double [] coords = new double[3*n];
+		double [] bbox = new double[6];
 		for (int i = 0; i < 3; i++)
 		{
-			bmin[i] = Double.MAX_VALUE;
-			bmax[i] = Double.MIN_VALUE;
+			bbox[i] = Double.MAX_VALUE;
+			bbox[i+3] = - Double.MAX_VALUE;
 		}
-		Collection<Vertex> nodes = mesh.getOrComputeNodes(-1, null);
-		for (Vertex n: nodes)
+		for (int i = 0; i < n; i++)
 		{
-			bmin[0] = Math.min(bmin[0], n.getX());
-			bmax[0] = Math.max(bmax[0], n.getX());
-			bmin[1] = Math.min(bmin[1], n.getY());
-			bmax[1] = Math.max(bmax[1], n.getY());
-			bmin[2] = Math.min(bmin[2], n.getZ());
-			bmax[2] = Math.max(bmax[2], n.getZ());
+			coords[3*i] = vertices[i].getX();
+			coords[3*i+1] = vertices[i].getY();
+			coords[3*i+2] = vertices[i].getZ();
+			for (int k = 0; k < 3; k++)
+			{
+				bbox[k] = Math.min(bbox[k], coords[3*i+k]);
+				bbox[k+3] = Math.max(bbox[k+3], coords[3*i+k]);
+			}
 		}
-		//  Enlarge the bounding box
-		for (int i = 0; i < 3; i++)
+		double maxTolerance = 0.0;
+		for (double t : tolerances)
+			maxTolerance = Math.max(maxTolerance, t);
+		final double sqrMaxTolerance = maxTolerance;
+
+		// Cell size must not be smaller than tolerance, and is
+		// enlarged so that cell coordinates fit into GRID_BITS bits.
+		double extent = 0.0;
+		for (int k = 0; k < 3; k++)
+			extent = Math.max(extent, bbox[k+3] - bbox[k]);
+		double h = Math.max(Math.sqrt(maxTolerance), extent / MAX_CELLS);
+		if (h <= 0.0)
+			h = 1.0;
+		final double invH = 1.0 / h;
+		final double [] origin = new double[] { bbox[0], bbox[1], bbox[2] };
+
+		ParallelLoop loop = new ParallelLoop(mesh.getMeshParameters().getThreads(), MIN_CHUNK_SIZE);
+		try
 		{
-			if (bmin[i] > 0.0)
-				bmin[i] *= 0.99;
-			else
-				bmin[i] *= 1.01;
-			if (bmax[i] > 0.0)
-				bmax[i] *= 1.01;
-			else
-				bmax[i] *= 0.99;
+			// Cell of each node
+			final int [] cells = new int[3*n];
+			loop.execute(n, new ParallelLoop.Body() {
+				public void run(int start, int end)
+				{
+					for (int i = start; i < end; i++)
+						for (int k = 0; k < 3; k++)
+							cells[3*i+k] = (int) ((coords[3*i+k] - origin[k]) * invH);
+				}
+			});
+			// Nodes of a cell are chained in increasing order
+			final TLongIntHashMap head = new TLongIntHashMap(n, 0.5f, Long.MIN_VALUE, -1);
+			final int [] next = new int[n];
+			for (int i = n - 1; i >= 0; i--)
+			{
+				long key = cellKey(cells[3*i], cells[3*i+1], cells[3*i+2]);
+				next[i] = head.get(key);
+				head.put(key, i);
+			}
+
+			// Previous nodes closer than the largest tolerance
+			final int [] offsets = new int[n+1];
+			loop.execute(n, new ParallelLoop.Body() {
+				public void run(int start, int end)
+				{
+					for (int i = start; i < end; i++)
+						offsets[i+1] = findNeighbors(i, coords, cells, head, next, sqrMaxTolerance, null, null, 0);
+				}
+			});
+			for (int i = 0; i < n; i++)
+				offsets[i+1] += offsets[i];
+			final int [] neighbors = new int[offsets[n]];
+			final double [] distances = new double[offsets[n]];
+			loop.execute(n, new ParallelLoop.Body() {
+				public void run(int start, int end)
+				{
+					for (int i = start; i < end; i++)
+						findNeighbors(i, coords, cells, head, next, sqrMaxTolerance, neighbors, distances, offsets[i]);
+				}
+			});
+
+			// Merge nodes, this is fast since distances are known
+			boolean [] removed = new boolean[n];
+			final int [] target = new int[n];
+			for (int i = 0; i < n; i++)
+				target[i] = i;
+			for (double tolerance : tolerances)
+			{
+				int nrRemoved = 0;
+				for (int i = 0; i < n; i++)
+				{
+					if (removed[i])
+						continue;
+					for (int k = offsets[i]; k < offsets[i+1] && distances[k] <= tolerance; k++)
+					{
+						int j = neighbors[k];
+						if (!removed[j])
+						{
+							if (LOGGER.isLoggable(Level.FINE))
+								LOGGER.log(Level.FINE,
+									"Node {0} is removed, it is too close from {1}",
+									new Object[]{vertices[i], vertices[j]});
+							target[i] = j;
+							removed[i] = true;
+							nrRemoved++;
+							break;
+						}
+					}
+				}
+				LOGGER.log(Level.INFO, "{0} node(s) are removed", nrRemoved);
+			}
+			// Targets are lower indices
+			boolean fused = false;
+			for (int i = 0; i < n; i++)
+			{
+				if (!removed[i])
+					continue;
+				fused = true;
+				target[i] = target[target[i]];
+				vertices[i].setRef(0);
+				nodes.remove(vertices[i]);
+			}
+			if (fused)
+				replaceVertices(vertices, target, loop);
 		}
-		double [] bbox = new double[6];
-		for (int i = 0; i < 3; i++)
+		finally
 		{
-			bbox[i] = bmin[i];
-			bbox[i+3] = bmax[i];
+			loop.shutdown();
 		}
-		Map<Vertex, Vertex> map = HashFactory.createMap();
-		for(double tolerance: tolerances)
+	}
+
+	private static long cellKey(int i, int j, int k)
+	{
+		return (((long) i) << (2 * GRID_BITS)) | (((long) j) << GRID_BITS) | k;
+	}
+
+	/**
+	 * Finds nodes with lower indices than <code>i</code> which are closer
+	 * than tolerance.  If <code>neighbors</code> is not null, they are
+	 * stored starting at <code>offset</code> and sorted by increasing
+	 * distance, and then by increasing index.
+	 *
+	 * @return number of nodes found
+	 */
+	private static int findNeighbors(int i, double [] coords, int [] cells,
+		TLongIntHashMap head, int [] next, double tolerance,
+		int [] neighbors, double [] distances, int offset)
+	{
+		int ret = 0;
+		for (int ci = cells[3*i] - 1; ci <= cells[3*i] + 1; ci++)
 		{
-			KdTree<Vertex> octree = new KdTree<Vertex>(bbox);
-			map.clear();
-			for (Vertex n: nodes)
+			if (ci < 0)
+				continue;
+			for (int cj = cells[3*i+1] - 1; cj <= cells[3*i+1] + 1; cj++)
 			{
-				Vertex p = octree.getNearestVertex(mesh.getMetric(n), n);
-				if (p == null || n.sqrDistance3D(p) > tolerance)
-					octree.add(n);
-				else
+				if (cj < 0)
+					continue;
+				for (int ck = cells[3*i+2] - 1; ck <= cells[3*i+2] + 1; ck++)
 				{
-					LOGGER.log(Level.FINE,
-						"Node {0} is removed, it is too close from {1}",
-						new Object[]{n, p});
-					map.put(n, p);
-					n.setRef(0);
+					if (ck < 0)
+						continue;
+					for (int j = head.get(cellKey(ci, cj, ck)); j >= 0 && j < i; j = next[j])
+					{
+						double dx = coords[3*i] - coords[3*j];
+						double dy = coords[3*i+1] - coords[3*j+1];
+						double dz = coords[3*i+2] - coords[3*j+2];
+						double d2 = dx*dx + dy*dy + dz*dz;
+						if (d2 > tolerance)
+							continue;
+						if (neighbors != null)
+						{
+							// Insertion sort, there are few neighbors
+							int pos = offset + ret;
+							while (pos > offset && (distances[pos-1] > d2 ||
+								(distances[pos-1] == d2 && neighbors[pos-1] > j)))
+							{
+								distances[pos] = distances[pos-1];
+								neighbors[pos] = neighbors[pos-1];
+								pos--;
+							}
+							distances[pos] = d2;
+							neighbors[pos] = j;
+						}
+						ret++;
+					}
 				}
 			}
-			LOGGER.log(Level.INFO, "{0} node(s) are removed", map.size());
-			Iterator<Triangle> itt = mesh.getTriangles().iterator();
-			while(itt.hasNext())
+		}
+		return ret;
+	}
+
+	/**
+	 * Replaces removed vertices in triangles and beams, and removes
+	 * degenerated triangles and beams.
+	 */
+	private void replaceVertices(final Vertex [] vertices, final int [] target, ParallelLoop loop)
+	{
+		final TObjectIntHashMap<Vertex> index = new TObjectIntHashMap<Vertex>(vertices.length, 0.5f, -1);
+		for (int i = 0; i < vertices.length; i++)
+			index.put(vertices[i], i);
+
+		Collection<Triangle> triangleList = mesh.getTriangles();
+		final Triangle [] triangles = triangleList.toArray(new Triangle[triangleList.size()]);
+		final boolean [] degenerated = new boolean[triangles.length];
+		loop.execute(triangles.length, new ParallelLoop.Body() {
+			public void run(int start, int end)
 			{
-				Triangle t = itt.next();
-				for (int j = 0; j < 3; j++)
+				for (int i = start; i < end; i++)
 				{
-					Vertex n = t.getV(j);
-					Vertex p = map.get(n);
-					if (p != null)
+					Triangle t = triangles[i];
+					for (int j = 0; j < 3; j++)
 					{
-						t.setV(j, p);
-						nodes.remove(n);
+						int k = index.get(t.getV(j));
+						if (k >= 0 && target[k] != k)
+							t.setV(j, vertices[target[k]]);
 					}
+					degenerated[i] = t.getV0() == t.getV1() || t.getV0() == t.getV2() || t.getV1() == t.getV2();
+				}
+			}
+		});
+		int cnt = 0;
+		for (Iterator<Triangle> itt = triangleList.iterator(); itt.hasNext(); cnt++)
+		{
+			itt.next();
+			if (degenerated[cnt])
+				itt.remove();
+		}
+
+		final List<Vertex> beams = mesh.getBeams();
+		final Vertex [] newBeams = new Vertex[beams.size()];
+		loop.execute(newBeams.length, new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				for (int i = start; i < end; i++)
+				{
+					Vertex v = beams.get(i);
+					int k = index.get(v);
+					newBeams[i] = (k >= 0 ? vertices[target[k]] : v);
 				}
-				if(t.getV0() == t.getV1() || t.getV0() == t.getV2() || t.getV1() == t.getV2())
-					itt.remove();
 			}
+		});
+		boolean hasDegeneratedBeams = false;
+		for (int i = 0; i < newBeams.length; i += 2)
+		{
+			mesh.setBeam(i, newBeams[i]);
+			mesh.setBeam(i+1, newBeams[i+1]);
+			hasDegeneratedBeams |= newBeams[i] == newBeams[i+1];
+		}
+		if (hasDegeneratedBeams)
+		{
+			List<Vertex> keptBeams = new ArrayList<Vertex>(newBeams.length);
+			List<Integer> keptGroups = new ArrayList<Integer>(newBeams.length / 2);
+			for (int i = 0; i < newBeams.length; i += 2)
+			{
+				if (newBeams[i] == newBeams[i+1])
+					continue;
+				keptBeams.add(newBeams[i]);
+				keptBeams.add(newBeams[i+1]);
+				keptGroups.add(mesh.getBeamGroup(i / 2));
+			}
+			mesh.resetBeams();
+			for (int i = 0; i < keptGroups.size(); i++)
+				mesh.addBeam(keptBeams.get(2*i), keptBeams.get(2*i+1), keptGroups.get(i), false);
 		}
 	}
 }
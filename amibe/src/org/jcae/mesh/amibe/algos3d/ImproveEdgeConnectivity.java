@@ -77,7 +77,7 @@ public class ImproveEdgeConnectivity extends AbstractAlgoHalfEdge
 				minCos = Double.parseDouble(val);
 				LOGGER.fine("Coplanar value: "+minCos);
 			}
-			else
+			else if (!processCommonOption(key, val))
 				throw new RuntimeException("Unknown option: "+key);
 		}
 		tolerance = - 0.01;
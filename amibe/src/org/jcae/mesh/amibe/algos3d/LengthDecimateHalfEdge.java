@@ -103,7 +103,7 @@ public class LengthDecimateHalfEdge extends AbstractAlgoHalfEdge
 				minCos = Double.parseDouble(val);
 				LOGGER.fine("Minimum dot product of face normals allowed for swapping an edge: "+minCos);
 			}
-			else if(!metrics.isKnownOption(key))
+			else if(!metrics.isKnownOption(key) && !processCommonOption(key, val))
 				throw new RuntimeException("Unknown option: "+key);
 		}
 		if(Double.isNaN(freeEdgeTol))
@@ -136,15 +136,25 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 	 */
 	public QEMDecimateHalfEdge(final Mesh m, final Map<String, String> options)
 	{
-		this(m, null, options);
+		this(m, null, options, true);
 	}
 
 	public QEMDecimateHalfEdge(final MeshLiaison liaison, final Map<String, String> options)
 	{
-		this(liaison.getMesh(), liaison, options);
+		this(liaison.getMesh(), liaison, options, false);
 	}
 
-	private QEMDecimateHalfEdge(final Mesh m, final MeshLiaison meshLiaison, final Map<String, String> options)
+	/**
+	 * Creates a <code>QEMDecimateHalfEdge</code> instance which does not
+	 * call {@link Mesh#buildRidges}, because ridges have already been
+	 * computed.
+	 */
+	QEMDecimateHalfEdge(final Mesh m, final Map<String, String> options, final boolean ridges)
+	{
+		this(m, null, options, ridges);
+	}
+
+	private QEMDecimateHalfEdge(final Mesh m, final MeshLiaison meshLiaison, final Map<String, String> options, final boolean ridges)
 	{
 		super(m, meshLiaison);
 		v3 = m.createVertex(0.0, 0.0, 0.0);
@@ -194,10 +204,10 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 					}
 				}
 			}
-			else if(!metrics.isKnownOption(key))
+			else if(!metrics.isKnownOption(key) && !processCommonOption(key, val))
 				throw new RuntimeException("Unknown option: "+key);
 		}
-		if (meshLiaison == null)
+		if (ridges)
 			mesh.buildRidges(minCos);
 		if (freeEdgesOnly)
 			setNoSwapAfterProcessing(true);
@@ -400,6 +410,12 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		final Vertex v1 = current.origin();
 		final Vertex v2 = current.destination();
 		assert v1 != v2 : current;
+		// Edges with an infinite cost may be processed when
+		// maxtriangles is set
+		if (!v1.isWritable() || !v2.isWritable())
+			return false;
+		if (!v1.isMutable() && !v2.isMutable())
+			return false;
 		final Quadric3DError q1 = quadricMap.get(v1);
 		final Quadric3DError q2 = quadricMap.get(v2);
 		assert q1 != null : v1;
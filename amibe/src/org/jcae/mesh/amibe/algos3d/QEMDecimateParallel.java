@@ -0,0 +1,416 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.algos3d;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.MeshParameters;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.util.ParallelLoop;
+
+/**
+ * Decimates a mesh with several threads.  Mesh is split into balanced
+ * regions of connected triangles, and each region is copied into its own
+ * {@link Mesh} instance, because meshes cannot be modified concurrently.
+ * Vertices shared by several regions are frozen, so inter-region edges are
+ * kept, and each region is decimated by its own
+ * {@link QEMDecimateHalfEdge} instance on a worker thread.  Regions are
+ * then put back into the mesh, and a final serial pass is performed, in
+ * which only vertices of region boundaries can be removed.
+ *
+ * <p>
+ * Options are the same as for {@link QEMDecimateHalfEdge}.  When
+ * <code>maxtriangles</code> is set, each region is decimated down to a
+ * number of triangles proportional to its size, and the final pass
+ * targets the requested number of triangles.  The number of regions is
+ * given by the <code>regions</code> option, and defaults to
+ * {@link MeshParameters#getThreads}.  If there is a single region, or if
+ * mesh is traced, {@link QEMDecimateHalfEdge} is called directly.
+ * </p>
+ */
+public class QEMDecimateParallel
+{
+	private static final Logger LOGGER=Logger.getLogger(QEMDecimateParallel.class.getName());
+	// Vertices which belong to several regions
+	private static final int SEAM = -1;
+	private final Mesh mesh;
+	private final Map<String, String> options = new HashMap<String, String>();
+	private int regions;
+	private int nrFinal = 0;
+	// Same default value as in AbstractAlgoHalfEdge
+	private double minCos = 0.95;
+
+	/**
+	 * Creates a <code>QEMDecimateParallel</code> instance.
+	 *
+	 * @param m  the <code>Mesh</code> instance to decimate.
+	 * @param opts  map containing key-value pairs to modify algorithm
+	 *        behaviour.  Valid keys are <code>regions</code> and keys
+	 *        of {@link QEMDecimateHalfEdge}.
+	 */
+	public QEMDecimateParallel(final Mesh m, final Map<String, String> opts)
+	{
+		mesh = m;
+		regions = m.getMeshParameters().getThreads();
+		for (final Map.Entry<String, String> opt: opts.entrySet())
+		{
+			final String key = opt.getKey();
+			final String val = opt.getValue();
+			if (key.equals("regions"))
+			{
+				regions = Integer.parseInt(val);
+				LOGGER.info("Number of regions: "+regions);
+			}
+			else
+			{
+				if (key.equals("maxtriangles"))
+					nrFinal = Integer.parseInt(val);
+				else if (key.equals("coplanarity"))
+					minCos = Double.parseDouble(val);
+				options.put(key, val);
+			}
+		}
+	}
+
+	public final void compute()
+	{
+		if (regions <= 1 || mesh.getBuilder().hasTrace())
+		{
+			new QEMDecimateHalfEdge(mesh, options).compute();
+			return;
+		}
+		if (!mesh.hasAdjacency())
+			throw new IllegalArgumentException("QEMDecimateParallel needs adjacency relations");
+
+		// Ridges are computed on the initial mesh, as done by
+		// QEMDecimateHalfEdge, and will not be computed again during
+		// the final pass.
+		mesh.buildRidges(minCos);
+		final List<List<Triangle>> parts = partition();
+		int nrTriangles = 0;
+		for (List<Triangle> part: parts)
+			nrTriangles += part.size();
+
+		// Find vertices which are shared by several regions or by
+		// triangles which cannot be modified, and edges which must
+		// not be contracted.
+		final TObjectIntHashMap<Vertex> vertexRegion = new TObjectIntHashMap<Vertex>();
+		final TObjectIntHashMap<Triangle> triangleRegion = new TObjectIntHashMap<Triangle>(nrTriangles, 0.5f, SEAM);
+		for (int i = 0; i < parts.size(); i++)
+		{
+			for (Triangle t: parts.get(i))
+				triangleRegion.put(t, i);
+		}
+		final Map<Vertex, Collection<Vertex>> immutableEdges = new HashMap<Vertex, Collection<Vertex>>();
+		final Map<Vertex, Collection<Vertex>> sharpEdges = new HashMap<Vertex, Collection<Vertex>>();
+		final Set<Vertex> frozen = new HashSet<Vertex>();
+		AbstractHalfEdge ot = null;
+		for (Triangle t: mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			int region = triangleRegion.get(t);
+			ot = t.getAbstractHalfEdge(ot);
+			for (int i = 0; i < 3; i++)
+			{
+				ot = ot.next();
+				Vertex v = ot.origin();
+				if (!vertexRegion.containsKey(v))
+					vertexRegion.put(v, region);
+				else if (vertexRegion.get(v) != region)
+					vertexRegion.put(v, SEAM);
+				if (ot.hasAttributes(AbstractHalfEdge.SHARP))
+					addEdge(sharpEdges, v, ot.destination());
+				if (ot.hasAttributes(AbstractHalfEdge.IMMUTABLE))
+				{
+					addEdge(immutableEdges, v, ot.destination());
+					frozen.add(v);
+					frozen.add(ot.destination());
+				}
+			}
+		}
+		final Set<Vertex> seams = new HashSet<Vertex>();
+		for (Vertex v: vertexRegion.keySet())
+		{
+			if (vertexRegion.get(v) == SEAM)
+				seams.add(v);
+		}
+		frozen.addAll(seams);
+		LOGGER.info("Decimate "+parts.size()+" regions, number of vertices on region boundaries: "+seams.size());
+
+		// First round, each region is decimated by a worker thread
+		final Mesh [] subMeshes = new Mesh[parts.size()];
+		final List<Map<Vertex, Vertex>> copies = new ArrayList<Map<Vertex, Vertex>>(parts.size());
+		for (int i = 0; i < parts.size(); i++)
+			copies.add(new HashMap<Vertex, Vertex>());
+		final int total = nrTriangles;
+		ParallelLoop loop = new ParallelLoop(mesh.getMeshParameters().getThreads(), 1);
+		try
+		{
+			loop.execute(parts.size(), new ParallelLoop.Body() {
+				public void run(int start, int end)
+				{
+					for (int i = start; i < end; i++)
+					{
+						List<Triangle> part = parts.get(i);
+						Map<Vertex, Vertex> map = copies.get(i);
+						subMeshes[i] = copy(part, frozen, map);
+						Map<String, String> subOptions = new HashMap<String, String>(options);
+						if (nrFinal > 0)
+						{
+							// Triangles around frozen vertices cannot be
+							// removed, keep room for them so that other
+							// triangles are not over-decimated.
+							int nrFrozen = 0;
+							for (Vertex v: map.keySet())
+							{
+								if (frozen.contains(v))
+									nrFrozen++;
+							}
+							subOptions.put("maxtriangles", Integer.toString(
+								(int) ((long) nrFinal * part.size() / total) + nrFrozen));
+						}
+						new QEMDecimateHalfEdge(subMeshes[i], subOptions).compute();
+					}
+				}
+			});
+		}
+		finally
+		{
+			loop.shutdown();
+		}
+
+		// Put regions back into mesh
+		mesh.clearAdjacency();
+		for (Iterator<Triangle> it = mesh.getTriangles().iterator(); it.hasNext(); )
+		{
+			if (triangleRegion.containsKey(it.next()))
+				it.remove();
+		}
+		for (int i = 0; i < parts.size(); i++)
+			merge(subMeshes[i], copies.get(i), frozen, sharpEdges);
+		mesh.buildAdjacency();
+
+		// Final pass, only edges connected to region boundaries can be
+		// contracted.  Other edges and ridges are temporarily tagged as
+		// immutable.
+		for (Triangle t: mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			ot = t.getAbstractHalfEdge(ot);
+			for (int i = 0; i < 3; i++)
+			{
+				ot = ot.next();
+				Vertex o = ot.origin();
+				Vertex d = ot.destination();
+				if (hasEdge(immutableEdges, o, d) || hasEdge(sharpEdges, o, d) ||
+				    (!seams.contains(o) && !seams.contains(d)))
+					ot.setAttributes(AbstractHalfEdge.IMMUTABLE);
+			}
+		}
+		try
+		{
+			new QEMDecimateHalfEdge(mesh, options, false).compute();
+		}
+		finally
+		{
+			for (Triangle t: mesh.getTriangles())
+			{
+				if (t.hasAttributes(AbstractHalfEdge.OUTER))
+					continue;
+				ot = t.getAbstractHalfEdge(ot);
+				for (int i = 0; i < 3; i++)
+				{
+					ot = ot.next();
+					if (!hasEdge(immutableEdges, ot.origin(), ot.destination()))
+						ot.clearAttributes(AbstractHalfEdge.IMMUTABLE);
+				}
+			}
+		}
+	}
+
+	private static void addEdge(Map<Vertex, Collection<Vertex>> edges, Vertex v1, Vertex v2)
+	{
+		Collection<Vertex> list = edges.get(v1);
+		if (list == null)
+		{
+			list = new ArrayList<Vertex>();
+			edges.put(v1, list);
+		}
+		list.add(v2);
+	}
+
+	private static boolean hasEdge(Map<Vertex, Collection<Vertex>> edges, Vertex v1, Vertex v2)
+	{
+		Collection<Vertex> list = edges.get(v1);
+		if (list != null && list.contains(v2))
+			return true;
+		list = edges.get(v2);
+		return list != null && list.contains(v1);
+	}
+
+	/**
+	 * Splits writable triangles into regions.  Triangles are sorted by a
+	 * breadth-first traversal of the mesh, and this list is cut into
+	 * chunks of the same size.
+	 */
+	private List<List<Triangle>> partition()
+	{
+		List<Triangle> order = new ArrayList<Triangle>(mesh.getTriangles().size());
+		Set<Triangle> seen = new HashSet<Triangle>();
+		AbstractHalfEdge ot = null;
+		AbstractHalfEdge sym = null;
+		for (Triangle seed: mesh.getTriangles())
+		{
+			if (seed.hasAttributes(AbstractHalfEdge.OUTER) || !seed.isWritable() || !seen.add(seed))
+				continue;
+			order.add(seed);
+			for (int index = order.size() - 1; index < order.size(); index++)
+			{
+				ot = order.get(index).getAbstractHalfEdge(ot);
+				for (int i = 0; i < 3; i++)
+				{
+					ot = ot.next();
+					if (ot.hasAttributes(AbstractHalfEdge.BOUNDARY | AbstractHalfEdge.NONMANIFOLD))
+						continue;
+					sym = ot.sym(sym);
+					Triangle symTri = sym.getTri();
+					if (!symTri.hasAttributes(AbstractHalfEdge.OUTER) && symTri.isWritable() && seen.add(symTri))
+						order.add(symTri);
+				}
+			}
+		}
+		List<List<Triangle>> ret = new ArrayList<List<Triangle>>(regions);
+		int size = (order.size() + regions - 1) / regions;
+		for (int start = 0; start < order.size(); start += size)
+			ret.add(order.subList(start, Math.min(order.size(), start + size)));
+		return ret;
+	}
+
+	/**
+	 * Copies triangles into a new mesh.  This method is called by worker
+	 * threads, so it must not modify current mesh.
+	 */
+	private Mesh copy(List<Triangle> triangles, Set<Vertex> frozen, Map<Vertex, Vertex> map)
+	{
+		MeshParameters mp = new MeshParameters();
+		mp.setThreads(1);
+		Mesh ret = new Mesh(MeshTraitsBuilder.getDefault3D(), mp);
+		Vertex [] v = new Vertex[3];
+		for (Triangle t: triangles)
+		{
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex orig = t.getV(i);
+				v[i] = map.get(orig);
+				if (v[i] == null)
+				{
+					v[i] = ret.createVertex(orig.getX(), orig.getY(), orig.getZ());
+					v[i].setLabel(orig.getLabel());
+					v[i].setRef(orig.getRef());
+					v[i].setReadable(orig.isReadable());
+					v[i].setWritable(orig.isWritable());
+					v[i].setMutable(orig.isMutable() && !frozen.contains(orig));
+					map.put(orig, v[i]);
+				}
+			}
+			Triangle newT = ret.createTriangle(v);
+			newT.setGroupId(t.getGroupId());
+			ret.add(newT);
+		}
+		ret.buildAdjacency();
+		return ret;
+	}
+
+	/**
+	 * Adds triangles of a decimated region into current mesh.
+	 *
+	 * @param subMesh  decimated region
+	 * @param map  map between vertices of current mesh and their copy
+	 * @param frozen  vertices which could not be modified
+	 * @param sharpEdges  ridges of decimated region are added to this map
+	 */
+	private void merge(Mesh subMesh, Map<Vertex, Vertex> map, Set<Vertex> frozen,
+		Map<Vertex, Collection<Vertex>> sharpEdges)
+	{
+		Map<Vertex, Vertex> reverse = new HashMap<Vertex, Vertex>(map.size());
+		for (Map.Entry<Vertex, Vertex> e: map.entrySet())
+			reverse.put(e.getValue(), e.getKey());
+		Set<Vertex> removed = new HashSet<Vertex>(map.keySet());
+		Vertex [] v = new Vertex[3];
+		AbstractHalfEdge ot = null;
+		for (Triangle t: subMesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex sub = t.getV(i);
+				v[i] = reverse.get(sub);
+				if (v[i] == null)
+				{
+					v[i] = mesh.createVertex(sub.getX(), sub.getY(), sub.getZ());
+					v[i].setRef(sub.getRef());
+					if (mesh.hasNodes())
+						mesh.add(v[i]);
+					reverse.put(sub, v[i]);
+				}
+				else if (!frozen.contains(v[i]))
+				{
+					// Vertices which had been removed may have been
+					// reused at another location.  References of frozen
+					// vertices are not copied, they may have been modified
+					// because these vertices are on region boundaries.
+					v[i].moveTo(sub.getX(), sub.getY(), sub.getZ());
+					v[i].setRef(sub.getRef());
+				}
+				removed.remove(v[i]);
+			}
+			Triangle newT = mesh.createTriangle(v);
+			newT.setGroupId(t.getGroupId());
+			mesh.add(newT);
+			ot = t.getAbstractHalfEdge(ot);
+			for (int i = 0; i < 3; i++)
+			{
+				ot = ot.next();
+				if (ot.hasAttributes(AbstractHalfEdge.SHARP))
+					addEdge(sharpEdges, reverse.get(ot.origin()), reverse.get(ot.destination()));
+			}
+		}
+		if (mesh.hasNodes())
+		{
+			for (Vertex r: removed)
+				mesh.remove(r);
+		}
+	}
+}
@@ -121,12 +121,12 @@ public class RandomizeGroups {
 				}
 				if(random.nextDouble() < ratio)
 				{
-					t.setGroupId(newGroupId);
+					mesh.setGroupId(t, newGroupId);
 					if(neighbors)
 					{
-						e.sym().getTri().setGroupId(newGroupId);
-						e.next().sym().getTri().setGroupId(newGroupId);
-						e.prev().sym().getTri().setGroupId(newGroupId);
+						mesh.setGroupId(e.sym().getTri(), newGroupId);
+						mesh.setGroupId(e.next().sym().getTri(), newGroupId);
+						mesh.setGroupId(e.prev().sym().getTri(), newGroupId);
 					}
 				}
 			}
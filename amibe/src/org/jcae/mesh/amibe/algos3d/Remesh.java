@@ -24,7 +24,7 @@ import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Vertex;
-import org.jcae.mesh.amibe.metrics.KdTree;
+import org.jcae.mesh.amibe.metrics.ConcurrentKdTree;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
 import org.jcae.mesh.amibe.ds.HalfEdge;
 import org.jcae.mesh.amibe.metrics.EuclidianMetric3D;
@@ -42,6 +42,7 @@ import gnu.trove.set.hash.TIntHashSet;
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.iterator.TIntIntIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.iterator.TIntObjectIterator;
 import java.io.IOException;
 import java.util.Map;
 import java.util.HashMap;
@@ -57,6 +58,7 @@ import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.projection.MapMeshLiaison;
 import org.jcae.mesh.amibe.util.HashFactory;
+import org.jcae.mesh.amibe.util.ParallelLoop;
 import org.jcae.mesh.xmldata.Amibe2VTK;
 
 /**
@@ -69,11 +71,13 @@ public class Remesh
 {
 	private final static Logger LOGGER = Logger.getLogger(Remesh.class.getName());
 	private static final double ONE_PLUS_SQRT2 = 1.0 + Math.sqrt(2.0);
+	// Number of triangles whose candidates are computed together
+	private static final int BLOCK_SIZE = 16384;
 	private int progressBarStatus = 10000;
 	private final Mesh mesh;
 	private final MeshLiaison liaison;
 	// Octree to find nearest Vertex in current mesh
-	private TIntObjectHashMap<KdTree<Vertex>> kdTrees;
+	private TIntObjectHashMap<ConcurrentKdTree<Vertex>> kdTrees;
 	private final double minlen;
 	private final double maxlen;
 	private int nrFailedInterpolations;
@@ -92,9 +96,6 @@ public class Remesh
 	private double minCosAfterSwap = -2;
 	// Number of nodes which are too near from existing vertices
 	private int tooNearNodes = 0;
-	private final List<Vertex> triNodes = new ArrayList<Vertex>();
-	private final List<EuclidianMetric3D> triMetrics = new ArrayList<EuclidianMetric3D>();
-	private final List<Vertex> triNeighbor = new ArrayList<Vertex>();
 	private final Map <Triangle, Collection<Vertex>> verticesToDispatch =
 		HashFactory.<Triangle, Collection<Vertex>>createMap();
 	//  Map to keep track of all groups near a vertex
@@ -114,6 +115,29 @@ public class Remesh
 	// Number of nodes which were skipped
 	private int skippedNodes = 0;
 
+	/**
+	 * Candidate vertices found on edges of a triangle.  Candidates are
+	 * computed concurrently, they are then checked and inserted into the
+	 * mesh by a single thread.
+	 */
+	private static final class Candidates
+	{
+		private final Triangle triangle;
+		private final List<Vertex> nodes = new ArrayList<Vertex>();
+		private final List<EuclidianMetric3D> metrics = new ArrayList<EuclidianMetric3D>();
+		private final List<Vertex> neighbors = new ArrayList<Vertex>();
+		private final List<int[]> groups = new ArrayList<int[]>();
+		private final List<Vertex> boundaryNodes = new ArrayList<Vertex>();
+		// Maximal number of nodes on an edge of this triangle
+		private int maxNodes;
+		private int nrFailedInterpolations;
+
+		private Candidates(Triangle t)
+		{
+			triangle = t;
+		}
+	}
+
 	/**
 	 * Creates a <code>Remesh</code> instance.
 	 *
@@ -231,7 +255,8 @@ public class Remesh
 
 		TIntIntHashMap numberOfTriangles = computeNumberOfTriangles(mesh.getTriangles());
 		liaison.initBgMap(numberOfTriangles, nodeset);
-		kdTrees = createKdTree(nodeset, mesh.getTriangles(), numberOfTriangles);
+		kdTrees = createKdTree(nodeset, mesh.getTriangles(), numberOfTriangles,
+			mesh.getMeshParameters().getThreads());
 	}
 
 	/** Return the number of triangles in each groups */
@@ -252,11 +277,12 @@ public class Remesh
 	 * @param nodeset the nodes to add to the kdTree
 	 * @param numberOfTriangles a map containing the number of triangles for
 	 * each groups, to speed hash table allocations
+	 * @param threads number of threads used to build kd-trees
 	 * @return a map whose keys are group ids and values a KdTree
 	 */
-	private static TIntObjectHashMap<KdTree<Vertex>> createKdTree(
+	private static TIntObjectHashMap<ConcurrentKdTree<Vertex>> createKdTree(
 		Collection<Vertex> nodeset, Iterable<Triangle> triangles,
-		TIntIntHashMap numberOfTriangles)
+		TIntIntHashMap numberOfTriangles, int threads)
 	{
 		// Compute bounding box
 		double [] bbox = new double[6];
@@ -272,43 +298,46 @@ public class Remesh
 			bbox[5] = Math.max(bbox[5], v.getZ());
 		}
 		LOGGER.fine("Bounding box: lower("+bbox[0]+", "+bbox[1]+", "+bbox[2]+"), upper("+bbox[3]+", "+bbox[4]+", "+bbox[5]+")");
-		TIntObjectHashMap<KdTree<Vertex>> kdTrees = new TIntObjectHashMap<KdTree<Vertex>>();
-		KdTree<Vertex> globalKdTree = new KdTree<Vertex>(bbox);
-		kdTrees.put(-1, globalKdTree);
+		// Vertices are first collected by group, kd-trees are then
+		// built in parallel; vertices are inserted in the same order
+		// as if they were added one by one.
 		TIntObjectHashMap<Set<Vertex>> seenByGroup = new TIntObjectHashMap<Set<Vertex>>(numberOfTriangles.size());
-		Set<Vertex> globalSeen = HashFactory.createSet(nodeset.size());
+		Set<Vertex> globalSeen = new LinkedHashSet<Vertex>(nodeset.size());
 		seenByGroup.put(-1, globalSeen);
 		for (TIntIntIterator it = numberOfTriangles.iterator(); it.hasNext(); )
 		{
 			it.advance();
-			kdTrees.put(it.key(), new KdTree<Vertex>(bbox));
-			seenByGroup.put(it.key(), HashFactory.<Vertex>createSet(it.value() / 2));
+			seenByGroup.put(it.key(), new LinkedHashSet<Vertex>(it.value() / 2));
 		}
 		
 		for (Triangle f : triangles)
 		{
 			if (f.hasAttributes(AbstractHalfEdge.OUTER))
 					continue;
-			int group = f.getGroupId();
-			KdTree<Vertex> kdTree = kdTrees.get(group);
+			Set<Vertex> seen = seenByGroup.get(f.getGroupId());
 			for (int i = 0; i < 3; ++i)
 			{
 				Vertex v = f.getV(i);
-				Set<Vertex> seen = seenByGroup.get(group);
-				if (seen.contains(v))
-					continue;
-				seen.add(v);
-				kdTree.add(v);
-				if (globalSeen.contains(v))
-					continue;
-				globalSeen.add(v);
-				globalKdTree.add(v);
+				if (seen.add(v))
+					globalSeen.add(v);
 			}
 		}
-		for (TIntIntIterator it = numberOfTriangles.iterator(); it.hasNext(); )
+		TIntObjectHashMap<ConcurrentKdTree<Vertex>> kdTrees = new TIntObjectHashMap<ConcurrentKdTree<Vertex>>();
+		ParallelLoop loop = new ParallelLoop(threads, 1024);
+		try
 		{
-			it.advance();
-			seenByGroup.get(it.key()).clear();
+			for (TIntObjectIterator<Set<Vertex>> it = seenByGroup.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				ConcurrentKdTree<Vertex> kdTree = new ConcurrentKdTree<Vertex>(bbox);
+				kdTree.addAll(it.value(), loop);
+				it.value().clear();
+				kdTrees.put(it.key(), kdTree);
+			}
+		}
+		finally
+		{
+			loop.shutdown();
 		}
 		seenByGroup.clear();
 		return kdTrees;
@@ -429,6 +458,14 @@ public class Remesh
 		}
 	}
 
+	/**
+	 * Inserts vertices until all edges have the target length.  When
+	 * {@link org.jcae.mesh.amibe.ds.MeshParameters#getThreads} is larger
+	 * than 1, candidate vertices are computed concurrently, but they
+	 * are checked and inserted by the calling thread because
+	 * {@link Mesh}, {@link MeshLiaison} and the maps used during
+	 * insertion are not thread-safe.
+	 */
 	public final Remesh compute()
 	{
 		long startTime = System.nanoTime();
@@ -454,8 +491,12 @@ public class Remesh
 		//   F. Go to A if at least one node had been inserted
 
 		int nrIter = 0;
-		AbstractHalfEdge h = null;
-		AbstractHalfEdge sym = null;
+		// Candidates are computed concurrently, except when they are
+		// projected because MeshLiaison.project is not thread-safe
+		ParallelLoop loop = new ParallelLoop(project ? 1 : mesh.getMeshParameters().getThreads(), 64);
+		final List<Triangle> block = new ArrayList<Triangle>(BLOCK_SIZE);
+		final int[] edgeMasks = new int[BLOCK_SIZE];
+		final Candidates[] candidates = new Candidates[BLOCK_SIZE];
 
 		updateCurrentScale();
 		resetMarkedTags();
@@ -469,133 +510,141 @@ public class Remesh
 		// during next iterations.
 
 		boolean reversed = true;
-		while (true)
+		try
 		{
-			nrIter++;
-			reversed = !reversed;
-			// Maximal number of nodes which are inserted on an edge
-			int maxNodes = 0;
-			nodes.clear();
-			bgTriangles.clear();
-			groups.clear();
-			surroundingTriangle.clear();
-			mapTriangleVertices.clear();
-			boundaryNodes.clear();
-			skippedNodes = 0;
-			LOGGER.fine("Check all edges");
-			//   Step A. Iterate over all triangles
-			for(Triangle t : mesh.getTriangles())
+			while (true)
 			{
-				if (t.hasAttributes(AbstractHalfEdge.OUTER))
-					continue;
-				h = t.getAbstractHalfEdge(h);
-				sym = t.getAbstractHalfEdge(sym);
-				triNodes.clear();
-				triMetrics.clear();
-				triNeighbor.clear();
-				// Step B. Iterate over its edges which had not been scanned yet
-				int nrTriNodes = 0;
-				for (int i = 0; i < 3; i++)
+				nrIter++;
+				reversed = !reversed;
+				// Maximal number of nodes which are inserted on an edge
+				int maxNodes = 0;
+				nodes.clear();
+				bgTriangles.clear();
+				groups.clear();
+				surroundingTriangle.clear();
+				mapTriangleVertices.clear();
+				boundaryNodes.clear();
+				skippedNodes = 0;
+				LOGGER.fine("Check all edges");
+				//   Step A. Iterate over all triangles.  Triangles are
+				//   processed by blocks, candidates of a block are computed
+				//   concurrently and are then checked in the same order as
+				//   if they had been computed one by one.
+				final boolean rev = reversed;
+				for(Iterator<Triangle> itt = mesh.getTriangles().iterator(); itt.hasNext(); )
 				{
-					h = h.next();
-					if (h.hasAttributes(AbstractHalfEdge.MARKED))
+					block.clear();
+					while (itt.hasNext() && block.size() < BLOCK_SIZE)
 					{
-						// This edge has already been checked and cannot be split
-						continue;
-					}
-
-					// Tag symmetric edge to process edges only once
-					if (!h.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
-					{
-						sym = h.sym(sym);
-						sym.setAttributes(AbstractHalfEdge.MARKED);
-					}
-					else
-					{
-						for (Iterator<AbstractHalfEdge> it = h.fanIterator(); it.hasNext(); )
+						Triangle t = itt.next();
+						if (t.hasAttributes(AbstractHalfEdge.OUTER))
+							continue;
+						// Step B. Find its edges which had not been scanned yet
+						int mask = getEdgesToCheck(t);
+						if (mask != 0)
 						{
-							AbstractHalfEdge f = it.next();
-							f.setAttributes(AbstractHalfEdge.MARKED);
-							f.sym().setAttributes(AbstractHalfEdge.MARKED);
+							edgeMasks[block.size()] = mask;
+							block.add(t);
 						}
 					}
-
 					// Step C. Compute nodes which would be at the right distance
-					//         and store them into a bag (triNodes).
-					int nrNodes = collectCandidatesOnEdge(h, reversed);
-					if (nrNodes > nrTriNodes)
+					//         and store them into a bag.
+					loop.execute(block.size(), new ParallelLoop.Body() {
+						public void run(int start, int end)
+						{
+							for (int i = start; i < end; i++)
+								candidates[i] = collectCandidates(block.get(i), edgeMasks[i], rev);
+						}
+					});
+					for (int i = 0; i < block.size(); i++)
 					{
-						nrTriNodes = nrNodes;
+						Candidates c = candidates[i];
+						candidates[i] = null;
+						nrFailedInterpolations += c.nrFailedInterpolations;
+						boundaryNodes.addAll(c.boundaryNodes);
+						for (int j = 0; j < c.nodes.size(); j++)
+						{
+							assert !groups.containsKey(c.nodes.get(j));
+							groups.put(c.nodes.get(j), c.groups.get(j));
+						}
+						// Number of nodes which are inserted on edges of this triangle
+						int nrTriNodes = c.maxNodes;
+						if (nrTriNodes > maxNodes)
+							maxNodes = nrTriNodes;
+						// Step D. Iterate randomly over this bag and keep only vertices
+						//         which are not too near of an existing vertex; these valid
+						//         candidate points are inserted into the 'nodes' list.
+						if (!c.nodes.isEmpty())
+						{
+							//  Process in pseudo-random order
+							int prime = PrimeFinder.nextPrime(nrTriNodes);
+							int imax = c.nodes.size();
+							while (imax % prime == 0)
+								prime = PrimeFinder.nextPrime(prime+1);
+							if (prime >= imax)
+								prime = 1;
+							Collection<Vertex> newVertices = checkDistanceCandidates(c, prime);
+							if (!newVertices.isEmpty())
+								mapTriangleVertices.put(c.triangle, newVertices);
+						}
 					}
-					edgesCheckedDuringIteration++;
 				}
-				// Number of nodes which are inserted on edges of this triangle
-				if (nrTriNodes > maxNodes)
-					maxNodes = nrTriNodes;
-				// Step D. Iterate randomly over this bag and keep only vertices
-				//         which are not too near of an existing vertex; these valid
-			        //         candidate points are inserted into the 'nodes' list.
-				if (!triNodes.isEmpty())
+				if (nodes.isEmpty())
 				{
-					//  Process in pseudo-random order
-					int prime = PrimeFinder.nextPrime(nrTriNodes);
-					int imax = triNodes.size();
-					while (imax % prime == 0)
-						prime = PrimeFinder.nextPrime(prime+1);
-					if (prime >= imax)
-						prime = 1;
-					Collection<Vertex> newVertices = checkDistanceCandidates(t, prime);
-					if (!newVertices.isEmpty())
-						mapTriangleVertices.put(t, newVertices);
+					if (meshingDone())
+						break;
+					else
+						continue;
 				}
-			}
-			if (nodes.isEmpty())
-			{
-				if (meshingDone())
-					break;
-				else
-					continue;
-			}
 
-			// Step E. Iterate over the 'nodes' list and insert all vertices.
-			//         We know that those vertices are not near an existing vertex,
-			//         but we take care to not introduce inverted triangles here.
-			for (Vertex v : nodes)
-			{
+				// Step E. Iterate over the 'nodes' list and insert all vertices.
+				//         We know that those vertices are not near an existing vertex,
+				//         but we take care to not introduce inverted triangles here.
 				//  These vertices are not bound to any triangles, so
 				//  they must be removed, otherwise getSurroundingOTriangle
 				//  may return a null pointer.
-				for (int group : groups.get(v))
+				loop.execute(nodes.size(), new ParallelLoop.Body() {
+					public void run(int start, int end)
+					{
+						for (int i = start; i < end; i++)
+						{
+							Vertex v = nodes.get(i);
+							for (int group : groups.get(v))
+								kdTrees.get(group).remove(v);
+						}
+					}
+				});
+				insertNodes(maxNodes, true, 0, 0);
+				afterIterationHook();
+				assert mesh.isValid();
+				if (hasRidges)
 				{
-					kdTrees.get(group).remove(v);
+					assert mesh.checkNoInvertedTriangles();
 				}
-			}
-			insertNodes(maxNodes, true, 0, 0);
-			afterIterationHook();
-			assert mesh.isValid();
-			if (hasRidges)
-			{
-				assert mesh.checkNoInvertedTriangles();
-			}
-			assert mesh.checkNoDegeneratedTriangles();
-			assert surroundingTriangle.isEmpty() : "surroundingTriangle still contains "+surroundingTriangle.size()+" vertices";
+				assert mesh.checkNoDegeneratedTriangles();
+				assert surroundingTriangle.isEmpty() : "surroundingTriangle still contains "+surroundingTriangle.size()+" vertices";
 
-			if (LOGGER.isLoggable(Level.FINE))
-			{
-				LOGGER.fine("Mesh now contains "+mesh.getTriangles().size()+" triangles");
-				if (edgesCheckedDuringIteration > 0)
-					LOGGER.fine(edgesCheckedDuringIteration+" edges checked");
-				if (tooNearNodes > 0)
-					LOGGER.fine(tooNearNodes+" nodes are too near from existing vertices and cannot be inserted");
-				if (skippedNodes > 0)
-					LOGGER.fine(skippedNodes+" nodes are skipped");
-			}
-			if (nodes.size() == skippedNodes)
-			{
-				if (meshingDone())
-					break;
+				if (LOGGER.isLoggable(Level.FINE))
+				{
+					LOGGER.fine("Mesh now contains "+mesh.getTriangles().size()+" triangles");
+					if (edgesCheckedDuringIteration > 0)
+						LOGGER.fine(edgesCheckedDuringIteration+" edges checked");
+					if (tooNearNodes > 0)
+						LOGGER.fine(tooNearNodes+" nodes are too near from existing vertices and cannot be inserted");
+					if (skippedNodes > 0)
+						LOGGER.fine(skippedNodes+" nodes are skipped");
+				}
+				if (nodes.size() == skippedNodes)
+				{
+					if (meshingDone())
+						break;
+				}
 			}
 		}
+		finally
+		{
+			loop.shutdown();
+		}
 		LOGGER.info("Number of inserted vertices: "+processed);
 		LOGGER.fine("Number of iterations to insert all nodes: "+nrIter);
 		if (nrFailedInterpolations > 0)
@@ -615,6 +664,67 @@ public class Remesh
 		return this;
 	}
 
+	/**
+	 * Tag edges of a triangle so that they are checked only once.
+	 * @return a bit mask of edges to check, bit i is set if edge i
+	 * has to be checked
+	 */
+	private int getEdgesToCheck(Triangle t)
+	{
+		int mask = 0;
+		AbstractHalfEdge h = t.getAbstractHalfEdge();
+		AbstractHalfEdge sym = t.getAbstractHalfEdge();
+		for (int i = 0; i < 3; i++)
+		{
+			h = h.next();
+			if (h.hasAttributes(AbstractHalfEdge.MARKED))
+			{
+				// This edge has already been checked and cannot be split
+				continue;
+			}
+
+			// Tag symmetric edge to process edges only once
+			if (!h.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
+			{
+				sym = h.sym(sym);
+				sym.setAttributes(AbstractHalfEdge.MARKED);
+			}
+			else
+			{
+				for (Iterator<AbstractHalfEdge> it = h.fanIterator(); it.hasNext(); )
+				{
+					AbstractHalfEdge f = it.next();
+					f.setAttributes(AbstractHalfEdge.MARKED);
+					f.sym().setAttributes(AbstractHalfEdge.MARKED);
+				}
+			}
+			mask |= 1 << i;
+			edgesCheckedDuringIteration++;
+		}
+		return mask;
+	}
+
+	/**
+	 * Compute candidate vertices on edges of a triangle.  This method is
+	 * called concurrently on distinct triangles, it only modifies the
+	 * MARKED flag of edges given by <code>mask</code>.
+	 */
+	private Candidates collectCandidates(Triangle t, int mask, boolean reversed)
+	{
+		Candidates c = new Candidates(t);
+		AbstractHalfEdge h = t.getAbstractHalfEdge(null);
+		for (int i = 0; i < 3; i++)
+		{
+			h = h.next();
+			if ((mask & (1 << i)) == 0)
+				continue;
+			int nrNodes = collectCandidatesOnEdge(h, reversed, c);
+			if (nrNodes > c.maxNodes)
+				c.maxNodes = nrNodes;
+		}
+		return c;
+	}
+
 	/**
 	 *
 	 * @param maxNodes maximum number by triangles
@@ -809,7 +919,7 @@ public class Remesh
 		return false;
 	}
 
-	private int collectCandidatesOnEdge(AbstractHalfEdge ot, boolean reversed)
+	private int collectCandidatesOnEdge(AbstractHalfEdge ot, boolean reversed, Candidates out)
 	{
 		int nrNodes = 0;
 		int group = ot.getTri().getGroupId();
@@ -911,18 +1021,18 @@ public class Remesh
 						}
 					}
 					else
-						boundaryNodes.add(last);
-					triNodes.add(last);
-					triMetrics.add(m);
+						out.boundaryNodes.add(last);
+					out.nodes.add(last);
+					out.metrics.add(m);
 					if (start.getRef() == 0 && end.getRef() != 0)
-						triNeighbor.add(start);
+						out.neighbors.add(start);
 					else if (start.getRef() != 0 && end.getRef() == 0)
-							triNeighbor.add(end);
+							out.neighbors.add(end);
 					else if (m.distance2(np, start) < m.distance2(np, end))
-						triNeighbor.add(start);
+						out.neighbors.add(start);
 					else
-						triNeighbor.add(end);
-					addGroups(ot, last);
+						out.neighbors.add(end);
+					out.groups.add(getGroups(ot));
 					nrNodes++;
 					r--;
 					break;
@@ -944,28 +1054,29 @@ public class Remesh
 			}
 			if (cnt < 0)
 			{
-				nrFailedInterpolations++;
+				out.nrFailedInterpolations++;
 				return nrNodes;
 			}
 		}
 		return nrNodes;
 	}
 
-	private Collection<Vertex> checkDistanceCandidates(Triangle t, int step)
+	private Collection<Vertex> checkDistanceCandidates(Candidates c, int step)
 	{
-		int imax = triNodes.size();
+		Triangle t = c.triangle;
+		int imax = c.nodes.size();
 		int index = imax / 2;
 		Collection<Vertex> newVertices = new ArrayList<Vertex>();
 		int group = t.getGroupId();
-		KdTree<Vertex> kdTreeGroup = kdTrees.get(group);
+		ConcurrentKdTree<Vertex> kdTreeGroup = kdTrees.get(group);
 		for (int i = 0; i < imax; i++)
 		{
-			Vertex v = triNodes.get(index);
-			EuclidianMetric3D metric = triMetrics.get(index);
+			Vertex v = c.nodes.get(index);
+			EuclidianMetric3D metric = c.metrics.get(index);
 			assert metric != null;
 			double localSize = 0.5 * metric.getUnitBallBBox()[0];
 			double localSize2 = localSize * localSize;
-			Triangle bgT = liaison.addVertex(v, triNeighbor.get(index), localSize2, group);
+			Triangle bgT = liaison.addVertex(v, c.neighbors.get(index), localSize2, group);
 			boolean validCandidate = allowNearNodes;
 			if (!validCandidate)
 			{
@@ -999,9 +1110,9 @@ public class Remesh
 		return newVertices;
 	}
 
-	private void addGroups(AbstractHalfEdge ot, Vertex v)
+	/** Return groups of the triangles around an edge */
+	private static int[] getGroups(AbstractHalfEdge ot)
 	{
-		assert !groups.containsKey(v);
 		if (!ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
 		{
 			int g1 = ot.getTri().getGroupId();
@@ -1012,19 +1123,19 @@ public class Remesh
 			}
 			if (g1 == g2 && g1 == -1)
 			{
-				groups.put(v, new int[] {-1});
+				return new int[] {-1};
 			}
-			if (g1 == g2 && g1 != -1)
+			else if (g1 == g2)
 			{
-				groups.put(v, new int[] {-1, g1});
+				return new int[] {-1, g1};
 			}
 			else if (g1 == -1 || g2 == -1)
 			{
-				groups.put(v, new int[] {g1, g2});
+				return new int[] {g1, g2};
 			}
 			else
 			{
-				groups.put(v, new int[] {-1, g1, g2});
+				return new int[] {-1, g1, g2};
 			}
 		}
 		else
@@ -1035,7 +1146,7 @@ public class Remesh
 				groupSet.add(it.next().getTri().getGroupId());
 			}
 			groupSet.add(-1);
-			groups.put(v, groupSet.toArray());
+			return groupSet.toArray();
 		}
 	}
 
@@ -113,7 +113,7 @@ public class RemoveDegeneratedTriangles extends AbstractAlgoHalfEdge
 				double sizeTarget = Double.valueOf(val).doubleValue();
 				tolerance = 1. / (sizeTarget * sizeTarget);
 			}
-			else
+			else if (!processCommonOption(key, val))
 				throw new RuntimeException("Unknown option: "+key);
 		}
 		/*
@@ -25,12 +25,16 @@ import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.projection.QuadricProjection;
 import org.jcae.mesh.amibe.projection.LocalSurfaceProjection;
+import org.jcae.mesh.amibe.util.ParallelLoop;
 import org.jcae.mesh.amibe.util.QSortedTree;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -66,6 +70,8 @@ public class SmoothNodes3D
 	private final Vertex c;
 	private final QSortedTree<Vertex> tree = new PAVLSortedTree<Vertex>();
 	private boolean refresh = false;
+	private boolean jacobi = false;
+	private int threads;
 	private int processed = 0;
 	private int notProcessed = 0;
 	private TObjectDoubleHashMap<Triangle> qualityMap;
@@ -89,13 +95,15 @@ public class SmoothNodes3D
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
 	 *        <code>iterations</code>, <code>boundaries</code>,
-	 *        <code>tolerance</code>, <code>refresh</code> and
-	 *        <code>relaxation</code>.
+	 *        <code>tolerance</code>, <code>refresh</code>,
+	 *        <code>relaxation</code>, <code>jacobi</code> and
+	 *        <code>threads</code>.
 	 */
 	public SmoothNodes3D(final Mesh m, final Map<String, String> options)
 	{
 		mesh = m;
 		c = mesh.createVertex(0.0, 0.0, 0.0);
+		threads = mesh.getMeshParameters().getThreads();
 		for (final Map.Entry<String, String> opt: options.entrySet())
 		{
 			final String key = opt.getKey();
@@ -114,6 +122,14 @@ public class SmoothNodes3D
 				checkQuality = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("relaxation"))
 				relaxation = Double.valueOf(val).doubleValue();
+			else if (key.equals("jacobi"))
+				jacobi = Boolean.valueOf(val).booleanValue();
+			else if (key.equals("threads"))
+			{
+				threads = Integer.valueOf(val).intValue();
+				if (threads <= 0)
+					threads = Runtime.getRuntime().availableProcessors();
+			}
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -126,6 +142,9 @@ public class SmoothNodes3D
 			LOGGER.fine("Relaxation: "+relaxation);
 			LOGGER.fine("Tolerance: "+tolerance);
 			LOGGER.fine("Preserve boundaries: "+preserveBoundaries);
+			LOGGER.fine("Jacobi sweeps: "+jacobi);
+			if (jacobi)
+				LOGGER.fine("Threads: "+threads);
 		}
 	}
 	
@@ -179,10 +198,22 @@ public class SmoothNodes3D
 					continue;
 				nodeProjection.put(v, qP);
 			}
-			for (int i = 0; i < nloop; i++)
+			ParallelLoop loop = jacobi ? new ParallelLoop(threads, 256) : null;
+			try
+			{
+				for (int i = 0; i < nloop; i++)
+				{
+					if (jacobi)
+						processAllNodesJacobi(loop);
+					else
+						processAllNodes();
+					postProcessIteration(mesh, i);
+				}
+			}
+			finally
 			{
-				processAllNodes();
-				postProcessIteration(mesh, i);
+				if (loop != null)
+					loop.shutdown();
 			}
 		}
 		LOGGER.info("Number of moved points: "+processed);
@@ -233,7 +264,8 @@ public class SmoothNodes3D
 					LOGGER.info("Vertices processed: "+processed);
 				if (!refresh)
 					continue;
-				assert ot != null;
+				// smoothNode moved its own copy of ot with HalfEdge
+				ot = getOriginEdge(v, ot);
 				// Update triangle quality
 				Vertex d = ot.destination();
 				do
@@ -277,55 +309,125 @@ public class SmoothNodes3D
 		// Can be overridden
 	}
 	
-	private boolean smoothNode(Vertex n, AbstractHalfEdge ot, double quality)
+	/*
+	 * Moves all nodes using a modified Laplacian smoothing, like
+	 * processAllNodes.  New locations are computed concurrently from
+	 * current locations, and then nodes are moved in increasing order of
+	 * quality if no triangle gets inverted.
+	 */
+	private void processAllNodesJacobi(ParallelLoop loop)
+	{
+ 		AbstractHalfEdge ot = null;
+		// Compute vertex quality
+		tree.clear();
+		for (Vertex v: nodeset)
+		{
+			if (!v.isManifold() || !v.isMutable() || v.getRef() > 0)
+				continue;
+			if (v.getRef() != 0 && preserveBoundaries)
+			{
+				notProcessed++;
+				continue;
+			}
+			ot = getOriginEdge(v, ot);
+			double qv = vertexQuality(ot);
+			if (qv <= tolerance)
+				tree.insert(v, qv);
+		}
+		final List<Vertex> nodes = new ArrayList<Vertex>(tree.size());
+		final double[] quality = new double[tree.size()];
+		for (Iterator<QSortedTree.Node<Vertex>> itt = tree.iterator(); itt.hasNext(); )
+		{
+			QSortedTree.Node<Vertex> q = itt.next();
+			quality[nodes.size()] = q.getValue();
+			nodes.add(q.getData());
+		}
+		tree.clear();
+		// Compute new locations, centroids are needed to check normals
+		final Location[] centroids = new Location[nodes.size()];
+		final Location[] targets = new Location[nodes.size()];
+		loop.execute(nodes.size(), new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				AbstractHalfEdge ot = null;
+				for (int i = start; i < end; i++)
+				{
+					Vertex n = nodes.get(i);
+					LocalSurfaceProjection tr = nodeProjection.get(n);
+					if (tr == null || !tr.canProject())
+						continue;
+					ot = getOriginEdge(n, ot);
+					centroids[i] = new Location();
+					computeCentroid(n, ot, centroids[i]);
+					targets[i] = new Location(centroids[i].getX(),
+						centroids[i].getY(), centroids[i].getZ());
+					tr.project(targets[i]);
+				}
+			}
+		});
+		// Now move nodes
+		for (int i = 0; i < targets.length; i++)
+		{
+			if (targets[i] == null)
+			{
+				LOGGER.finer("Point cannot be projected into surface");
+				notProcessed++;
+				continue;
+			}
+			Vertex n = nodes.get(i);
+			ot = getOriginEdge(n, ot);
+			if (!mesh.checkNewRingNormals(ot, centroids[i]))
+			{
+				LOGGER.finer("Point not moved, some triangles would become inverted");
+				notProcessed++;
+				continue;
+			}
+			double saveX = n.getX();
+			double saveY = n.getY();
+			double saveZ = n.getZ();
+			n.moveTo(targets[i]);
+			if (checkQuality && vertexQuality(ot) < quality[i])
+			{
+				n.moveTo(saveX, saveY, saveZ);
+				LOGGER.finer("Point not moved, quality decreases");
+				notProcessed++;
+				continue;
+			}
+			processed++;
+			if (processed > 0 && (processed % progressBarStatus) == 0)
+				LOGGER.info("Vertices processed: "+processed);
+			if (!refresh)
+				continue;
+			// Update triangle quality
+			Vertex d = ot.destination();
+			do
+			{
+				ot = ot.nextOriginLoop();
+				if (ot.hasAttributes(AbstractHalfEdge.OUTER))
+					continue;
+				qualityMap.put(ot.getTri(), triangleQuality(ot));
+			}
+			while (ot.destination() != d);
+		}
+	}
+
+	private static AbstractHalfEdge getOriginEdge(Vertex n, AbstractHalfEdge ot)
 	{
 		Triangle f = (Triangle) n.getLink();
- 		ot = f.getAbstractHalfEdge(ot);
+		ot = f.getAbstractHalfEdge(ot);
 		if (ot.destination() == n)
 			ot = ot.next();
 		else if (ot.apex() == n)
 			ot = ot.prev();
 		assert ot.origin() == n;
-		
-		//  Compute 3D coordinates centroid
-		int nn = 0;
+		return ot;
+	}
+
+	private boolean smoothNode(Vertex n, AbstractHalfEdge ot, double quality)
+	{
+		ot = getOriginEdge(n, ot);
 		c.moveTo(0, 0, 0);
-		assert n.isManifold();
-		Vertex d = ot.destination();
-		do
-		{
-			ot = ot.nextOriginLoop();
-			Vertex v = ot.destination();
-			if (v != mesh.outerVertex)
-			{
-				nn++;
-				double l = n.distance3D(v);
-				if (sizeTarget > 0.0)
-				{
-					if (l > 1.0)
-					{
-						// Find the point on this edge which has the
-						// desired length
-						l = sizeTarget / l;
-						c.moveTo(
-							c.getX() + v.getX() + l * (n.getX() - v.getX()),
-							c.getY() + v.getY() + l * (n.getY() - v.getY()),
-							c.getZ() + v.getZ() + l * (n.getZ() - v.getZ()));
-					}
-					else
-						c.add(v);
-				}
-				else
-					c.add(v);
-			}
-		}
-		while (ot.destination() != d);
-		assert (nn > 0);
-		c.scale(1.0/nn);
-		c.moveTo(
-			n.getX() + relaxation * (c.getX() - n.getX()),
-			n.getY() + relaxation * (c.getY() - n.getY()),
-			n.getZ() + relaxation * (c.getZ() - n.getZ()));
+		computeCentroid(n, ot, c);
 		if (!mesh.checkNewRingNormals(ot, c))
 		{
 			LOGGER.finer("Point not moved, some triangles would become inverted");
@@ -356,6 +458,51 @@ public class SmoothNodes3D
 		return true;
 	}
 	
+	/*
+	 * Computes the relaxed centroid of n neighbors.  This method only
+	 * reads mesh, it can be called concurrently.
+	 */
+	private void computeCentroid(Vertex n, AbstractHalfEdge ot, Location centroid)
+	{
+		int nn = 0;
+		assert n.isManifold();
+		Vertex d = ot.destination();
+		do
+		{
+			ot = ot.nextOriginLoop();
+			Vertex v = ot.destination();
+			if (v != mesh.outerVertex)
+			{
+				nn++;
+				double l = n.distance3D(v);
+				if (sizeTarget > 0.0)
+				{
+					if (l > 1.0)
+					{
+						// Find the point on this edge which has the
+						// desired length
+						l = sizeTarget / l;
+						centroid.moveTo(
+							centroid.getX() + v.getX() + l * (n.getX() - v.getX()),
+							centroid.getY() + v.getY() + l * (n.getY() - v.getY()),
+							centroid.getZ() + v.getZ() + l * (n.getZ() - v.getZ()));
+					}
+					else
+						centroid.add(v);
+				}
+				else
+					centroid.add(v);
+			}
+		}
+		while (ot.destination() != d);
+		assert (nn > 0);
+		centroid.scale(1.0/nn);
+		centroid.moveTo(
+			n.getX() + relaxation * (centroid.getX() - n.getX()),
+			n.getY() + relaxation * (centroid.getY() - n.getY()),
+			n.getZ() + relaxation * (centroid.getZ() - n.getZ()));
+	}
+
 	private double triangleQuality(AbstractHalfEdge edge)
 	{
 		Triangle f = edge.getTri();
@@ -394,6 +541,8 @@ public class SmoothNodes3D
 		System.out.println(" --tolerance <t>    Consider only nodes with quality lower than <t>");
 		System.out.println(" --relaxation <r>   Set relaxation factor");
 		System.out.println(" --refresh          Update vertex quality before each iteration");
+		System.out.println(" --jacobi           Compute new locations of all nodes before moving them");
+		System.out.println(" --threads <n>      Number of threads used by --jacobi");
 		System.exit(rc);
 	}
 
@@ -415,7 +564,7 @@ public class SmoothNodes3D
 		{
 			if (args[argc].length() < 2 || args[argc].charAt(0) != '-' || args[argc].charAt(1) != '-')
 				break;
-			if (args[argc].equals("--refresh") || args[argc].equals("--boundaries"))
+			if (args[argc].equals("--refresh") || args[argc].equals("--boundaries") || args[argc].equals("--jacobi"))
 			{
 				opts.put(args[argc].substring(2), "true");
 				argc++;
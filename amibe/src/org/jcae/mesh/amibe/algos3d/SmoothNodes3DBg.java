@@ -25,10 +25,13 @@ import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
+import org.jcae.mesh.amibe.util.ParallelLoop;
 import org.jcae.mesh.amibe.util.QSortedTree;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
@@ -68,6 +71,8 @@ public class SmoothNodes3DBg
 	private double relaxation = 0.6;
 	private final QSortedTree<Vertex> tree = new PAVLSortedTree<Vertex>();
 	private boolean refresh = false;
+	private boolean jacobi = false;
+	private int threads;
 	int processed = 0;
 	private int notProcessed = 0;
 	private TObjectDoubleHashMap<Triangle> qualityMap;
@@ -92,8 +97,9 @@ public class SmoothNodes3DBg
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
 	 *        <code>iterations</code>, <code>boundaries</code>,
-	 *        <code>tolerance</code>, <code>refresh</code> and
-	 *        <code>relaxation</code>.
+	 *        <code>tolerance</code>, <code>refresh</code>,
+	 *        <code>relaxation</code>, <code>jacobi</code> and
+	 *        <code>threads</code>.
 	 */
 	@Deprecated
 	public SmoothNodes3DBg(final Mesh bgMesh, final Map<String, String> options)
@@ -106,6 +112,7 @@ public class SmoothNodes3DBg
 		liaison = meshLiaison;
 		mesh = liaison.getMesh();
 		metrics = new MetricSupport(mesh, options);
+		threads = mesh.getMeshParameters().getThreads();
 		for (final Map.Entry<String, String> opt: options.entrySet())
 		{
 			final String key = opt.getKey();
@@ -122,6 +129,14 @@ public class SmoothNodes3DBg
 				checkQuality = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("relaxation"))
 				relaxation = Double.valueOf(val).doubleValue();
+			else if (key.equals("jacobi"))
+				jacobi = Boolean.valueOf(val).booleanValue();
+			else if (key.equals("threads"))
+			{
+				threads = Integer.valueOf(val).intValue();
+				if (threads <= 0)
+					threads = Runtime.getRuntime().availableProcessors();
+			}
 			else if (key.equals("coplanarity"))
 			{
 				minCos = Double.parseDouble(val);
@@ -139,6 +154,9 @@ public class SmoothNodes3DBg
 			LOGGER.fine("Relaxation: "+relaxation);
 			LOGGER.fine("Tolerance: "+tolerance);
 			LOGGER.fine("Preserve boundaries: "+preserveBoundaries);
+			LOGGER.fine("Jacobi sweeps: "+jacobi);
+			if (jacobi)
+				LOGGER.fine("Threads: "+threads);
 		}
 	}
 
@@ -223,10 +241,25 @@ public class SmoothNodes3DBg
 					immutableNodes.add(v);
 			}
 
-			for (int i = 0; i < nloop; i++)
+			// Projections can be computed concurrently only if liaison
+			// allows it
+			ParallelLoop loop = jacobi ? new ParallelLoop(
+					liaison.isThreadSafe() ? threads : 1, 256) : null;
+			try
+			{
+				for (int i = 0; i < nloop; i++)
+				{
+					if (jacobi)
+						processAllNodesJacobi(loop);
+					else
+						processAllNodes();
+					postProcessIteration(mesh, i);
+				}
+			}
+			finally
 			{
-				processAllNodes();
-				postProcessIteration(mesh, i);
+				if (loop != null)
+					loop.shutdown();
 			}
 		}
 		LOGGER.info("Number of moved points: "+processed);
@@ -287,7 +320,8 @@ public class SmoothNodes3DBg
 					LOGGER.info("Vertices processed: "+processed);
 				if (!refresh)
 					continue;
-				assert ot != null;
+				// smoothNode moved its own copy of ot with HalfEdge
+				ot = getOriginEdge(v, ot);
 				// Update triangle quality
 				Vertex d = ot.destination();
 				do
@@ -326,19 +360,126 @@ public class SmoothNodes3DBg
 		}
 	}
 	
-	private boolean smoothNode(Vertex n, AbstractHalfEdge ot, double quality)
+	/*
+	 * Moves all nodes using a modified Laplacian smoothing, like
+	 * processAllNodes.  New locations are computed concurrently from
+	 * current locations, and then nodes are moved in increasing order of
+	 * quality if no triangle gets inverted.
+	 */
+	private void processAllNodesJacobi(ParallelLoop loop)
+	{
+ 		AbstractHalfEdge ot = null;
+		// Compute vertex quality
+		tree.clear();
+		for (Vertex v: nodeset)
+		{
+			if (immutableNodes.contains(v))
+			{
+				notProcessed++;
+				continue;
+			}
+			ot = getOriginEdge(v, ot);
+			double qv = vertexQuality(ot);
+			if (qv <= tolerance)
+				tree.insert(v, qv);
+		}
+		final List<Vertex> nodes = new ArrayList<Vertex>(tree.size());
+		final double[] quality = new double[tree.size()];
+		for (Iterator<QSortedTree.Node<Vertex>> itt = tree.iterator(); itt.hasNext(); )
+		{
+			QSortedTree.Node<Vertex> q = itt.next();
+			quality[nodes.size()] = q.getValue();
+			nodes.add(q.getData());
+		}
+		tree.clear();
+		// Compute new locations
+		final boolean project = liaison.isThreadSafe();
+		final Location[] targets = new Location[nodes.size()];
+		loop.execute(nodes.size(), new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				AbstractHalfEdge ot = null;
+				for (int i = start; i < end; i++)
+				{
+					Vertex n = nodes.get(i);
+					ot = getOriginEdge(n, ot);
+					Location centroid3 = new Location();
+					computeCentroid(n, ot, centroid3);
+					if (!project)
+						targets[i] = centroid3;
+					else
+					{
+						int group = ((Triangle) n.getLink()).getGroupId();
+						Location target = new Location();
+						if (liaison.project(n, centroid3, target, group))
+							targets[i] = target;
+					}
+				}
+			}
+		});
+		// Now move nodes
+		for (int i = 0; i < targets.length; i++)
+		{
+			if (targets[i] == null)
+			{
+				LOGGER.finer("Point not moved, projection failed");
+				notProcessed++;
+				continue;
+			}
+			Vertex n = nodes.get(i);
+			ot = getOriginEdge(n, ot);
+			boolean moved = project ? moveNode(n, ot, targets[i], quality[i]) :
+				projectAndMoveNode(n, ot, targets[i], quality[i]);
+			if (!moved)
+			{
+				notProcessed++;
+				continue;
+			}
+			processed++;
+			if (processed > 0 && (processed % progressBarStatus) == 0)
+				LOGGER.info("Vertices processed: "+processed);
+			if (!refresh)
+				continue;
+			// Update triangle quality
+			Vertex d = ot.destination();
+			do
+			{
+				ot = ot.nextOriginLoop();
+				if (ot.hasAttributes(AbstractHalfEdge.OUTER))
+					continue;
+				qualityMap.put(ot.getTri(), triangleQuality(ot));
+			}
+			while (ot.destination() != d);
+		}
+	}
+
+	private static AbstractHalfEdge getOriginEdge(Vertex n, AbstractHalfEdge ot)
 	{
 		Triangle f = (Triangle) n.getLink();
-		int group = f.getGroupId();
- 		ot = f.getAbstractHalfEdge(ot);
+		ot = f.getAbstractHalfEdge(ot);
 		if (ot.destination() == n)
 			ot = ot.next();
 		else if (ot.apex() == n)
 			ot = ot.prev();
 		assert ot.origin() == n;
-		//  Compute 3D coordinates centroid
-		int nn = 0;
+		return ot;
+	}
+
+	private boolean smoothNode(Vertex n, AbstractHalfEdge ot, double quality)
+	{
+		ot = getOriginEdge(n, ot);
 		Location centroid3 = new Location();
+		computeCentroid(n, ot, centroid3);
+		return projectAndMoveNode(n, ot, centroid3, quality);
+	}
+
+	/*
+	 * Computes the relaxed centroid of n neighbors.  This method only
+	 * reads mesh and metrics, it can be called concurrently.
+	 */
+	private void computeCentroid(Vertex n, AbstractHalfEdge ot, Location centroid3)
+	{
+		int nn = 0;
 		assert n.isManifold();
 		Vertex d = ot.destination();
 		do
@@ -372,6 +513,11 @@ public class SmoothNodes3DBg
 			n.getX() + relaxation * (centroid3.getX() - n.getX()),
 			n.getY() + relaxation * (centroid3.getY() - n.getY()),
 			n.getZ() + relaxation * (centroid3.getZ() - n.getZ()));
+	}
+
+	private boolean projectAndMoveNode(Vertex n, AbstractHalfEdge ot, Location centroid3, double quality)
+	{
+		int group = ((Triangle) n.getLink()).getGroupId();
 		double saveX = n.getX();
 		double saveY = n.getY();
 		double saveZ = n.getZ();
@@ -385,13 +531,26 @@ public class SmoothNodes3DBg
 		// modify liaison, this is not
 		centroid3.moveTo(n);
 		n.moveTo(saveX, saveY, saveZ);
-		if (!mesh.canMoveOrigin(ot, centroid3))
+		boolean moved = moveNode(n, ot, centroid3, quality);
+		liaison.backupRestore(n, !moved, group);
+		return moved;
+	}
+
+	/*
+	 * Moves n to an already projected location if no triangle gets
+	 * inverted and quality does not decrease.
+	 */
+	private boolean moveNode(Vertex n, AbstractHalfEdge ot, Location target, double quality)
+	{
+		if (!mesh.canMoveOrigin(ot, target))
 		{
-			liaison.backupRestore(n, true, group);
 			LOGGER.finer("Point not moved, some triangles would become inverted");
 			return false;
 		}
-		n.moveTo(centroid3);
+		double saveX = n.getX();
+		double saveY = n.getY();
+		double saveZ = n.getZ();
+		n.moveTo(target);
 
 		if (checkQuality)
 		{
@@ -399,14 +558,12 @@ public class SmoothNodes3DBg
 			if (vertexQuality(ot) < quality)
 			{
 				n.moveTo(saveX, saveY, saveZ);
-				liaison.backupRestore(n, true, group);
 				LOGGER.finer("Point not moved, quality decreases");
 				return false;
 			}
 		}
-		liaison.backupRestore(n, false, group);
 		if (!metrics.isEmpty())
-			metrics.put(n, metrics.get(n, f));
+			metrics.put(n, metrics.get(n, (Triangle) n.getLink()));
 		return true;
 	}
 
@@ -449,6 +606,8 @@ public class SmoothNodes3DBg
 		System.out.println(" --tolerance <t>    Consider only nodes with quality lower than <t>");
 		System.out.println(" --relaxation <r>   Set relaxation factor");
 		System.out.println(" --refresh          Update vertex quality before each iteration");
+		System.out.println(" --jacobi           Compute new locations of all nodes before moving them");
+		System.out.println(" --threads <n>      Number of threads used by --jacobi");
 		System.exit(rc);
 	}
 
@@ -470,7 +629,7 @@ public class SmoothNodes3DBg
 		{
 			if (args[argc].length() < 2 || args[argc].charAt(0) != '-' || args[argc].charAt(1) != '-')
 				break;
-			if (args[argc].equals("--refresh") || args[argc].equals("--boundaries"))
+			if (args[argc].equals("--refresh") || args[argc].equals("--boundaries") || args[argc].equals("--jacobi"))
 			{
 				opts.put(args[argc].substring(2), "true");
 				argc++;
@@ -105,7 +105,7 @@ public class SplitEdge extends AbstractAlgoHalfEdge
 				minCos = Double.parseDouble(val);
 				LOGGER.fine("Minimum dot product of face normals allowed for swapping an edge: "+minCos);
 			}
-			else
+			else if (!processCommonOption(key, val))
 				throw new RuntimeException("Unknown option: "+key);
 		}
 		if (tolerance == 0.0 && nrFinal == 0)
@@ -97,7 +97,7 @@ public class SwapEdge extends AbstractAlgoHalfEdge
 			{
 				expectInsert = Boolean.parseBoolean(val);
 			}
-			else
+			else if (!processCommonOption(key, val))
 				throw new RuntimeException("Unknown option: "+key);
 		}
 		if (meshLiaison == null)
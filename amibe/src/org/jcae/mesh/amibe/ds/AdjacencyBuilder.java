@@ -0,0 +1,501 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.jcae.mesh.amibe.util.ParallelLoop;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compute adjacency relations of a mesh without building a map between
+ * vertices and their incident triangles.
+ * Vertices and triangles are numbered, and half-edges are referenced by
+ * an integer <code>3*t+i</code> where <code>t</code> is triangle index and
+ * <code>i</code> the local number of this edge.  Half-edges are sorted by
+ * their lower vertex index with a counting sort, and each bucket is then
+ * sorted by a packed key (higher vertex index, half-edge index), so that
+ * half-edges sharing the same endpoints are stored consecutively.
+ * Buckets are processed concurrently when several threads are used.
+ *
+ * Results are the same as the ones obtained with
+ * {@link Mesh#glueSymmetricHalfEdges} and {@link Mesh#rebuildVertexLinks}:
+ * non-manifold edges are processed in the same order, and vertex links
+ * are identical.
+ */
+final class AdjacencyBuilder
+{
+	private static final Logger logger=Logger.getLogger(AdjacencyBuilder.class.getName());
+	private static final int [] next3 = { 1, 2, 0 };
+	private static final int [] prev3 = { 2, 0, 1 };
+	// Do not split small arrays
+	private static final int MIN_CHUNK_SIZE = 10000;
+
+	private final Mesh mesh;
+	private final ParallelLoop loop;
+
+	private Vertex [] vertices;
+	private int nrVertices;
+	private Triangle [] triangles;
+	private int nrTriangles;
+	// Index of vertex i of triangle t is stored at corners[3*t+i], it is
+	// -1 if this vertex is not readable.
+	private int [] corners;
+	// Triangles incident to vertex v are stored into
+	// vertexTriangles[vertexStart[v]..vertexStart[v+1]]
+	private int [] vertexStart;
+	private int [] vertexTriangles;
+	// Half-edges whose lower vertex index is v are stored into
+	// edges[edgeStart[v]..edgeStart[v+1]]
+	private int [] edgeStart;
+	private int [] edges;
+
+	AdjacencyBuilder(Mesh mesh, int threads)
+	{
+		this.mesh = mesh;
+		loop = new ParallelLoop(threads, MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Number vertices and triangles, and set vertex links.
+	 *
+	 * @param triangleList  mesh triangles
+	 * @param nodeList  mesh vertices, or <code>null</code> if vertices have to
+	 *   be retrieved from writable triangles
+	 */
+	void init(Collection<Triangle> triangleList, Collection<Vertex> nodeList)
+	{
+		final TObjectIntHashMap<Vertex> index;
+		if (nodeList == null)
+		{
+			index = new TObjectIntHashMap<Vertex>(triangleList.size(), 0.5f, -1);
+			vertices = new Vertex[triangleList.size() / 2 + 3];
+			for (Triangle t: triangleList)
+			{
+				if (!t.isWritable())
+					continue;
+				for (int i = 0; i < 3; i++)
+				{
+					Vertex v = t.getV(i);
+					if (index.containsKey(v))
+						continue;
+					if (nrVertices == vertices.length)
+						vertices = Arrays.copyOf(vertices, 2 * nrVertices);
+					index.put(v, nrVertices);
+					vertices[nrVertices] = v;
+					nrVertices++;
+				}
+			}
+		}
+		else
+		{
+			index = new TObjectIntHashMap<Vertex>(nodeList.size(), 0.5f, -1);
+			vertices = new Vertex[nodeList.size()];
+			for (Vertex v: nodeList)
+			{
+				index.put(v, nrVertices);
+				vertices[nrVertices] = v;
+				nrVertices++;
+			}
+		}
+
+		triangles = new Triangle[triangleList.size()];
+		for (Triangle t: triangleList)
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			triangles[nrTriangles] = t;
+			nrTriangles++;
+			for (int i = 0; i < 3; i++)
+				t.getV(i).setLink(t);
+		}
+
+		corners = new int[3 * nrTriangles];
+		loop.execute(nrTriangles, new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				for (int t = start; t < end; t++)
+				{
+					for (int i = 0; i < 3; i++)
+					{
+						Vertex v = triangles[t].getV(i);
+						corners[3*t+i] = v.isReadable() ? index.get(v) : -1;
+					}
+				}
+			}
+		});
+
+		// Triangles incident to each vertex, in the same order as in
+		// triangleList
+		vertexStart = new int[nrVertices + 1];
+		for (int c: corners)
+			if (c >= 0)
+				vertexStart[c+1]++;
+		for (int v = 0; v < nrVertices; v++)
+			vertexStart[v+1] += vertexStart[v];
+		vertexTriangles = new int[vertexStart[nrVertices]];
+		int [] pos = Arrays.copyOf(vertexStart, nrVertices);
+		for (int h = 0; h < corners.length; h++)
+		{
+			int c = corners[h];
+			if (c >= 0)
+			{
+				vertexTriangles[pos[c]] = h / 3;
+				pos[c]++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the list of vertices, in the same order as the one used
+	 * by {@link Mesh#buildAdjacency}.
+	 */
+	List<Vertex> getVertices()
+	{
+		return Arrays.asList(vertices).subList(0, nrVertices);
+	}
+
+	private int origin(int h)
+	{
+		return corners[h - h % 3 + next3[h % 3]];
+	}
+
+	private int destination(int h)
+	{
+		return corners[h - h % 3 + prev3[h % 3]];
+	}
+
+	private AbstractHalfEdge getHalfEdge(int h, AbstractHalfEdge that)
+	{
+		that = triangles[h / 3].getAbstractHalfEdge(that);
+		for (int i = h % 3; i > 0; i--)
+			that = that.next();
+		return that;
+	}
+
+	/**
+	 * Sort half-edges so that half-edges with the same endpoints are
+	 * stored consecutively.
+	 */
+	private void sortHalfEdges()
+	{
+		edgeStart = new int[nrVertices + 1];
+		int nrEdges = 0;
+		for (int h = 0; h < corners.length; h++)
+		{
+			int o = origin(h);
+			int d = destination(h);
+			if (o < 0 || d < 0)
+				continue;
+			edgeStart[Math.min(o, d) + 1]++;
+			nrEdges++;
+		}
+		for (int v = 0; v < nrVertices; v++)
+			edgeStart[v+1] += edgeStart[v];
+		edges = new int[nrEdges];
+		int [] pos = Arrays.copyOf(edgeStart, nrVertices);
+		for (int h = 0; h < corners.length; h++)
+		{
+			int o = origin(h);
+			int d = destination(h);
+			if (o < 0 || d < 0)
+				continue;
+			int lo = Math.min(o, d);
+			edges[pos[lo]] = h;
+			pos[lo]++;
+		}
+		loop.execute(nrVertices, new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				long [] keys = new long[16];
+				for (int v = start; v < end; v++)
+				{
+					int first = edgeStart[v];
+					int n = edgeStart[v+1] - first;
+					if (n < 2)
+						continue;
+					if (n > keys.length)
+						keys = new long[2*n];
+					for (int k = 0; k < n; k++)
+					{
+						int h = edges[first+k];
+						int hi = Math.max(origin(h), destination(h));
+						keys[k] = (((long) hi) << 32) | h;
+					}
+					Arrays.sort(keys, 0, n);
+					for (int k = 0; k < n; k++)
+						edges[first+k] = (int) keys[k];
+				}
+			}
+		});
+	}
+
+	/**
+	 * Glue half-edges, this is equivalent to
+	 * {@link Mesh#glueSymmetricHalfEdges}.
+	 *
+	 * @param concurrentGlue  if <code>true</code>, manifold edges are glued
+	 *   by worker threads.  This must be set only if gluing two
+	 *   half-edges does not modify data shared by other half-edges, which
+	 *   is the case for {@link HalfEdge} but not for {@link VirtualHalfEdge}.
+	 * @param newTri  collection where virtual triangles are added
+	 */
+	void glueSymmetricHalfEdges(final boolean concurrentGlue, Collection<Triangle> newTri)
+	{
+		sortHalfEdges();
+
+		// Manifold edges are glued, or stored into manifold if they
+		// cannot be glued concurrently, and other edges are stored into
+		// nonManifold.  As these lists are filled by chunks, non-manifold
+		// edges are then sorted to process them in the same order as
+		// Mesh.glueSymmetricHalfEdges
+		final List<TIntArrayList> manifold = new ArrayList<TIntArrayList>();
+		final List<TLongArrayList> nonManifold = new ArrayList<TLongArrayList>();
+		loop.execute(nrVertices, new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				TIntArrayList manifoldList = new TIntArrayList();
+				TLongArrayList nonManifoldList = new TLongArrayList();
+				AbstractHalfEdge [] ot = new AbstractHalfEdge[2];
+				for (int v = start; v < end; v++)
+				{
+					for (int first = edgeStart[v]; first < edgeStart[v+1]; )
+					{
+						int hi = Math.max(origin(edges[first]), destination(edges[first]));
+						int last = first + 1;
+						while (last < edgeStart[v+1] &&
+							Math.max(origin(edges[last]), destination(edges[last])) == hi)
+							last++;
+						if (last - first == 2 && isManifold(edges[first], edges[first+1], ot))
+						{
+							if (concurrentGlue)
+								ot[0].glue(ot[1]);
+							else
+								manifoldList.add(first);
+						}
+						else if (last - first > 1)
+						{
+							long key = firstProcessedHalfEdge(v, hi, first, last, ot);
+							if (key >= 0L)
+								nonManifoldList.add(key);
+						}
+						first = last;
+					}
+				}
+				synchronized (nonManifold)
+				{
+					manifold.add(manifoldList);
+					nonManifold.add(nonManifoldList);
+				}
+			}
+		});
+
+		AbstractHalfEdge ot = null;
+		AbstractHalfEdge ot2 = null;
+		for (TIntArrayList list: manifold)
+		{
+			for (int k = 0; k < list.size(); k++)
+			{
+				int first = list.get(k);
+				ot = getHalfEdge(edges[first], ot);
+				ot2 = getHalfEdge(edges[first+1], ot2);
+				ot.glue(ot2);
+			}
+		}
+		manifold.clear();
+
+		TLongArrayList keys = new TLongArrayList();
+		for (TLongArrayList list: nonManifold)
+			keys.addAll(list);
+		keys.sort();
+		AbstractHalfEdge [] work = new AbstractHalfEdge[3];
+		for (int k = 0; k < keys.size(); k++)
+		{
+			long key = keys.get(k);
+			int v = (int) (key >> 32);
+			int h = (int) key;
+			int o = destination(h);
+			int lo = Math.min(v, o);
+			int hi = Math.max(v, o);
+			int first = edgeStart[lo];
+			while (Math.max(origin(edges[first]), destination(edges[first])) != hi)
+				first++;
+			int last = first + 1;
+			while (last < edgeStart[lo+1] &&
+				Math.max(origin(edges[last]), destination(edges[last])) == hi)
+				last++;
+			// Vertex v is processed by Mesh.glueSymmetricHalfEdges
+			// before vertex o if v < o
+			glueHalfEdges(lo, hi, first, last, work, newTri);
+			glueHalfEdges(hi, lo, first, last, work, newTri);
+		}
+		if (!keys.isEmpty())
+			logger.fine("Found "+keys.size()+" non-manifold edges");
+	}
+
+	/**
+	 * Tells whether two half-edges with the same endpoints can be glued
+	 * together.
+	 */
+	private boolean isManifold(int h1, int h2, AbstractHalfEdge [] ot)
+	{
+		if (h1 / 3 == h2 / 3 || origin(h1) != destination(h2))
+			return false;
+		ot[0] = getHalfEdge(h1, ot[0]);
+		ot[1] = getHalfEdge(h2, ot[1]);
+		return !ot[0].hasSymmetricEdge() && !ot[1].hasSymmetricEdge();
+	}
+
+	/**
+	 * Returns the key of the first half-edge processed by
+	 * Mesh.glueSymmetricHalfEdges, or -1 if there is none.
+	 */
+	private long firstProcessedHalfEdge(int lo, int hi, int first, int last,
+		AbstractHalfEdge [] ot)
+	{
+		for (int pass = 0; pass < 2; pass++)
+		{
+			int v = (pass == 0 ? lo : hi);
+			for (int k = first; k < last; k++)
+			{
+				int h = edges[k];
+				if (origin(h) != v)
+					continue;
+				ot[0] = getHalfEdge(h, ot[0]);
+				if (!ot[0].hasSymmetricEdge())
+					return (((long) v) << 32) | h;
+			}
+		}
+		return -1L;
+	}
+
+	/**
+	 * Process half-edges edges[first..last] whose origin is v, as in
+	 * Mesh.glueSymmetricHalfEdges.
+	 */
+	private void glueHalfEdges(int v, int v2, int first, int last,
+		AbstractHalfEdge [] work, Collection<Triangle> newTri)
+	{
+		AbstractHalfEdge ot = null;
+		AbstractHalfEdge ot2 = null;
+		for (int k = first; k < last; k++)
+		{
+			int h = edges[k];
+			if (origin(h) != v)
+				continue;
+			ot = getHalfEdge(h, ot);
+			if (ot.hasSymmetricEdge())
+				continue;
+			if (work[0] == null)
+				work[0] = ot.getTri().getAbstractHalfEdge(work[0]);
+			if (work[1] == null)
+				work[1] = ot.getTri().getAbstractHalfEdge(work[1]);
+			boolean manifold = true;
+			for (int k2 = first; k2 < last; k2++)
+			{
+				int h2 = edges[k2];
+				if (h2 / 3 == h / 3)
+					continue;
+				ot2 = getHalfEdge(h2, ot2);
+				if (manifold && destination(h2) == v && !ot.hasSymmetricEdge() && !ot2.hasSymmetricEdge())
+				{
+					ot.glue(ot2);
+					continue;
+				}
+				manifold = false;
+				mesh.glueNonManifoldHalfEdges(vertices[v], vertices[v2], ot, ot2, work, newTri);
+			}
+			if (logger.isLoggable(Level.FINE) && !manifold)
+			{
+				int cnt = 0;
+				for (Iterator<AbstractHalfEdge> it = ot.fanIterator(); it.hasNext(); it.next())
+					cnt++;
+				logger.fine("Non-manifold edge: "+vertices[v]+" "+vertices[v2]+" "+" connected to "+cnt+" fans");
+			}
+		}
+	}
+
+	/**
+	 * Fix links of non-manifold vertices, this is equivalent to
+	 * {@link Mesh#rebuildVertexLinks}.
+	 */
+	void rebuildVertexLinks()
+	{
+		loop.execute(nrVertices, new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				TriangleRange list = new TriangleRange();
+				AbstractHalfEdge ot = null;
+				for (int v = start; v < end; v++)
+				{
+					list.set(vertexStart[v], vertexStart[v+1]);
+					ot = Mesh.rebuildVertexLink(vertices[v], list, ot);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Release resources.
+	 */
+	void dispose()
+	{
+		loop.shutdown();
+		vertices = null;
+		triangles = null;
+		corners = null;
+		vertexStart = null;
+		vertexTriangles = null;
+		edgeStart = null;
+		edges = null;
+	}
+
+	/**
+	 * Triangles incident to a vertex.
+	 */
+	private final class TriangleRange extends AbstractList<Triangle>
+	{
+		private int start;
+		private int end;
+		private void set(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+		@Override
+		public Triangle get(int index)
+		{
+			return triangles[vertexTriangles[start+index]];
+		}
+		@Override
+		public int size()
+		{
+			return end - start;
+		}
+	}
+}
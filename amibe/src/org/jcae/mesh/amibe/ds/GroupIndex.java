@@ -0,0 +1,102 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Triangles of a mesh sorted by group.  Triangles of a group are kept in
+ * the same order as in triangle list.  This index is maintained by
+ * {@link Mesh}, see {@link Mesh#getTrianglesByGroup}.  It records the
+ * modification counter of triangle list when it is built, and indexed
+ * triangles keep a reference to it to report group changes, so that
+ * Mesh can detect that it is out of date.  A triangle is expected to
+ * be indexed by a single mesh.
+ */
+final class GroupIndex
+{
+	private final TIntObjectHashMap<Set<Triangle>> groups = new TIntObjectHashMap<Set<Triangle>>();
+	// Mesh.triangleModCount when this index was last synchronized
+	int triangleModCount;
+	// Set by Triangle.setGroupId when an indexed triangle changes group
+	boolean groupsModified;
+
+	GroupIndex(Collection<Triangle> triangles, int triangleModCount)
+	{
+		this.triangleModCount = triangleModCount;
+		for (Triangle t : triangles)
+			add(t);
+	}
+
+	void add(Triangle t)
+	{
+		Set<Triangle> s = groups.get(t.getGroupId());
+		if (s == null)
+		{
+			s = new LinkedHashSet<Triangle>();
+			groups.put(t.getGroupId(), s);
+		}
+		s.add(t);
+		t.groupIndex = this;
+	}
+
+	/**
+	 * Removes a triangle.
+	 *
+	 * @return <code>false</code> if this triangle was not found in its group
+	 */
+	boolean remove(Triangle t)
+	{
+		Set<Triangle> s = groups.get(t.getGroupId());
+		if (s == null || !s.remove(t))
+			return false;
+		if (s.isEmpty())
+			groups.remove(t.getGroupId());
+		t.groupIndex = null;
+		return true;
+	}
+
+	/**
+	 * Removes all triangles of a group.
+	 *
+	 * @return triangles of this group
+	 */
+	Set<Triangle> removeGroup(int group)
+	{
+		Set<Triangle> s = groups.remove(group);
+		if (s == null)
+			return Collections.emptySet();
+		for (Triangle t : s)
+			t.groupIndex = null;
+		return s;
+	}
+
+	Collection<Triangle> get(int group)
+	{
+		Set<Triangle> s = groups.get(group);
+		if (s == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(s);
+	}
+}
@@ -37,6 +37,7 @@ import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.metrics.PoolWorkVectors;
 
 import java.util.Collection;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.LinkedHashSet;
@@ -51,6 +52,7 @@ import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.RandomAccess;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.util.HashFactory;
@@ -128,6 +130,19 @@ public class Mesh implements Serializable
 	
 	//  Triangle list
 	private final Collection<Triangle> triangleList;
+
+	//  View of triangleList returned by getTriangles()
+	private transient Collection<Triangle> triangleView;
+
+	//  Number of structural modifications of triangleList
+	private transient int triangleModCount;
+
+	//  Triangles sorted by group, built on demand by getGroupIndex()
+	private transient GroupIndex groupIndex;
+
+	//  Triangles sorted by position in triangleList, built on demand
+	private transient Triangle[] trianglesByPosition;
+	private transient int trianglesByPositionModCount;
 	
 	//  Node list.
 	private final Collection<Vertex> nodeList;
@@ -236,7 +251,16 @@ public class Mesh implements Serializable
 	public final void add(Triangle t)
 	{
 		assert t!= null;
-		triangleList.add(t);
+		boolean indexed = isGroupIndexValid();
+		if (triangleList.add(t))
+		{
+			triangleModCount++;
+			if (indexed)
+			{
+				groupIndex.add(t);
+				groupIndex.triangleModCount = triangleModCount;
+			}
+		}
 	}
 
 	public int getFreeGroupID()
@@ -277,8 +301,8 @@ public class Mesh implements Serializable
 			{
 				Triangle t = createTriangle(vertices[triangles[k]],
 					vertices[triangles[k + 1]], vertices[triangles[k + 2]]);
-				add(t);
 				t.setGroupId(groupId);
+				add(t);
 				k += 3;
 			}
 		}
@@ -301,28 +325,36 @@ public class Mesh implements Serializable
 		int nextVertexId = 0;
 		if(triangles != null)
 		{
-			Iterator<Triangle> it = getTriangles().iterator();
-			while(it.hasNext())
+			Collection<Triangle> toRemove = getTrianglesByGroup(group);
+			for(Triangle t: toRemove)
 			{
-				Triangle t = it.next();
-				if(t.getGroupId() == group)
+				for(int i = 0; i < 3; i++)
 				{
-					for(int i = 0; i < 3; i++)
+					Vertex v = t.getV(i);
+					int vid = map.putIfAbsent(v, nextVertexId);
+					if(vid == map.getNoEntryValue())
 					{
-						Vertex v = t.getV(i);
-						int vid = map.putIfAbsent(v, nextVertexId);
-						if(vid == map.getNoEntryValue())
-						{
-							vid = nextVertexId;
-							nextVertexId++;
-							coordinates.add(v.getX());
-							coordinates.add(v.getY());
-							coordinates.add(v.getZ());
-						}
-						triangles.add(vid);
+						vid = nextVertexId;
+						nextVertexId++;
+						coordinates.add(v.getX());
+						coordinates.add(v.getY());
+						coordinates.add(v.getZ());
 					}
-					it.remove();
+					triangles.add(vid);
+				}
+			}
+			if(!toRemove.isEmpty())
+			{
+				Set<Triangle> removed = groupIndex.removeGroup(group);
+				if(triangleList instanceof Set)
+				{
+					for(Triangle t: removed)
+						triangleList.remove(t);
 				}
+				else
+					triangleList.removeAll(removed);
+				triangleModCount++;
+				groupIndex.triangleModCount = triangleModCount;
 			}
 		}
 		int nb = getBeams().size() / 2;
@@ -369,7 +401,13 @@ public class Mesh implements Serializable
 	 */
 	public final void remove(Triangle t)
 	{
-		triangleList.remove(t);
+		boolean indexed = isGroupIndexValid();
+		if (triangleList.remove(t))
+		{
+			triangleModCount++;
+			if (indexed && groupIndex.remove(t))
+				groupIndex.triangleModCount = triangleModCount;
+		}
 		if (!(t instanceof TriangleHE))
 			return;
 		TriangleHE that = (TriangleHE) t;
@@ -386,46 +424,220 @@ public class Mesh implements Serializable
 	}
 	
 	/**
-	 * Returns triangle list.
+	 * Returns triangle list.  Triangles can be added or removed through
+	 * this collection, but {@link #add(Triangle)} and
+	 * {@link #remove(Triangle)} should be preferred, they keep triangles
+	 * sorted by group up to date instead of discarding them.
 	 *
 	 * @return triangle list.
 	 */
 	public final Collection<Triangle> getTriangles()
 	{
-		return triangleList;
+		if (triangleView == null)
+			triangleView = new TriangleView();
+		return triangleView;
+	}
+
+	/**
+	 * Triangle list with a counter of structural modifications, which is
+	 * used to know when group index and positional access have to be
+	 * rebuilt.
+	 */
+	private final class TriangleView extends AbstractCollection<Triangle>
+	{
+		@Override
+		public int size()
+		{
+			return triangleList.size();
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return triangleList.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			return triangleList.contains(o);
+		}
+
+		@Override
+		public Object[] toArray()
+		{
+			return triangleList.toArray();
+		}
+
+		@Override
+		public <T> T[] toArray(T[] a)
+		{
+			return triangleList.toArray(a);
+		}
+
+		@Override
+		public boolean add(Triangle t)
+		{
+			if (!triangleList.add(t))
+				return false;
+			triangleModCount++;
+			return true;
+		}
+
+		@Override
+		public boolean remove(Object o)
+		{
+			if (!triangleList.remove(o))
+				return false;
+			triangleModCount++;
+			return true;
+		}
+
+		@Override
+		public boolean addAll(Collection<? extends Triangle> c)
+		{
+			if (!triangleList.addAll(c))
+				return false;
+			triangleModCount++;
+			return true;
+		}
+
+		@Override
+		public boolean removeAll(Collection<?> c)
+		{
+			if (!triangleList.removeAll(c))
+				return false;
+			triangleModCount++;
+			return true;
+		}
+
+		@Override
+		public boolean retainAll(Collection<?> c)
+		{
+			if (!triangleList.retainAll(c))
+				return false;
+			triangleModCount++;
+			return true;
+		}
+
+		@Override
+		public void clear()
+		{
+			triangleList.clear();
+			triangleModCount++;
+		}
+
+		@Override
+		public Iterator<Triangle> iterator()
+		{
+			final Iterator<Triangle> it = triangleList.iterator();
+			return new Iterator<Triangle>()
+			{
+				public boolean hasNext()
+				{
+					return it.hasNext();
+				}
+				public Triangle next()
+				{
+					return it.next();
+				}
+				public void remove()
+				{
+					it.remove();
+					triangleModCount++;
+				}
+			};
+		}
 	}
 
 	/**
 	 * Returns a subset of the triangle list using triangle indexes.
 	 *
 	 * @param tags  triangle indexes
-	 * @return triangle subset. Empty if <code>tags</code> is <code>null</code>,
-	 * empty or invalid.
+	 * @return triangle subset, sorted by increasing indexes. Empty if
+	 * <code>tags</code> is <code>null</code>, empty or invalid.
 	 */
 	public final Collection<Triangle> getTriangles(List<Integer> tags)
 	{
 		ArrayList<Triangle> triangles = new ArrayList<Triangle>();
-		if (tags == null)
+		if (tags == null || tags.isEmpty())
 			return triangles;
 
-		// sort tags to iterate through linked list
-		TreeSet<Integer> tagsSorted = new TreeSet(tags);
+		TreeSet<Integer> tagsSorted = new TreeSet<Integer>(tags);
 
 		// invalid if index is out of range
-		if (tagsSorted.last() >= getTriangles().size())
+		if (tagsSorted.first() < 0 || tagsSorted.last() >= triangleList.size())
 			return triangles;
 
-		Iterator<Triangle> it = getTriangles().iterator();
-		Triangle t = it.next();
-		Integer prev = 0;
 		for (Integer tag: tagsSorted)
+			triangles.add(getTriangle(tag));
+		return triangles;
+	}
+
+	/**
+	 * Returns the triangle at a given position in triangle list.  When
+	 * triangle list does not support random access, an array of triangles
+	 * is built and kept until triangles are added or removed.
+	 *
+	 * @param index  position in triangle list
+	 * @return the triangle at this position
+	 */
+	public final Triangle getTriangle(int index)
+	{
+		if (triangleList instanceof RandomAccess)
+			return ((List<Triangle>) triangleList).get(index);
+		if (trianglesByPosition == null || trianglesByPositionModCount != triangleModCount)
 		{
-			for (Integer k=0; k<tag-prev; k++)
-				t = it.next();
-			triangles.add(t);
-			prev = tag;
+			trianglesByPosition = triangleList.toArray(new Triangle[triangleList.size()]);
+			trianglesByPositionModCount = triangleModCount;
 		}
-		return triangles;
+		return trianglesByPosition[index];
+	}
+
+	/**
+	 * Returns the triangles of a group, in the same order as in triangle
+	 * list.  Triangles are indexed by group when needed.  This index is
+	 * updated by {@link #add(Triangle)}, {@link #remove(Triangle)} and
+	 * {@link #setGroupId}, and it is rebuilt if triangle list or group
+	 * ids have been modified by other means, for instance by
+	 * {@link Triangle#setGroupId} or through {@link #getTriangles}.
+	 *
+	 * @param group  group id
+	 * @return an unmodifiable view of triangles of this group, which
+	 * must not be used after this mesh has been modified
+	 */
+	public final Collection<Triangle> getTrianglesByGroup(int group)
+	{
+		if (!isGroupIndexValid())
+			groupIndex = new GroupIndex(triangleList, triangleModCount);
+		return groupIndex.get(group);
+	}
+
+	/**
+	 * Changes the group of a triangle.  Unlike
+	 * {@link Triangle#setGroupId}, triangles sorted by group are updated
+	 * instead of being discarded.
+	 *
+	 * @param t  triangle
+	 * @param group  new group id
+	 */
+	public final void setGroupId(Triangle t, int group)
+	{
+		if (isGroupIndexValid() && groupIndex.remove(t))
+		{
+			// t is no more indexed, index is not marked as modified
+			t.setGroupId(group);
+			groupIndex.add(t);
+		}
+		else
+			t.setGroupId(group);
+	}
+
+	private boolean isGroupIndexValid()
+	{
+		return groupIndex != null &&
+			groupIndex.triangleModCount == triangleModCount &&
+			!groupIndex.groupsModified;
 	}
 
 	/**
@@ -648,6 +860,9 @@ public class Mesh implements Serializable
 	public void clear() {
 		resetBeams();
 		triangleList.clear();
+		triangleModCount++;
+		groupIndex = null;
+		trianglesByPosition = null;
 		nodeList.clear();
 	}
 
@@ -734,19 +949,28 @@ public class Mesh implements Serializable
 		//  Connect all edges together
 		logger.fine("Connect triangles");
 		ArrayList<Triangle> newTri = new ArrayList<Triangle>();
-		//  For each vertex, build the list of triangles
-		//  connected to this vertex.
-		Map<Vertex, Collection<Triangle>> tVertList = getMapVertexLinks();
-		//  Connect all edges together
-		glueSymmetricHalfEdges(tVertList, newTri);
+		AdjacencyBuilder builder = new AdjacencyBuilder(this, meshParameters.getThreads());
+		List<Vertex> vertices;
+		try
+		{
+			builder.init(triangleList, nodeList);
+			vertices = builder.getVertices();
+			//  Connect all edges together
+			builder.glueSymmetricHalfEdges(
+				traitsBuilder.getTriangleTraitsBuilder().hasHalfEdge(), newTri);
 
-		//  Mark boundary edges and bind them to virtual triangles.
-		logger.fine("Connect boundary triangles");
-		connectBoundaryTriangles(newTri);
+			//  Mark boundary edges and bind them to virtual triangles.
+			logger.fine("Connect boundary triangles");
+			connectBoundaryTriangles(newTri);
 
-		//  Fix links for junctions
-		logger.fine("Fix vertex links");
-		rebuildVertexLinks(tVertList);
+			//  Fix links for junctions
+			logger.fine("Fix vertex links");
+			builder.rebuildVertexLinks();
+		}
+		finally
+		{
+			builder.dispose();
+		}
 		
 		//  Find the list of vertices which are on mesh boundary
 		logger.fine("Build the list of nodes on boundaries and non-manifold edges");
@@ -779,7 +1003,7 @@ public class Mesh implements Serializable
 
 		int nrJunctionPoints = 0;
 		Collection<Vertex> freeVertices = new HashSet<Vertex>();
-		for (Vertex v: tVertList.keySet())
+		for (Vertex v: vertices)
 		{
 			if (bndNodes.contains(v))
 				continue;
@@ -792,7 +1016,9 @@ public class Mesh implements Serializable
 					v.setRef(maxLabel);
 				}
 			}
-			else if(v.getLink() == null)
+			// Non-writable vertices may be referenced by triangles
+			// which have not been loaded, see oemm.MeshReader
+			else if(v.getLink() == null && v.isWritable())
 				freeVertices.add(v);
 		}
 		freeVertices.removeAll(beams);
@@ -806,11 +1032,9 @@ public class Mesh implements Serializable
 		}
 		if (maxLabel != currentMaxLabel)
 			logger.fine("Created "+(maxLabel - currentMaxLabel)+" more references");
-		//  Remove all references to help the garbage collector.
-		for (Collection<Triangle> list : tVertList.values())
-			list.clear();
 		// Add outer triangles
 		triangleList.addAll(newTri);
+		triangleModCount++;
 		if (traitsBuilder.hasTrace())
 		{
 			traitsBuilder.getTrace(traits).println("self.m.buildAdjacency()");
@@ -819,7 +1043,7 @@ public class Mesh implements Serializable
 		}
 	}
 
-	private Map<Vertex, Collection<Triangle>> getMapVertexLinks()
+	Map<Vertex, Collection<Triangle>> getMapVertexLinks()
 	{
 		Collection<Vertex> vertices;
 		if (nodeList == null)
@@ -864,55 +1088,65 @@ public class Mesh implements Serializable
 
 	public static void rebuildVertexLinks(Map<Vertex, Collection<Triangle>> tVertList)
 	{
+		AbstractHalfEdge ot = null;
 		for (Map.Entry<Vertex, Collection<Triangle>> entry : tVertList.entrySet())
+			ot = rebuildVertexLink(entry.getKey(), entry.getValue(), ot);
+	}
+
+	/**
+	 * Set link of a vertex to an array of triangles if it is non-manifold.
+	 *
+	 * @param v  vertex
+	 * @param list  non-outer triangles incident to this vertex
+	 * @param ot  either <code>null</code> or an existing half-edge instance
+	 * @return  an half-edge instance which can be passed again to this method
+	 */
+	static AbstractHalfEdge rebuildVertexLink(Vertex v, Collection<Triangle> list, AbstractHalfEdge ot)
+	{
+		int cnt = 0;
+		if (null == v.getLink())
+			return ot;
+		assert v.getLink() instanceof Triangle: v;
+		ot = v.getIncidentAbstractHalfEdge((Triangle) v.getLink(), ot);
+		Vertex d = ot.destination();
+		do
 		{
-			Vertex v = entry.getKey();
-			Collection<Triangle> list = entry.getValue();
-			int cnt = 0;
-			AbstractHalfEdge ot = null;
-			if (null == v.getLink())
-				continue;
-			assert v.getLink() instanceof Triangle: v;
-			ot = v.getIncidentAbstractHalfEdge((Triangle) v.getLink(), ot);
-			Vertex d = ot.destination();
+			if (!ot.hasAttributes(AbstractHalfEdge.OUTER))
+				cnt++;
+			if (ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
+			{
+				cnt = 0;
+				break;
+			}
+			ot = ot.nextOriginLoop();
+		}
+		while (ot.destination() != d);
+		if (cnt == list.size())
+			return ot;
+		// Non-manifold vertex
+		LinkedHashSet<Triangle> neighbours = new LinkedHashSet<Triangle>(list);
+		ArrayList<Triangle> fans = new ArrayList<Triangle>();
+		while (!neighbours.isEmpty())
+		{
+			ot = v.getIncidentAbstractHalfEdge(neighbours.iterator().next(), ot);
+			d = ot.destination();
+			fans.add(ot.getTri());
 			do
 			{
 				if (!ot.hasAttributes(AbstractHalfEdge.OUTER))
-					cnt++;
-				if (ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
-				{
-					cnt = 0;
-					break;
-				}
+					neighbours.remove(ot.getTri());
 				ot = ot.nextOriginLoop();
 			}
 			while (ot.destination() != d);
-			if (cnt == list.size())
-				continue;
-			// Non-manifold vertex
-			LinkedHashSet<Triangle> neighbours = new LinkedHashSet<Triangle>(list);
-			ArrayList<Triangle> fans = new ArrayList<Triangle>();
-			while (!neighbours.isEmpty())
-			{
-				ot = v.getIncidentAbstractHalfEdge(neighbours.iterator().next(), ot);
-				d = ot.destination();
-				fans.add(ot.getTri());
-				do
-				{
-					if (!ot.hasAttributes(AbstractHalfEdge.OUTER))
-						neighbours.remove(ot.getTri());
-					ot = ot.nextOriginLoop();
-				}
-				while (ot.destination() != d);
-			}
-			Triangle[] links = new Triangle[fans.size()];
-			fans.toArray(links);
-			v.setLink(links);
-			logger.fine("Non-manifold vertex has "+fans.size()+" fans");
 		}
+		Triangle[] links = new Triangle[fans.size()];
+		fans.toArray(links);
+		v.setLink(links);
+		logger.fine("Non-manifold vertex has "+fans.size()+" fans");
+		return ot;
 	}
 
-	private void connectBoundaryTriangles(ArrayList<Triangle> newTri)
+	void connectBoundaryTriangles(ArrayList<Triangle> newTri)
 	{
 		AbstractHalfEdge ot = null;
 		AbstractHalfEdge sym = null;
@@ -1140,6 +1374,7 @@ public class Mesh implements Serializable
 		}
 		toReturn = newTriangles.size() / 2;
 		triangleList.addAll(newTriangles);
+		triangleModCount++;
 		rebuildVertexLinks();
 		if (toReturn > 0 && logger.isLoggable(Level.CONFIG))
 			logger.log(Level.CONFIG, "Add virtual boundaries for "+toReturn+" sharp edges");
@@ -1244,6 +1479,7 @@ public class Mesh implements Serializable
 		}
 		int toReturn = newTriangles.size() / 2;
 		triangleList.addAll(newTriangles);
+		triangleModCount++;
 		if (toReturn > 0 && logger.isLoggable(Level.CONFIG))
 			logger.log(Level.CONFIG, "Add virtual boundaries for "+toReturn+" edges");
 		rebuildVertexLinks();
@@ -1325,6 +1561,7 @@ public class Mesh implements Serializable
 					triangleList.add(t);
 			}
 		}
+		triangleModCount++;
 		if (logger.isLoggable(Level.CONFIG))
 			logger.log(Level.CONFIG, "Remove virtual boundaries for "+toReturn+" edges");
 		// Rebuild list of vertex links
@@ -2273,13 +2510,7 @@ public class Mesh implements Serializable
 
 	public int getNumberOfTrianglesByGroup(int group)
 	{
-		int n = 0;
-		for(Triangle t:getTriangles())
-		{
-			if(t.getGroupId() == group)
-				n ++;
-		}
-		return n;
+		return getTrianglesByGroup(group).size();
 	}
 
 	public void checkVerticesRef()
@@ -2456,8 +2687,8 @@ public class Mesh implements Serializable
 		int groupOffset = getNumberOfGroups();
 		for(Triangle t: toMerge.getTriangles())
 		{
-			add(t);
 			t.setGroupId(t.getGroupId() + groupOffset);
+			add(t);
 		}
 		int nbBeams = toMerge.getBeams().size() / 2;
 		List<Vertex> otherBeams = toMerge.getBeams();
@@ -2490,22 +2721,15 @@ public class Mesh implements Serializable
 			return getNodes();
 		else
 		{
-			Set<Vertex> toReturn;
-			if(group == -1)
-				toReturn = HashFactory.createSet(triangleList.size() / 2 * 4 / 3);
-			else
-				toReturn = HashFactory.createSet();
-
-			for(Triangle t: triangleList)
+			Collection<Triangle> selected = group == -1 ? triangleList : getTrianglesByGroup(group);
+			Set<Vertex> toReturn = HashFactory.createSet(selected.size() / 2 * 4 / 3);
+			for(Triangle t: selected)
 			{
-				if(group == -1 || t.getGroupId() == group)
-				{
-					toReturn.add(t.getV0());
-					toReturn.add(t.getV1());
-					toReturn.add(t.getV2());
-					if(triangles != null)
-						triangles.add(t);
-				}
+				toReturn.add(t.getV0());
+				toReturn.add(t.getV1());
+				toReturn.add(t.getV2());
+				if(triangles != null)
+					triangles.add(t);
 			}
 			return toReturn;
 		}
@@ -2561,15 +2785,12 @@ public class Mesh implements Serializable
 
 	public void reverse(int group)
 	{
-		for(Triangle t: getTriangles())
+		for(Triangle t: group == -1 ? triangleList : getTrianglesByGroup(group))
 		{
-			if(t.getGroupId() == group || group == -1)
-			{
-				Vertex v0 = t.getV0();
-				Vertex v1 = t.getV1();
-				t.setV(0, v1);
-				t.setV(1, v0);
-			}
+			Vertex v0 = t.getV0();
+			Vertex v1 = t.getV1();
+			t.setV(0, v1);
+			t.setV(1, v0);
 		}
 	}
 	// Useful for debugging
@@ -35,6 +35,7 @@ public class MeshParameters
 	private boolean isotropic;
 	private double epsilon;
 	private boolean cumulativeEpsilon;
+	private int threads;
 
 	public MeshParameters()
 	{
@@ -76,6 +77,14 @@ public class MeshParameters
 		}
 		isotropic = isotropicProperty.equals("true");
 
+		String threadsProperty = System.getProperty("org.jcae.mesh.amibe.ds.Mesh.threads");
+		if (threadsProperty == null)
+		{
+			threadsProperty = "1";
+			System.setProperty("org.jcae.mesh.amibe.ds.Mesh.threads", threadsProperty);
+		}
+		threads = Integer.valueOf(threadsProperty).intValue();
+
 		// Next process arguments
 		for (final Map.Entry<String, String> opt: options.entrySet())
 		{
@@ -93,6 +102,8 @@ public class MeshParameters
 				epsilon = Double.valueOf(val).doubleValue();
 			else if (key.equals("cumulativeEpsilon"))
 				cumulativeEpsilon = Boolean.valueOf(val).booleanValue();
+			else if (key.equals("threads"))
+				threads = Integer.valueOf(val).intValue();
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -143,6 +154,23 @@ public class MeshParameters
 		return cumulativeEpsilon;
 	}
 
+	/**
+	 * Returns the number of threads used by algorithms which can run
+	 * concurrently, like {@link Mesh#buildAdjacency}.  If this number is
+	 * not positive, all available processors are used.
+	 */
+	public final int getThreads()
+	{
+		if (threads <= 0)
+			return Runtime.getRuntime().availableProcessors();
+		return threads;
+	}
+
+	public final void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
 	public final void scaleTolerance(double scale)
 	{
 		epsilon *= scale;
@@ -0,0 +1,295 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Binary trace files.  They are written by {@link TraceRecord} when
+ * {@link org.jcae.mesh.amibe.traits.MeshTraitsBuilder#addTraceRecordBinary}
+ * is called, and can be converted into Python scripts by
+ * {@link #toPython} or replayed by {@link TraceReplay#replay}.
+ *
+ * A file starts with a magic number and a version number, followed
+ * by records.  Each record is made of a one byte operation code and its
+ * arguments.  Integers are zig-zag encoded variable-length integers,
+ * coordinates are stored as 8-byte doubles, and strings are UTF-8 bytes
+ * preceded by their length.  Lines written by
+ * {@link TraceInterface#println} are stored into a dictionary when they
+ * are first seen, and referenced by their index afterwards.
+ */
+public final class TraceBinary
+{
+	private static final Logger LOGGER=Logger.getLogger(TraceBinary.class.getName());
+
+	/** File name extension */
+	public static final String EXTENSION = ".bin";
+	static final int MAGIC = 0x414d5452;
+	static final int VERSION = 1;
+
+	static final int LOG_FILE = 1;
+	static final int HOOKS = 2;
+	static final int CREATE_MESH = 3;
+	static final int CREATE_VERTEX = 4;
+	static final int ADD_VERTEX = 5;
+	static final int CREATE_TRIANGLE = 6;
+	static final int ADD_TRIANGLE = 7;
+	static final int REMOVE_VERTEX = 8;
+	static final int REMOVE_TRIANGLE = 9;
+	static final int ADJACENT_TRIANGLES = 10;
+	static final int EDGE_SWAP = 11;
+	static final int EDGE_COLLAPSE = 12;
+	static final int VERTEX_SPLIT_BEFORE = 13;
+	static final int FAN_ITERATOR = 14;
+	static final int FAN_NEXT = 15;
+	static final int SPLIT_T1 = 16;
+	static final int SPLIT_T3 = 17;
+	static final int MOVE_VERTEX = 18;
+	static final int PRINTLN = 19;
+	static final int PRINTLN_NEW = 20;
+	static final int PRINTLN_RAW = 21;
+	static final int CHECK_LINES = 22;
+	static final int FINISH = 23;
+
+	private final DataInputStream in;
+	private final List<String> strings = new ArrayList<String>();
+	private final int [] symIds = new int[3];
+
+	private TraceBinary(String fileName) throws IOException
+	{
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 16));
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a binary trace file: "+fileName);
+		int version = getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported trace version: "+version);
+	}
+
+	private int getInt() throws IOException
+	{
+		int z = 0;
+		for (int shift = 0; ; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			z |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+		}
+		return (z >>> 1) ^ -(z & 1);
+	}
+
+	private String getString() throws IOException
+	{
+		byte [] bytes = new byte[getInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Sends all events of a binary trace file to a {@link TraceOutput}
+	 * instance.  If file is truncated, for instance because application
+	 * crashed, events which have been read are kept.
+	 */
+	static void read(String fileName, TraceOutput out) throws IOException
+	{
+		TraceBinary reader = new TraceBinary(fileName);
+		try
+		{
+			reader.read(out);
+		}
+		finally
+		{
+			reader.in.close();
+		}
+	}
+
+	private void read(TraceOutput out) throws IOException
+	{
+		try
+		{
+			while (readRecord(out))
+			{
+				// Nothing to do
+			}
+		}
+		catch (EOFException ex)
+		{
+			LOGGER.warning("Trace file is truncated");
+			out.finish();
+		}
+	}
+
+	/**
+	 * Reads next record.
+	 * @return <code>false</code> when end of trace is reached
+	 */
+	private boolean readRecord(TraceOutput out) throws IOException
+	{
+		int op = in.readUnsignedByte();
+		switch (op)
+		{
+		case LOG_FILE:
+			out.setLogFile(getString());
+			break;
+		case HOOKS:
+			String [] commands = new String[getInt()];
+			for (int i = 0; i < commands.length; i++)
+				commands[i] = getString();
+			out.setHooks(commands);
+			break;
+		case CREATE_MESH:
+			boolean nodeSet = in.readByte() != 0;
+			out.createMesh(getString(), nodeSet);
+			break;
+		case CREATE_VERTEX:
+			out.createVertex(getInt(), in.readDouble(), in.readDouble(), in.readDouble());
+			break;
+		case ADD_VERTEX:
+			out.addVertex();
+			break;
+		case CREATE_TRIANGLE:
+		{
+			int id = getInt();
+			int v0 = getInt();
+			int v1 = getInt();
+			int v2 = getInt();
+			int group = getInt();
+			int flags = in.readByte();
+			out.createTriangle(id, v0, v1, v2, group, (flags & 1) == 0, (flags & 2) == 0);
+			break;
+		}
+		case ADD_TRIANGLE:
+			out.addTriangle();
+			break;
+		case REMOVE_VERTEX:
+			out.removeVertex(getInt());
+			break;
+		case REMOVE_TRIANGLE:
+			out.removeTriangle(getInt());
+			break;
+		case ADJACENT_TRIANGLES:
+		{
+			int id = getInt();
+			for (int i = 0; i < 3; i++)
+				symIds[i] = getInt();
+			out.adjacentTriangles(id, symIds);
+			break;
+		}
+		case EDGE_SWAP:
+		{
+			int id = getInt();
+			out.edgeSwap(id, in.readByte());
+			break;
+		}
+		case EDGE_COLLAPSE:
+		{
+			int id = getInt();
+			int localNumber = in.readByte();
+			out.edgeCollapse(id, localNumber, getInt());
+			break;
+		}
+		case VERTEX_SPLIT_BEFORE:
+		{
+			int id = getInt();
+			int flags = in.readByte();
+			out.vertexSplitBefore(id, flags & 3, getInt(), (flags & 4) != 0);
+			break;
+		}
+		case FAN_ITERATOR:
+			out.fanIterator();
+			break;
+		case FAN_NEXT:
+			out.fanNext();
+			break;
+		case SPLIT_T1:
+		case SPLIT_T3:
+		{
+			int id1 = getInt();
+			out.splitTriangle(op == SPLIT_T1, id1, getInt());
+			break;
+		}
+		case MOVE_VERTEX:
+			out.moveVertex(getInt(), in.readDouble(), in.readDouble(), in.readDouble());
+			break;
+		case PRINTLN:
+			out.println(strings.get(getInt()));
+			break;
+		case PRINTLN_NEW:
+		{
+			String s = getString();
+			strings.add(s);
+			out.println(s);
+			break;
+		}
+		case PRINTLN_RAW:
+			out.println(getString());
+			break;
+		case CHECK_LINES:
+			out.checkLines();
+			break;
+		case FINISH:
+			out.finish();
+			return false;
+		default:
+			throw new IOException("Unknown operation code: "+op);
+		}
+		return true;
+	}
+
+	/**
+	 * Converts a binary trace file into Python scripts, as if it had
+	 * been recorded with {@link org.jcae.mesh.amibe.traits.MeshTraitsBuilder#addTraceRecord}.
+	 *
+	 * @param fileName  binary trace file
+	 * @param logName  prefix of Python scripts, if <code>null</code> the
+	 * prefix given when trace was recorded is used
+	 */
+	public static void toPython(String fileName, final String logName) throws IOException
+	{
+		read(fileName, new TracePythonOutput() {
+			@Override
+			public void setLogFile(String name)
+			{
+				super.setLogFile(logName == null ? name : logName);
+			}
+		});
+	}
+
+	/**
+	 * Converts a binary trace file into Python scripts.
+	 * @param args  binary trace file, and optional prefix of Python scripts
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1 || args.length > 2)
+		{
+			System.out.println("Usage: TraceBinary trace"+EXTENSION+" [prefix]");
+			System.exit(1);
+		}
+		toPython(args[0], args.length > 1 ? args[1] : null);
+	}
+}
@@ -0,0 +1,373 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes trace events into a binary file, see {@link TraceBinary} for
+ * its format.  Events are encoded into a ring of buffers, and full
+ * buffers are written to disk by a background thread, so that mesh
+ * operations do not wait for I/O unless all buffers are full.
+ */
+class TraceBinaryOutput implements TraceOutput
+{
+	private static final Logger LOGGER=Logger.getLogger(TraceBinaryOutput.class.getName());
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int NR_BUFFERS = 4;
+	private static final int MAX_STRINGS = 1 << 16;
+	// Sent to the writer thread to stop it
+	private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(NR_BUFFERS);
+	private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(NR_BUFFERS + 1);
+	private final Map<String, Integer> strings = new HashMap<String, Integer>();
+	private ByteBuffer buffer;
+	private FileChannel channel;
+	private Thread writer;
+	private volatile IOException error;
+
+	public void setLogFile(String logName)
+	{
+		if (channel != null)
+			finish();
+		try
+		{
+			channel = new FileOutputStream(logName+TraceBinary.EXTENSION).getChannel();
+		}
+		catch (IOException ex)
+		{
+			LOGGER.log(Level.SEVERE, null, ex);
+			return;
+		}
+		free.clear();
+		for (int i = 0; i < NR_BUFFERS; i++)
+			free.add(ByteBuffer.allocate(BUFFER_SIZE));
+		buffer = free.remove();
+		strings.clear();
+		writer = new Thread(new Runnable() {
+			public void run()
+			{
+				writeBuffers();
+			}
+		}, "TraceBinaryOutput");
+		writer.setDaemon(true);
+		writer.start();
+		buffer.putInt(TraceBinary.MAGIC);
+		putInt(TraceBinary.VERSION);
+		putOp(TraceBinary.LOG_FILE);
+		putString(logName);
+	}
+
+	private void writeBuffers()
+	{
+		try
+		{
+			while (true)
+			{
+				ByteBuffer b = full.take();
+				if (b == EOF)
+					break;
+				b.flip();
+				try
+				{
+					while (b.hasRemaining())
+						channel.write(b);
+				}
+				catch (IOException ex)
+				{
+					// Keep on consuming buffers to not block producer
+					error = ex;
+				}
+				b.clear();
+				free.put(b);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void flush()
+	{
+		try
+		{
+			full.put(buffer);
+			buffer = free.take();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Makes room for a new event.
+	 * @return <code>false</code> if events cannot be recorded because
+	 * log file has not been set
+	 */
+	private boolean begin(int op, int maxSize)
+	{
+		if (buffer == null)
+			return false;
+		if (buffer.remaining() < maxSize + 1)
+			flush();
+		buffer.put((byte) op);
+		return true;
+	}
+
+	private void putOp(int op)
+	{
+		begin(op, 0);
+	}
+
+	/** Writes a zig-zag encoded variable-length integer, at most 5 bytes */
+	private void putInt(int v)
+	{
+		int z = (v << 1) ^ (v >> 31);
+		while ((z & ~0x7F) != 0)
+		{
+			buffer.put((byte) ((z & 0x7F) | 0x80));
+			z >>>= 7;
+		}
+		buffer.put((byte) z);
+	}
+
+	private void putString(String s)
+	{
+		byte [] bytes;
+		try
+		{
+			bytes = s.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new RuntimeException(ex);
+		}
+		if (buffer.remaining() < 5)
+			flush();
+		putInt(bytes.length);
+		int offset = 0;
+		while (offset < bytes.length)
+		{
+			if (!buffer.hasRemaining())
+				flush();
+			int n = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, n);
+			offset += n;
+		}
+	}
+
+	public void setHooks(String[] commands)
+	{
+		if (!begin(TraceBinary.HOOKS, 5))
+			return;
+		putInt(commands.length);
+		for (String s : commands)
+			putString(s);
+	}
+
+	public void createMesh(String meshName, boolean nodeSet)
+	{
+		if (!begin(TraceBinary.CREATE_MESH, 1))
+			return;
+		buffer.put((byte) (nodeSet ? 1 : 0));
+		putString(meshName);
+	}
+
+	public void createVertex(int id, double x, double y, double z)
+	{
+		if (!begin(TraceBinary.CREATE_VERTEX, 5 + 24))
+			return;
+		putInt(id);
+		buffer.putDouble(x);
+		buffer.putDouble(y);
+		buffer.putDouble(z);
+	}
+
+	public void addVertex()
+	{
+		putOp(TraceBinary.ADD_VERTEX);
+	}
+
+	public void createTriangle(int id, int v0, int v1, int v2, int group, boolean readable, boolean writable)
+	{
+		if (!begin(TraceBinary.CREATE_TRIANGLE, 5 * 5 + 1))
+			return;
+		putInt(id);
+		putInt(v0);
+		putInt(v1);
+		putInt(v2);
+		putInt(group);
+		buffer.put((byte) ((readable ? 0 : 1) | (writable ? 0 : 2)));
+	}
+
+	public void addTriangle()
+	{
+		putOp(TraceBinary.ADD_TRIANGLE);
+	}
+
+	public void removeVertex(int id)
+	{
+		if (!begin(TraceBinary.REMOVE_VERTEX, 5))
+			return;
+		putInt(id);
+	}
+
+	public void removeTriangle(int id)
+	{
+		if (!begin(TraceBinary.REMOVE_TRIANGLE, 5))
+			return;
+		putInt(id);
+	}
+
+	public void adjacentTriangles(int id, int[] symIds)
+	{
+		if (!begin(TraceBinary.ADJACENT_TRIANGLES, 4 * 5))
+			return;
+		putInt(id);
+		putInt(symIds[0]);
+		putInt(symIds[1]);
+		putInt(symIds[2]);
+	}
+
+	public void edgeSwap(int triangleId, int localNumber)
+	{
+		if (!begin(TraceBinary.EDGE_SWAP, 5 + 1))
+			return;
+		putInt(triangleId);
+		buffer.put((byte) localNumber);
+	}
+
+	public void edgeCollapse(int triangleId, int localNumber, int vertexId)
+	{
+		if (!begin(TraceBinary.EDGE_COLLAPSE, 5 + 1 + 5))
+			return;
+		putInt(triangleId);
+		buffer.put((byte) localNumber);
+		putInt(vertexId);
+	}
+
+	public void vertexSplitBefore(int triangleId, int localNumber, int vertexId, boolean nonManifold)
+	{
+		if (!begin(TraceBinary.VERTEX_SPLIT_BEFORE, 5 + 1 + 5))
+			return;
+		putInt(triangleId);
+		buffer.put((byte) (localNumber | (nonManifold ? 4 : 0)));
+		putInt(vertexId);
+	}
+
+	public void fanIterator()
+	{
+		putOp(TraceBinary.FAN_ITERATOR);
+	}
+
+	public void fanNext()
+	{
+		putOp(TraceBinary.FAN_NEXT);
+	}
+
+	public void splitTriangle(boolean t1, int id1, int id2)
+	{
+		if (!begin(t1 ? TraceBinary.SPLIT_T1 : TraceBinary.SPLIT_T3, 2 * 5))
+			return;
+		putInt(id1);
+		putInt(id2);
+	}
+
+	public void moveVertex(int id, double x, double y, double z)
+	{
+		if (!begin(TraceBinary.MOVE_VERTEX, 5 + 24))
+			return;
+		putInt(id);
+		buffer.putDouble(x);
+		buffer.putDouble(y);
+		buffer.putDouble(z);
+	}
+
+	public void println(String x)
+	{
+		if (buffer == null)
+			return;
+		Integer index = strings.get(x);
+		if (index != null)
+		{
+			begin(TraceBinary.PRINTLN, 5);
+			putInt(index.intValue());
+		}
+		else if (strings.size() < MAX_STRINGS)
+		{
+			// Most lines are repeated, store them into a dictionary
+			begin(TraceBinary.PRINTLN_NEW, 0);
+			strings.put(x, strings.size());
+			putString(x);
+		}
+		else
+		{
+			begin(TraceBinary.PRINTLN_RAW, 0);
+			putString(x);
+		}
+	}
+
+	public void checkLines()
+	{
+		putOp(TraceBinary.CHECK_LINES);
+	}
+
+	public void finish()
+	{
+		if (buffer == null)
+			return;
+		putOp(TraceBinary.FINISH);
+		flush();
+		try
+		{
+			full.put(EOF);
+			writer.join();
+			channel.close();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException ex)
+		{
+			error = ex;
+		}
+		if (error != null)
+			LOGGER.log(Level.SEVERE, "Error when writing trace file", error);
+		buffer = null;
+		channel = null;
+		writer = null;
+		error = null;
+	}
+}
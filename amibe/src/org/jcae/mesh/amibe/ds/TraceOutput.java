@@ -0,0 +1,71 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+/**
+ * Events sent by {@link TraceRecord}.  Vertices and triangles are
+ * replaced by their labels, so that events can be stored and replayed
+ * without the original mesh.  An event is sent for each group of lines
+ * of the Python trace, and {@link #checkLines} is called where Python
+ * methods may be split.
+ */
+interface TraceOutput
+{
+	void setLogFile(String logName);
+	void setHooks(String[] commands);
+
+	/** Beginning of {@link TraceInterface#createMesh}, before vertices are added */
+	void createMesh(String meshName, boolean nodeSet);
+	/** New vertex, it is stored into <code>v</code> Python variable */
+	void createVertex(int id, double x, double y, double z);
+	/** Adds <code>v</code> Python variable to the mesh */
+	void addVertex();
+	/** New triangle, it is stored into <code>t</code> Python variable */
+	void createTriangle(int id, int v0, int v1, int v2, int group, boolean readable, boolean writable);
+	/** Adds <code>t</code> Python variable to the mesh */
+	void addTriangle();
+	void removeVertex(int id);
+	void removeTriangle(int id);
+
+	/**
+	 * Adjacency relations of a boundary or non-manifold triangle.
+	 * @param symIds  labels of triangles added when looping over
+	 * triangle edges, 0 when no triangle is added
+	 */
+	void adjacentTriangles(int id, int[] symIds);
+
+	void edgeSwap(int triangleId, int localNumber);
+	void edgeCollapse(int triangleId, int localNumber, int vertexId);
+	void vertexSplitBefore(int triangleId, int localNumber, int vertexId, boolean nonManifold);
+	/** Loops over fans of a non-manifold edge after a vertex split */
+	void fanIterator();
+	void fanNext();
+	/**
+	 * Labels triangles created by a vertex split.
+	 * @param t1  <code>true</code> if current edge is on t1,
+	 * <code>false</code> if it is on t3
+	 */
+	void splitTriangle(boolean t1, int id1, int id2);
+	void moveVertex(int id, double x, double y, double z);
+
+	void println(String x);
+	void checkLines();
+	void finish();
+}
@@ -0,0 +1,308 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011,2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes trace events as Python scripts.  Methods are split every
+ * {@link #NR_LINES_BY_METHOD} lines, and classes every
+ * {@link #NR_METHODS} methods, otherwise Jython cannot compile them.
+ */
+class TracePythonOutput implements TraceOutput
+{
+	private static final int NR_METHODS = 80;
+	private static final int NR_LINES_BY_METHOD = 40;
+
+	private static final Logger LOGGER=Logger.getLogger(TracePythonOutput.class.getName());
+	private static final String MANY_SPACES = "                                                                                  ";
+	private String logName;
+	private List<String> commands = new ArrayList<String>();
+	private PrintStream out = System.out;
+	private int indentLevel;
+	private String tab = "";
+	private int cntLines;
+	private int cntMethods;
+	private int cntClasses;
+
+	public void setLogFile(String logName)
+	{
+		this.logName = logName;
+		try {
+			out = new PrintStream(new FileOutputStream(logName+".py"));
+		} catch (FileNotFoundException ex) {
+			LOGGER.log(Level.SEVERE, null, ex);
+		}
+	}
+
+	public void setHooks(String[] commands)
+	{
+		this.commands = new ArrayList<String>(commands.length);
+		for (String s : commands)
+			this.commands.add(s);
+	}
+
+	public void createMesh(String meshVariable, boolean nodeSet)
+	{
+		println("import org.jcae.mesh.amibe.traits.MeshTraitsBuilder");
+		println("import org.jcae.mesh.xmldata.MeshWriter");
+		println("import org.jcae.mesh.amibe.ds.Mesh");
+
+		println("cntModule = 0");
+		println("mods = []");
+		println("while True:");
+		startScope();
+		println("try:");
+		startScope();
+		println("mods.append(__import__(\""+logName+"_cl%d\" % cntModule))");
+		println("cntModule += 1");
+		endScope();
+		println("except ImportError:");
+		startScope();
+		println("break");
+		endScope();
+		endScope();
+
+		println("mtb = org.jcae.mesh.amibe.traits.MeshTraitsBuilder.getDefault3D()");
+		println("mtb.addTraceReplay()");
+		if (nodeSet)
+			println("mtb.addNodeSet()");
+		else
+			println("mtb.addNodeList()");
+		println(meshVariable+" = org.jcae.mesh.amibe.ds.Mesh(mtb)");
+		println("[m.c("+meshVariable+") for m in mods]");
+		println("org.jcae.mesh.xmldata.MeshWriter.writeObject3D("+meshVariable+
+			", \""+logName+"-out\""+", None)");
+		out.close();
+
+		try {
+			out = new PrintStream(new FileOutputStream(logName+"_cl"+cntClasses+".py"));
+		} catch (FileNotFoundException ex) {
+			LOGGER.log(Level.SEVERE, null, ex);
+		}
+
+		println("class c():");
+		startScope();
+		println("def startMethodHook(self):");
+		if (commands.isEmpty())
+			commands.add("pass");
+		for (String cmd : commands)
+			println("    "+cmd);
+		println("def __init__(self, m):");
+		startScope();
+		println("self.m = m");
+		println("self.m.getTrace().add(self.m.outerVertex, -1)");
+	}
+
+	public void createVertex(int id, double x, double y, double z)
+	{
+		println("v = self.m.createVertex("+x+","+y+","+z+")");
+		println("self.m.getTrace().add(v, "+id+")");
+	}
+
+	public void addVertex()
+	{
+		println("self.m.add(v)");
+	}
+
+	public void createTriangle(int id, int v0, int v1, int v2, int group, boolean readable, boolean writable)
+	{
+		println("vTemp0 = self.m.getTrace().getVertex("+v0+")");
+		println("vTemp1 = self.m.getTrace().getVertex("+v1+")");
+		println("vTemp2 = self.m.getTrace().getVertex("+v2+")");
+		println("t = self.m.createTriangle(vTemp0, vTemp1, vTemp2)");
+		println("t.setGroupId("+group+")");
+		if (!readable)
+			println("t.setReadable(False)");
+		if (!writable)
+			println("t.setWritable(False)");
+		println("self.m.getTrace().add(t, "+id+")");
+	}
+
+	public void addTriangle()
+	{
+		println("self.m.add(t)");
+	}
+
+	public void removeVertex(int id)
+	{
+		println("self.m.getTrace().remove(self.m.getTrace().getVertex("+id+"))");
+	}
+
+	public void removeTriangle(int id)
+	{
+		println("self.m.getTrace().remove(self.m.getTrace().getTriangle("+id+"))");
+	}
+
+	public void adjacentTriangles(int id, int[] symIds)
+	{
+		println("t = self.m.getTrace().getTriangle("+id+")");
+		println("ot = t.getAbstractHalfEdge()");
+		println("for i in xrange(3):");
+		startScope();
+		for (int i = 0; i < 3; i++)
+		{
+			println("ot = ot.next()");
+			if (symIds[i] != 0)
+				println("self.m.getTrace().add(ot.sym().getTri(), "+symIds[i]+")");
+		}
+		endScope();
+	}
+
+	private void printEdge(int triangleId, int localNumber)
+	{
+		println("t = self.m.getTrace().getTriangle("+triangleId+")");
+		println("ot = t.getAbstractHalfEdge()");
+		if (localNumber == 1)
+			println("ot = ot.next()");
+		else if(localNumber == 2)
+			println("ot = ot.prev()");
+	}
+
+	public void edgeSwap(int triangleId, int localNumber)
+	{
+		printEdge(triangleId, localNumber);
+		println("self.m.edgeSwap(ot)");
+	}
+
+	public void edgeCollapse(int triangleId, int localNumber, int vertexId)
+	{
+		printEdge(triangleId, localNumber);
+		println("self.m.edgeCollapse(ot, self.m.getTrace().getVertex("+vertexId+"))");
+	}
+
+	public void vertexSplitBefore(int triangleId, int localNumber, int vertexId, boolean nonManifold)
+	{
+		if (nonManifold)
+			println("# NONMANIFOLD vertexSplit");
+		printEdge(triangleId, localNumber);
+		println("ot = self.m.vertexSplit(ot, self.m.getTrace().getVertex("+vertexId+"))");
+	}
+
+	public void fanIterator()
+	{
+		println("fanIt = ot.fanIterator()");
+	}
+
+	public void fanNext()
+	{
+		println("ot = fanIt.next()");
+	}
+
+	public void splitTriangle(boolean t1, int id1, int id2)
+	{
+		if (t1)
+		{
+			println("self.m.getTrace().add(ot.sym().getTri(), "+id1+")");
+			println("self.m.getTrace().add(ot.next().sym().getTri(), " + id2 + ")");
+		}
+		else
+		{
+			println("self.m.getTrace().add(ot.getTri(), "+id1+")");
+			println("self.m.getTrace().add(ot.prev().sym().prev().sym().getTri(), " + id2 + ")");
+		}
+	}
+
+	public void moveVertex(int id, double x, double y, double z)
+	{
+		println("# Vertex "+id);
+		println("v = self.m.getTrace().getVertex("+id+")");
+		println("v.moveTo("+x+", "+y+", "+z+")");
+	}
+
+	private void startScope()
+	{
+		indentLevel += 1;
+		tab = MANY_SPACES.substring(0, 4*indentLevel);
+	}
+
+	private void endScope()
+	{
+		indentLevel -= 1;
+		tab = MANY_SPACES.substring(0, 4*indentLevel);
+	}
+
+	public void checkLines()
+	{
+		if (cntLines > NR_LINES_BY_METHOD)
+		{
+			out.println(tab+"self.cont"+cntMethods+"()\n");
+			if (indentLevel > 0)
+				endScope();
+			out.println(tab+"def cont"+cntMethods+"(self):");
+			startScope();
+			out.println(tab+"self.startMethodHook()");
+			cntLines = 0;
+			cntMethods++;
+			checkMethods();
+		}
+	}
+
+	private void checkMethods()
+	{
+		if (cntMethods > NR_METHODS)
+		{
+			out.println(tab+"pass");
+			cntClasses++;
+			endScope();
+			endScope();
+			out.close();
+
+			try {
+				out = new PrintStream(new FileOutputStream(logName+"_cl"+cntClasses+".py"));
+			} catch (FileNotFoundException ex) {
+				LOGGER.log(Level.SEVERE, null, ex);
+			}
+
+			out.println(tab+"class c():");
+			startScope();
+			out.println(tab+"def startMethodHook(self):");
+			if (commands.isEmpty())
+				commands.add("pass");
+			for (String cmd : commands)
+				out.println(tab+"    "+cmd);
+			out.println(tab+"def __init__(self, m):");
+			startScope();
+			out.println(tab+"self.m = m");
+			cntMethods = 0;
+		}
+	}
+
+	public void println(String x)
+	{
+		out.println(tab+x);
+		cntLines++;
+	}
+
+	public void finish()
+	{
+		cntClasses++;
+		endScope();
+		endScope();
+		out.close();
+	}
+}
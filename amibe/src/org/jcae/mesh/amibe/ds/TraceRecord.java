@@ -1,7 +1,7 @@
 /* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
    modeler, Finite element mesher, Plugin architecture.
 
-    Copyright (C) 2011, by EADS France
+    Copyright (C) 2011,2012, by EADS France
 
     This library is free software; you can redistribute it and/or
     modify it under the terms of the GNU Lesser General Public
@@ -21,33 +21,18 @@ package org.jcae.mesh.amibe.ds;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Set;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
+/**
+ * Records mesh operations.  Vertices and triangles are labelled, and
+ * operations are written either as Python scripts or into a compact
+ * binary file, see {@link TraceBinary}.
+ */
 public class TraceRecord implements TraceInterface
 {
-	private static final int NR_METHODS = 80;
-	private static final int NR_LINES_BY_METHOD = 40;
-
-        private static final Logger LOGGER=Logger.getLogger(TraceRecord.class.getName());
-	private static final String MANY_SPACES = "                                                                                  ";
-	private String logName;
-	private List<String> commands = new ArrayList<String>();
-	private PrintStream out = System.out;
+	private final TraceOutput out;
 	private boolean disabled;
-	private int indentLevel;
-	private String tab = "";
-	private int cntLines;
-	private int cntMethods;
-	private int cntClasses;
 
 	private int labelVertex;
 	private final TObjectIntHashMap<Vertex> mapVertexId = new TObjectIntHashMap<Vertex>();
@@ -57,81 +42,44 @@ public class TraceRecord implements TraceInterface
 	private final TObjectIntHashMap<Triangle> mapTriangleId = new TObjectIntHashMap<Triangle>();
 	private final TIntObjectHashMap<Triangle> mapIdTriangle = new TIntObjectHashMap<Triangle>();
 
+	public TraceRecord()
+	{
+		this(false);
+	}
+
+	/**
+	 * Creates a <code>TraceRecord</code> instance.
+	 *
+	 * @param binary  if <code>true</code>, operations are written into
+	 * <code>logName.bin</code> by a background thread, otherwise they are
+	 * written into <code>logName.py</code> Python scripts.
+	 */
+	public TraceRecord(boolean binary)
+	{
+		out = binary ? new TraceBinaryOutput() : new TracePythonOutput();
+	}
+
 	public void setLogFile(String logName)
 	{
-		this.logName = logName;
-		try {
-			out = new PrintStream(new FileOutputStream(logName+".py"));
-		} catch (FileNotFoundException ex) {
-			LOGGER.log(Level.SEVERE, null, ex);
-		}
+		out.setLogFile(logName);
 	}
 
 	public void setHooks(String[] commands)
 	{
-		this.commands = new ArrayList<String>(commands.length);
-		for (String s : commands)
-			this.commands.add(s);
+		out.setHooks(commands);
 	}
 
 	public void createMesh(String meshName, Mesh mesh)
 	{
-		String meshVariable = meshName;
-		println("import org.jcae.mesh.amibe.traits.MeshTraitsBuilder");
-		println("import org.jcae.mesh.xmldata.MeshWriter");
-		println("import org.jcae.mesh.amibe.ds.Mesh");
-
-		println("cntModule = 0");
-		println("mods = []");
-		println("while True:");
-		startScope();
-		println("try:");
-		startScope();
-		println("mods.append(__import__(\""+logName+"_cl%d\" % cntModule))");
-		println("cntModule += 1");
-		endScope();
-		println("except ImportError:");
-		startScope();
-		println("break");
-		endScope();
-		endScope();
-
-		println("mtb = org.jcae.mesh.amibe.traits.MeshTraitsBuilder.getDefault3D()");
-		println("mtb.addTraceReplay()");
-		if (mesh.getNodes() instanceof Set)
-			println("mtb.addNodeSet()");
-		else
-			println("mtb.addNodeList()");
-		println(meshVariable+" = org.jcae.mesh.amibe.ds.Mesh(mtb)");
-		println("[m.c("+meshVariable+") for m in mods]");
-		println("org.jcae.mesh.xmldata.MeshWriter.writeObject3D("+meshVariable+
-			", \""+logName+"-out\""+", None)");
-		out.close();
-
-		try {
-			out = new PrintStream(new FileOutputStream(logName+"_cl"+cntClasses+".py"));
-		} catch (FileNotFoundException ex) {
-			LOGGER.log(Level.SEVERE, null, ex);
-		}
-
-		println("class c():");
-		startScope();
-		println("def startMethodHook(self):");
-		if (commands.isEmpty())
-			commands.add("pass");
-		for (String cmd : commands)
-			println("    "+cmd);
-		println("def __init__(self, m):");
-		startScope();
-		println("self.m = m");
-
+		if (!disabled)
+			out.createMesh(meshName, mesh.getNodes() instanceof Set);
 		mapIdVertex.put(-1, mesh.outerVertex);
 		mapVertexId.put(mesh.outerVertex, -1);
-		println("self.m.getTrace().add(self.m.outerVertex, -1)");
 		for (Vertex v : mesh.getNodes())
 		{
 			createAndAdd(v);
-			println("self.m.add(v)");
+			if (!disabled)
+				out.addVertex();
 			checkLines();
 		}
 		for (Triangle t : mesh.getTriangles())
@@ -139,7 +87,8 @@ public class TraceRecord implements TraceInterface
 			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
 			{
 				createAndAdd(t);
-				println("self.m.add(t)");
+				if (!disabled)
+					out.addTriangle();
 				checkLines();
 			}
 		}
@@ -164,8 +113,8 @@ public class TraceRecord implements TraceInterface
 	private void createAndAdd(Vertex v)
 	{
 		add(v);
-		println("v = self.m.createVertex("+v.getX()+","+v.getY()+","+v.getZ()+")");
-		println("self.m.getTrace().add(v, "+labelVertex+")");
+		if (!disabled)
+			out.createVertex(labelVertex, v.getX(), v.getY(), v.getZ());
 	}
 
 	public void add(Vertex v)
@@ -183,7 +132,8 @@ public class TraceRecord implements TraceInterface
 	public void remove(Vertex v)
 	{
 		int id = mapVertexId.get(v);
-		println("self.m.getTrace().remove(self.m.getTrace().getVertex("+id+"))");
+		if (!disabled)
+			out.removeVertex(id);
 		mapIdVertex.remove(id);
 		mapVertexId.remove(v);
 	}
@@ -201,16 +151,10 @@ public class TraceRecord implements TraceInterface
 	private void createAndAdd(Triangle t)
 	{
 		add(t);
-		println("vTemp0 = self.m.getTrace().getVertex("+mapVertexId.get(t.getV0())+")");
-		println("vTemp1 = self.m.getTrace().getVertex("+mapVertexId.get(t.getV1())+")");
-		println("vTemp2 = self.m.getTrace().getVertex("+mapVertexId.get(t.getV2())+")");
-		println("t = self.m.createTriangle(vTemp0, vTemp1, vTemp2)");
-		println("t.setGroupId("+t.getGroupId()+")");
-		if (!t.isReadable())
-			println("t.setReadable(False)");
-		if (!t.isWritable())
-			println("t.setWritable(False)");
-		println("self.m.getTrace().add(t, "+labelTriangle+")");
+		if (!disabled)
+			out.createTriangle(labelTriangle, mapVertexId.get(t.getV0()),
+				mapVertexId.get(t.getV1()), mapVertexId.get(t.getV2()),
+				t.getGroupId(), t.isReadable(), t.isWritable());
 	}
 
 	public void add(Triangle t)
@@ -228,7 +172,8 @@ public class TraceRecord implements TraceInterface
 	public void remove(Triangle t)
 	{
 		int id = mapTriangleId.get(t);
-		println("self.m.getTrace().remove(self.m.getTrace().getTriangle("+id+"))");
+		if (!disabled)
+			out.removeTriangle(id);
 		mapIdTriangle.remove(id);
 		mapTriangleId.remove(t);
 	}
@@ -247,6 +192,7 @@ public class TraceRecord implements TraceInterface
 	{
 		if (disabled)
 			return;
+		int [] symIds = new int[3];
 		for (Triangle t : m.getTriangles())
 		{
 			if (!t.hasAttributes(AbstractHalfEdge.BOUNDARY | AbstractHalfEdge.NONMANIFOLD))
@@ -254,52 +200,30 @@ public class TraceRecord implements TraceInterface
 			if (t.hasAttributes(AbstractHalfEdge.OUTER))
 				continue;
 			AbstractHalfEdge ot = t.getAbstractHalfEdge();
-			println("t = self.m.getTrace().getTriangle("+mapTriangleId.get(t)+")");
-			println("ot = t.getAbstractHalfEdge()");
-			println("for i in xrange(3):");
-			startScope();
 			for (int i = 0; i < 3; i++)
 			{
 				ot = ot.next();
-				println("ot = ot.next()");
+				symIds[i] = 0;
 				if (ot.hasAttributes(AbstractHalfEdge.BOUNDARY | AbstractHalfEdge.NONMANIFOLD))
 				{
 					Triangle s = ot.sym().getTri();
 					if (!mapTriangleId.contains(s))
 					{
 						add(s);
-						println("self.m.getTrace().add(ot.sym().getTri(), "+mapTriangleId.get(s)+")");
+						symIds[i] = labelTriangle;
 					}
 				}
 			}
-			endScope();
+			out.adjacentTriangles(mapTriangleId.get(t), symIds);
 			checkLines();
 		}
 	}
 
-	private void startScope()
-	{
-		indentLevel += 1;
-		tab = MANY_SPACES.substring(0, 4*indentLevel);
-	}
-
-	private void endScope()
-	{
-		indentLevel -= 1;
-		tab = MANY_SPACES.substring(0, 4*indentLevel);
-	}
-
 	public void edgeSwap(AbstractHalfEdge h)
 	{
 		if (disabled)
 			return;
-		println("t = self.m.getTrace().getTriangle("+mapTriangleId.get(h.getTri())+")");
-		println("ot = t.getAbstractHalfEdge()");
-		if (h.getLocalNumber() == 1)
-			println("ot = ot.next()");
-		else if(h.getLocalNumber() == 2)
-			println("ot = ot.prev()");
-		println("self.m.edgeSwap(ot)");
+		out.edgeSwap(mapTriangleId.get(h.getTri()), h.getLocalNumber());
 		checkLines();
 	}
 
@@ -310,13 +234,7 @@ public class TraceRecord implements TraceInterface
 		createAndAdd(v);
 		remove(h.origin());
 		remove(h.destination());
-		println("t = self.m.getTrace().getTriangle("+mapTriangleId.get(h.getTri())+")");
-		println("ot = t.getAbstractHalfEdge()");
-		if (h.getLocalNumber() == 1)
-			println("ot = ot.next()");
-		else if(h.getLocalNumber() == 2)
-			println("ot = ot.prev()");
-		println("self.m.edgeCollapse(ot, self.m.getTrace().getVertex("+mapVertexId.get(v)+"))");
+		out.edgeCollapse(mapTriangleId.get(h.getTri()), h.getLocalNumber(), mapVertexId.get(v));
 		checkLines();
 	}
 
@@ -325,15 +243,8 @@ public class TraceRecord implements TraceInterface
 		if (disabled)
 			return;
 		createAndAdd(v);
-		if (h.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
-			println("# NONMANIFOLD vertexSplit");
-		println("t = self.m.getTrace().getTriangle("+mapTriangleId.get(h.getTri())+")");
-		println("ot = t.getAbstractHalfEdge()");
-		if (h.getLocalNumber() == 1)
-			println("ot = ot.next()");
-		else if(h.getLocalNumber() == 2)
-			println("ot = ot.prev()");
-		println("ot = self.m.vertexSplit(ot, self.m.getTrace().getVertex("+mapVertexId.get(v)+"))");
+		out.vertexSplitBefore(mapTriangleId.get(h.getTri()), h.getLocalNumber(),
+			mapVertexId.get(v), h.hasAttributes(AbstractHalfEdge.NONMANIFOLD));
 	}
 
 	public void vertexSplitAfter(AbstractHalfEdge h, Vertex v)
@@ -342,10 +253,10 @@ public class TraceRecord implements TraceInterface
 			return;
 		if (h.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
 		{
-			println("fanIt = ot.fanIterator()");
+			out.fanIterator();
 			for (Iterator<AbstractHalfEdge> fanIt = h.fanIterator(); fanIt.hasNext();)
 			{
-				println("ot = fanIt.next()");
+				out.fanNext();
 				traceSplitTriangle(fanIt.next());
 			}
 		}
@@ -381,95 +292,45 @@ public class TraceRecord implements TraceInterface
 			// h is on t1
 			// Add t4
 			add(h.sym().getTri());
-			println("self.m.getTrace().add(ot.sym().getTri(), "+mapTriangleId.get(h.sym().getTri())+")");
+			int t4 = labelTriangle;
 			// Add t3
 			add(h.next().sym().getTri());
-			println("self.m.getTrace().add(ot.next().sym().getTri(), " + mapTriangleId.get(h.next().sym().getTri()) + ")");
+			out.splitTriangle(true, t4, labelTriangle);
 		}
 		else
 		{
 			// h is on t3
 			// Add t3
 			add(h.getTri());
-			println("self.m.getTrace().add(ot.getTri(), "+mapTriangleId.get(h.getTri())+")");
+			int t3 = labelTriangle;
 			// Add t4.  WARNING: t2 and t4 are outer and are not connected!
 			add(h.prev().sym().prev().sym().getTri());
-			println("self.m.getTrace().add(ot.prev().sym().prev().sym().getTri(), " + mapTriangleId.get(h.prev().sym().prev().sym().getTri()) + ")");
+			out.splitTriangle(false, t3, labelTriangle);
 		}
 	}
 
 	public void moveVertex(Vertex v)
 	{
 		if (!disabled && mapVertexId.containsKey(v))
-		{
-			println("# Vertex "+v);
-			println("v = self.m.getTrace().getVertex("+mapVertexId.get(v)+")");
-			println("v.moveTo("+v.getX()+", "+v.getY()+", "+v.getZ()+")");
-		}
+			out.moveVertex(mapVertexId.get(v), v.getX(), v.getY(), v.getZ());
 		checkLines();
 	}
 
 	private void checkLines()
 	{
-		if (cntLines > NR_LINES_BY_METHOD)
-		{
-			out.println(tab+"self.cont"+cntMethods+"()\n");
-			if (indentLevel > 0)
-				endScope();
-			out.println(tab+"def cont"+cntMethods+"(self):");
-			startScope();
-			out.println(tab+"self.startMethodHook()");
-			cntLines = 0;
-			cntMethods++;
-			checkMethods();
-		}
-	}
-
-	private void checkMethods()
-	{
-		if (cntMethods > NR_METHODS)
-		{
-			out.println(tab+"pass");
-			cntClasses++;
-			endScope();
-			endScope();
-			out.close();
-
-			try {
-				out = new PrintStream(new FileOutputStream(logName+"_cl"+cntClasses+".py"));
-			} catch (FileNotFoundException ex) {
-				LOGGER.log(Level.SEVERE, null, ex);
-			}
-
-			out.println(tab+"class c():");
-			startScope();
-			out.println(tab+"def startMethodHook(self):");
-			if (commands.isEmpty())
-				commands.add("pass");
-			for (String cmd : commands)
-				out.println(tab+"    "+cmd);
-			out.println(tab+"def __init__(self, m):");
-			startScope();
-			out.println(tab+"self.m = m");
-			cntMethods = 0;
-		}
+		if (!disabled)
+			out.checkLines();
 	}
 
 	public void println(String x)
 	{
 		if (!disabled)
-		{
-			out.println(tab+x);
-			cntLines++;
-		}
+			out.println(x);
 	}
 
 	public void finish()
 	{
-		cntClasses++;
-		endScope();
-		endScope();
-		out.close();
+		out.finish();
 	}
 
 }
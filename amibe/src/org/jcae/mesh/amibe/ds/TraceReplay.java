@@ -1,7 +1,7 @@
 /* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
    modeler, Finite element mesher, Plugin architecture.
 
-    Copyright (C) 2011, by EADS France
+    Copyright (C) 2011,2012, by EADS France
 
     This library is free software; you can redistribute it and/or
     modify it under the terms of the GNU Lesser General Public
@@ -19,8 +19,13 @@
 
 package org.jcae.mesh.amibe.ds;
 
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import java.io.IOException;
+import java.util.Iterator;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.xmldata.MeshWriter;
 
 import java.util.logging.Logger;
 
@@ -153,4 +158,204 @@ public class TraceReplay implements TraceInterface
 		// Do nothing
 	}
 
+	/**
+	 * Replays a binary trace file.
+	 *
+	 * @param fileName  binary trace file
+	 * @return  mesh obtained after all operations have been performed
+	 * @see TraceBinary
+	 */
+	public static Mesh replay(String fileName) throws IOException
+	{
+		Player player = new Player();
+		TraceBinary.read(fileName, player);
+		return player.mesh;
+	}
+
+	/**
+	 * Performs operations read from a binary trace file, like Python
+	 * scripts written by {@link TraceRecord} do.
+	 */
+	private static class Player implements TraceOutput
+	{
+		private Mesh mesh;
+		private TraceInterface trace;
+		private Vertex v;
+		private Triangle t;
+		private AbstractHalfEdge ot;
+		private Iterator<AbstractHalfEdge> fanIt;
+		private final TIntArrayList groups = new TIntArrayList();
+
+		public void setLogFile(String logName)
+		{
+		}
+
+		public void setHooks(String[] commands)
+		{
+			// Hooks are Python commands
+		}
+
+		public void createMesh(String meshName, boolean nodeSet)
+		{
+			MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
+			mtb.addTraceReplay();
+			if (nodeSet)
+				mtb.addNodeSet();
+			else
+				mtb.addNodeList();
+			mesh = new Mesh(mtb);
+			trace = mesh.getTrace();
+			trace.add(mesh.outerVertex, -1);
+		}
+
+		public void createVertex(int id, double x, double y, double z)
+		{
+			v = mesh.createVertex(x, y, z);
+			trace.add(v, id);
+		}
+
+		public void addVertex()
+		{
+			mesh.add(v);
+		}
+
+		public void createTriangle(int id, int v0, int v1, int v2, int group, boolean readable, boolean writable)
+		{
+			t = mesh.createTriangle(trace.getVertex(v0), trace.getVertex(v1), trace.getVertex(v2));
+			t.setGroupId(group);
+			if (!readable)
+				t.setReadable(false);
+			if (!writable)
+				t.setWritable(false);
+			trace.add(t, id);
+		}
+
+		public void addTriangle()
+		{
+			mesh.add(t);
+		}
+
+		public void removeVertex(int id)
+		{
+			trace.remove(trace.getVertex(id));
+		}
+
+		public void removeTriangle(int id)
+		{
+			trace.remove(trace.getTriangle(id));
+		}
+
+		public void adjacentTriangles(int id, int[] symIds)
+		{
+			ot = trace.getTriangle(id).getAbstractHalfEdge();
+			for (int i = 0; i < 3; i++)
+			{
+				ot = ot.next();
+				if (symIds[i] != 0)
+					trace.add(ot.sym().getTri(), symIds[i]);
+			}
+		}
+
+		private void setEdge(int triangleId, int localNumber)
+		{
+			ot = trace.getTriangle(triangleId).getAbstractHalfEdge();
+			if (localNumber == 1)
+				ot = ot.next();
+			else if (localNumber == 2)
+				ot = ot.prev();
+		}
+
+		public void edgeSwap(int triangleId, int localNumber)
+		{
+			setEdge(triangleId, localNumber);
+			mesh.edgeSwap(ot);
+		}
+
+		public void edgeCollapse(int triangleId, int localNumber, int vertexId)
+		{
+			setEdge(triangleId, localNumber);
+			mesh.edgeCollapse(ot, trace.getVertex(vertexId));
+		}
+
+		public void vertexSplitBefore(int triangleId, int localNumber, int vertexId, boolean nonManifold)
+		{
+			setEdge(triangleId, localNumber);
+			ot = mesh.vertexSplit(ot, trace.getVertex(vertexId));
+		}
+
+		public void fanIterator()
+		{
+			fanIt = ot.fanIterator();
+		}
+
+		public void fanNext()
+		{
+			ot = fanIt.next();
+		}
+
+		public void splitTriangle(boolean t1, int id1, int id2)
+		{
+			if (t1)
+			{
+				trace.add(ot.sym().getTri(), id1);
+				trace.add(ot.next().sym().getTri(), id2);
+			}
+			else
+			{
+				trace.add(ot.getTri(), id1);
+				trace.add(ot.prev().sym().prev().sym().getTri(), id2);
+			}
+		}
+
+		public void moveVertex(int id, double x, double y, double z)
+		{
+			trace.getVertex(id).moveTo(x, y, z);
+		}
+
+		/*
+		 * Lines are written by Mesh methods, only those
+		 * are interpreted.
+		 */
+		public void println(String x)
+		{
+			if (x.startsWith("#"))
+				return;
+			if (x.equals("self.m.buildAdjacency()"))
+				mesh.buildAdjacency();
+			else if (x.startsWith("self.m.buildRidges("))
+				mesh.buildRidges(Double.parseDouble(x.substring(19, x.length() - 1)));
+			else if (x.equals("groups = []"))
+				groups.resetQuick();
+			else if (x.startsWith("groups.append("))
+				groups.add(Integer.parseInt(x.substring(14, x.length() - 1)));
+			else if (x.equals("self.m.buildGroupBoundaries(groups)"))
+				mesh.buildGroupBoundaries(groups.toArray());
+			else if (x.equals("self.m.buildPartition()"))
+				mesh.buildPartition();
+			else
+				LOGGER.warning("Unknown command: "+x);
+		}
+
+		public void checkLines()
+		{
+		}
+
+		public void finish()
+		{
+		}
+	}
+
+	/**
+	 * Replays a binary trace file and writes resulting mesh.
+	 * @param args  binary trace file and output directory
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 2)
+		{
+			System.out.println("Usage: TraceReplay trace"+TraceBinary.EXTENSION+" outDir");
+			System.exit(1);
+		}
+		MeshWriter.writeObject3D(replay(args[0]), args[1], null);
+	}
 }
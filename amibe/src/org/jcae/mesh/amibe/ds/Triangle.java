@@ -44,6 +44,10 @@ public class Triangle implements Serializable
 	// Group id
 	private int groupId = -1;
 	
+	// Index of the mesh which contains this triangle, if any; it is
+	// marked as out of date when group id changes.
+	transient GroupIndex groupIndex;
+
 	private boolean readable = true;
 	private boolean writable = true;
 
@@ -67,7 +71,7 @@ public class Triangle implements Serializable
 		v2 = src.v2;
 		readable = src.readable;
 		writable = src.writable;
-		groupId = src.groupId;
+		setGroupId(src.groupId);
 	}
 	
 	/**
@@ -135,7 +139,11 @@ public class Triangle implements Serializable
 	 */
 	public final void setGroupId(int g)
 	{
+		if (groupId == g)
+			return;
 		groupId = g;
+		if (groupIndex != null)
+			groupIndex.groupsModified = true;
 	}
 	
 	public final void setReadable(boolean b)
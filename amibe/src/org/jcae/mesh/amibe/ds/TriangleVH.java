@@ -27,8 +27,8 @@ package org.jcae.mesh.amibe.ds;
  * the local number of an edge is the index of its opposite vertex.  A
  * <code>TriangleVH</code> instance has a pointer to its three neighbours
  * through its edges, and knows the local number of opposite edges in
- * their respective triangles.  It also stores as a byte array attributes
- * of its three edges.
+ * their respective triangles.  It also stores attributes of its three
+ * edges, packed into a single integer.
  *
  * <p>
  * As local numbers are integers between 0 and 2, a packed representation
@@ -44,7 +44,7 @@ package org.jcae.mesh.amibe.ds;
  * </p>
  * <ul>
  *   <li><code>a.vertex = { A, B, C }</code></li>
- *   <li><code>a.adjacentTriangles = { c, d, b }</code></li>
+ *   <li><code>a.adj0 = c, a.adj1 = d, a.adj2 = b</code></li>
  *   <li><code>a.adjPos = (0 &lt;&lt;  0) + (1 &lt;&lt;  2) + (0 &lt;&lt;  0) = 2</li>
  * </ul>
  *
@@ -67,9 +67,10 @@ public class TriangleVH extends Triangle
 	private static final long serialVersionUID = 1023860512255791477L;
 
 	/**
-	 * Pointers to adjacent elements through edges.
+	 * Pointers to adjacent elements through edges.  They are stored into
+	 * distinct fields instead of an array to save an object per triangle.
 	 */
-	private final TriangleVH [] adjacentTriangles = new TriangleVH[3];
+	private TriangleVH adj0, adj1, adj2;
 	
 	/**
 	 * Packed representation of adjacent edge local numbers.
@@ -84,9 +85,14 @@ public class TriangleVH extends Triangle
 	private byte adjPos = 0;
 
 	/**
-	 * Edge attributes.
+	 * Packed representation of edge attributes, a byte for each edge:
+	 * <ul>
+	 *     <li>bits 0-7: attributes of edge 0</li>
+	 *     <li>bits 8-15: attributes of edge 1</li>
+	 *     <li>bits 16-23: attributes of edge 2</li>
+	 * </ul>
 	 */
-	private final byte [] edgeAttributes = new byte[3];
+	private int edgeAttributes = 0;
 		
 	/**
 	 * Constructor.
@@ -101,11 +107,11 @@ public class TriangleVH extends Triangle
 	{
 		super.copy(that);
 		TriangleVH src = (TriangleVH) that;
-		System.arraycopy(src.adjacentTriangles, 0, adjacentTriangles, 0, 3);
+		adj0 = src.adj0;
+		adj1 = src.adj1;
+		adj2 = src.adj2;
 		adjPos = src.adjPos;
-		edgeAttributes[0] = src.edgeAttributes[0];
-		edgeAttributes[1] = src.edgeAttributes[1];
-		edgeAttributes[2] = src.edgeAttributes[2];
+		edgeAttributes = src.edgeAttributes;
 	}
 		
 	/**
@@ -149,7 +155,14 @@ public class TriangleVH extends Triangle
 	 */
 	final TriangleVH getAdj(int num)
 	{
-		return adjacentTriangles[num];
+		switch (num)
+		{
+		case 0: return adj0;
+		case 1: return adj1;
+		case 2: return adj2;
+		default:
+			throw new ArrayIndexOutOfBoundsException(num);
+		}
 	}
 	
 	/**
@@ -160,7 +173,14 @@ public class TriangleVH extends Triangle
 	 */
 	final void setAdj(int num, TriangleVH link)
 	{
-		adjacentTriangles[num] = link;
+		switch (num)
+		{
+		case 0: adj0 = link; break;
+		case 1: adj1 = link; break;
+		case 2: adj2 = link; break;
+		default:
+			throw new ArrayIndexOutOfBoundsException(num);
+		}
 	}
 	
 	/**
@@ -196,7 +216,7 @@ public class TriangleVH extends Triangle
 	 */
 	final int getEdgeAttributes(int num)
 	{
-		return edgeAttributes[num];
+		return (byte) (edgeAttributes >> (8*num));
 	}
 
 	/**
@@ -207,7 +227,8 @@ public class TriangleVH extends Triangle
 	 */
 	final void setEdgeAttributes(int num, int attr)
 	{
-		edgeAttributes[num] = (byte) attr;
+		edgeAttributes &= ~(0xff << (8*num));
+		edgeAttributes |= (attr & 0xff) << (8*num);
 	}
 
 	// Helper functions
@@ -219,9 +240,7 @@ public class TriangleVH extends Triangle
 	@Override
 	public final void setAttributes(int attr)
 	{
-		edgeAttributes[0] |= attr;
-		edgeAttributes[1] |= attr;
-		edgeAttributes[2] |= attr;
+		edgeAttributes |= replicate(attr);
 	}
 
 	/**
@@ -232,9 +251,7 @@ public class TriangleVH extends Triangle
 	@Override
 	public void clearAttributes(int attr)
 	{
-		edgeAttributes[0] &= ~attr;
-		edgeAttributes[1] &= ~attr;
-		edgeAttributes[2] &= ~attr;
+		edgeAttributes &= ~replicate(attr);
 	}
 
 	/**
@@ -247,14 +264,23 @@ public class TriangleVH extends Triangle
 	@Override
 	public final boolean hasAttributes(int attr)
 	{
-		return ((edgeAttributes[0] | edgeAttributes[1] | edgeAttributes[2]) & attr) != 0;
+		return (edgeAttributes & replicate(attr)) != 0;
+	}
+
+	/**
+	 * Copies attributes into the three bytes of packed representation.
+	 */
+	private static int replicate(int attr)
+	{
+		attr &= 0xff;
+		return attr | (attr << 8) | (attr << 16);
 	}
 
 	private String showAdj(int num)
 	{
-		if (adjacentTriangles[num] == null)
+		if (getAdj(num) == null)
 			return "N/A";
-		return adjacentTriangles[num].hashCode()+"["+getAdjLocalNumber(num)+"]";
+		return getAdj(num).hashCode()+"["+getAdjLocalNumber(num)+"]";
 	}
 	
 	@Override
@@ -264,7 +290,7 @@ public class TriangleVH extends Triangle
 		r.append("\nAdjacency: ").append(showAdj(0)).append(" ").append(showAdj(1)).append(" ").append(showAdj(2));
 		r.append("\nEdge attributes:");
 		for (int i = 0; i < 3; i++)
-			r.append(" ").append(edgeAttributes[i]);
+			r.append(" ").append(getEdgeAttributes(i));
 		return r.toString();
 	}
 	
@@ -0,0 +1,661 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.jcae.mesh.amibe.util.ParallelLoop;
+
+/**
+ * Thread-safe variant of {@link KdTree}.  Vertices can be added and removed
+ * by several threads, and nearest vertex queries can run concurrently
+ * with these modifications, without any lock.
+ *
+ * <p>
+ * Cells are organized as in {@link KdTree}, with the same integer
+ * coordinates.  Internal cells contain an array of children which are
+ * updated by compare-and-set operations, they are never removed.  Leaves
+ * are immutable buckets of at most {@link #BUCKETSIZE} vertices: a
+ * modification creates a new bucket which replaces the previous one, and
+ * when a bucket is full, a new internal cell is built with copies of its
+ * vertices and replaces this bucket.  If another thread modified the same
+ * cell in the meantime, the operation is retried.  A query thus always
+ * sees consistent buckets, but it may or may not see vertices which are
+ * added or removed while it runs.
+ * </p>
+ *
+ * <p>
+ * Vertices are stored in buckets in the same order as in {@link KdTree},
+ * so that both classes return the same results when there is no removal.
+ * {@link #addAll} builds the tree in parallel, and the result is the same
+ * as when vertices are added sequentially.
+ * </p>
+ */
+public class ConcurrentKdTree<T extends Location>
+{
+	/**
+	 * Maximal number of vertices which can be stored in a leaf.
+	 */
+	private final int BUCKETSIZE;
+
+	/**
+	 * Internal cell, its array contains either <code>null</code>, internal
+	 * cells or buckets.
+	 */
+	private static final class Cell
+	{
+		private final AtomicReferenceArray<Object> subCell;
+		private Cell(int n)
+		{
+			subCell = new AtomicReferenceArray<Object>(n);
+		}
+	}
+
+	/**
+	 * Leaf, its content must not be modified once it is put into the tree.
+	 */
+	private static final class Bucket
+	{
+		private final Object [] items;
+		private Bucket(Object [] items)
+		{
+			this.items = items;
+		}
+	}
+
+	private final int dimension;
+	private final int nrSub;
+
+	// Integer coordinates (like gridSize) must be long if MAXLEVEL > 30
+	private static final int MAXLEVEL = 30;
+	private static final int gridSize = 1 << MAXLEVEL;
+	private static final double DGridSize = gridSize;
+
+	/**
+	 * Root of the kd-tree, the root cell is stored into an array so that
+	 * it can be replaced like other cells.
+	 */
+	private final AtomicReferenceArray<Object> root = new AtomicReferenceArray<Object>(1);
+
+	/**
+	 * Conversion between double and integer coordinates.
+	 */
+	private final double [] x0;
+
+	/**
+	 * Create a new <code>ConcurrentKdTree</code> of the desired size.
+	 *
+	 * @param bbox   coordinates of bottom-left vertex and upper-right vertices
+	 */
+	public ConcurrentKdTree(double [] bbox)
+	{
+		this(bbox, 10);
+	}
+
+	/**
+	 * Create a new <code>ConcurrentKdTree</code> of the desired size.
+	 *
+	 * @param bbox   coordinates of bottom-left vertex and upper-right vertices
+	 * @param bucketsize  bucket size
+	 */
+	ConcurrentKdTree(double [] bbox, int bucketsize)
+	{
+		BUCKETSIZE = bucketsize;
+		dimension = bbox.length / 2;
+		if (dimension != 2 && dimension != 3)
+			throw new IllegalArgumentException();
+		nrSub = 1 << dimension;
+		x0 = new double[dimension+1];
+		double maxDelta = 0.0;
+		for (int i = 0; i < dimension; i++)
+		{
+			x0[i] = bbox[i];
+			double delta = Math.abs(bbox[i+dimension] - bbox[i]);
+			if (delta > maxDelta)
+				maxDelta = delta;
+		}
+		maxDelta *= 1.01;
+		x0[dimension] = DGridSize / maxDelta;
+	}
+
+	private void double2int(T p, int [] i)
+	{
+		i[0] = (int) ((p.getX() - x0[0]) * x0[dimension]);
+		i[1] = (int) ((p.getY() - x0[1]) * x0[dimension]);
+		if (i.length > 2)
+			i[2] = (int) ((p.getZ() - x0[2]) * x0[dimension]);
+	}
+
+	/**
+	 * Transform integer coordinates into double coordinates.
+	 * @param i  integer coordinates
+	 * @param p  double coordinates
+	 */
+	public final void int2double(int [] i, double [] p)
+	{
+		for (int k = 0; k < dimension; k++)
+			p[k] = x0[k] + i[k] / x0[dimension];
+	}
+
+	/**
+	 * Return the index of the child node containing a given point,
+	 * see {@link KdTree}.
+	 */
+	private int indexSubCell(int [] ijk, int offset, int size)
+	{
+		if (size == 0)
+		{
+			int [] coord = new int[dimension];
+			System.arraycopy(ijk, offset, coord, 0, dimension);
+			double [] coords = new double[dimension];
+			int2double(coord, coords);
+			throw new RuntimeException(
+				"Exceeded maximal number of levels for kd-trees around "+
+				Arrays.toString(coords) +"... Aborting");
+		}
+		int ret = 0;
+		for (int k = 0; k < dimension; k++)
+		{
+			if ((ijk[offset+k] & size) != 0)
+				ret |= 1 << k;
+		}
+		return ret;
+	}
+
+	/**
+	 * Build an internal cell containing vertices of a full bucket.
+	 */
+	@SuppressWarnings("unchecked")
+	private Cell split(Bucket bucket, int s, int [] ij)
+	{
+		Cell ret = new Cell(nrSub);
+		Object [][] items = new Object[nrSub][];
+		int [] count = new int[nrSub];
+		for (Object o : bucket.items)
+		{
+			double2int((T) o, ij);
+			int ind = indexSubCell(ij, 0, s);
+			if (items[ind] == null)
+				items[ind] = new Object[bucket.items.length];
+			items[ind][count[ind]] = o;
+			count[ind]++;
+		}
+		for (int i = 0; i < nrSub; i++)
+		{
+			if (items[i] != null)
+			{
+				Object [] array = new Object[count[i]];
+				System.arraycopy(items[i], 0, array, 0, count[i]);
+				ret.subCell.set(i, new Bucket(array));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Add a vertex to the kd-tree.  This method can be called
+	 * concurrently.
+	 *
+	 * @param v  the vertex being added.
+	 */
+	public final void add(T v)
+	{
+		int [] ij = new int[dimension];
+		double2int(v, ij);
+		add(root, 0, gridSize, v, ij, 0, new int[dimension]);
+	}
+
+	/**
+	 * Add a vertex below a given cell.
+	 *
+	 * @param parent  array containing this cell
+	 * @param pos  index of this cell in <code>parent</code>
+	 * @param s  size of this cell
+	 * @param v  the vertex being added
+	 * @param ijk  integer coordinates
+	 * @param offset  offset of <code>v</code> coordinates in <code>ijk</code>
+	 * @param work  work array
+	 */
+	private void add(AtomicReferenceArray<Object> parent, int pos, int s,
+		T v, int [] ijk, int offset, int [] work)
+	{
+		while (true)
+		{
+			Object current = parent.get(pos);
+			if (current instanceof Cell)
+			{
+				s >>= 1;
+				parent = ((Cell) current).subCell;
+				pos = indexSubCell(ijk, offset, s);
+				continue;
+			}
+			Bucket bucket = (Bucket) current;
+			Object replacement;
+			if (bucket == null)
+				replacement = new Bucket(new Object[] { v });
+			else if (bucket.items.length < BUCKETSIZE)
+			{
+				Object [] items = new Object[bucket.items.length + 1];
+				System.arraycopy(bucket.items, 0, items, 0, bucket.items.length);
+				items[bucket.items.length] = v;
+				replacement = new Bucket(items);
+			}
+			else
+			{
+				// Split this bucket and try again
+				parent.compareAndSet(pos, bucket, split(bucket, s >> 1, work));
+				continue;
+			}
+			if (parent.compareAndSet(pos, bucket, replacement))
+				return;
+		}
+	}
+
+	/**
+	 * Add vertices to the kd-tree.  The kd-tree is the same as if
+	 * {@link #add} was called on each vertex, but cells are built in
+	 * parallel.  This method must not be called concurrently with other
+	 * methods modifying this instance.
+	 *
+	 * @param vertices  vertices being added
+	 * @param loop  loop used to build cells in parallel, may be
+	 *   <code>null</code>
+	 */
+	public final void addAll(Collection<? extends T> vertices, ParallelLoop loop)
+	{
+		@SuppressWarnings("unchecked")
+		final T [] array = (T []) vertices.toArray(new Location[vertices.size()]);
+		final int n = array.length;
+		if (n == 0)
+			return;
+		int threads = (loop == null ? 1 : loop.getThreads());
+		if (threads <= 1)
+		{
+			for (T v : array)
+				add(v);
+			return;
+		}
+		final int [] ijk = new int[dimension * n];
+		loop.execute(n, new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				int [] ij = new int[dimension];
+				for (int i = start; i < end; i++)
+				{
+					double2int(array[i], ij);
+					System.arraycopy(ij, 0, ijk, dimension * i, dimension);
+				}
+			}
+		});
+		// Vertices are sorted by cells until there are enough tasks.
+		// Each task adds vertices into a distinct cell.
+		final int [] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		final List<AddTask> tasks = new ArrayList<AddTask>();
+		int maxTaskSize = Math.max(BUCKETSIZE, n / (16 * threads));
+		dispatch(root, 0, gridSize, array, ijk, order, new int[n], 0, n, maxTaskSize, tasks);
+		loop.execute(tasks.size(), new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				int [] work = new int[dimension];
+				for (int i = start; i < end; i++)
+				{
+					AddTask task = tasks.get(i);
+					for (int j = task.start; j < task.end; j++)
+					{
+						int k = order[j];
+						add(task.parent, task.pos, task.size, array[k], ijk, dimension * k, work);
+					}
+				}
+			}
+		});
+	}
+
+	private static final class AddTask
+	{
+		private final AtomicReferenceArray<Object> parent;
+		private final int pos, size, start, end;
+		private AddTask(AtomicReferenceArray<Object> parent, int pos, int size, int start, int end)
+		{
+			this.parent = parent;
+			this.pos = pos;
+			this.size = size;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Dispatch vertices <code>order[start..end)</code> below a cell.  If
+	 * there are too many vertices, this cell is split if it is a bucket,
+	 * and vertices are sorted by children with a stable sort so that their
+	 * insertion order is preserved.
+	 */
+	private void dispatch(AtomicReferenceArray<Object> parent, int pos, int s,
+		T [] array, int [] ijk, int [] order, int [] work, int start, int end,
+		int maxTaskSize, List<AddTask> tasks)
+	{
+		Object current = parent.get(pos);
+		if (current instanceof Bucket)
+		{
+			Bucket bucket = (Bucket) current;
+			if (bucket.items.length + end - start <= BUCKETSIZE)
+			{
+				tasks.add(new AddTask(parent, pos, s, start, end));
+				return;
+			}
+			// Append vertices until bucket is split
+			int [] ij = new int[dimension];
+			int i = start;
+			while (parent.get(pos) instanceof Bucket)
+			{
+				int k = order[i];
+				add(parent, pos, s, array[k], ijk, dimension * k, ij);
+				i++;
+			}
+			start = i;
+			current = parent.get(pos);
+		}
+		if (end - start <= maxTaskSize || s == 1)
+		{
+			if (end > start)
+				tasks.add(new AddTask(parent, pos, s, start, end));
+			return;
+		}
+		if (current == null)
+		{
+			current = new Cell(nrSub);
+			parent.set(pos, current);
+		}
+		Cell cell = (Cell) current;
+		s >>= 1;
+		int [] count = new int[nrSub + 1];
+		for (int i = start; i < end; i++)
+			count[indexSubCell(ijk, dimension * order[i], s) + 1]++;
+		for (int i = 1; i <= nrSub; i++)
+			count[i] += count[i-1];
+		int [] first = new int[nrSub + 1];
+		System.arraycopy(count, 0, first, 0, nrSub + 1);
+		for (int i = start; i < end; i++)
+		{
+			int ind = indexSubCell(ijk, dimension * order[i], s);
+			work[start + count[ind]] = order[i];
+			count[ind]++;
+		}
+		System.arraycopy(work, start, order, start, end - start);
+		for (int i = 0; i < nrSub; i++)
+		{
+			if (first[i+1] > first[i])
+				dispatch(cell.subCell, i, s, array, ijk, order, work,
+					start + first[i], start + first[i+1], maxTaskSize, tasks);
+		}
+	}
+
+	/**
+	 * Remove a vertex from the kd-tree.  This method can be called
+	 * concurrently.
+	 *
+	 * @param v  the vertex being removed.
+	 */
+	public final void remove(T v)
+	{
+		int [] ij = new int[dimension];
+		double2int(v, ij);
+		AtomicReferenceArray<Object> parent = root;
+		int pos = 0;
+		int s = gridSize;
+		while (true)
+		{
+			Object current = parent.get(pos);
+			if (current instanceof Cell)
+			{
+				s >>= 1;
+				parent = ((Cell) current).subCell;
+				pos = indexSubCell(ij, 0, s);
+				continue;
+			}
+			Bucket bucket = (Bucket) current;
+			int index = -1;
+			if (bucket != null)
+			{
+				for (int i = 0; i < bucket.items.length; i++)
+				{
+					if (v == bucket.items[i])
+					{
+						index = i;
+						break;
+					}
+				}
+			}
+			if (index < 0)
+				throw new RuntimeException("Vertex "+v+" is not present and can not be deleted");
+			Bucket replacement = null;
+			if (bucket.items.length > 1)
+			{
+				Object [] items = new Object[bucket.items.length - 1];
+				System.arraycopy(bucket.items, 0, items, 0, index);
+				System.arraycopy(bucket.items, index + 1, items, index, items.length - index);
+				replacement = new Bucket(items);
+			}
+			if (parent.compareAndSet(pos, bucket, replacement))
+				return;
+		}
+	}
+
+	/**
+	 * Return a collection of all vertices.
+	 *
+	 * @param capacity  initial capacity of the <code>Collection</code>.
+	 * @return a collection containing all vertices.
+	 */
+	@SuppressWarnings("unchecked")
+	public final Collection<T> getAllVertices(int capacity)
+	{
+		Collection<T> ret = new ArrayList<T>(capacity);
+		List<Object> stack = new ArrayList<Object>();
+		stack.add(root.get(0));
+		while (!stack.isEmpty())
+		{
+			Object current = stack.remove(stack.size() - 1);
+			if (current instanceof Cell)
+			{
+				AtomicReferenceArray<Object> subCell = ((Cell) current).subCell;
+				for (int i = nrSub - 1; i >= 0; i--)
+				{
+					Object o = subCell.get(i);
+					if (o != null)
+						stack.add(o);
+				}
+			}
+			else if (current != null)
+			{
+				for (Object o : ((Bucket) current).items)
+					ret.add((T) o);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Return a stored element of the <code>ConcurrentKdTree</code> which
+	 * is near from a given position, see {@link KdTree#getNearVertex}.
+	 *
+	 * @param uv  coordinates.
+	 * @return a near vertex, or <code>null</code> if tree is empty.
+	 */
+	public final T getNearVertex(Metric metric, T uv)
+	{
+		int [] ijk = new int[dimension];
+		double2int(uv, ijk);
+		Object [] ancestors = new Object[MAXLEVEL + 1];
+		int l = 0;
+		Object current = root.get(0);
+		int s = gridSize;
+		while (current instanceof Cell)
+		{
+			ancestors[l++] = current;
+			s >>= 1;
+			current = ((Cell) current).subCell.get(indexSubCell(ijk, 0, s));
+		}
+		if (current != null)
+			return nearestInBucket((Bucket) current, metric, uv);
+		// Cells are not removed, search in siblings and then in
+		// siblings of ancestors.
+		while (l > 0)
+		{
+			l--;
+			Bucket bucket = getFirstBucket(ancestors[l]);
+			if (bucket != null)
+				return nearestInBucket(bucket, metric, uv);
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T nearestInBucket(Bucket bucket, Metric metric, T uv)
+	{
+		T ret = (T) bucket.items[0];
+		double retdist = metric.distance2(uv, ret);
+		for (int i = 1; i < bucket.items.length; i++)
+		{
+			T vQ = (T) bucket.items[i];
+			double d = metric.distance2(uv, vQ);
+			if (d < retdist)
+			{
+				retdist = d;
+				ret = vQ;
+			}
+		}
+		return ret;
+	}
+
+	private Bucket getFirstBucket(Object current)
+	{
+		if (current instanceof Bucket)
+			return (Bucket) current;
+		if (current == null)
+			return null;
+		AtomicReferenceArray<Object> subCell = ((Cell) current).subCell;
+		for (int i = 0; i < nrSub; i++)
+		{
+			Bucket ret = getFirstBucket(subCell.get(i));
+			if (ret != null)
+				return ret;
+		}
+		return null;
+	}
+
+	private final class NearestVertexSearch
+	{
+		private final int [] ijk = new int[dimension];
+		private final T fromPosition;
+		private final Metric metric;
+		private T nearestVertex;
+		private final double [] i2d = new double[dimension];
+		private final int [] idist = new int[dimension];
+		private double dist;
+		private NearestVertexSearch(Metric m, T from, T v)
+		{
+			double2int(from, ijk);
+			nearestVertex = v;
+			fromPosition = from;
+			metric = m;
+			dist = metric.distance2(fromPosition, nearestVertex);
+			double [] r = metric.getUnitBallBBox();
+			for (int k = 0; k < dimension; k++)
+				i2d[k] = 1.005 * x0[dimension] * r[k];
+			updateDistance();
+		}
+
+		private void updateDistance()
+		{
+			for (int k = 0; k < dimension; k++)
+			{
+				idist[k] = (int) (Math.sqrt(dist) * i2d[k]);
+				if (idist[k] > Integer.MAX_VALUE/2)
+					idist[k] = Integer.MAX_VALUE/2;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void search(Object current, int s, int [] i0)
+		{
+			for (int k = 0; k < dimension; k++)
+				if ((ijk[k] < i0[k] - idist[k]) || (ijk[k] > i0[k] + s + idist[k]))
+					return;
+			if (current instanceof Bucket)
+			{
+				boolean updated = false;
+				for (Object o : ((Bucket) current).items)
+				{
+					T vtest = (T) o;
+					double retdist = metric.distance2(fromPosition, vtest);
+					if (retdist < dist)
+					{
+						dist = retdist;
+						nearestVertex = vtest;
+						updated = true;
+					}
+				}
+				if (updated)
+					updateDistance();
+				return;
+			}
+			AtomicReferenceArray<Object> subCell = ((Cell) current).subCell;
+			s >>= 1;
+			for (int i = 0; i < nrSub; i++)
+			{
+				Object child = subCell.get(i);
+				if (child == null)
+					continue;
+				for (int k = 0; k < dimension; k++)
+					if ((i & (1 << k)) != 0)
+						i0[k] += s;
+				search(child, s, i0);
+				for (int k = 0; k < dimension; k++)
+					if ((i & (1 << k)) != 0)
+						i0[k] -= s;
+			}
+		}
+	}
+
+	/**
+	 * Return the nearest vertex stored in this <code>ConcurrentKdTree</code>.
+	 * This method can be called concurrently.
+	 *
+	 * @param uv  coordinates.
+	 * @return the nearest vertex, or <code>null</code> if tree is empty.
+	 */
+	public final T getNearestVertex(Metric metric, T uv)
+	{
+		T near = getNearVertex(metric, uv);
+		if (near == null)
+			return null;
+		NearestVertexSearch search = new NearestVertexSearch(metric, uv, near);
+		Object current = root.get(0);
+		if (current != null)
+			search.search(current, gridSize, new int[dimension]);
+		return search.nearestVertex;
+	}
+}
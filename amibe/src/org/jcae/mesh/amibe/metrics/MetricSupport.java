@@ -21,17 +21,22 @@
 package org.jcae.mesh.amibe.metrics;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.util.ParallelLoop;
 import org.jcae.mesh.xmldata.DoubleFileReader;
 import org.jcae.mesh.xmldata.PrimitiveFileReaderFactory;
 
@@ -49,17 +54,24 @@ public class MetricSupport {
 		new TIntObjectHashMap<AnalyticMetricInterface>();
 	private final String sizeOptionKey;
 	private EuclidianMetric3D uniformMetric;
+	// Ranges smaller than this value are not split by compute()
+	private static final int MIN_CHUNK_SIZE = 256;
+
 	public interface AnalyticMetricInterface
 	{
 		/**
 		 * Return the target size when topology information are available.
 		 * This is used for exemple before inserting a point into the mesh.
+		 * It may be called concurrently by several threads when
+		 * {@link org.jcae.mesh.amibe.ds.MeshParameters#getThreads} is
+		 * greater than one.
 		 */
 		double getTargetSize(double x, double y, double z, int groupId);
 
 		/**
 		 * Return the target size when topology information are available.
-		 * This is only used at the initialization of algorithms
+		 * This is only used at the initialization of algorithms, it
+		 * may also be called concurrently by several threads.
 		 */
 		double getTargetSizeTopo(Mesh mesh, Vertex v);
 	}
@@ -162,29 +174,89 @@ public class MetricSupport {
 		metricsPartitionMap.put(groupId, m);
 	}
 
+	/**
+	 * Computes metrics of all vertices from analytic metrics.  Each vertex
+	 * is evaluated once by each analytic metric of its adjacent triangles,
+	 * and the smallest size is kept.  Evaluations are performed by
+	 * {@link org.jcae.mesh.amibe.ds.MeshParameters#getThreads} threads.
+	 */
 	public void compute()
 	{
-		if (analyticMetric != null || !metricsPartitionMap.isEmpty())
+		if (analyticMetric == null && metricsPartitionMap.isEmpty())
+			return;
+		// Vertices are numbered in order of appearance, and vertices of
+		// each analytic metric are marked in a bit set
+		List<AnalyticMetricInterface> metricList = new ArrayList<AnalyticMetricInterface>();
+		List<BitSet> usedBy = new ArrayList<BitSet>();
+		Collection<Vertex> nodeset = mesh.getNodes();
+		int capacity = nodeset == null ? mesh.getTriangles().size() / 2 : nodeset.size();
+		TObjectIntHashMap<Vertex> position = new TObjectIntHashMap<Vertex>(capacity, 0.5f, -1);
+		List<Vertex> vertices = new ArrayList<Vertex>(capacity);
+		AnalyticMetricInterface lastMetric = null;
+		BitSet used = null;
+		for (Triangle t : mesh.getTriangles())
 		{
-			for (Triangle t : mesh.getTriangles())
+			if (!t.isReadable())
+				continue;
+			AnalyticMetricInterface metric = getAnalyticMetric(t.getGroupId());
+			if (metric == null)
+				throw new NullPointerException("Cannot determine metrics, either set 'size' or 'metricsMap' arguments, or call Remesh.setAnalyticMetric()");
+			if (metric != lastMetric)
+			{
+				int index = metricList.indexOf(metric);
+				if (index < 0)
+				{
+					index = metricList.size();
+					metricList.add(metric);
+					usedBy.add(new BitSet());
+				}
+				lastMetric = metric;
+				used = usedBy.get(index);
+			}
+			for (int i = 0; i < 3; i++)
 			{
-				if (!t.isReadable())
-					continue;
-				AnalyticMetricInterface metric = getAnalyticMetric(t.getGroupId());
-				if (metric == null)
-					throw new NullPointerException("Cannot determine metrics, either set 'size' or 'metricsMap' arguments, or call Remesh.setAnalyticMetric()");
-				for (int i = 0; i < 3; i++)
+				Vertex v = t.getV(i);
+				int p = position.putIfAbsent(v, vertices.size());
+				if (p < 0)
 				{
-					Vertex v = t.getV(i);
-					EuclidianMetric3D curMetric = metrics.get(v);
-					EuclidianMetric3D newMetric = new EuclidianMetric3D(
-						metric.getTargetSizeTopo(mesh, v));
+					p = vertices.size();
+					vertices.add(v);
+				}
+				used.set(p);
+			}
+		}
+		ParallelLoop loop = new ParallelLoop(mesh.getMeshParameters().getThreads(), MIN_CHUNK_SIZE);
+		try
+		{
+			for (int m = 0; m < metricList.size(); m++)
+			{
+				final AnalyticMetricInterface metric = metricList.get(m);
+				BitSet b = usedBy.get(m);
+				final Vertex [] nodes = new Vertex[b.cardinality()];
+				for (int i = b.nextSetBit(0), n = 0; i >= 0; i = b.nextSetBit(i + 1))
+					nodes[n++] = vertices.get(i);
+				final double [] sizes = new double[nodes.length];
+				loop.execute(nodes.length, new ParallelLoop.Body() {
+					public void run(int start, int end)
+					{
+						for (int i = start; i < end; i++)
+							sizes[i] = metric.getTargetSizeTopo(mesh, nodes[i]);
+					}
+				});
+				for (int i = 0; i < nodes.length; i++)
+				{
+					EuclidianMetric3D curMetric = metrics.get(nodes[i]);
+					EuclidianMetric3D newMetric = new EuclidianMetric3D(sizes[i]);
 					if (curMetric == null ||
 						curMetric.getUnitBallBBox()[0] > newMetric.getUnitBallBBox()[0])
-						metrics.put(v, newMetric);
+						metrics.put(nodes[i], newMetric);
 				}
 			}
 		}
+		finally
+		{
+			loop.shutdown();
+		}
 	}
 
 	public void put(Vertex v)
@@ -222,8 +294,8 @@ public class MetricSupport {
 		}
 		else
 		{
-			toReturn = new EuclidianMetric3D(
-				metric.getTargetSize(v.getX(), v.getY(), v.getZ(), groupId));
+			toReturn = new EuclidianMetric3D(metric.getTargetSize(
+				v.getX(), v.getY(), v.getZ(), groupId));
 		}
 		return toReturn;
 	}
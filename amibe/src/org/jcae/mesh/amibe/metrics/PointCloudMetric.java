@@ -53,6 +53,13 @@ public class PointCloudMetric extends MetricSupport.AnalyticMetric {
     private double defaultValue = 1;
     protected double scaling = 1;
     private KdTree<Point> kdTree;
+    /** Query point, reused to avoid an allocation by getTargetSize call */
+    private final ThreadLocal<Point> query = new ThreadLocal<Point>() {
+        @Override
+        protected Point initialValue() {
+            return new Point(0, 0, 0);
+        }
+    };
 
     /**
      * Add a point cloud from a binary file.
@@ -117,7 +124,9 @@ public class PointCloudMetric extends MetricSupport.AnalyticMetric {
     public double getTargetSize(double x, double y, double z, int groupId) {
         double r = defaultValue;
         if(kdTree != null) {
-            Point l = kdTree.getNearVertex(metric, new Point(x, y, z));
+            Point p = query.get();
+            p.moveTo(x, y, z);
+            Point l = kdTree.getNearVertex(metric, p);
             r = l == null ? r : l.value;
         }
         return r * scaling;
@@ -47,7 +47,6 @@ public class Vertex2D extends Vertex
 {
 	private static final long serialVersionUID = -6099275818186028566L;
 	private static final Logger logger=Logger.getLogger(Vertex2D.class.getName());
-	private static final Vertex2D circumcenter = new Vertex2D(null, 0.0, 0.0);
 
 	/**
 	 * Metric at this Vertex.  It is managed by Mesh2D.
@@ -306,7 +305,7 @@ public class Vertex2D extends Vertex
 	     ==> x orth(M,V12) - y orth(M,V13) = 0.5 V23
 	         x = <V23, V13> / (2 <orth(M,V12), V13>)
 	*/
-	private static Vertex2D circumcenter(Metric2D m2d, Vertex2D v1, Vertex2D v2, Vertex2D v3, double[] po)
+	private static Vertex2D circumcenter(Metric2D m2d, Vertex2D v1, Vertex2D v2, Vertex2D v3, double[] po, Vertex2D circumcenter)
 		throws RuntimeException
 	{
 		//  Metrics on current vertex
@@ -365,15 +364,17 @@ public class Vertex2D extends Vertex
 		if (vc1.onLeft(kdTree, va3, this) >= 0L || vc2.onLeft(kdTree, va3, this) <= 0L)
 			return false;
 
+		// Work arrays are allocated here, faces may be meshed concurrently
 		double [] orth = new double[2];
+		Vertex2D circumcenter = new Vertex2D(null, 0.0, 0.0);
 		try {
 			Metric2D mA = mesh.getMetric(this);
 			Metric2D mB = mesh.getMetric(va3);
-			Vertex2D C3 = circumcenter(mB, vc1, vc2, va3, orth);
+			Vertex2D C3 = circumcenter(mB, vc1, vc2, va3, orth, circumcenter);
 			double ret = Math.sqrt(
 				mB.distance2(C3, this) /
 				mB.distance2(C3, va3));
-			Vertex2D C0 = circumcenter(mA, vc1, vc2, va3, orth);
+			Vertex2D C0 = circumcenter(mA, vc1, vc2, va3, orth, circumcenter);
 			ret += Math.sqrt(
 				mA.distance2(C0, this) /
 				mA.distance2(C0, va3));
@@ -387,14 +388,14 @@ public class Vertex2D extends Vertex
 			// this -> vc2   vc1 -> this   vc2 -> va3  va3 -> vc1
 			Metric2D mA = mesh.getMetric(vc2);
 			Metric2D mB = mesh.getMetric(vc1);
-			Vertex2D C3 = circumcenter(mB, this, va3, vc1, orth);
+			Vertex2D C3 = circumcenter(mB, this, va3, vc1, orth, circumcenter);
 			double ret = Math.sqrt(
 				mB.distance2(C3, vc2) /
 				mB.distance2(C3, vc1));
 			// FIXME: mesh.getMetric(this) gives better results than mA,
 			// see for instance sphere.brep with an edge length of 0.005
 			// That sounds wrong, it needs to be investigated.
-			Vertex2D C0 = circumcenter(mesh.getMetric(this), this, va3, vc1, orth);
+			Vertex2D C0 = circumcenter(mesh.getMetric(this), this, va3, vc1, orth, circumcenter);
 			ret += Math.sqrt(
 				mA.distance2(C0, vc2) /
 				mA.distance2(C0, vc1));
@@ -35,20 +35,23 @@ import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
  * @author Jerome Robert
  */
 //TODO possible optimization:
-// - one TriangleKdTree by group ?
+// - one TriangleBVH by group ?
 // - check how MeshLiaison methods calls sequence to limit the number of call
 //   to getClosestTriangle
 public class KdTreeLiaison extends MeshLiaison{
-	private final TriangleKdTree kdTree;
+	private final TriangleBVH kdTree;
+	private final transient TriangleBVH.Query query;
 	private final transient Location tmpCoords = new Location();
 	public KdTreeLiaison(Mesh backgroundMesh, MeshTraitsBuilder mtb) {
 		super(backgroundMesh, mtb);
-		kdTree = new TriangleKdTree(backgroundMesh);
+		kdTree = new TriangleBVH(backgroundMesh);
+		query = kdTree.createQuery();
 	}
 
 	public KdTreeLiaison(Mesh backgroundMesh, Mesh currentMesh, MeshTraitsBuilder mtb) {
 		super(backgroundMesh, currentMesh, mtb);
-		kdTree = new TriangleKdTree(backgroundMesh);
+		kdTree = new TriangleBVH(backgroundMesh);
+		query = kdTree.createQuery();
 	}
 
 	@Override
@@ -60,13 +63,25 @@ public class KdTreeLiaison extends MeshLiaison{
 	@Override
 	protected boolean move(Vertex v, Location target, boolean backup, int group,
 		boolean doCheck) {
-		Triangle t = kdTree.getClosestTriangle(target, tmpCoords, group);
+		Triangle t = kdTree.getClosestTriangle(target, tmpCoords, group, query);
 		v.moveTo(tmpCoords);
 		return t != null;
 	}
 
+	@Override
+	public boolean isThreadSafe()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean project(Vertex v, Location target, Location result, int group)
+	{
+		return kdTree.getClosestTriangle(target, result, group) != null;
+	}
+
 	private Triangle getBackgroundTriangle(Vertex v) {
-		Triangle toReturn = kdTree.getClosestTriangle(v, null, -1);
+		Triangle toReturn = kdTree.getClosestTriangle(v, null, -1, query);
 		if(toReturn == null)
 			throw new NoSuchElementException(v.toString());
 		return toReturn;
@@ -96,7 +111,7 @@ public class KdTreeLiaison extends MeshLiaison{
 
 	@Override
 	public void addVertex(Vertex v, Vertex existingVertex, double[] normal) {
-		Triangle t = kdTree.getClosestTriangle(v, tmpCoords, -1);
+		Triangle t = kdTree.getClosestTriangle(v, tmpCoords, -1, query);
 		v.moveTo(tmpCoords);
 		Matrix3D.computeNormal3D(t.getV0(), t.getV1(), t.getV2(),
 			work1, work2, normal);
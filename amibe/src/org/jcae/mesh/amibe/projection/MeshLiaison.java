@@ -244,6 +244,33 @@ public abstract class MeshLiaison
 
 	protected abstract boolean move(Vertex v, Location target, boolean backup,  int group, boolean doCheck);
 
+	/**
+	 * Tells whether {@link #project} is supported.  Such a liaison does
+	 * not keep track of vertex projections, {@link #project} can be
+	 * called concurrently and vertices can then be moved to the projected
+	 * location without notifying this instance.
+	 * @return <code>false</code>
+	 */
+	public boolean isThreadSafe()
+	{
+		return false;
+	}
+
+	/**
+	 * Projects a location onto the background mesh.  Neither the vertex
+	 * nor this instance is modified.  This method is only supported if
+	 * {@link #isThreadSafe} returns <code>true</code>.
+	 * @param v vertex being moved
+	 * @param target  location to project
+	 * @param result  projected location
+	 * @param group  group of background triangles, or -1 for all groups
+	 * @return <code>true</code> if a projection has been found, <code>false</code> otherwise.
+	 */
+	public boolean project(Vertex v, Location target, Location result, int group)
+	{
+		throw new UnsupportedOperationException();
+	}
+
 	/**
 	 * Get the projection of a vertex on the closest edge of the skeleton (list of edge which are non-manifold or
 	 * border of groups)
@@ -27,13 +27,16 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.util.ParallelLoop;
 import org.jcae.mesh.xmldata.GPure2Amibe;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.xml.sax.SAXException;
@@ -76,27 +79,43 @@ public class ProjectorCLI {
 		mtb.addNodeList();
 		Mesh mesh = new Mesh(mtb);
 		MeshReader.readObject3D(mesh, amibeDir);
-		TriangleKdTree kdTree = new TriangleKdTree(mesh);
+		int threads = mesh.getMeshParameters().getThreads();
+		ParallelLoop loop = new ParallelLoop(threads, 256);
+		TriangleBVH bvh = new TriangleBVH(mesh.getTriangles(), loop);
 		FileChannel inChannel = new FileInputStream(pointSetFile).getChannel();
 		FileChannel outChannel = new FileOutputStream(outputFile).getChannel();
-		ByteBuffer bb = ByteBuffer.allocate(8 * 3 * 1000);
+		int bufferSize = 1000 * threads;
+		ByteBuffer bb = ByteBuffer.allocate(8 * 3 * bufferSize);
 		bb.order(ByteOrder.nativeOrder());
 		long nbPoints = inChannel.size() / 3 / 8;
-		Location location = new Location();
-		Location projection = new Location();
+		Location[] locations = new Location[bufferSize];
+		Location[] projections = new Location[bufferSize];
+		Triangle[] triangles = new Triangle[bufferSize];
+		for(int j = 0; j < bufferSize; j++)
+		{
+			locations[j] = new Location();
+			projections[j] = new Location();
+		}
 		for(long i = 0; i < nbPoints;)
 		{
 			int read = inChannel.read(bb);
 			int readPoints = read / 3 / 8;
 			bb.rewind();
+			for(int j = 0; j < readPoints; j++)
+				locations[j].moveTo(bb.getDouble(), bb.getDouble(), bb.getDouble());
+			if(readPoints < bufferSize)
+			{
+				Location[] l = Arrays.copyOf(locations, readPoints);
+				bvh.getClosestTriangles(l, triangles, projections, -1, loop);
+			}
+			else
+				bvh.getClosestTriangles(locations, triangles, projections, -1, loop);
+			bb.rewind();
 			for(int j = 0; j < readPoints; j++)
 			{
-				location.moveTo(bb.getDouble(), bb.getDouble(), bb.getDouble());
-				kdTree.getClosestTriangle(location, projection, -1);
-				bb.position(bb.position() - 3 * 8);
-				bb.putDouble(projection.getX());
-				bb.putDouble(projection.getY());
-				bb.putDouble(projection.getZ());
+				bb.putDouble(projections[j].getX());
+				bb.putDouble(projections[j].getY());
+				bb.putDouble(projections[j].getZ());
 			}
 			i += readPoints;
 			bb.rewind();
@@ -104,6 +123,7 @@ public class ProjectorCLI {
 			outChannel.write(bb);
 			bb.clear();
 		}
+		loop.shutdown();
 		inChannel.close();
 		outChannel.close();
 	}
@@ -0,0 +1,794 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.mesh.amibe.projection;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.projection.MeshLiaison.TriangleDistance;
+import org.jcae.mesh.amibe.util.ParallelLoop;
+
+/**
+ * Bounding volume hierarchy of triangles, to find the closest triangle of
+ * a point or triangles intersecting a box.
+ * <p>
+ * Unlike {@link TriangleKdTree}, each triangle is stored in a single leaf
+ * and triangles cannot be added or removed once the hierarchy is built.
+ * The hierarchy is built top-down with the surface area heuristic
+ * evaluated on bins of triangle centroids; subtrees are built in parallel
+ * and the resulting tree is flattened into arrays in depth-first order,
+ * the left child of an internal node being the next node.  Trees do not
+ * depend on the number of threads.
+ * </p>
+ * <p>
+ * Queries do not modify the hierarchy.  Scratch data are stored in a
+ * {@link Query} instance owned by the caller, so several threads can run
+ * queries at the same time as long as each thread uses its own
+ * <code>Query</code>.  When vertices are moved, bounding boxes can be
+ * updated by {@link #refit()} or {@link #refit(Collection)} without
+ * changing the tree topology; these methods must not be called while
+ * queries are running.
+ * </p>
+ */
+public class TriangleBVH
+{
+	private final static Logger LOGGER = Logger.getLogger(TriangleBVH.class.getName());
+	/** Nodes with at most this number of triangles are not split */
+	private static final int LEAF_SIZE = 4;
+	/** Nodes with more triangles are always split */
+	private static final int MAX_LEAF_SIZE = 16;
+	private static final int NR_BINS = 16;
+	/** Subtrees with fewer triangles are built by a single thread */
+	private static final int MIN_PARALLEL_SIZE = 4096;
+
+	private static final class BuildNode
+	{
+		private final int start, end;
+		private final double[] bounds = new double[6];
+		private BuildNode left, right;
+		BuildNode(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Scratch data used by queries.
+	 */
+	public static final class Query
+	{
+		private int[] stack = new int[64];
+		private final int[] index = new int[2];
+		private double distance2;
+		private final TriangleDistance triangleDistance = new TriangleDistance(){
+			@Override
+			protected double handleDegenerated(double det, Triangle tri) {
+				LOGGER.info(tri+" is degenerated");
+				return Double.POSITIVE_INFINITY;
+			}
+		};
+
+		/**
+		 * Return the square of the distance between the point and the
+		 * triangle found by the last call to <code>getClosestTriangle</code>.
+		 */
+		public double getDistance2()
+		{
+			return distance2;
+		}
+
+		private void push(int sp, int node)
+		{
+			if (sp == stack.length)
+				stack = Arrays.copyOf(stack, 2 * sp);
+			stack[sp] = node;
+		}
+	}
+
+	/** Triangles, those of a leaf are contiguous */
+	private final Triangle[] triangles;
+	/** Bounds of nodes, 6 values by node */
+	private final double[] nodeBounds;
+	/**
+	 * For internal nodes, index of the right child.  For leaves, index of
+	 * the first triangle in <code>triangles</code>.
+	 */
+	private final int[] nodeOffset;
+	/** Number of triangles of leaves, 0 for internal nodes */
+	private final int[] nodeCount;
+	private final int[] nodeParent;
+	/** Leaf of each triangle of <code>triangles</code> */
+	private final int[] triangleLeaf;
+	/** Index of triangles in <code>triangles</code>, built by refit(Collection) */
+	private transient TObjectIntHashMap<Triangle> trianglePosition;
+	private final transient double[] refitBounds = new double[12];
+
+	// Work arrays used during construction
+	private double[] primBounds;
+	private double[] centroids;
+	private int[] order;
+
+	/**
+	 * Build the hierarchy of mesh triangles.  Outer triangles are ignored,
+	 * the number of threads is given by mesh parameters.
+	 */
+	public TriangleBVH(Mesh mesh)
+	{
+		this(mesh.getTriangles(), mesh.getMeshParameters().getThreads());
+	}
+
+	public TriangleBVH(Iterable<Triangle> triangles, int threads)
+	{
+		this(triangles, new ParallelLoop(threads, 1024), true);
+	}
+
+	/**
+	 * Build the hierarchy of triangles.  Outer triangles are ignored.
+	 * @param triangles triangles to store
+	 * @param loop loop used to build the hierarchy, may be null
+	 */
+	public TriangleBVH(Iterable<Triangle> triangles, ParallelLoop loop)
+	{
+		this(triangles, loop, false);
+	}
+
+	private TriangleBVH(Iterable<Triangle> input, ParallelLoop loop, boolean shutdown)
+	{
+		if (loop == null)
+			loop = new ParallelLoop(1, 1);
+		ArrayList<Triangle> list = new ArrayList<Triangle>();
+		for (Triangle t: input)
+		{
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				list.add(t);
+		}
+		final Triangle[] tria = list.toArray(new Triangle[list.size()]);
+		list = null;
+		int n = tria.length;
+		triangles = new Triangle[n];
+		triangleLeaf = new int[n];
+		if (n == 0)
+		{
+			nodeBounds = new double[0];
+			nodeOffset = nodeCount = nodeParent = new int[0];
+			return;
+		}
+		try
+		{
+			primBounds = new double[6 * n];
+			centroids = new double[3 * n];
+			order = new int[n];
+			loop.execute(n, new ParallelLoop.Body() {
+				public void run(int start, int end)
+				{
+					for (int i = start; i < end; i++)
+					{
+						order[i] = i;
+						bounds(tria[i], primBounds, 6 * i);
+						for (int j = 0; j < 3; j++)
+							centroids[3 * i + j] = 0.5 * (primBounds[6 * i + j] + primBounds[6 * i + j + 3]);
+					}
+				}
+			});
+			BuildNode root = build(n, loop);
+			int nrNodes = countNodes(root);
+			nodeBounds = new double[6 * nrNodes];
+			nodeOffset = new int[nrNodes];
+			nodeCount = new int[nrNodes];
+			nodeParent = new int[nrNodes];
+			nodeParent[0] = -1;
+			flatten(root, 0);
+			for (int i = 0; i < n; i++)
+				triangles[i] = tria[order[i]];
+		}
+		finally
+		{
+			primBounds = null;
+			centroids = null;
+			order = null;
+			if (shutdown)
+				loop.shutdown();
+		}
+	}
+
+	/**
+	 * Nodes are first split by the current thread until they are small
+	 * enough, remaining subtrees are then built in parallel.
+	 */
+	private BuildNode build(int n, ParallelLoop loop)
+	{
+		BuildNode root = new BuildNode(0, n);
+		final Splitter splitter = new Splitter();
+		splitter.computeBounds(root);
+		int threshold = Math.max(MIN_PARALLEL_SIZE, n / (4 * Math.max(1, loop.getThreads())));
+		final List<BuildNode> pending = new ArrayList<BuildNode>();
+		List<BuildNode> stack = new ArrayList<BuildNode>();
+		stack.add(root);
+		while (!stack.isEmpty())
+		{
+			BuildNode node = stack.remove(stack.size() - 1);
+			if (node.end - node.start <= threshold)
+				pending.add(node);
+			else if (splitter.split(node))
+			{
+				stack.add(node.right);
+				stack.add(node.left);
+			}
+		}
+		loop.execute(pending.size(), new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				Splitter s = new Splitter();
+				for (int i = start; i < end; i++)
+					s.buildSubtree(pending.get(i));
+			}
+		});
+		return root;
+	}
+
+	/**
+	 * Binned SAH split of build nodes.  Each thread must use its own
+	 * instance.
+	 */
+	private final class Splitter
+	{
+		private final double[] binBounds = new double[6 * NR_BINS];
+		private final int[] binCount = new int[NR_BINS];
+		private final double[] rightArea = new double[NR_BINS];
+		private final double[] work = new double[6];
+		private final double[] centroidBounds = new double[6];
+
+		private void buildSubtree(BuildNode node)
+		{
+			if (split(node))
+			{
+				buildSubtree(node.left);
+				buildSubtree(node.right);
+			}
+		}
+
+		private void computeBounds(BuildNode node)
+		{
+			resetBounds(node.bounds, 0);
+			for (int i = node.start; i < node.end; i++)
+				union(node.bounds, 0, primBounds, 6 * order[i]);
+		}
+
+		/**
+		 * Split a node.  Children bounds are computed.
+		 * @return false if this node is a leaf
+		 */
+		private boolean split(BuildNode node)
+		{
+			int count = node.end - node.start;
+			if (count <= LEAF_SIZE)
+				return false;
+			resetBounds(centroidBounds, 0);
+			for (int i = node.start; i < node.end; i++)
+			{
+				int k = 3 * order[i];
+				for (int j = 0; j < 3; j++)
+				{
+					double c = centroids[k + j];
+					centroidBounds[j] = Math.min(centroidBounds[j], c);
+					centroidBounds[j + 3] = Math.max(centroidBounds[j + 3], c);
+				}
+			}
+			double bestCost = Double.POSITIVE_INFINITY;
+			int bestAxis = -1;
+			int bestBin = -1;
+			for (int axis = 0; axis < 3; axis++)
+			{
+				double min = centroidBounds[axis];
+				double extent = centroidBounds[axis + 3] - min;
+				if (extent <= 0.0)
+					continue;
+				Arrays.fill(binCount, 0);
+				for (int b = 0; b < NR_BINS; b++)
+					resetBounds(binBounds, 6 * b);
+				double scale = NR_BINS / extent;
+				for (int i = node.start; i < node.end; i++)
+				{
+					int b = bin(order[i], axis, min, scale);
+					binCount[b]++;
+					union(binBounds, 6 * b, primBounds, 6 * order[i]);
+				}
+				// Sweep from right to left, then from left to right
+				resetBounds(work, 0);
+				for (int b = NR_BINS - 1; b > 0; b--)
+				{
+					union(work, 0, binBounds, 6 * b);
+					rightArea[b] = halfArea(work);
+				}
+				resetBounds(work, 0);
+				int nLeft = 0;
+				for (int b = 0; b < NR_BINS - 1; b++)
+				{
+					union(work, 0, binBounds, 6 * b);
+					nLeft += binCount[b];
+					int nRight = count - nLeft;
+					if (nLeft == 0 || nRight == 0)
+						continue;
+					double cost = nLeft * halfArea(work) + nRight * rightArea[b + 1];
+					if (cost < bestCost)
+					{
+						bestCost = cost;
+						bestAxis = axis;
+						bestBin = b;
+					}
+				}
+			}
+			int mid;
+			if (bestAxis < 0 || (bestCost >= count * halfArea(node.bounds) && count <= MAX_LEAF_SIZE))
+			{
+				if (count <= MAX_LEAF_SIZE)
+					return false;
+				// All centroids are equal or SAH does not find a better
+				// split, use the middle of this range.
+				mid = (node.start + node.end) / 2;
+			}
+			else
+			{
+				double min = centroidBounds[bestAxis];
+				double scale = NR_BINS / (centroidBounds[bestAxis + 3] - min);
+				int i = node.start;
+				int j = node.end - 1;
+				while (i <= j)
+				{
+					if (bin(order[i], bestAxis, min, scale) <= bestBin)
+						i++;
+					else
+					{
+						int tmp = order[i];
+						order[i] = order[j];
+						order[j] = tmp;
+						j--;
+					}
+				}
+				mid = i;
+			}
+			node.left = new BuildNode(node.start, mid);
+			node.right = new BuildNode(mid, node.end);
+			computeBounds(node.left);
+			computeBounds(node.right);
+			return true;
+		}
+
+		private int bin(int prim, int axis, double min, double scale)
+		{
+			int b = (int) ((centroids[3 * prim + axis] - min) * scale);
+			return b < NR_BINS ? b : NR_BINS - 1;
+		}
+	}
+
+	private static int countNodes(BuildNode node)
+	{
+		if (node.left == null)
+			return 1;
+		return 1 + countNodes(node.left) + countNodes(node.right);
+	}
+
+	/**
+	 * Copy subtree into arrays.
+	 * @return index of the next node
+	 */
+	private int flatten(BuildNode node, int index)
+	{
+		System.arraycopy(node.bounds, 0, nodeBounds, 6 * index, 6);
+		if (node.left == null)
+		{
+			nodeOffset[index] = node.start;
+			nodeCount[index] = node.end - node.start;
+			for (int i = node.start; i < node.end; i++)
+				triangleLeaf[i] = index;
+			return index + 1;
+		}
+		nodeParent[index + 1] = index;
+		int right = flatten(node.left, index + 1);
+		nodeParent[right] = index;
+		nodeOffset[index] = right;
+		return flatten(node.right, right);
+	}
+
+	private static void resetBounds(double[] b, int offset)
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			b[offset + i] = Double.POSITIVE_INFINITY;
+			b[offset + i + 3] = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	private static void union(double[] b, int offset, double[] other, int otherOffset)
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			b[offset + i] = Math.min(b[offset + i], other[otherOffset + i]);
+			b[offset + i + 3] = Math.max(b[offset + i + 3], other[otherOffset + i + 3]);
+		}
+	}
+
+	private static double halfArea(double[] b)
+	{
+		double dx = b[3] - b[0];
+		double dy = b[4] - b[1];
+		double dz = b[5] - b[2];
+		return dx * dy + dy * dz + dz * dx;
+	}
+
+	private static void bounds(Triangle triangle, double[] b, int offset)
+	{
+		resetBounds(b, offset);
+		for (int i = 0; i < 3; i++)
+		{
+			Vertex v = triangle.getV(i);
+			for (int j = 0; j < 3; j++)
+			{
+				double c = v.get(j);
+				b[offset + j] = Math.min(b[offset + j], c);
+				b[offset + j + 3] = Math.max(b[offset + j + 3], c);
+			}
+		}
+	}
+
+	/** Square of the distance between a point and the box of a node */
+	private double distance2(Location coords, int node)
+	{
+		int offset = 6 * node;
+		double d = 0.0;
+		for (int i = 0; i < 3; i++)
+		{
+			double c = coords.get(i);
+			double v = nodeBounds[offset + i] - c;
+			if (v <= 0.0)
+				v = c - nodeBounds[offset + i + 3];
+			if (v > 0.0)
+				d += v * v;
+		}
+		return d;
+	}
+
+	private boolean intersect(double[] aabb, int node)
+	{
+		int offset = 6 * node;
+		return aabb[0] <= nodeBounds[offset + 3] && aabb[3] >= nodeBounds[offset] &&
+			aabb[1] <= nodeBounds[offset + 4] && aabb[4] >= nodeBounds[offset + 1] &&
+			aabb[2] <= nodeBounds[offset + 5] && aabb[5] >= nodeBounds[offset + 2];
+	}
+
+	private static boolean intersect(double[] aabb, Triangle t)
+	{
+		Vertex v0 = t.getV0();
+		Vertex v1 = t.getV1();
+		Vertex v2 = t.getV2();
+		for (int i = 0; i < 3; i++)
+		{
+			double c0 = v0.get(i);
+			double c1 = v1.get(i);
+			double c2 = v2.get(i);
+			if ((c0 < aabb[i] && c1 < aabb[i] && c2 < aabb[i]) ||
+				(c0 > aabb[i + 3] && c1 > aabb[i + 3] && c2 > aabb[i + 3]))
+				return false;
+		}
+		return true;
+	}
+
+	/** Create scratch data to be used by queries of the current thread */
+	public Query createQuery()
+	{
+		return new Query();
+	}
+
+	/** Return the number of triangles */
+	public int size()
+	{
+		return triangles.length;
+	}
+
+	/** Return the bounds of the whole hierarchy, or null if it is empty */
+	public double[] getBounds()
+	{
+		if (nodeBounds.length == 0)
+			return null;
+		return Arrays.copyOf(nodeBounds, 6);
+	}
+
+	/** Return all triangles */
+	public List<Triangle> getTriangles()
+	{
+		return Arrays.asList(triangles.clone());
+	}
+
+	/**
+	 * Get the closest triangle for coords.  This method allocates a new
+	 * {@link Query}, use {@link #getClosestTriangle(Location, Location, int, Query)}
+	 * when running many queries.
+	 */
+	public Triangle getClosestTriangle(Location coords, Location projection, int group)
+	{
+		return getClosestTriangle(coords, projection, group, createQuery());
+	}
+
+	/**
+	 * Get the closest triangle for coords
+	 * @param coords
+	 * @param projection The projection of coords on the triangle. If null the
+	 * projection is not computed. It must be different of coords.
+	 * @param group Only look for triangles in the given groups. If negative
+	 * look for all triangles.
+	 * @param query scratch data of the current thread
+	 * @return the closest triangle, or null if there is no triangle in group
+	 */
+	public Triangle getClosestTriangle(Location coords, Location projection,
+		int group, Query query)
+	{
+		Triangle toReturn = null;
+		double best = Double.POSITIVE_INFINITY;
+		query.distance2 = best;
+		if (nodeCount.length == 0)
+			return null;
+		int[] stack = query.stack;
+		int sp = 0;
+		stack[sp++] = 0;
+		while (sp > 0)
+		{
+			int node = stack[--sp];
+			if (distance2(coords, node) >= best)
+				continue;
+			int count = nodeCount[node];
+			if (count > 0)
+			{
+				int first = nodeOffset[node];
+				for (int i = first; i < first + count; i++)
+				{
+					Triangle t = triangles[i];
+					if (group >= 0 && t.getGroupId() != group)
+						continue;
+					double d = query.triangleDistance.compute(coords, t, query.index);
+					if (d < best)
+					{
+						best = d;
+						toReturn = t;
+						if (projection != null)
+							query.triangleDistance.getProjection(projection);
+					}
+				}
+			}
+			else
+			{
+				// Visit the nearest child first
+				int left = node + 1;
+				int right = nodeOffset[node];
+				double dLeft = distance2(coords, left);
+				double dRight = distance2(coords, right);
+				int near = left, far = right;
+				double dNear = dLeft, dFar = dRight;
+				if (dRight < dLeft)
+				{
+					near = right;
+					far = left;
+					dNear = dRight;
+					dFar = dLeft;
+				}
+				if (dFar < best)
+				{
+					query.push(sp, far);
+					sp++;
+				}
+				if (dNear < best)
+				{
+					query.push(sp, near);
+					sp++;
+				}
+				stack = query.stack;
+			}
+		}
+		query.distance2 = best;
+		return toReturn;
+	}
+
+	/**
+	 * Get the closest triangles of several points.  Points are processed
+	 * in parallel by <code>loop</code>.
+	 * @param coords points
+	 * @param result closest triangles, null if there is no triangle in group
+	 * @param projections projections of points, may be null
+	 * @param group Only look for triangles in the given groups. If negative
+	 * look for all triangles.
+	 * @param loop loop used to process points, may be null
+	 */
+	public void getClosestTriangles(final Location[] coords, final Triangle[] result,
+		final Location[] projections, final int group, ParallelLoop loop)
+	{
+		ParallelLoop.Body body = new ParallelLoop.Body() {
+			public void run(int start, int end)
+			{
+				Query query = createQuery();
+				for (int i = start; i < end; i++)
+					result[i] = getClosestTriangle(coords[i],
+						projections == null ? null : projections[i], group, query);
+			}
+		};
+		if (loop == null)
+			body.run(0, coords.length);
+		else
+			loop.execute(coords.length, body);
+	}
+
+	public void getNearTriangles(double[] aabb, Collection<Triangle> result, int group)
+	{
+		getNearTriangles(aabb, result, group, false, createQuery());
+	}
+
+	public void getNearTriangles(double[] aabb, Collection<Triangle> result, int group, boolean notInGroup)
+	{
+		getNearTriangles(aabb, result, group, notInGroup, createQuery());
+	}
+
+	/**
+	 * Get triangles whose bounding box intersects aabb.  Unlike
+	 * {@link TriangleKdTree#getNearTriangles}, triangles are returned once
+	 * and only if their bounding box intersects aabb.
+	 * @param aabb bounds of the box, min values then max values
+	 * @param result collection where triangles are added
+	 * @param group group filter, ignored if negative
+	 * @param notInGroup if true only triangles which are not in group are
+	 * returned, else only triangles which are in group
+	 * @param query scratch data of the current thread
+	 */
+	public void getNearTriangles(double[] aabb, Collection<Triangle> result,
+		int group, boolean notInGroup, Query query)
+	{
+		if (nodeCount.length == 0)
+			return;
+		int[] stack = query.stack;
+		int sp = 0;
+		stack[sp++] = 0;
+		while (sp > 0)
+		{
+			int node = stack[--sp];
+			if (!intersect(aabb, node))
+				continue;
+			int count = nodeCount[node];
+			if (count > 0)
+			{
+				int first = nodeOffset[node];
+				for (int i = first; i < first + count; i++)
+				{
+					Triangle t = triangles[i];
+					if (group >= 0 && ((t.getGroupId() != group && !notInGroup) ||
+						(notInGroup && t.getGroupId() == group)))
+						continue;
+					if (intersect(aabb, t))
+						result.add(t);
+				}
+			}
+			else
+			{
+				query.push(sp, nodeOffset[node]);
+				sp++;
+				query.push(sp, node + 1);
+				sp++;
+				stack = query.stack;
+			}
+		}
+	}
+
+	/**
+	 * Update the bounds of all nodes after vertices have been moved.  The
+	 * tree topology is not modified, queries are still exact but may be
+	 * slower if triangles have been moved far away.
+	 */
+	public void refit()
+	{
+		for (int node = nodeCount.length - 1; node >= 0; node--)
+			refitNode(node);
+	}
+
+	/**
+	 * Update the bounds of nodes containing the given triangles after
+	 * their vertices have been moved.
+	 * @throws IllegalArgumentException if a triangle is not in this hierarchy
+	 */
+	public void refit(Collection<Triangle> moved)
+	{
+		if (trianglePosition == null)
+		{
+			trianglePosition = new TObjectIntHashMap<Triangle>(triangles.length, 0.5f, -1);
+			for (int i = 0; i < triangles.length; i++)
+				trianglePosition.put(triangles[i], i);
+		}
+		for (Triangle t: moved)
+		{
+			int pos = trianglePosition.get(t);
+			if (pos < 0)
+				throw new IllegalArgumentException(t+" is not in this hierarchy");
+			int node = triangleLeaf[pos];
+			while (node >= 0 && refitNode(node))
+				node = nodeParent[node];
+		}
+	}
+
+	/**
+	 * Recompute the bounds of a node from its triangles or its children.
+	 * @return true if bounds have been modified
+	 */
+	private boolean refitNode(int node)
+	{
+		double[] b = refitBounds;
+		int count = nodeCount[node];
+		if (count > 0)
+		{
+			resetBounds(b, 0);
+			int first = nodeOffset[node];
+			for (int i = first; i < first + count; i++)
+			{
+				bounds(triangles[i], b, 6);
+				union(b, 0, b, 6);
+			}
+		}
+		else
+		{
+			System.arraycopy(nodeBounds, 6 * (node + 1), b, 0, 6);
+			union(b, 0, nodeBounds, 6 * nodeOffset[node]);
+		}
+		boolean changed = false;
+		for (int i = 0; i < 6; i++)
+		{
+			if (nodeBounds[6 * node + i] != b[i])
+			{
+				nodeBounds[6 * node + i] = b[i];
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	public String stats()
+	{
+		int nbLeaf = 0;
+		int maxTriangles = 0;
+		int maxDepth = 0;
+		int[] depth = new int[nodeCount.length];
+		for (int node = 0; node < nodeCount.length; node++)
+		{
+			if (node > 0)
+				depth[node] = depth[nodeParent[node]] + 1;
+			maxDepth = Math.max(maxDepth, depth[node]);
+			if (nodeCount[node] > 0)
+			{
+				nbLeaf++;
+				maxTriangles = Math.max(maxTriangles, nodeCount[node]);
+			}
+		}
+		return "number of nodes: " + nodeCount.length + " number of leaves: " +
+			nbLeaf + " max depth: " + maxDepth + " largest leaf: " + maxTriangles;
+	}
+}
@@ -45,6 +45,7 @@ public class MeshTraitsBuilder extends TraitsBuilder
 	private static final int GROUPLIST        = 1 << BITGROUPS;
 	private static final int KDTREE           = 1 << BITKDTREE;
 	private static final int TRACE            = 1 << BITTRACE;
+	private static final int TRACEBINARY      = 1 << 28;
 	private static final int TRACEREPLAY      = 1 << 29;
 	private static final int TRIANGLESET      = 1 << 30;
 	private static final int NODESET          = 1 << 31;
@@ -223,6 +224,20 @@ public class MeshTraitsBuilder extends TraitsBuilder
 	public final MeshTraitsBuilder addTraceRecord()
 	{
 		attributes |= TRACE;
+		attributes &= ~(TRACEREPLAY | TRACEBINARY);
+		return this;
+	}
+
+	/**
+	 * Records mesh operations into a compact binary file instead of
+	 * Python scripts.
+	 *
+	 * @return  this instance
+	 * @see org.jcae.mesh.amibe.ds.TraceBinary
+	 */
+	public final MeshTraitsBuilder addTraceRecordBinary()
+	{
+		attributes |= TRACE | TRACEBINARY;
 		attributes &= ~TRACEREPLAY;
 		return this;
 	}
@@ -230,6 +245,7 @@ public class MeshTraitsBuilder extends TraitsBuilder
 	public final MeshTraitsBuilder addTraceReplay()
 	{
 		attributes |= TRACE | TRACEREPLAY;
+		attributes &= ~TRACEBINARY;
 		return this;
 	}
 
@@ -261,7 +277,7 @@ public class MeshTraitsBuilder extends TraitsBuilder
 			if ((attributes & TRACEREPLAY) != 0)
 				t.array[index[BITTRACE]] = new TraceReplay();
 			else
-				t.array[index[BITTRACE]] = new TraceRecord();
+				t.array[index[BITTRACE]] = new TraceRecord((attributes & TRACEBINARY) != 0);
 		}
 	}
 
@@ -392,4 +408,29 @@ public class MeshTraitsBuilder extends TraitsBuilder
 		return ret;
 	}
 
+	/**
+	 * Returns a 3D <code>MeshTraitsBuilder</code> instance for large meshes.
+	 * This instance calls following methods: {@link #addTriangleList},
+	 * {@link #addNodeList} and {@link TriangleTraitsBuilder#addVirtualHalfEdge}.
+	 * No {@link org.jcae.mesh.amibe.ds.HalfEdge} instance is stored in
+	 * memory, {@link org.jcae.mesh.amibe.ds.TriangleVH} triangles keep
+	 * adjacency relations and edge attributes into primitive fields, and
+	 * {@link org.jcae.mesh.amibe.ds.VirtualHalfEdge} instances are
+	 * reusable views on these triangles.  Algorithms which work on
+	 * {@link org.jcae.mesh.amibe.ds.AbstractHalfEdge} (for instance
+	 * {@link org.jcae.mesh.amibe.algos3d.SmoothNodes3D}) can process
+	 * such meshes, but subclasses of
+	 * {@link org.jcae.mesh.amibe.algos3d.AbstractAlgoHalfEdge} require
+	 * {@link TriangleTraitsBuilder#addHalfEdge}.
+	 */
+	public static MeshTraitsBuilder getCompact3D()
+	{
+		MeshTraitsBuilder ret = new MeshTraitsBuilder();
+		ret.addTriangleList();
+		ret.addNodeList();
+		ret.triangleTraitsBuilder = new TriangleTraitsBuilder();
+		ret.triangleTraitsBuilder.addVirtualHalfEdge();
+		return ret;
+	}
+
 }
@@ -0,0 +1,479 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2010, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed binary heap to store quality factors.
+ * This class can be used instead of {@link PAVLSortedTree} or
+ * {@link PRedBlackSortedTree} when many objects have to be sorted, and
+ * only the object with the lowest quality factor is needed.
+ * No node is allocated when an object is inserted: quality factors are
+ * stored into primitive arrays, and objects are referenced by integer
+ * handles.  Insertion, removal and update of a quality factor are
+ * O(log n) operations performed by sifting handles up or down the heap.
+ *
+ * Objects with the same quality factor are sorted by insertion order, as
+ * with binary trees; an updated object is considered as being inserted
+ * again.  The forward iterator visits objects in increasing order without
+ * modifying the heap, it always returns itself as entry.  If the heap is
+ * modified during iteration, iterator resumes after the last returned
+ * object, so that an algorithm can remove objects while looking for the
+ * first one it can process.  Heap positions written since the last call
+ * to {@link #iterator} are recorded (up to a small limit), the iterator
+ * uses them to repair its state instead of restarting from heap root.
+ */
+public class BinaryHeapSortedTree<E> implements QSortedCollection<E>
+{
+	private static final long serialVersionUID = 3219572470131617436L;
+
+	// Objects, quality factors and insertion stamps, indexed by handle
+	private Object [] data;
+	private double [] value;
+	private long [] stamp;
+	// heap[i] is the handle found at position i, and position[h] is
+	// the position of handle h, or -1 if this handle is not used.
+	private int [] heap;
+	private int [] position;
+	// Stack of unused handles
+	private int [] freeHandles;
+	private int nrFree = 0;
+	// Number of handles which have already been allocated
+	private int nrHandles = 0;
+	private int nrNodes = 0;
+	private long counter = 0L;
+	private transient int modCount = 0;
+	// Heap positions written since last call to iterator(); when more
+	// than MAX_MODIFIED positions are written, iterators restart from
+	// heap root.
+	private static final int MAX_MODIFIED = 256;
+	private transient int [] modified;
+	private transient int nrModified = 0;
+	private transient int modifiedGeneration = 0;
+	// Mapping between objects and handles
+	private final TObjectIntHashMap<E> handles;
+
+	public BinaryHeapSortedTree()
+	{
+		this(64);
+	}
+
+	/**
+	 * Constructor.
+	 * @param capacity  initial capacity, arrays grow when needed
+	 */
+	public BinaryHeapSortedTree(int capacity)
+	{
+		if (capacity < 1)
+			capacity = 1;
+		data = new Object[capacity];
+		value = new double[capacity];
+		stamp = new long[capacity];
+		heap = new int[capacity];
+		position = new int[capacity];
+		freeHandles = new int[capacity];
+		handles = new TObjectIntHashMap<E>(capacity, 0.5f, -1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private E getObject(int h)
+	{
+		return (E) data[h];
+	}
+
+	private int newHandle()
+	{
+		if (nrFree > 0)
+		{
+			nrFree--;
+			return freeHandles[nrFree];
+		}
+		if (nrHandles == data.length)
+		{
+			int capacity = 2 * data.length;
+			data = Arrays.copyOf(data, capacity);
+			value = Arrays.copyOf(value, capacity);
+			stamp = Arrays.copyOf(stamp, capacity);
+			heap = Arrays.copyOf(heap, capacity);
+			position = Arrays.copyOf(position, capacity);
+			freeHandles = Arrays.copyOf(freeHandles, capacity);
+		}
+		nrHandles++;
+		return nrHandles - 1;
+	}
+
+	private void setPosition(int pos, int h)
+	{
+		heap[pos] = h;
+		position[h] = pos;
+		if (nrModified > MAX_MODIFIED)
+			return;
+		if (nrModified < MAX_MODIFIED && modified != null)
+			modified[nrModified] = pos;
+		nrModified++;
+	}
+
+	/**
+	 * Tells whether object with handle <code>h1</code> is lower than object
+	 * with handle <code>h2</code>.
+	 */
+	private boolean less(int h1, int h2)
+	{
+		return value[h1] < value[h2] || (value[h1] == value[h2] && stamp[h1] < stamp[h2]);
+	}
+
+	private void siftUp(int pos)
+	{
+		int h = heap[pos];
+		while (pos > 0)
+		{
+			int parent = (pos - 1) >> 1;
+			int p = heap[parent];
+			if (!less(h, p))
+				break;
+			setPosition(pos, p);
+			pos = parent;
+		}
+		setPosition(pos, h);
+	}
+
+	private void siftDown(int pos)
+	{
+		int h = heap[pos];
+		int half = nrNodes >> 1;
+		while (pos < half)
+		{
+			int child = 2 * pos + 1;
+			int c = heap[child];
+			if (child + 1 < nrNodes && less(heap[child + 1], c))
+			{
+				child++;
+				c = heap[child];
+			}
+			if (!less(c, h))
+				break;
+			setPosition(pos, c);
+			pos = child;
+		}
+		setPosition(pos, h);
+	}
+
+	public boolean isEmpty()
+	{
+		return nrNodes == 0;
+	}
+
+	public void insert(E o, double v)
+	{
+		assert !handles.containsKey(o) : "Object already in tree: "+o;
+		int h = newHandle();
+		data[h] = o;
+		value[h] = v;
+		stamp[h] = counter++;
+		nrNodes++;
+		heap[nrNodes - 1] = h;
+		siftUp(nrNodes - 1);
+		handles.put(o, h);
+		modCount++;
+	}
+
+	public boolean remove(E o)
+	{
+		int h = handles.remove(o);
+		if (h < 0)
+			return false;
+		int pos = position[h];
+		nrNodes--;
+		if (pos < nrNodes)
+		{
+			int last = heap[nrNodes];
+			heap[pos] = last;
+			siftDown(pos);
+			if (position[last] == pos)
+				siftUp(pos);
+		}
+		data[h] = null;
+		position[h] = -1;
+		freeHandles[nrFree] = h;
+		nrFree++;
+		modCount++;
+		return true;
+	}
+
+	public boolean update(E o, double v)
+	{
+		int h = handles.get(o);
+		if (h < 0)
+			return false;
+		double old = value[h];
+		value[h] = v;
+		stamp[h] = counter++;
+		if (v < old)
+			siftUp(position[h]);
+		else
+			siftDown(position[h]);
+		modCount++;
+		return true;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(data, 0, nrHandles, null);
+		handles.clear();
+		nrNodes = 0;
+		nrFree = 0;
+		nrHandles = 0;
+		nrModified = MAX_MODIFIED + 1;
+		modCount++;
+	}
+
+	public boolean contains(E o)
+	{
+		return handles.containsKey(o);
+	}
+
+	public int size()
+	{
+		assert nrNodes == handles.size() : "size error: "+nrNodes+" != "+handles.size();
+		return nrNodes;
+	}
+
+	public Iterator<? extends Entry<E>> iterator()
+	{
+		resetModified();
+		return new ForwardIterator();
+	}
+
+	private void resetModified()
+	{
+		if (modified == null)
+			modified = new int[MAX_MODIFIED];
+		nrModified = 0;
+		modifiedGeneration++;
+	}
+
+	/**
+	 * Visit heap in increasing order.  Heap positions which may contain
+	 * the next object are stored into another small binary heap; when a
+	 * position is visited, its children are added to this frontier.
+	 */
+	private final class ForwardIterator implements Iterator<Entry<E>>, Entry<E>
+	{
+		private int [] frontier = new int[16];
+		private int nrFrontier = 0;
+		private int expectedModCount = modCount;
+		// Value of modifiedGeneration when modified array has been
+		// reset, and number of its entries already processed
+		private int generation = modifiedGeneration;
+		private int nrSeen = 0;
+		private boolean started = false;
+		private boolean canRemove = false;
+		private E lastData;
+		private double lastValue;
+		private long lastStamp;
+
+		private ForwardIterator()
+		{
+			if (nrNodes > 0)
+				push(0);
+		}
+
+		public boolean hasNext()
+		{
+			checkModification();
+			return nrFrontier > 0;
+		}
+
+		public Entry<E> next()
+		{
+			checkModification();
+			if (nrFrontier == 0)
+				throw new NoSuchElementException();
+			int pos = pop();
+			int h = heap[pos];
+			started = true;
+			canRemove = true;
+			lastData = getObject(h);
+			lastValue = value[h];
+			lastStamp = stamp[h];
+			return this;
+		}
+
+		public E getData()
+		{
+			return lastData;
+		}
+
+		public double getValue()
+		{
+			return lastValue;
+		}
+
+		/**
+		 * Removes the last object returned by {@link #next} from the heap.
+		 */
+		public void remove()
+		{
+			if (!canRemove)
+				throw new IllegalStateException("next() has not been called");
+			canRemove = false;
+			if (!BinaryHeapSortedTree.this.remove(lastData))
+				throw new IllegalStateException("Object has already been removed: "+lastData);
+		}
+
+		/**
+		 * Tells whether object with handle <code>h</code> is not greater
+		 * than the last returned object.
+		 */
+		private boolean returned(int h)
+		{
+			return value[h] < lastValue || (value[h] == lastValue && stamp[h] <= lastStamp);
+		}
+
+		/**
+		 * Tells whether position <code>pos</code> belongs to the frontier,
+		 * i.e. its object has not been returned yet but its parent has.
+		 * Returned objects are always at the top of the heap.
+		 */
+		private boolean isFrontier(int pos)
+		{
+			return pos < nrNodes && !returned(heap[pos]) &&
+				(pos == 0 || returned(heap[(pos - 1) >> 1]));
+		}
+
+		/**
+		 * If heap has been modified, update frontier and skip objects
+		 * which have already been returned.
+		 */
+		private void checkModification()
+		{
+			if (expectedModCount == modCount)
+				return;
+			expectedModCount = modCount;
+			if (started && generation == modifiedGeneration && nrModified <= MAX_MODIFIED)
+				repair();
+			else
+				restart();
+			nrSeen = nrModified;
+		}
+
+		/**
+		 * Restart from heap root.
+		 */
+		private void restart()
+		{
+			resetModified();
+			generation = modifiedGeneration;
+			nrFrontier = 0;
+			if (nrNodes == 0)
+				return;
+			push(0);
+			if (!started)
+				return;
+			while (nrFrontier > 0 && returned(heap[frontier[0]]))
+				pop();
+		}
+
+		/**
+		 * Frontier membership of a position can only change if this
+		 * position or its parent has been written, so only positions of
+		 * previous frontier, written positions and their children are
+		 * checked.
+		 */
+		private void repair()
+		{
+			int nrWritten = nrModified - nrSeen;
+			int [] candidates = new int[nrFrontier + 3 * nrWritten];
+			System.arraycopy(frontier, 0, candidates, 0, nrFrontier);
+			int n = nrFrontier;
+			for (int i = nrSeen; i < nrModified; i++)
+			{
+				int pos = modified[i];
+				candidates[n++] = pos;
+				candidates[n++] = 2 * pos + 1;
+				candidates[n++] = 2 * pos + 2;
+			}
+			Arrays.sort(candidates);
+			nrFrontier = 0;
+			for (int i = 0; i < n; i++)
+			{
+				if (i > 0 && candidates[i] == candidates[i - 1])
+					continue;
+				if (isFrontier(candidates[i]))
+					push(candidates[i]);
+			}
+		}
+
+		private void push(int pos)
+		{
+			if (nrFrontier == frontier.length)
+				frontier = Arrays.copyOf(frontier, 2 * nrFrontier);
+			int i = nrFrontier;
+			nrFrontier++;
+			int h = heap[pos];
+			while (i > 0)
+			{
+				int parent = (i - 1) >> 1;
+				if (!less(h, heap[frontier[parent]]))
+					break;
+				frontier[i] = frontier[parent];
+				i = parent;
+			}
+			frontier[i] = pos;
+		}
+
+		/**
+		 * Remove lowest position from frontier and add its children.
+		 */
+		private int pop()
+		{
+			int ret = frontier[0];
+			nrFrontier--;
+			if (nrFrontier > 0)
+			{
+				int pos = frontier[nrFrontier];
+				int h = heap[pos];
+				int i = 0;
+				int half = nrFrontier >> 1;
+				while (i < half)
+				{
+					int child = 2 * i + 1;
+					if (child + 1 < nrFrontier && less(heap[frontier[child + 1]], heap[frontier[child]]))
+						child++;
+					if (!less(heap[frontier[child]], h))
+						break;
+					frontier[i] = frontier[child];
+					i = child;
+				}
+				frontier[i] = pos;
+			}
+			int child = 2 * ret + 1;
+			if (child < nrNodes)
+				push(child);
+			if (child + 1 < nrNodes)
+				push(child + 1);
+			return ret;
+		}
+	}
+}
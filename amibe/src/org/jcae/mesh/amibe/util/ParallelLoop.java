@@ -0,0 +1,136 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run a loop over integer range <code>[0, n)</code> on a thread pool.
+ * The range is split into contiguous chunks, and {@link #execute} returns
+ * when all chunks have been processed.  If a single thread is used, or if
+ * the range is too small to be split, the loop body is called by the
+ * current thread.  The thread pool is created when needed, and must be
+ * released by calling {@link #shutdown}.
+ */
+public final class ParallelLoop
+{
+	/**
+	 * Loop body.
+	 */
+	public interface Body
+	{
+		/**
+		 * Process indices from <code>start</code> (inclusive) to
+		 * <code>end</code> (exclusive).
+		 */
+		void run(int start, int end);
+	}
+
+	private final int threads;
+	private final int minChunkSize;
+	private ExecutorService pool;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threads  number of threads
+	 * @param minChunkSize  ranges are not split into chunks smaller than
+	 *   this value
+	 */
+	public ParallelLoop(int threads, int minChunkSize)
+	{
+		this.threads = threads;
+		this.minChunkSize = Math.max(1, minChunkSize);
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Call loop body on <code>[0, n)</code>.  Exceptions thrown by loop
+	 * body are thrown again by this method.
+	 *
+	 * @param n  upper bound of the range
+	 * @param body  loop body
+	 */
+	public void execute(int n, final Body body)
+	{
+		if (threads <= 1 || n < 2 * minChunkSize)
+		{
+			body.run(0, n);
+			return;
+		}
+		if (pool == null)
+			pool = Executors.newFixedThreadPool(threads);
+		int nrChunks = Math.min(4 * threads, n / minChunkSize);
+		List<Future<?>> results = new ArrayList<Future<?>>(nrChunks);
+		for (int i = 0; i < nrChunks; i++)
+		{
+			final int start = (int) (((long) n) * i / nrChunks);
+			final int end = (int) (((long) n) * (i + 1) / nrChunks);
+			results.add(pool.submit(new Callable<Object>() {
+				public Object call()
+				{
+					body.run(start, end);
+					return null;
+				}
+			}));
+		}
+		for (Future<?> f: results)
+		{
+			try
+			{
+				f.get();
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(ex);
+			}
+			catch (ExecutionException ex)
+			{
+				Throwable cause = ex.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Release thread pool.
+	 */
+	public void shutdown()
+	{
+		if (pool != null)
+			pool.shutdown();
+		pool = null;
+	}
+}
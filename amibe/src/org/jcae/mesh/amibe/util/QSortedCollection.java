@@ -0,0 +1,96 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import java.io.Serializable;
+import java.util.Iterator;
+
+/**
+ * Containers to process objects in increasing order of their quality
+ * factors.  This interface only contains operations needed by algorithms
+ * which repeatedly pick the object with the lowest quality factor, like
+ * {@link org.jcae.mesh.amibe.algos3d.AbstractAlgoHalfEdge}.  It is
+ * implemented by binary trees ({@link QSortedTree}) and by
+ * {@link BinaryHeapSortedTree}.
+ */
+public interface QSortedCollection<E> extends Serializable
+{
+	/**
+	 * Object and its quality factor, as returned by iterators.
+	 */
+	interface Entry<E>
+	{
+		E getData();
+		double getValue();
+	}
+
+	/**
+	 * Tell whether this container is empty.
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Insert an object, duplicates are not checked.
+	 * @param o      object
+	 * @param value  quality factor
+	 */
+	void insert(E o, double value);
+
+	/**
+	 * Remove an object.
+	 * @param o      object being removed
+	 * @return  <code>true</code> if object was present,
+	 * </code>false</code> otherwise.
+	 */
+	boolean remove(E o);
+
+	/**
+	 * Update the quality factor of an object, if it was already present.
+	 *
+	 * @param o      object being updated
+	 * @param value  new quality factor
+	 * @return <code>true</code> if object was present,
+	 *         <code>false</code> otherwise.
+	 */
+	boolean update(E o, double value);
+
+	/**
+	 * Remove all objects.
+	 */
+	void clear();
+
+	/**
+	 * Tell whether an object is present.
+	 */
+	boolean contains(E o);
+
+	/**
+	 * Return the number of objects.
+	 */
+	int size();
+
+	/**
+	 * Return an iterator to visit objects in increasing order of
+	 * their quality factors.  Entries must not be kept by callers,
+	 * an implementation may return the same instance on each call
+	 * to <code>next()</code>.
+	 */
+	Iterator<? extends Entry<E>> iterator();
+}
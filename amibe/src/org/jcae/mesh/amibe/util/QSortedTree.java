@@ -36,7 +36,7 @@ import java.util.logging.Logger;
  * that duplicate quality factors are allowed.  See examples in algorithms from
  * {@link org.jcae.mesh.amibe.algos3d}.
  */
-public abstract class QSortedTree<E> implements Serializable
+public abstract class QSortedTree<E> implements QSortedCollection<E>
 {
 	private static final long serialVersionUID = -2194224744257185278L;
 	private static final Logger logger=Logger.getLogger(QSortedTree.class.getName());	
@@ -64,7 +64,7 @@ public abstract class QSortedTree<E> implements Serializable
 	abstract Node<E> removeNode(Node<E> p);
 
 	@SuppressWarnings("serial")
-	public static class Node<E> implements Comparable<Node<E>>, Serializable
+	public static class Node<E> implements Comparable<Node<E>>, Serializable, QSortedCollection.Entry<E>
 	{
 		private E data;
 		private double value;
@@ -21,6 +21,9 @@
 package org.jcae.mesh.bora.ds;
 
 import org.jcae.mesh.bora.algo.AlgoInterface;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Iterator;
@@ -39,6 +42,8 @@ public class BDiscretization
 	private AlgoInterface algo;
 	private boolean computed = false;
 	private Object mesh;
+	// Time spent in last computation, in nanoseconds
+	private volatile long computeTime = -1L;
 
 	// Unique identitier
 	private int id = -1;
@@ -215,7 +220,12 @@ public class BDiscretization
 		mesh = m;
 	}
 
-	final void discretize()
+	/**
+	 * Computes this discretization.  It is synchronized because several
+	 * faces may need the same boundary edge when they are computed
+	 * concurrently.
+	 */
+	final synchronized void discretize()
 	{
 		if (computed)
 			return;
@@ -228,6 +238,94 @@ public class BDiscretization
 		computed = true;
 	}
 
+	/**
+	 * Returns the time spent to compute and write this discretization
+	 * during the last call to {@link BModel#compute}.
+	 *
+	 * @return elapsed time in nanoseconds, or -1 if this discretization
+	 * was unchanged and has not been computed.
+	 */
+	public final long getComputeTime()
+	{
+		return computeTime;
+	}
+
+	final void setComputeTime(long t)
+	{
+		computeTime = t;
+	}
+
+	/**
+	 * Returns discretizations of boundary cells of the same submesh.
+	 * Edges are bounded by vertices, faces by edges and solids by faces.
+	 *
+	 * @return discretizations this discretization is built upon.
+	 */
+	final Collection<BDiscretization> getBoundaryDiscretizations()
+	{
+		Collection<BDiscretization> ret = new ArrayList<BDiscretization>();
+		CADShapeEnum cse = graphCell.getType();
+		CADShapeEnum childType;
+		if (cse == CADShapeEnum.EDGE)
+			childType = CADShapeEnum.VERTEX;
+		else if (cse == CADShapeEnum.FACE)
+			childType = CADShapeEnum.EDGE;
+		else if (cse == CADShapeEnum.SOLID)
+			childType = CADShapeEnum.FACE;
+		else
+			return ret;
+		BSubMesh s = getFirstSubMesh();
+		for (Iterator<BCADGraphCell> it = graphCell.shapesExplorer(childType); it.hasNext(); )
+		{
+			BCADGraphCell child = it.next();
+			if (child.getOrientation() != 0 && child.getReversed() != null)
+				child = child.getReversed();
+			BDiscretization d = child.getDiscretizationSubMesh(s);
+			if (d != null)
+				ret.add(d);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns a fingerprint of all inputs of this discretization: CAD file,
+	 * shape, hypothesis and fingerprints of boundary discretizations.
+	 * Discretizations with the same fingerprint give the same result, this
+	 * is used by {@link BModel#compute} to skip unchanged cells.  It is
+	 * computed on each call, hypotheses may be modified in place.
+	 *
+	 * @return hexadecimal MD5 digest of inputs
+	 */
+	public final String getFingerprint()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(graphCell.getGraph().getModel().getCADSignature());
+		sb.append(' ').append(graphCell.getType()).append(' ').append(graphCell.getId());
+		sb.append(' ').append(constraint.getHypothesis().getSignature());
+		for (BDiscretization d : getBoundaryDiscretizations())
+			sb.append(' ').append(d.getFingerprint());
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			byte [] digest = md.digest(sb.toString().getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(2 * digest.length);
+			for (byte b : digest)
+			{
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new RuntimeException(ex);
+		}
+		catch (java.io.UnsupportedEncodingException ex)
+		{
+			throw new RuntimeException(ex);
+		}
+	}
+
 	@Override
 	public final String toString()
 	{
@@ -34,7 +34,15 @@ import java.util.Iterator;
 import java.io.File;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,6 +79,8 @@ public class BModel
 		TESSELLATION_3
 	}
 	private State state = State.INPUT;
+	//   Number of threads used by compute()
+	private int threads = 1;
 
 	/**
 	 * Bind a CAD representation to a disk directory.
@@ -144,6 +154,15 @@ public class BModel
 		return cadFile;
 	}
 
+	/**
+	 * Returns a string which changes when CAD file is modified.
+	 */
+	final String getCADSignature()
+	{
+		File f = new File(cadFile);
+		return cadFile+" "+f.length()+" "+f.lastModified();
+	}
+
 	public String getRelativeCADDir()
 	{
 		return xmlBrepDir;
@@ -303,7 +322,12 @@ public class BModel
 	}
 
 	/**
-	 * Combines all hypothesis and computes meshes.
+	 * Combines all hypothesis and computes meshes.  Discretizations are
+	 * written into output directory along with a fingerprint of their
+	 * inputs (see {@link BDiscretization#getFingerprint}).  If output
+	 * directory already contains a discretization with the same
+	 * fingerprint, it is not computed again.  Call
+	 * {@link #cleanWorkDirectory} to force a full computation.
 	 */
 	public final void compute()
 	{
@@ -312,6 +336,18 @@ public class BModel
 		LOGGER.info("Done");
 	}
 
+	/**
+	 * Checks whether output directory contains a discretization computed
+	 * from the same inputs.
+	 */
+	boolean isUpToDate(BDiscretization d)
+	{
+		boolean ret = d.getFingerprint().equals(Storage.readFingerprint(d));
+		if (ret && LOGGER.isLoggable(Level.CONFIG))
+			LOGGER.config("    discretization "+d.getId()+" is unchanged");
+		return ret;
+	}
+
 	final void discretizeVertices()
 	{
 		if (state.compareTo(State.TESSELLATION_0) >= 0)
@@ -335,25 +371,7 @@ public class BModel
 			return;
 		discretizeVertices();
 		LOGGER.config("Discretize edges");
-		BCADGraphCell root = cad.getRootCell();
-		int nrEdges = 0;
-		if (LOGGER.isLoggable(Level.CONFIG))
-		{
-			for (Iterator<BCADGraphCell> its = root.shapesExplorer(CADShapeEnum.EDGE); its.hasNext(); its.next())
-				nrEdges++;
-		}
-		int cnt = 0;
-		for (Iterator<BCADGraphCell> its = root.shapesExplorer(CADShapeEnum.EDGE); its.hasNext(); )
-		{
-			BCADGraphCell cell = its.next();
-			cnt++;
-			LOGGER.config("  edge "+cnt+"/"+nrEdges);
-			for (BDiscretization d : cell.getDiscretizations())
-			{
-				d.discretize();
-				Storage.writeEdge(d);
-			}
-		}
+		discretizeAll(CADShapeEnum.EDGE);
 		state = State.TESSELLATION_1;
 	}
 
@@ -363,26 +381,7 @@ public class BModel
 			return;
 		discretizeEdges();
 		LOGGER.info("Discretize faces");
-		BCADGraphCell root = cad.getRootCell();
-		int nrFaces = 0;
-		if (LOGGER.isLoggable(Level.INFO))
-		{
-			for (Iterator<BCADGraphCell> its = root.shapesExplorer(CADShapeEnum.FACE); its.hasNext(); its.next())
-				nrFaces++;
-		}
-		int cnt = 0;
-		for (Iterator<BCADGraphCell> its = root.shapesExplorer(CADShapeEnum.FACE); its.hasNext(); )
-		{
-			BCADGraphCell cell = its.next();
-			cnt++;
-			LOGGER.info("  face "+cnt+"/"+nrFaces);
-			for (BDiscretization d : cell.getDiscretizations())
-			{
-				d.discretize();
-				Storage.writeFace(d);
-				d.setMesh(null);
-			}
-		}
+		discretizeAll(CADShapeEnum.FACE);
 		state = State.TESSELLATION_2;
 	}
 
@@ -392,26 +391,195 @@ public class BModel
 			return;
 		discretizeFaces();
 		LOGGER.info("Discretize solids");
+		discretizeAll(CADShapeEnum.SOLID);
+		state = State.TESSELLATION_3;
+	}
+
+	/**
+	 * Computes all discretizations of a given dimension which are not up
+	 * to date.  Boundary discretizations must have been computed before.
+	 * Discretizations of the same dimension are independent, they are
+	 * computed by a pool of {@link #getThreads} threads.  Each
+	 * discretization is written into its own directory, thus output does
+	 * not depend on thread scheduling.
+	 */
+	private void discretizeAll(final CADShapeEnum cse)
+	{
 		BCADGraphCell root = cad.getRootCell();
-		int nrSolids = 0;
-		if (LOGGER.isLoggable(Level.INFO))
+		// Cells may appear several times, with different orientations
+		Collection<BDiscretization> seen = new HashSet<BDiscretization>();
+		Collection<BDiscretization> todo = new ArrayList<BDiscretization>();
+		int nrUnchanged = 0;
+		for (Iterator<BCADGraphCell> its = root.shapesExplorer(cse); its.hasNext(); )
 		{
-			for (Iterator<BCADGraphCell> its = root.shapesExplorer(CADShapeEnum.SOLID); its.hasNext(); its.next())
-				nrSolids++;
+			for (BDiscretization d : its.next().getDiscretizations())
+			{
+				if (!seen.add(d))
+					continue;
+				d.setComputeTime(-1L);
+				// Fingerprints are computed by the current thread
+				if (isUpToDate(d))
+					nrUnchanged++;
+				else
+					todo.add(d);
+			}
 		}
-		int cnt = 0;
-		for (Iterator<BCADGraphCell> its = root.shapesExplorer(CADShapeEnum.SOLID); its.hasNext(); )
+		final int total = todo.size();
+		if (nrUnchanged > 0)
+			LOGGER.info("  "+nrUnchanged+" unchanged discretizations, "+total+" to compute");
+		int nrThreads = Math.min(getThreads(), total);
+		if (nrThreads <= 1)
 		{
-			BCADGraphCell cell = its.next();
-			cnt++;
-			LOGGER.info("  solid "+cnt+"/"+nrSolids);
-			for (BDiscretization d : cell.getDiscretizations())
+			int cnt = 0;
+			for (BDiscretization d : todo)
 			{
-				d.discretize();
-				Storage.writeSolid(d);
+				cnt++;
+				LOGGER.config("  "+cse+" "+cnt+"/"+total);
+				discretize(d, cse);
 			}
+			return;
 		}
-		state = State.TESSELLATION_3;
+		LOGGER.info("  computing "+total+" discretizations with "+nrThreads+" threads");
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(total);
+		final AtomicInteger cnt = new AtomicInteger();
+		for (final BDiscretization d : todo)
+		{
+			tasks.add(new Callable<Object>() {
+				public Object call()
+				{
+					LOGGER.config("  "+cse+" "+cnt.incrementAndGet()+"/"+total);
+					discretize(d, cse);
+					return null;
+				}
+			});
+		}
+		invokeAll(Executors.newFixedThreadPool(nrThreads), tasks);
+	}
+
+	/**
+	 * Runs tasks on a thread pool and waits for their completion.  If
+	 * tasks fail, the error of the first one in list order is thrown, as
+	 * with a single thread, and remaining tasks are cancelled.  The pool
+	 * is shut down on return, even if current thread is interrupted.
+	 *
+	 * @param pool  thread pool, it is shut down by this method
+	 * @param tasks  tasks to run
+	 */
+	static void invokeAll(ExecutorService pool, List<? extends Callable<?>> tasks)
+	{
+		try
+		{
+			List<Future<?>> results = new ArrayList<Future<?>>(tasks.size());
+			for (Callable<?> c : tasks)
+				results.add(pool.submit(c));
+			pool.shutdown();
+			for (Future<?> f : results)
+				f.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+		finally
+		{
+			// Cancels remaining tasks if an error occurred, and
+			// does nothing otherwise
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Computes a discretization and writes it into output directory.
+	 */
+	private static void discretize(BDiscretization d, CADShapeEnum cse)
+	{
+		long start = System.nanoTime();
+		Storage.clearFingerprint(d);
+		if (cse == CADShapeEnum.EDGE)
+		{
+			d.discretize();
+			Storage.writeEdge(d);
+		}
+		else if (cse == CADShapeEnum.FACE)
+		{
+			// Boundary edges are needed in memory; unchanged edges
+			// have not been discretized yet.
+			for (BDiscretization e : d.getBoundaryDiscretizations())
+				e.discretize();
+			d.discretize();
+			Storage.writeFace(d);
+		}
+		else if (cse == CADShapeEnum.SOLID)
+		{
+			// Faces are read from output directory
+			d.discretize();
+			Storage.writeSolid(d);
+		}
+		Storage.writeFingerprint(d);
+		if (cse == CADShapeEnum.FACE)
+			d.setMesh(null);
+		d.setComputeTime(System.nanoTime() - start);
+	}
+
+	/**
+	 * Sets the number of threads used to compute discretizations.  If this
+	 * number is not positive, all available processors are used.  Default
+	 * is 1.
+	 *
+	 * @param n  number of threads
+	 */
+	public void setThreads(int n)
+	{
+		threads = n;
+	}
+
+	/**
+	 * Returns the number of threads used to compute discretizations.
+	 */
+	public int getThreads()
+	{
+		if (threads <= 0)
+			return Runtime.getRuntime().availableProcessors();
+		return threads;
+	}
+
+	/**
+	 * Prints time spent to compute each discretization during the last
+	 * call to {@link #compute}.
+	 */
+	public void printTimings()
+	{
+		System.out.println("List of timings");
+		BCADGraphCell root = cad.getRootCell();
+		for (CADShapeEnum cse : CADShapeEnum.iterable(CADShapeEnum.EDGE, CADShapeEnum.SOLID))
+		{
+			Collection<BDiscretization> seen = new LinkedHashSet<BDiscretization>();
+			for (Iterator<BCADGraphCell> it = root.shapesExplorer(cse); it.hasNext(); )
+			{
+				BCADGraphCell cell = it.next();
+				for (BDiscretization d : cell.getDiscretizations())
+				{
+					if (!seen.add(d))
+						continue;
+					long t = d.getComputeTime();
+					if (t < 0L)
+						System.out.println("Shape "+cell+" discretization "+d.getId()+": unchanged");
+					else
+						System.out.println("Shape "+cell+" discretization "+d.getId()+": "+(t / 1000000L)+" ms");
+				}
+			}
+		}
+		System.out.println("End list");
 	}
 
 	/**
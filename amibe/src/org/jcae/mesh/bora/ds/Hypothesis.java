@@ -276,6 +276,19 @@ public class Hypothesis
 		return true;
 	}
 
+	/**
+	 * Returns a string which depends only on the values of this
+	 * hypothesis and not on its identifier, so that two hypothesis
+	 * giving the same discretization have the same signature.
+	 *
+	 * @return signature of this hypothesis
+	 */
+	final String getSignature()
+	{
+		return hyp.getType()+" "+length+" "+lengthMin+" "+lengthMax+" "+lengthBool+" "+
+			deflection+" "+numberMin+" "+numberMax+" "+numberBool;
+	}
+
 	@Override
 	public final String toString()
 	{
@@ -46,7 +46,9 @@ import org.jcae.mesh.xmldata.DoubleFileReader;
 import org.jcae.mesh.xmldata.IntFileReader;
 import org.jcae.mesh.xmldata.PrimitiveFileReaderFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
@@ -88,6 +90,78 @@ public class Storage
 		}
 	}
 
+	/**
+	 * Reads the fingerprint of inputs which had been used to write a
+	 * discretization.
+	 *
+	 * @param d  discretization
+	 * @return stored fingerprint, or <code>null</code> if it had not been
+	 * written
+	 */
+	public static String readFingerprint(BDiscretization d)
+	{
+		BModel model = d.getGraphCell().getGraph().getModel();
+		File fpFile = new File(model.getOutputDir(d), "fingerprint");
+		if (!fpFile.exists())
+			return null;
+		try
+		{
+			BufferedReader in = new BufferedReader(new FileReader(fpFile));
+			try
+			{
+				return in.readLine();
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			LOGGER.log(Level.WARNING, "Cannot read "+fpFile, ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Removes the fingerprint of a discretization.  It must be called
+	 * before writing a new discretization, so that files are not considered
+	 * as valid if an error occurs.
+	 *
+	 * @param d  discretization
+	 */
+	public static void clearFingerprint(BDiscretization d)
+	{
+		BModel model = d.getGraphCell().getGraph().getModel();
+		File fpFile = new File(model.getOutputDir(d), "fingerprint");
+		if (fpFile.exists())
+			fpFile.delete();
+	}
+
+	/**
+	 * Writes the fingerprint of a discretization, if this discretization
+	 * has been written.
+	 *
+	 * @param d  discretization
+	 */
+	public static void writeFingerprint(BDiscretization d)
+	{
+		BModel model = d.getGraphCell().getGraph().getModel();
+		File dir = new File(model.getOutputDir(d));
+		if (!new File(dir, "id").exists())
+			return;
+		try
+		{
+			PrintStream out = new PrintStream(new FileOutputStream(new File(dir, "fingerprint")));
+			out.println(d.getFingerprint());
+			out.close();
+		}
+		catch(java.io.FileNotFoundException ex)
+		{
+			LOGGER.log(Level.WARNING, "Cannot write fingerprint into "+dir, ex);
+		}
+	}
+
 	public static void writeEdge(BDiscretization d)
 	{
 		BCADGraphCell edge = d.getGraphCell();
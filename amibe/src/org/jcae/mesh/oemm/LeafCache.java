@@ -0,0 +1,413 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.oemm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Cache of OEMM leaves.  Vertex coordinates, triangles and vertex
+ * adjacency of leaves are kept in memory as primitive arrays, so that
+ * loading the same leaves several times does not read files again.
+ * Leaves are identified by {@link OEMM.Node#leafIndex}, and least recently
+ * used leaves are evicted when total size exceeds a given number of bytes.
+ * When a leaf is read from disk, its adjacent leaves are read by a
+ * background thread, because they are likely to be requested next.
+ *
+ * A cache must be attached to its {@link OEMM} instance by
+ * {@link OEMM#setLeafCache}, it is then used by {@link MeshReader}, and
+ * cleared by {@link Storage#saveNodes} since leaf files are modified.
+ * This class is thread-safe.
+ */
+public final class LeafCache
+{
+	private static final Logger LOGGER=Logger.getLogger(LeafCache.class.getName());
+
+	/**
+	 * Decoded content of a leaf.
+	 */
+	static final class Leaf
+	{
+		/** Vertex coordinates */
+		final double [] coords;
+		/**
+		 * Triangles, each triangle is represented by 7 integers like
+		 * in triangle files: leaf indices of its vertices, local vertex
+		 * indices and group number.
+		 */
+		final int [] triangles;
+		/**
+		 * Leaf indices of adjacent leaves for vertex <code>i</code> are
+		 * stored in <code>adjLeaves</code> between
+		 * <code>adjOffsets[i]</code> and <code>adjOffsets[i+1]</code>.
+		 * It is <code>null</code> if adjacency file does not exist.
+		 */
+		final int [] adjOffsets;
+		final int [] adjLeaves;
+		private Leaf(double [] coords, int [] triangles, int [] adjOffsets, int [] adjLeaves)
+		{
+			this.coords = coords;
+			this.triangles = triangles;
+			this.adjOffsets = adjOffsets;
+			this.adjLeaves = adjLeaves;
+		}
+		long size()
+		{
+			long ret = 64L + 8L * coords.length + 4L * triangles.length;
+			if (adjOffsets != null)
+				ret += 4L * (adjOffsets.length + adjLeaves.length);
+			return ret;
+		}
+	}
+
+	/**
+	 * Reads a leaf.  Leaves being read are not evicted, and their size
+	 * is estimated from their numbers of vertices and triangles.
+	 */
+	private final class LeafTask extends FutureTask<Leaf>
+	{
+		private final Integer key;
+		private final long estimate;
+		private final boolean prefetched;
+		LeafTask(final OEMM.Node node, boolean prefetched)
+		{
+			super(new Callable<Leaf>() {
+				public Leaf call() throws IOException
+				{
+					return read(oemm, node);
+				}
+			});
+			this.key = Integer.valueOf(node.leafIndex);
+			this.estimate = estimateSize(node);
+			this.prefetched = prefetched;
+		}
+
+		@Override
+		protected void done()
+		{
+			added(this);
+		}
+	}
+
+	/** Maximal number of leaves being prefetched */
+	private static final int MAX_PREFETCH = 16;
+
+	private final OEMM oemm;
+	private final long maxBytes;
+	// Access-ordered map, sizes of pending tasks are not known yet
+	private final LinkedHashMap<Integer, LeafTask> leaves =
+		new LinkedHashMap<Integer, LeafTask>(16, 0.75f, true);
+	private final Map<Integer, Long> sizes = new HashMap<Integer, Long>();
+	private long size;
+	// Estimated size of leaves being read
+	private long pendingSize;
+	// Number of prefetched leaves which have not been read yet
+	private int prefetching;
+	private long hits;
+	private long misses;
+	private ExecutorService prefetcher;
+
+	/**
+	 * Creates a cache for leaves of an OEMM.
+	 *
+	 * @param oemm  OEMM instance
+	 * @param maxBytes  maximal size of cached leaves, in bytes
+	 */
+	public LeafCache(OEMM oemm, long maxBytes)
+	{
+		this.oemm = oemm;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the content of a leaf, which is read from disk if it is not
+	 * already in cache.
+	 */
+	Leaf get(OEMM.Node node)
+	{
+		LeafTask task;
+		boolean created = false;
+		synchronized (this)
+		{
+			task = leaves.get(node.leafIndex);
+			if (task == null)
+			{
+				task = newTask(node, false);
+				created = true;
+				misses++;
+			}
+			else
+				hits++;
+		}
+		// If this leaf is waiting to be prefetched, read it now instead
+		// of waiting for other prefetched leaves.  This does nothing if
+		// task is running or done.
+		task.run();
+		if (created)
+			prefetch(node);
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			// Failed tasks are removed from cache by added(), retry
+			// if this task was created by another thread
+			if (!created)
+				return get(node);
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+
+	/** Returns the expected size of a leaf, without adjacency */
+	private static long estimateSize(OEMM.Node node)
+	{
+		return 64L + (long) Storage.VERTEX_SIZE * node.vn +
+			(long) Storage.TRIANGLE_SIZE * node.tn;
+	}
+
+	// Must be called with lock held
+	private LeafTask newTask(OEMM.Node node, boolean prefetched)
+	{
+		LeafTask ret = new LeafTask(node, prefetched);
+		leaves.put(ret.key, ret);
+		pendingSize += ret.estimate;
+		if (prefetched)
+			prefetching++;
+		return ret;
+	}
+
+	private synchronized void added(LeafTask task)
+	{
+		pendingSize -= task.estimate;
+		if (task.prefetched)
+			prefetching--;
+		Integer key = task.key;
+		// Cache may have been cleared meanwhile
+		if (leaves.get(key) != task)
+			return;
+		long s;
+		try
+		{
+			s = task.get().size();
+		}
+		catch (Exception ex)
+		{
+			// Do not keep failed or cancelled tasks
+			leaves.remove(key);
+			return;
+		}
+		sizes.put(key, Long.valueOf(s));
+		size += s;
+		// Evict least recently used leaves, but keep this one
+		for (Iterator<Map.Entry<Integer, LeafTask>> it = leaves.entrySet().iterator(); size > maxBytes && it.hasNext(); )
+		{
+			Map.Entry<Integer, LeafTask> entry = it.next();
+			Long evicted = sizes.get(entry.getKey());
+			if (entry.getKey().equals(key) || evicted == null)
+				continue;
+			it.remove();
+			sizes.remove(entry.getKey());
+			size -= evicted.longValue();
+		}
+	}
+
+	/**
+	 * Reads adjacent leaves in background.  The number of leaves being
+	 * prefetched is bounded, and they must fit into cache with leaves
+	 * already read.
+	 */
+	private void prefetch(OEMM.Node node)
+	{
+		if (node.adjLeaves == null)
+			return;
+		synchronized (this)
+		{
+			for (int i = 0, n = node.adjLeaves.size(); i < n; i++)
+			{
+				int leaf = node.adjLeaves.get(i);
+				if (leaves.containsKey(leaf))
+					continue;
+				OEMM.Node adj = oemm.leaves[leaf];
+				if (prefetching >= MAX_PREFETCH ||
+					size + pendingSize + estimateSize(adj) > maxBytes)
+					break;
+				if (prefetcher == null)
+					prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable r)
+						{
+							Thread t = new Thread(r, "LeafCache prefetcher");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+				prefetcher.execute(newTask(adj, true));
+			}
+		}
+	}
+
+	/**
+	 * Removes all leaves from cache.  It must be called when leaf
+	 * files are modified.
+	 */
+	public synchronized void clear()
+	{
+		leaves.clear();
+		sizes.clear();
+		size = 0L;
+	}
+
+	/**
+	 * Removes all leaves from cache and stops background thread.
+	 */
+	public synchronized void dispose()
+	{
+		clear();
+		if (prefetcher != null)
+		{
+			// Cancel queued tasks so that they are accounted as done
+			for (Runnable r : prefetcher.shutdownNow())
+				((LeafTask) r).cancel(false);
+		}
+		prefetcher = null;
+	}
+
+	/** Returns the number of requests which had been found in cache */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/** Returns the number of requests which needed to read files */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/** Tells whether a leaf is in cache or being read */
+	synchronized boolean contains(int leafIndex)
+	{
+		return leaves.containsKey(leafIndex);
+	}
+
+	/** Returns the total size of cached leaves, in bytes */
+	public synchronized long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Reads all files of a leaf.
+	 */
+	static Leaf read(OEMM oemm, OEMM.Node node) throws IOException
+	{
+		ByteBuffer bb = readFully(Storage.getVerticesFile(oemm, node), Storage.VERTEX_SIZE * node.vn);
+		double [] coords = new double[3 * node.vn];
+		bb.asDoubleBuffer().get(coords);
+		bb = readFully(Storage.getTrianglesFile(oemm, node), Storage.TRIANGLE_SIZE * node.tn);
+		int [] triangles = new int[7 * node.tn];
+		bb.asIntBuffer().get(triangles);
+
+		File adjFile = Storage.getAdjacencyFile(oemm, node);
+		DataInputStream dis;
+		try
+		{
+			dis = new DataInputStream(new BufferedInputStream(new FileInputStream(adjFile)));
+		}
+		catch (FileNotFoundException ex)
+		{
+			LOGGER.log(Level.FINE, "No adjacency file "+adjFile.getPath(), ex);
+			return new Leaf(coords, triangles, null, null);
+		}
+		TIntArrayList offsets = new TIntArrayList(node.vn + 1);
+		TIntArrayList adjLeaves = new TIntArrayList();
+		offsets.add(0);
+		try
+		{
+			while (true)
+			{
+				int count;
+				try
+				{
+					count = dis.readByte();
+				}
+				catch (EOFException ex)
+				{
+					break;
+				}
+				for (int i = 0; i < count; i++)
+					adjLeaves.add(node.adjLeaves.get(dis.readByte()));
+				offsets.add(adjLeaves.size());
+			}
+		}
+		finally
+		{
+			dis.close();
+		}
+		return new Leaf(coords, triangles, offsets.toArray(), adjLeaves.toArray());
+	}
+
+	private static ByteBuffer readFully(File file, int length) throws IOException
+	{
+		ByteBuffer bb = ByteBuffer.allocate(length);
+		FileChannel fc = new FileInputStream(file).getChannel();
+		try
+		{
+			while (bb.hasRemaining())
+			{
+				if (fc.read(bb) < 0)
+					throw new EOFException("Unexpected end of file "+file.getPath());
+			}
+		}
+		finally
+		{
+			fc.close();
+		}
+		bb.flip();
+		return bb;
+	}
+}
@@ -64,9 +64,10 @@ public class MeshReader extends Storage
 	// BUFFER_SIZE = 16128
 	
 	/**
-	 * Buffer to improve I/O efficiency.
+	 * Buffer to improve I/O efficiency.  It is not shared between instances,
+	 * so that several readers can be used concurrently on the same OEMM.
 	 */
-	protected static final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	protected final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
 	
 	/**
 	 * Constructor.
@@ -228,11 +229,21 @@ public class MeshReader extends Storage
 	 */
 	private void readVertices(TIntHashSet leaves, Mesh mesh, TIntObjectHashMap<Vertex> vertMap, OEMM.Node current)
 	{
+		LeafCache cache = oemm.getLeafCache();
+		if (cache != null)
+		{
+			logger.fine("Reading "+current.vn+" vertices from cache");
+			mesh.ensureCapacity(2*current.vn);
+			LeafCache.Leaf leaf = cache.get(current);
+			List<TIntArrayList> listAdjacentLeaves = readAdjacency(leaf, leaves);
+			for (int index = 0; index < current.vn; index++)
+				addVertex(mesh, vertMap, current, index, leaf.coords[3*index], leaf.coords[3*index+1], leaf.coords[3*index+2], listAdjacentLeaves);
+			return;
+		}
 		try
 		{
 			logger.fine("Reading "+current.vn+" vertices from "+getVerticesFile(oemm, current));
 			mesh.ensureCapacity(2*current.vn);
-			Vertex [] vert = new Vertex[current.vn];
 			double [] xyz = new double[3];
 			List<TIntArrayList> listAdjacentLeaves = readAdjacencyFile(oemm, current, leaves);
 			FileChannel fc = new FileInputStream(getVerticesFile(oemm, current)).getChannel();
@@ -252,15 +263,8 @@ public class MeshReader extends Storage
 				for(int nr = 0; nr < nf; nr ++)
 				{
 					bbD.get(xyz);
-					vert[index] = mesh.createVertex(xyz[0], xyz[1], xyz[2]);
-					vert[index].setLabel(current.minIndex + index);
-					vert[index].setReadable(true);
-					boolean writable = listAdjacentLeaves.get(index).isEmpty();
-					vert[index].setWritable(writable);
-					vertMap.put(current.minIndex + index, vert[index]);
-					mesh.add(vert[index]);
+					addVertex(mesh, vertMap, current, index, xyz[0], xyz[1], xyz[2], listAdjacentLeaves);
 					index++;
-					
 				}
 			}
 			fc.close();
@@ -273,19 +277,45 @@ public class MeshReader extends Storage
 		}
 	}
 	
+	private static void addVertex(Mesh mesh, TIntObjectHashMap<Vertex> vertMap, OEMM.Node current, int index,
+		double x, double y, double z, List<TIntArrayList> listAdjacentLeaves)
+	{
+		Vertex v = mesh.createVertex(x, y, z);
+		v.setLabel(current.minIndex + index);
+		v.setReadable(true);
+		boolean writable = listAdjacentLeaves.get(index).isEmpty();
+		v.setWritable(writable);
+		vertMap.put(current.minIndex + index, v);
+		mesh.add(v);
+	}
+	
 	/**
 	 * Reads triangle file, create Triangle instances and store them into mesh.
 	 */
 	private void readTriangles(TIntHashSet leaves, Mesh mesh, TIntObjectHashMap<Vertex> vertMap, OEMM.Node current)
 	{
+		Vertex [] vert = new Vertex[3];
+		TIntHashSet processedNode = new TIntHashSet();
+		int [] leaf = new int[3];
+		int [] pointIndex = new int[3];
+		LeafCache cache = oemm.getLeafCache();
+		if (cache != null)
+		{
+			logger.fine("Reading "+current.tn+" triangles from cache");
+			mesh.ensureCapacity(current.tn);
+			int [] triangles = cache.get(current).triangles;
+			for (int offset = 0; offset < triangles.length; offset += 7)
+			{
+				System.arraycopy(triangles, offset, leaf, 0, 3);
+				System.arraycopy(triangles, offset + 3, pointIndex, 0, 3);
+				addTriangle(leaves, mesh, vertMap, leaf, pointIndex, triangles[offset + 6], vert, processedNode);
+			}
+			return;
+		}
 		try
 		{
 			logger.fine("Reading "+current.tn+" triangles from "+getTrianglesFile(oemm, current));
 			FileChannel fc = new FileInputStream(getTrianglesFile(oemm, current)).getChannel();
-			Vertex [] vert = new Vertex[3];
-			TIntHashSet processedNode = new TIntHashSet();
-			int [] leaf = new int[3];
-			int [] pointIndex = new int[3];
 			mesh.ensureCapacity(current.tn);
 			int remaining = current.tn;
 			buffer.clear();
@@ -301,58 +331,11 @@ public class MeshReader extends Storage
 				remaining -= nf;
 				for(int nr = 0; nr < nf; nr ++)
 				{
-					boolean readable = true;
-					boolean writable = true;
 					bbI.get(leaf);
 					bbI.get(pointIndex);
-					for (int j = 0; j < 3; j++)
-					{
-						int globalIndex = oemm.leaves[leaf[j]].minIndex + pointIndex[j];
-						if (leaves.contains(leaf[j]))
-						{
-							vert[j] = vertMap.get(globalIndex);
-							assert vert[j] != null;
-						}
-						else
-						{
-							writable = false;
-							vert[j] = vertMap.get(globalIndex);
-							if (vert[j] == null) {
-								vert[j] = new FakeNonReadVertex(oemm, leaf[j], pointIndex[j]);
-								vertMap.put(globalIndex, vert[j]);
-								if (mapNodeToNonReadVertexList != null)
-								{
-									FakeNonReadVertex vertex = (FakeNonReadVertex) vert[j];
-									List<FakeNonReadVertex> vertices = mapNodeToNonReadVertexList.get(leaf[j]);
-									if (vertices == null) {
-										vertices = new ArrayList<FakeNonReadVertex>();
-										mapNodeToNonReadVertexList.put(leaf[j], vertices);
-									}
-									vertices.add(vertex);
-								}
-							}
-						}
-					}
 					// group number
 					int groupId = bbI.get();
-					createTriangle(groupId, vert, readable, writable, mesh);
-					// When called from buildMeshes(), cross boundary triangles are put into
-					// all crossed octants.
-					if (mapNodeToMesh != null && mapNodeToNonReadVertexList != null)
-					{
-						processedNode.clear();
-						for (int j = 0; j < 3; j++) {
-							if (vert[j] instanceof FakeNonReadVertex) {
-								FakeNonReadVertex fnrVertex = (FakeNonReadVertex) vert[j];
-								int leafIndex = fnrVertex.getOEMMIndex();
-								if (!processedNode.contains(leafIndex)) {
-									Mesh altMesh = mapNodeToMesh.get(leafIndex);
-									createTriangle(-leafIndex, vert, false, false, altMesh);
-									processedNode.add(leafIndex);
-								}
-							}
-						}
-					}
+					addTriangle(leaves, mesh, vertMap, leaf, pointIndex, groupId, vert, processedNode);
 				}
 			}
 			fc.close();
@@ -365,6 +348,59 @@ public class MeshReader extends Storage
 		}
 	}
 
+	private void addTriangle(TIntHashSet leaves, Mesh mesh, TIntObjectHashMap<Vertex> vertMap, int [] leaf, int [] pointIndex,
+		int groupId, Vertex [] vert, TIntHashSet processedNode)
+	{
+		boolean readable = true;
+		boolean writable = true;
+		for (int j = 0; j < 3; j++)
+		{
+			int globalIndex = oemm.leaves[leaf[j]].minIndex + pointIndex[j];
+			if (leaves.contains(leaf[j]))
+			{
+				vert[j] = vertMap.get(globalIndex);
+				assert vert[j] != null;
+			}
+			else
+			{
+				writable = false;
+				vert[j] = vertMap.get(globalIndex);
+				if (vert[j] == null) {
+					vert[j] = new FakeNonReadVertex(oemm, leaf[j], pointIndex[j]);
+					vertMap.put(globalIndex, vert[j]);
+					if (mapNodeToNonReadVertexList != null)
+					{
+						FakeNonReadVertex vertex = (FakeNonReadVertex) vert[j];
+						List<FakeNonReadVertex> vertices = mapNodeToNonReadVertexList.get(leaf[j]);
+						if (vertices == null) {
+							vertices = new ArrayList<FakeNonReadVertex>();
+							mapNodeToNonReadVertexList.put(leaf[j], vertices);
+						}
+						vertices.add(vertex);
+					}
+				}
+			}
+		}
+		createTriangle(groupId, vert, readable, writable, mesh);
+		// When called from buildMeshes(), cross boundary triangles are put into
+		// all crossed octants.
+		if (mapNodeToMesh != null && mapNodeToNonReadVertexList != null)
+		{
+			processedNode.clear();
+			for (int j = 0; j < 3; j++) {
+				if (vert[j] instanceof FakeNonReadVertex) {
+					FakeNonReadVertex fnrVertex = (FakeNonReadVertex) vert[j];
+					int leafIndex = fnrVertex.getOEMMIndex();
+					if (!processedNode.contains(leafIndex)) {
+						Mesh altMesh = mapNodeToMesh.get(leafIndex);
+						createTriangle(-leafIndex, vert, false, false, altMesh);
+						processedNode.add(leafIndex);
+					}
+				}
+			}
+		}
+	}
+
 	private static void createTriangle(int groupId, Vertex[] vert, boolean readable, boolean writable, Mesh mesh)
 	{
 		Triangle t = mesh.createTriangle(vert[0], vert[1], vert[2]);
@@ -384,6 +420,24 @@ public class MeshReader extends Storage
 	private void loadVerticesFromUnloadedNodes()
 	{
 		assert mapNodeToNonReadVertexList != null;
+		LeafCache cache = oemm.getLeafCache();
+		if (cache != null)
+		{
+			for (TIntObjectIterator<List<FakeNonReadVertex>> it = mapNodeToNonReadVertexList.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				double [] coords = cache.get(oemm.leaves[it.key()]).coords;
+				List<FakeNonReadVertex> list = it.value();
+				sortFakeNonReadVertexList(list);
+				for (FakeNonReadVertex vertex: list)
+				{
+					int i = 3 * vertex.getLocalNumber();
+					vertex.moveTo(coords[i], coords[i+1], coords[i+2]);
+					vertex.setReadable(true);
+				}
+			}
+			return;
+		}
 		int lastLimit = buffer.limit();
 		double[] vertexBuffer = new double[3];
 		try {
@@ -100,6 +100,11 @@ public class OEMM implements Serializable
 	 * Array of leaves.
 	 */
 	public transient Node [] leaves;
+
+	/**
+	 * Cache of leaf files, may be <code>null</code>.
+	 */
+	private transient LeafCache leafCache;
 	
 	/**
 	 * Create an empty OEMM.
@@ -373,6 +378,29 @@ public class OEMM implements Serializable
 	public final void setDirectory(String dir)
 	{
 		topDir = dir;
+		if (leafCache != null)
+			leafCache.clear();
+	}
+	
+	/**
+	 * Sets the cache used when reading leaves.
+	 *
+	 * @param cache  leaf cache, or <code>null</code> to read leaves from
+	 *        disk each time they are requested
+	 */
+	public final void setLeafCache(LeafCache cache)
+	{
+		leafCache = cache;
+	}
+	
+	/**
+	 * Returns the cache used when reading leaves.
+	 *
+	 * @return leaf cache, or <code>null</code> if there is none
+	 */
+	public final LeafCache getLeafCache()
+	{
+		return leafCache;
 	}
 	
 	/**
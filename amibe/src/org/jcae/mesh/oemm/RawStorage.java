@@ -2,7 +2,7 @@
    modeler, Finite element mesher, Plugin architecture.
 
     Copyright (C) 2005, by EADS CRC
-    Copyright (C) 2007,2008, by EADS France
+    Copyright (C) 2007,2008,2012, by EADS France
 
     This library is free software; you can redistribute it and/or
     modify it under the terms of the GNU Lesser General Public
@@ -40,11 +40,17 @@ import java.util.HashMap;
 import java.util.Map;
 import java.lang.ref.SoftReference;
 import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.iterator.TObjectIntIterator;
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.jcae.mesh.amibe.ds.MeshParameters;
+import org.jcae.mesh.amibe.util.ParallelLoop;
 
 /**
  * Convert a triangle soup into an OEMM data structure.  The different steps
@@ -57,6 +63,10 @@ import java.util.logging.Logger;
  *      are sorted by octants.</li>
  *  <li>In each octant, write an indexed OEMM data structure.</li>
  * </ol>
+ * Triangle soup is read by several threads during the first and third
+ * steps, see <code>org.jcae.mesh.amibe.ds.Mesh.threads</code> property.
+ * This class does not contain any shared state, so several OEMM can be
+ * built at the same time.
  */
 public class RawStorage
 {
@@ -74,9 +84,9 @@ public class RawStorage
 	// As TRIANGLE_SIZE_RAW is 2*TRIANGLE_SIZE_DISPATCHED, the latter
 	// does not need to be taken into account
 	private static final int bufferSize = (TRIANGLE_SIZE_RAW * VERTEX_SIZE_INDEXED * TRIANGLE_SIZE_INDEXED);
-	private static final ByteBuffer bb = ByteBuffer.allocate(bufferSize);
-	private static final ByteBuffer bbt = ByteBuffer.allocate(bufferSize);
-	private static final ByteBuffer bbpos = ByteBuffer.allocate(8);
+	//  Per-leaf buffer size when dispatching triangles, must be
+	//  a multiple of TRIANGLE_SIZE_DISPATCHED
+	private static final int DISPATCH_BUFFER_SIZE = 4000;
 
 	public static interface SoupReaderInterface
 	{
@@ -96,35 +106,50 @@ public class RawStorage
 	 */
 	public static void readSoup(String file, SoupReaderInterface proc)
 	{
-		double [] xyz = new double[3];
-		boolean hasNext = true;
-		bb.clear();
-		DoubleBuffer bbD = bb.asDoubleBuffer();
-		IntBuffer bbI = bb.asIntBuffer();
+		readSoup(file, new SoupReaderInterface[] { proc });
+	}
+
+	/**
+	 * Reads a triangle soup by slices.  Triangle soup is split into as
+	 * many slices as there are procedures, slice <code>i</code> is
+	 * processed by <code>procs[i]</code>, and slices are read
+	 * concurrently.
+	 */
+	private static void readSoup(String file, final SoupReaderInterface [] procs)
+	{
 		try
 		{
-			FileChannel fc = new FileInputStream(file).getChannel();
-			while (hasNext)
+			FileInputStream in = new FileInputStream(file);
+			final FileChannel fc = in.getChannel();
+			final long nrTriangles = fc.size() / TRIANGLE_SIZE_RAW;
+			ParallelLoop loop = new ParallelLoop(procs.length, 1);
+			try
 			{
-				bb.rewind();
-				int nr = fc.read(bb);
-				if (nr < bufferSize)
-					hasNext = false;
-				bbD.rewind();
-				for(; nr > 0; nr -= TRIANGLE_SIZE_RAW)
-				{
-					for (int i = 0; i < 3; i++)
+				loop.execute(procs.length, new ParallelLoop.Body() {
+					public void run(int start, int end)
 					{
-						bbD.get(xyz);
-						proc.processVertex(i, xyz);
+						ByteBuffer bb = ByteBuffer.allocate(bufferSize);
+						for (int i = start; i < end; i++)
+						{
+							long first = nrTriangles * i / procs.length;
+							long last = nrTriangles * (i + 1) / procs.length;
+							try
+							{
+								readSoup(fc, first, last, bb, procs[i]);
+							}
+							catch (IOException ex)
+							{
+								throw new RuntimeException(ex);
+							}
+						}
 					}
-					bbD.get();
-					bbI.position(2*bbD.position() - 2);
-					int attribute = bbI.get();
-					proc.processTriangle(attribute);
-				}
+				});
+			}
+			finally
+			{
+				loop.shutdown();
+				fc.close();
 			}
-			fc.close();
 		}
 		catch (FileNotFoundException ex)
 		{
@@ -140,6 +165,56 @@ public class RawStorage
 		}
 	}
 
+	/**
+	 * Reads triangles from <code>first</code> (inclusive) to
+	 * <code>last</code> (exclusive).  Positional reads are performed,
+	 * so that several threads can share the same channel.
+	 */
+	private static void readSoup(FileChannel fc, long first, long last, ByteBuffer bb, SoupReaderInterface proc)
+		throws IOException
+	{
+		double [] xyz = new double[3];
+		DoubleBuffer bbD = bb.asDoubleBuffer();
+		IntBuffer bbI = bb.asIntBuffer();
+		long pos = first * TRIANGLE_SIZE_RAW;
+		long end = last * TRIANGLE_SIZE_RAW;
+		while (pos < end)
+		{
+			bb.clear();
+			if (end - pos < bb.capacity())
+				bb.limit((int) (end - pos));
+			while (bb.hasRemaining())
+			{
+				if (fc.read(bb, pos + bb.position()) < 0)
+				{
+					//  Unexpected end of file
+					end = pos;
+					break;
+				}
+			}
+			int nr = bb.position();
+			pos += nr;
+			bbD.rewind();
+			for(; nr >= TRIANGLE_SIZE_RAW; nr -= TRIANGLE_SIZE_RAW)
+			{
+				for (int i = 0; i < 3; i++)
+				{
+					bbD.get(xyz);
+					proc.processVertex(i, xyz);
+				}
+				bbD.get();
+				bbI.position(2*bbD.position() - 2);
+				int attribute = bbI.get();
+				proc.processTriangle(attribute);
+			}
+		}
+	}
+
+	private static int getThreads()
+	{
+		return new MeshParameters().getThreads();
+	}
+
 	/**
 	 * Builds an OEMM and counts the number of triangles which have to be
 	 * assigned to each leaf.
@@ -185,10 +260,33 @@ public class RawStorage
 		}
 		logger.info("Count triangles");
 		logger.fine("Reading "+soupFile+" and count triangles");
-		CountTriangles ct = new CountTriangles(tree, build);
+		if (!build)
+		{
+			for (int i = 0; i < tree.getNumberOfLeaves(); i++)
+				tree.leaves[i].tn = 0;
+		}
+		//  Octree cannot be modified concurrently, so when it is
+		//  built, cells are identified by their coordinates and
+		//  created afterwards.
+		boolean byKey = build && 3 * (OEMM.MAXLEVEL - cellShift(tree)) < 64;
+		CountTriangles [] ct = new CountTriangles[build && !byKey ? 1 : getThreads()];
+		for (int i = 0; i < ct.length; i++)
+			ct[i] = new CountTriangles(tree, build, byKey);
 		readSoup(soupFile, ct);
-		logger.info("Number of triangles: "+ct.getTriangleCount());
-		double [] bbox = ct.getBoundingBox();
+		long nrTriangles = 0L;
+		double [] bbox = ct[0].getBoundingBox();
+		for (CountTriangles c : ct)
+		{
+			nrTriangles += c.getTriangleCount();
+			double [] b = c.getBoundingBox();
+			for (int k = 0; k < 3; k++)
+			{
+				bbox[k] = Math.min(bbox[k], b[k]);
+				bbox[k+3] = Math.max(bbox[k+3], b[k+3]);
+			}
+			c.addCounts();
+		}
+		logger.info("Number of triangles: "+nrTriangles);
 		if (!tree.checkBoundingBox(bbox))
 		{
 			if (!build)
@@ -200,23 +298,51 @@ public class RawStorage
 			tree.printInfos();
 		return true;
 	}
-	
+
+	/** Returns log2 of the size of deepest cells */
+	private static int cellShift(OEMM tree)
+	{
+		return Integer.numberOfTrailingZeros(tree.minCellSize());
+	}
+
+	/**
+	 * Counts triangles of a slice of triangle soup.  Counters are
+	 * stored locally and added to cells by {@link #addCounts}, so that
+	 * slices can be processed concurrently.  If <code>byKey</code> is
+	 * <code>true</code>, deepest cells are identified by a key computed
+	 * from their coordinates, and are built by {@link #addCounts}.
+	 * Otherwise cells are retrieved by {@link OEMM#search}, or built if
+	 * there is a single slice.
+	 */
 	private static final class CountTriangles implements SoupReaderInterface
 	{
+		private static final int MASK = (1 << OEMM.MAXLEVEL) - 1;
 		private final OEMM.Node [] cells = new OEMM.Node[3];
+		private final long [] keys = new long[3];
 		private final OEMM oemm;
 		private long nrTriangles = 0;
 		private final int [] ijk = new int[3];
 		private final double [] bbox = new double[6];
 		private final boolean build;
-		public CountTriangles(OEMM o, boolean b)
+		private final int shift;
+		private final int bits;
+		private final TLongIntHashMap keyCounts;
+		private final TObjectIntHashMap<OEMM.Node> cellCounts;
+		public CountTriangles(OEMM o, boolean b, boolean byKey)
 		{
 			oemm = o;
 			build = b;
-			if (!build)
+			shift = cellShift(oemm);
+			bits = OEMM.MAXLEVEL - shift;
+			if (byKey)
 			{
-				for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
-					oemm.leaves[i].tn = 0;
+				keyCounts = new TLongIntHashMap();
+				cellCounts = null;
+			}
+			else
+			{
+				keyCounts = null;
+				cellCounts = new TObjectIntHashMap<OEMM.Node>();
 			}
 			for (int k = 0; k < 3; k++)
 			{
@@ -234,7 +360,15 @@ public class RawStorage
 					bbox[k+3] = xyz[k];
 			}
 			oemm.double2int(xyz, ijk);
-			if (build)
+			if (keyCounts != null)
+			{
+				//  Bits above OEMM.MAXLEVEL are ignored by OEMM.build
+				keys[i] =
+					(((long) ((ijk[0] & MASK) >> shift)) << (2 * bits)) |
+					(((long) ((ijk[1] & MASK) >> shift)) << bits) |
+					((ijk[2] & MASK) >> shift);
+			}
+			else if (build)
 				cells[i] = oemm.build(ijk);
 			else
 				cells[i] = oemm.search(ijk);
@@ -242,11 +376,47 @@ public class RawStorage
 		public void processTriangle(int group)
 		{
 			nrTriangles++;
-			cells[0].tn++;
-			if (cells[1] != cells[0])
-				cells[1].tn++;
-			if (cells[2] != cells[0] && cells[2] != cells[1])
-				cells[2].tn++;
+			if (keyCounts != null)
+			{
+				keyCounts.adjustOrPutValue(keys[0], 1, 1);
+				if (keys[1] != keys[0])
+					keyCounts.adjustOrPutValue(keys[1], 1, 1);
+				if (keys[2] != keys[0] && keys[2] != keys[1])
+					keyCounts.adjustOrPutValue(keys[2], 1, 1);
+			}
+			else
+			{
+				cellCounts.adjustOrPutValue(cells[0], 1, 1);
+				if (cells[1] != cells[0])
+					cellCounts.adjustOrPutValue(cells[1], 1, 1);
+				if (cells[2] != cells[0] && cells[2] != cells[1])
+					cellCounts.adjustOrPutValue(cells[2], 1, 1);
+			}
+		}
+		/** Adds local counters to octree cells, this method is not thread-safe */
+		void addCounts()
+		{
+			if (keyCounts != null)
+			{
+				long mask = (1L << bits) - 1L;
+				for (TLongIntIterator it = keyCounts.iterator(); it.hasNext(); )
+				{
+					it.advance();
+					long key = it.key();
+					ijk[0] = ((int) (key >> (2 * bits))) << shift;
+					ijk[1] = ((int) ((key >> bits) & mask)) << shift;
+					ijk[2] = ((int) (key & mask)) << shift;
+					oemm.build(ijk).tn += it.value();
+				}
+			}
+			else
+			{
+				for (TObjectIntIterator<OEMM.Node> it = cellCounts.iterator(); it.hasNext(); )
+				{
+					it.advance();
+					it.key().tn += it.value();
+				}
+			}
 		}
 		long getTriangleCount()
 		{
@@ -302,14 +472,18 @@ public class RawStorage
 			RandomAccessFile raf = new RandomAccessFile(dataFile, "rw");
 			FileChannel fc = raf.getChannel();
 			raf.setLength(outputFileSize);
+			WriteHeadersProcedure wh = new WriteHeadersProcedure(fc);
+			tree.walk(wh);
+			if (wh.error != null)
+				throw wh.error;
 
-			Map<OEMM.Node, ByteBuffer> buffers = new HashMap<OEMM.Node, ByteBuffer>();
-			DispatchTriangles dt = new DispatchTriangles(tree, fc, buffers);
+			DispatchTriangles [] dt = new DispatchTriangles[getThreads()];
+			for (int i = 0; i < dt.length; i++)
+				dt[i] = new DispatchTriangles(tree, fc);
 			readSoup(soupFile, dt);
-
 			logger.fine("Raw OEMM: flush buffers");
-			FlushBuffersProcedure fb_proc = new FlushBuffersProcedure(fc, buffers);
-			tree.walk(fb_proc);
+			for (DispatchTriangles d : dt)
+				d.flush();
 			raf.close();
 			
 			//  Write octree data structure onto disk
@@ -332,18 +506,27 @@ public class RawStorage
 		}
 	}
 	
+	/**
+	 * Copies a slice of triangle soup into dispatched file.  Triangles
+	 * are first stored into a buffer for each octant, and when a buffer is
+	 * full, room is reserved in the octant block and buffer is written at
+	 * this position.  Thus slices can be dispatched concurrently, but
+	 * when there are several slices, triangles are not in the same order
+	 * within octant blocks from one run to another.
+	 */
 	private static final class DispatchTriangles implements SoupReaderInterface
 	{
 		private final OEMM.Node [] cells = new OEMM.Node[3];
 		private final int [] ijk9 = new int[9];
 		private final OEMM oemm;
 		private final FileChannel fc;
-		private final Map<OEMM.Node, ByteBuffer> buffers;
-		public DispatchTriangles(OEMM o, FileChannel f, Map<OEMM.Node, ByteBuffer> m)
+		//  With 20 millions of triangles, unbuffered output took 420s
+		//  and buffered output 180s (4K buffer cache)
+		private final Map<OEMM.Node, ByteBuffer> buffers = new HashMap<OEMM.Node, ByteBuffer>();
+		public DispatchTriangles(OEMM o, FileChannel f)
 		{
 			oemm = o;
 			fc = f;
-			buffers = m;
 		}
 		public void processVertex(int i, double [] xyz)
 		{
@@ -358,11 +541,11 @@ public class RawStorage
 		{
 			try
 			{
-				addToCell(fc, cells[0], buffers, ijk9, group);
+				addToCell(cells[0], group);
 				if (cells[1] != cells[0])
-					addToCell(fc, cells[1], buffers, ijk9, group);
+					addToCell(cells[1], group);
 				if (cells[2] != cells[0] && cells[2] != cells[1])
-					addToCell(fc, cells[2], buffers, ijk9, group);
+					addToCell(cells[2], group);
 			}
 			catch (IOException ex)
 			{
@@ -371,40 +554,46 @@ public class RawStorage
 				throw new RuntimeException(ex);
 			}
 		}
-	}
-
-	private static void addToCell(FileChannel fc, OEMM.Node current, Map<OEMM.Node, ByteBuffer> buffers, int [] ijk, int attribute)
-		throws IOException
-	{
-		assert current.counter <= fc.size();
-		//  With 20 millions of triangles, unbuffered output took 420s
-		//  and buffered output 180s (4K buffer cache)
-		ByteBuffer list = buffers.get(current);
-		if (list == null)
+		private void addToCell(OEMM.Node current, int attribute)
+			throws IOException
 		{
-			//  Must be a multiple of 10!
-			list = ByteBuffer.allocate(4000);
-			buffers.put(current, list);
-			list.putLong(current.counter);
-			list.flip();
-			fc.write(list, current.counter);
-			current.counter += list.limit();
-			list.clear();
+			ByteBuffer list = buffers.get(current);
+			if (list == null)
+			{
+				list = ByteBuffer.allocate(DISPATCH_BUFFER_SIZE);
+				buffers.put(current, list);
+			}
+			else if (!list.hasRemaining())
+				flush(current, list);
+			for (int i = 0; i < ijk9.length; i++)
+				list.putInt(ijk9[i]);
+			list.putInt(attribute);
+		}
+		/** Writes all buffers onto disk */
+		void flush() throws IOException
+		{
+			for (Map.Entry<OEMM.Node, ByteBuffer> entry : buffers.entrySet())
+				flush(entry.getKey(), entry.getValue());
+			buffers.clear();
 		}
-		else if (!list.hasRemaining())
+		private void flush(OEMM.Node current, ByteBuffer list)
+			throws IOException
 		{
-			// Flush buffer
 			list.flip();
-			fc.write(list, current.counter);
-			current.counter += list.limit();
+			long pos;
+			synchronized (current)
+			{
+				pos = current.counter;
+				current.counter += list.limit();
+				current.tn += list.limit() / TRIANGLE_SIZE_DISPATCHED;
+			}
+			assert current.counter <= fc.size();
+			while (list.hasRemaining())
+				fc.write(list, pos + list.position());
 			list.clear();
 		}
-		for (int i = 0; i < ijk.length; i++)
-			list.putInt(ijk[i]);
-		list.putInt(attribute);
-		current.tn++;
 	}
-	
+
 	private static final class ComputeOffsetProcedure extends TraversalProcedure
 	{
 		private long offset = 0L;
@@ -456,49 +645,38 @@ public class RawStorage
 		}
 	}
 	
-	private static final class FlushBuffersProcedure extends TraversalProcedure
+	/**
+	 * Writes block offset at the beginning of each block, triangles
+	 * are written after this header.
+	 */
+	private static final class WriteHeadersProcedure extends TraversalProcedure
 	{
 		private final FileChannel fc;
-		private final Map<OEMM.Node, ByteBuffer> buffers;
-		FlushBuffersProcedure(FileChannel channel, Map<OEMM.Node, ByteBuffer> m)
+		private final ByteBuffer bbpos = ByteBuffer.allocate(8);
+		private IOException error;
+		WriteHeadersProcedure(FileChannel channel)
 		{
 			fc = channel;
-			buffers = m;
 		}
 		@Override
 		public final int action(OEMM oemm, OEMM.Node current, int octant, int visit)
 		{
 			if (visit != LEAF)
 				return OK;
-			ByteBuffer list = buffers.get(current);
-			if (list == null)
-			{
-				list = ByteBuffer.allocate(8);
-				list.putLong(current.counter);
-				list.rewind();
-				try
-				{
-					assert current.counter <= fc.size();
-					fc.write(list, current.counter);
-				}
-				catch (IOException ex)
-				{
-					logger.severe("I/O error when writing file");
-				}
-				return OK;
-			}
-			// Flush buffer
+			bbpos.clear();
+			bbpos.putLong(current.counter);
+			bbpos.flip();
 			try
 			{
-				assert current.counter <= fc.size();
-				list.flip();
-				fc.write(list, current.counter);
-				current.counter += list.limit();
+				while (bbpos.hasRemaining())
+					fc.write(bbpos, current.counter + bbpos.position());
 			}
 			catch (IOException ex)
 			{
-				logger.severe("I/O error when writing file");
+				error = ex;
+				return ABORT;
 			}
+			current.counter += bbpos.limit();
 			return OK;
 		}
 	}
@@ -605,6 +783,42 @@ public class RawStorage
 		return ret;
 	}
 	
+	/**
+	 * Dispatches a triangle soup and transforms it into an OEMM.
+	 * Intermediate files are as large as the triangle soup, they are
+	 * written next to the output directory and removed afterwards.
+	 *
+	 * @param  tree  an OEMM
+	 * @param  soupFile  triangle soup file name
+	 * @param outDir  directory in which OEMM structure will be stored.
+	 */
+	public static void dispatchAndIndex(OEMM tree, String soupFile, String outDir)
+	{
+		File parent = new File(outDir).getAbsoluteFile().getParentFile();
+		File structFile;
+		try
+		{
+			parent.mkdirs();
+			structFile = File.createTempFile("dispatched", "", parent);
+		}
+		catch (IOException ex)
+		{
+			logger.severe("Cannot create temporary file in "+parent);
+			throw new RuntimeException(ex);
+		}
+		File dataFile = new File(structFile.getPath()+".data");
+		try
+		{
+			dispatch(tree, soupFile, structFile.getPath(), dataFile.getPath());
+			indexOEMM(structFile.getPath(), outDir);
+		}
+		finally
+		{
+			structFile.delete();
+			dataFile.delete();
+		}
+	}
+
 	/**
 	 * Transforms dispatched file into an OEMM.
 	 *
@@ -675,6 +889,9 @@ public class RawStorage
 		private int globalIndex = 0;
 		private final ArrayList<String> path = new ArrayList<String>();
 		private final int [] ijk = new int[3];
+		private final ByteBuffer bb = ByteBuffer.allocate(bufferSize);
+		private final ByteBuffer bbt = ByteBuffer.allocate(bufferSize);
+		private final ByteBuffer bbpos = ByteBuffer.allocate(8);
 		private int room = 0;
 		IndexInternalVerticesProcedure(FileInputStream in, ObjectOutputStream headerOut, String dir)
 		{
@@ -899,6 +1116,9 @@ public class RawStorage
 	{
 		private final FileChannel fc;
 		private final int [] ijk = new int[3];
+		private final ByteBuffer bb = ByteBuffer.allocate(bufferSize);
+		private final ByteBuffer bbt = ByteBuffer.allocate(bufferSize);
+		private final ByteBuffer bbpos = ByteBuffer.allocate(8);
 		private PAVLTreeIntArrayDup [] vertices;
 		private SoftReference<PAVLTreeIntArrayDup> [] sr;
 		private int nr_ld_leaves = 0;
@@ -929,7 +1149,7 @@ public class RawStorage
 				vertices[i] = sr[i].get();
 			if (vertices[i] == null)
 			{
-				vertices[i] = loadVerticesInAVLTreeDup(oemm.getDirectory(), oemm.leaves[i]);
+				vertices[i] = loadVerticesInAVLTreeDup(oemm.getDirectory(), oemm.leaves[i], bb);
 				sr[i] = new SoftReference<PAVLTreeIntArrayDup>(vertices[i]); 
 				nr_ld_leaves++;
 			}
@@ -1023,6 +1243,8 @@ public class RawStorage
 	{
 		private final int [] ijk = new int[3];
 		private final double [] xyz = new double[3];
+		private final ByteBuffer bb = ByteBuffer.allocate(bufferSize);
+		private final ByteBuffer bbt = ByteBuffer.allocate(bufferSize);
 		ConvertVertexCoordinatesProcedure()
 		{
 		}
@@ -1079,7 +1301,7 @@ public class RawStorage
 		}
 	}
 	
-	private static PAVLTreeIntArrayDup loadVerticesInAVLTreeDup(String outDir, OEMM.Node current)
+	private static PAVLTreeIntArrayDup loadVerticesInAVLTreeDup(String outDir, OEMM.Node current, ByteBuffer bb)
 	{
 		PAVLTreeIntArrayDup ret = new PAVLTreeIntArrayDup();
 		int [] ijk = new int[3];
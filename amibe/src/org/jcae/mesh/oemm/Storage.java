@@ -150,7 +150,7 @@ public class Storage
 	 *
 	 * @param oemm stored object
 	 */
-	private static void storeOEMMStructure(OEMM oemm)
+	public static void storeOEMMStructure(OEMM oemm)
 	{
 		if (logger.isLoggable(Level.INFO)) {
 			logger.info("storeOEMMStructure");
@@ -189,6 +189,24 @@ public class Storage
 	 * TODO There is no support for moving vertices into another octree node. 
 	 */
 	public static void saveNodes(OEMM oemm, Mesh mesh, TIntHashSet storedLeaves)
+	{
+		saveNodes(oemm, mesh, storedLeaves, true);
+	}
+
+	/**
+	 * Saves mesh on the disk into octree structure.  This method modifies
+	 * files of <code>storedLeaves</code> and triangle files of their adjacent
+	 * leaves, updates adjacency of leaves and may create new leaves, so
+	 * concurrent calls must be serialized by the caller.
+	 *
+	 * @param oemm OEMM instance
+	 * @param mesh  mesh to be stored onto disk
+	 * @param storedLeaves  set of leaves to store
+	 * @param storeStructure  if <code>false</code>, OEMM structure is not
+	 *        written onto disk, caller has to call {@link #storeOEMMStructure}
+	 *        when all nodes have been saved.
+	 */
+	public static void saveNodes(OEMM oemm, Mesh mesh, TIntHashSet storedLeaves, boolean storeStructure)
 	{
 		logger.fine("saveNodes started");
 		removeNonReferencedVertices(mesh);
@@ -197,8 +215,11 @@ public class Storage
 		TObjectIntHashMap<Vertex> mapVertexToLeafindex = getMapVertexToLeafindex(oemm, mesh, storedLeaves);
 		storeVertices(oemm, mesh, storedLeaves, mapVertexToLeafindex);
 		storeTriangles(oemm, mesh, storedLeaves, mapVertexToLeafindex);
+		if (oemm.getLeafCache() != null)
+			oemm.getLeafCache().clear();
 		
-		storeOEMMStructure(oemm);
+		if (storeStructure)
+			storeOEMMStructure(oemm);
 		logger.fine("saveNodes ended");
 	}
 	
@@ -230,7 +251,9 @@ public class Storage
 			if (processedVertIndex.contains(label))
 				continue;
 			processedVertIndex.add(label);
-			if (!v.isWritable()) {
+			// Vertices of non-read leaves are stored in their own leaf,
+			// see MeshReader.setLoadNonReadableTriangles
+			if (!v.isWritable() && !(v instanceof FakeNonReadVertex)) {
 				mesh.add(v);
 			}
 		}
@@ -804,7 +827,7 @@ public class Storage
 		}
 	}
 
-	private static File getAdjacencyFile(OEMM oemm, Node node)
+	static File getAdjacencyFile(OEMM oemm, Node node)
 	{
 		return new File(oemm.getDirectory(), node.file+"a");
 	}
@@ -884,6 +907,34 @@ public class Storage
 		return result;
 	}
 	
+	/**
+	 * Same as {@link #readAdjacencyFile}, but adjacency is read from a
+	 * cached leaf.
+	 */
+	static List<TIntArrayList> readAdjacency(LeafCache.Leaf leaf, TIntHashSet storedLeaves)
+	{
+		List<TIntArrayList> result = new ArrayList<TIntArrayList>();
+		if (leaf.adjOffsets == null)
+			return result;
+		TIntArrayList nullList = new TIntArrayList();
+		for (int v = 0; v < leaf.adjOffsets.length - 1; v++)
+		{
+			TIntArrayList row = null;
+			for (int i = leaf.adjOffsets[v]; i < leaf.adjOffsets[v+1]; i++)
+			{
+				int leafIndex = leaf.adjLeaves[i];
+				if (storedLeaves == null || !storedLeaves.contains(leafIndex))
+				{
+					if (row == null)
+						row = new TIntArrayList(leaf.adjOffsets[v+1]-i);
+					row.add(leafIndex);
+				}
+			}
+			result.add(row == null ? nullList : row);
+		}
+		return result;
+	}
+	
 	private static void getFile(OEMM oemm, Node n, StringBuilder sb)
 	{
 		if (n.parent == null) {
@@ -917,8 +968,9 @@ public class Storage
 		getFile(oemm,n, sb);
 		n.file = sb.toString();
 		Node [] newLeaves = new Node[oemm.leaves.length + 1];
-		System.arraycopy(oemm.leaves, 0, newLeaves, 0, oemm.leaves.length + 1);
+		System.arraycopy(oemm.leaves, 0, newLeaves, 0, oemm.leaves.length);
 		newLeaves[n.leafIndex] = n;
+		oemm.leaves = newLeaves;
 		return n;
 	}
 
@@ -109,8 +109,7 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 			PrimitiveFileReaderFactory pfrf = new PrimitiveFileReaderFactory();
 			IntFileReader ifrG = pfrf.getIntReader(getBinFile(groupsFilename));
 			int[] toReturn = new int[numberOfTrias];
-			for (int i = 0; i < numberOfTrias; i++)
-				toReturn[i] = ifrG.get(triasOffset+i);
+			ifrG.get(triasOffset, toReturn);
 			ifrG.close();
 			return toReturn;
 		}
@@ -149,8 +148,7 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 			PrimitiveFileReaderFactory pfrf = new PrimitiveFileReaderFactory();
 			IntFileReader ifrG = pfrf.getIntReader(getBinFile("bgroups.bin"));
 			int[] toReturn = new int[numberOfBeams];
-			for (int i = 0; i < numberOfBeams; i++)
-				toReturn[i] = ifrG.get(beamsOffset+i);
+			ifrG.get(beamsOffset, toReturn);
 			ifrG.close();
 			return toReturn;
 		}
@@ -161,8 +159,7 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 			PrimitiveFileReaderFactory pfrf = new PrimitiveFileReaderFactory();
 			IntFileReader ifrG = pfrf.getIntReader(getBinFile("nodeGroups.bin"));
 			int[] toReturn = new int[numberOfNodes];
-			for (int i = 0; i < numberOfNodes; i++)
-				toReturn[i] = ifrG.get(nodesOffset+i);
+			ifrG.get(nodesOffset, toReturn);
 			ifrG.close();
 			return toReturn;
 		}
@@ -242,8 +239,13 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 
 		public DoubleFileReader getNodes() throws IOException
 		{
-			File f = getBinFile("nodes"+dim()+"d.bin");
-			return new PrimitiveFileReaderFactory().getDoubleReader(f);
+			return getNodes(new PrimitiveFileReaderFactory());
+		}
+
+		public DoubleFileReader getNodes(PrimitiveFileReaderFactory pfrf)
+			throws IOException
+		{
+			return pfrf.getDoubleReader(getBinFile("nodes"+dim()+"d.bin"));
 		}
 
 		public DoubleFileReader getNormals() throws IOException
@@ -260,8 +262,13 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 		
 		public IntFileReader getTriangles() throws IOException
 		{
-			return new PrimitiveFileReaderFactory().getIntReader(
-				getBinFile("triangles"+dim()+"d.bin"));
+			return getTriangles(new PrimitiveFileReaderFactory());
+		}
+
+		public IntFileReader getTriangles(PrimitiveFileReaderFactory pfrf)
+			throws IOException
+		{
+			return pfrf.getIntReader(getBinFile("triangles"+dim()+"d.bin"));
 		}
 		
 		public float[] readNodes(int[] nodesID) throws IOException
@@ -0,0 +1,116 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Read lines from a <code>BufferedReader</code>, for streams which
+ * cannot be memory-mapped.
+ */
+final class BufferedLineReader implements LineReader
+{
+	private final BufferedReader in;
+	private String line = "";
+	private int tokenPos;
+
+	BufferedLineReader(BufferedReader in)
+	{
+		this.in = in;
+	}
+
+	public boolean nextLine() throws IOException
+	{
+		String l = in.readLine();
+		if (l == null)
+			return false;
+		line = l;
+		tokenPos = 0;
+		return true;
+	}
+
+	public void readLine() throws IOException
+	{
+		if (!nextLine())
+			throw new EOFException();
+	}
+
+	public boolean hasMoreTokens()
+	{
+		while (tokenPos < line.length() && isBlank(line.charAt(tokenPos)))
+			tokenPos++;
+		return tokenPos < line.length();
+	}
+
+	private static boolean isBlank(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+	}
+
+	private String nextToken()
+	{
+		if (!hasMoreTokens())
+			throw new NoSuchElementException();
+		int start = tokenPos;
+		while (tokenPos < line.length() && !isBlank(line.charAt(tokenPos)))
+			tokenPos++;
+		return line.substring(start, tokenPos);
+	}
+
+	public void skipToken()
+	{
+		nextToken();
+	}
+
+	public int nextInt()
+	{
+		return Integer.parseInt(nextToken());
+	}
+
+	public double nextDouble()
+	{
+		return Double.parseDouble(nextToken().replace('D', 'E').replace('d', 'e'));
+	}
+
+	public int firstNonBlank()
+	{
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			if (!isBlank(c))
+				return c;
+		}
+		return -1;
+	}
+
+	public boolean lineEquals(String s)
+	{
+		return line.trim().equals(s);
+	}
+
+	public String getLine()
+	{
+		return line;
+	}
+}
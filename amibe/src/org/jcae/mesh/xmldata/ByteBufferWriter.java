@@ -0,0 +1,468 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2011, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.text.NumberFormat;
+
+/**
+ * Buffered output of text and binary values into a <code>ByteBuffer</code>.
+ * Numbers are formatted without creating <code>String</code> or
+ * <code>StringBuffer</code> instances, except for doubles which are
+ * formatted from <code>Double.toString</code> digits, unless they have
+ * at most 15 significant digits in UNV format.
+ * If a channel is given to constructor, buffer is written into this channel
+ * when it is full, otherwise buffer grows as needed and its content can
+ * be appended to another writer by {@link #write(ByteBufferWriter)}.
+ * Binary values are written in little endian order.
+ * Text is written with platform default encoding and line separator, so
+ * that output is the same as with a <code>PrintStream</code>.
+ */
+public final class ByteBufferWriter
+{
+	private static final byte [] CR = System.getProperty("line.separator").getBytes();
+	private static final byte [] SPACES = "                         ".getBytes();
+	private static final int [] POWERS_OF_10 = {
+		1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000
+	};
+	// Powers of ten which are exactly represented by a double
+	private static final double [] DOUBLE_POWERS_OF_10 = {
+		1.0e0, 1.0e1, 1.0e2, 1.0e3, 1.0e4, 1.0e5, 1.0e6, 1.0e7, 1.0e8,
+		1.0e9, 1.0e10, 1.0e11, 1.0e12, 1.0e13, 1.0e14, 1.0e15, 1.0e16,
+		1.0e17, 1.0e18, 1.0e19, 1.0e20, 1.0e21, 1.0e22
+	};
+	private static final double LOG10_2 = Math.log10(2.0);
+
+	private final WritableByteChannel channel;
+	private ByteBuffer bb;
+	// Work arrays
+	private final char [] chars = new char[32];
+	private final byte [] digits = new byte[32];
+	private NumberFormat formatD25_16;
+	// Decimal exponent computed by shortDigits and toStringDigits
+	private int decimalExponent;
+
+	/**
+	 * Creates a buffer bound to a channel.
+	 *
+	 * @param channel  channel where buffer is written when it is full
+	 * @param capacity  buffer size
+	 */
+	public ByteBufferWriter(WritableByteChannel channel, int capacity)
+	{
+		this.channel = channel;
+		bb = ByteBuffer.allocate(capacity);
+		bb.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Creates a buffer which grows as needed.
+	 *
+	 * @param capacity  initial buffer size
+	 */
+	public ByteBufferWriter(int capacity)
+	{
+		this(null, capacity);
+	}
+
+	/**
+	 * Returns the number of bytes currently stored into buffer.
+	 */
+	public int size()
+	{
+		return bb.position();
+	}
+
+	private void ensure(int n) throws IOException
+	{
+		if (bb.remaining() >= n)
+			return;
+		if (channel != null)
+		{
+			flush();
+			if (bb.remaining() >= n)
+				return;
+		}
+		ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(2 * bb.capacity(), bb.position() + n));
+		newBuffer.order(ByteOrder.LITTLE_ENDIAN);
+		// Buffer cast is needed with Java 9 (see https://jira.mongodb.org/browse/JAVA-2559)
+		((Buffer) bb).flip();
+		newBuffer.put(bb);
+		bb = newBuffer;
+	}
+
+	/**
+	 * Writes buffer content into channel.
+	 */
+	public void flush() throws IOException
+	{
+		if (channel == null)
+			return;
+		// Buffer cast is needed with Java 9 (see https://jira.mongodb.org/browse/JAVA-2559)
+		Buffer b = bb;
+		b.flip();
+		while (bb.hasRemaining())
+			channel.write(bb);
+		b.clear();
+	}
+
+	/**
+	 * Appends content of another buffer.
+	 */
+	public void write(ByteBufferWriter that) throws IOException
+	{
+		// Buffer cast is needed with Java 9 (see https://jira.mongodb.org/browse/JAVA-2559)
+		Buffer b = that.bb;
+		b.flip();
+		if (channel != null && that.bb.remaining() > bb.remaining())
+		{
+			flush();
+			while (that.bb.hasRemaining())
+				channel.write(that.bb);
+		}
+		else
+		{
+			ensure(that.bb.remaining());
+			bb.put(that.bb);
+		}
+		b.clear();
+	}
+
+	public ByteBufferWriter put(byte [] array) throws IOException
+	{
+		ensure(array.length);
+		bb.put(array);
+		return this;
+	}
+
+	public ByteBufferWriter put(byte [] array, int offset, int length) throws IOException
+	{
+		ensure(length);
+		bb.put(array, offset, length);
+		return this;
+	}
+
+	public ByteBufferWriter put(char c) throws IOException
+	{
+		if (c >= 128)
+			return put(String.valueOf(c));
+		ensure(1);
+		bb.put((byte) c);
+		return this;
+	}
+
+	public ByteBufferWriter put(String s) throws IOException
+	{
+		int len = s.length();
+		for (int i = 0; i < len; i++)
+		{
+			if (s.charAt(i) >= 128)
+				return put(s.getBytes());
+		}
+		ensure(len);
+		for (int i = 0; i < len; i++)
+			bb.put((byte) s.charAt(i));
+		return this;
+	}
+
+	public ByteBufferWriter newLine() throws IOException
+	{
+		return put(CR);
+	}
+
+	/**
+	 * Writes spaces.
+	 */
+	public ByteBufferWriter putSpaces(int n) throws IOException
+	{
+		ensure(n);
+		while (n > SPACES.length)
+		{
+			bb.put(SPACES);
+			n -= SPACES.length;
+		}
+		bb.put(SPACES, 0, n);
+		return this;
+	}
+
+	private static int stringSize(int v)
+	{
+		// v is positive
+		for (int i = 1; i < POWERS_OF_10.length; i++)
+			if (v < POWERS_OF_10[i])
+				return i;
+		return POWERS_OF_10.length;
+	}
+
+	/**
+	 * Writes an integer, as <code>Integer.toString</code> does.
+	 */
+	public ByteBufferWriter putInt(int v) throws IOException
+	{
+		return putInt(v, 0);
+	}
+
+	/**
+	 * Writes an integer right-aligned into a field.  If this integer
+	 * is larger than field width, it is written without padding.
+	 *
+	 * @param v  value
+	 * @param width  field width
+	 */
+	public ByteBufferWriter putInt(int v, int width) throws IOException
+	{
+		if (v == Integer.MIN_VALUE)
+		{
+			String s = Integer.toString(v);
+			if (width > s.length())
+				putSpaces(width - s.length());
+			return put(s);
+		}
+		boolean negative = v < 0;
+		if (negative)
+			v = -v;
+		int size = stringSize(v);
+		int len = size + (negative ? 1 : 0);
+		ensure(Math.max(len, width));
+		for (int i = len; i < width; i++)
+			bb.put((byte) ' ');
+		if (negative)
+			bb.put((byte) '-');
+		int pos = bb.position() + size;
+		for (int i = 1; i <= size; i++)
+		{
+			bb.put(pos - i, (byte) ('0' + v % 10));
+			v /= 10;
+		}
+		// Buffer cast is needed with Java 9 (see https://jira.mongodb.org/browse/JAVA-2559)
+		((Buffer) bb).position(pos);
+		return this;
+	}
+
+	/**
+	 * Writes a double, as <code>Double.toString</code> does.
+	 */
+	public ByteBufferWriter putDouble(double v) throws IOException
+	{
+		String s = Double.toString(v);
+		int len = s.length();
+		s.getChars(0, len, chars, 0);
+		ensure(len);
+		for (int i = 0; i < len; i++)
+			bb.put((byte) chars[i]);
+		return this;
+	}
+
+	/**
+	 * Writes a double in UNV format D25.16, this is the same as
+	 * {@link MeshExporter.FormatD25_16}: right-aligned into 25 characters,
+	 * 17 significant digits and an exponent with a <code>D</code> letter,
+	 * like <code>  -1.2345678901234567D+00</code>.
+	 */
+	public ByteBufferWriter putD25_16(double v) throws IOException
+	{
+		if (Double.isNaN(v) || Double.isInfinite(v))
+			return putD25_16Slow(v);
+		boolean negative = v < 0.0 || (v == 0.0 && 1.0 / v < 0.0);
+		int nd = 0;
+		int exponent = 0;
+		if (v != 0.0)
+		{
+			// Significant digits are the ones of the shortest
+			// representation, like DecimalFormat does.
+			nd = shortDigits(Math.abs(v));
+			if (nd == 0)
+				nd = toStringDigits(Math.abs(v));
+			if (nd < 0)
+				return putD25_16Slow(v);
+			exponent = decimalExponent;
+		}
+		int absExponent = Math.abs(exponent);
+		// 1 digit, a dot, 16 digits and exponent
+		int size = 18 + (negative ? 1 : 0);
+		if (absExponent < 100)
+			size += 4;
+		else
+			size += 1 + (exponent < 0 ? 1 : 0) + stringSize(absExponent);
+		ensure(Math.max(25, size));
+		for (int k = size; k < 25; k++)
+			bb.put((byte) ' ');
+		if (negative)
+			bb.put((byte) '-');
+		bb.put(nd > 0 ? digits[0] : (byte) '0');
+		bb.put((byte) '.');
+		for (int k = 1; k <= 16; k++)
+			bb.put(k < nd ? digits[k] : (byte) '0');
+		if (absExponent < 100)
+		{
+			bb.put((byte) 'D');
+			bb.put(exponent < 0 ? (byte) '-' : (byte) '+');
+			bb.put((byte) ('0' + absExponent / 10));
+			bb.put((byte) ('0' + absExponent % 10));
+		}
+		else
+		{
+			bb.put((byte) 'E');
+			if (exponent < 0)
+				bb.put((byte) '-');
+			putInt(absExponent);
+		}
+		return this;
+	}
+
+	/**
+	 * Stores into <code>digits</code> the shortest decimal representation
+	 * of a positive number if it has at most 15 significant digits.  Such
+	 * a decimal <code>m*10^-p</code> is converted back into the double
+	 * <code>m/10^p</code> with a single rounding, because both operands
+	 * are exact, so it is found by rounding <code>a*10^p</code> to a 15
+	 * digits integer and checking that it gives <code>a</code> back.
+	 * With 15 digits, there is at most one such integer.
+	 * Decimal exponent is stored into <code>decimalExponent</code>.
+	 * Numbers larger than 2^53 are skipped, DecimalFormat does not always
+	 * return their shortest representation.
+	 *
+	 * @return number of digits, or 0 if the shortest representation has
+	 *   more than 15 digits or exponent is out of range
+	 */
+	private int shortDigits(double a)
+	{
+		if (a >= 9007199254740992.0)
+			return 0;
+		// Decimal exponent is either e or e+1
+		int e = (int) Math.floor(Math.getExponent(a) * LOG10_2);
+		int p = 14 - e;
+		if (p < -21 || p > 22)
+			return 0;
+		double m = scale(a, p);
+		if (m >= 1.0e15)
+		{
+			p--;
+			m = scale(a, p);
+		}
+		if (m >= 1.0e15 || m < 1.0e14 ||
+			(p >= 0 ? m / DOUBLE_POWERS_OF_10[p] : m * DOUBLE_POWERS_OF_10[-p]) != a)
+			return 0;
+		// m has 15 digits, they are computed with int arithmetic
+		long l = (long) m;
+		int hi = (int) (l / 100000000L);
+		int lo = (int) (l - 100000000L * hi);
+		for (int k = 14; k >= 7; k--)
+		{
+			digits[k] = (byte) ('0' + lo % 10);
+			lo /= 10;
+		}
+		for (int k = 6; k >= 0; k--)
+		{
+			digits[k] = (byte) ('0' + hi % 10);
+			hi /= 10;
+		}
+		int nd = 15;
+		while (digits[nd - 1] == '0')
+			nd--;
+		decimalExponent = 14 - p;
+		return nd;
+	}
+
+	private static double scale(double a, int p)
+	{
+		if (p >= 0)
+			return Math.rint(a * DOUBLE_POWERS_OF_10[p]);
+		return Math.rint(a / DOUBLE_POWERS_OF_10[-p]);
+	}
+
+	/**
+	 * Stores into <code>digits</code> significant digits given by
+	 * <code>Double.toString</code>, and decimal exponent into
+	 * <code>decimalExponent</code>.
+	 *
+	 * @return number of digits, or -1 if they have to be rounded
+	 */
+	private int toStringDigits(double a)
+	{
+		String s = Double.toString(a);
+		int len = s.length();
+		s.getChars(0, len, chars, 0);
+		int nd = 0;
+		int intDigits = -1;
+		int leadingZeros = 0;
+		int i = 0;
+		for (; i < len && chars[i] != 'E'; i++)
+		{
+			char c = chars[i];
+			if (c == '.')
+			{
+				intDigits = nd + leadingZeros;
+				continue;
+			}
+			if (c == '0' && nd == 0)
+			{
+				leadingZeros++;
+				continue;
+			}
+			digits[nd++] = (byte) c;
+		}
+		// Double.toString may return more digits than needed, they
+		// have to be rounded
+		if (nd > 17)
+			return -1;
+		if (intDigits < 0)
+			intDigits = nd + leadingZeros;
+		int exponent = 0;
+		if (i < len)
+			exponent = Integer.parseInt(s.substring(i + 1));
+		decimalExponent = exponent + intDigits - leadingZeros - 1;
+		return nd;
+	}
+
+	private ByteBufferWriter putD25_16Slow(double v) throws IOException
+	{
+		// DecimalFormat is not thread-safe
+		if (formatD25_16 == null)
+			formatD25_16 = new MeshExporter.FormatD25_16();
+		return put(formatD25_16.format(v));
+	}
+
+	public ByteBufferWriter putBinaryInt(int v) throws IOException
+	{
+		ensure(4);
+		bb.putInt(v);
+		return this;
+	}
+
+	public ByteBufferWriter putBinaryShort(short v) throws IOException
+	{
+		ensure(2);
+		bb.putShort(v);
+		return this;
+	}
+
+	public ByteBufferWriter putBinaryFloat(float v) throws IOException
+	{
+		ensure(4);
+		bb.putFloat(v);
+		return this;
+	}
+}
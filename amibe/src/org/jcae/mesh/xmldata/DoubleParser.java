@@ -0,0 +1,269 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2011, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Parse ASCII numbers stored into a <code>ByteBuffer</code> without
+ * creating objects.  Doubles are correctly rounded, the result is the
+ * same as with <code>Double.parseDouble</code>; Fortran exponents like
+ * <code>1.0D+00</code> are also accepted.
+ * Numbers with up to 19 significant digits are converted with the
+ * Clinger fast path or with the Eisel-Lemire algorithm, see
+ * <a href="https://arxiv.org/abs/2101.11408">Number Parsing at a Gigabyte
+ * per Second</a>.  Other numbers are parsed by <code>Double.parseDouble</code>.
+ */
+public final class DoubleParser
+{
+	private static final double [] POWERS_OF_10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final int SMALLEST_POWER_OF_TEN = -342;
+	private static final int LARGEST_POWER_OF_TEN = 308;
+	/**
+	 * 128-bit approximations of powers of five, from 5^-342 to 5^308.
+	 * Most significant bit is set, high and low words are interleaved.
+	 */
+	private static final long [] POWERS_OF_FIVE = computePowersOfFive();
+
+	private DoubleParser()
+	{
+	}
+
+	private static long [] computePowersOfFive()
+	{
+		long [] ret = new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+		BigInteger five = BigInteger.valueOf(5L);
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		int index = 0;
+		for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++)
+		{
+			BigInteger c;
+			if (q < 0)
+			{
+				BigInteger power5 = five.pow(-q);
+				int z = power5.bitLength();
+				int b = (q >= -27 ? z + 127 : 2 * z + 128);
+				c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+			}
+			else
+			{
+				c = five.pow(q);
+				if (c.bitLength() < 128)
+					c = c.shiftLeft(128 - c.bitLength());
+			}
+			if (c.bitLength() > 128)
+				c = c.shiftRight(c.bitLength() - 128);
+			ret[index++] = c.shiftRight(64).longValue();
+			ret[index++] = c.and(mask).longValue();
+		}
+		return ret;
+	}
+
+	/**
+	 * Return the high 64 bits of the unsigned 128-bit product of
+	 * <code>x</code> and <code>y</code>.
+	 */
+	private static long unsignedMultiplyHigh(long x, long y)
+	{
+		long x0 = x & 0xFFFFFFFFL;
+		long x1 = x >>> 32;
+		long y0 = y & 0xFFFFFFFFL;
+		long y1 = y >>> 32;
+		long p01 = x0 * y1;
+		long p10 = x1 * y0;
+		long middle = p10 + ((x0 * y0) >>> 32) + (p01 & 0xFFFFFFFFL);
+		return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+	}
+
+	private static boolean unsignedLess(long a, long b)
+	{
+		return (a + Long.MIN_VALUE) < (b + Long.MIN_VALUE);
+	}
+
+	private static boolean isDigit(byte c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Parse a double.
+	 *
+	 * @param bb  buffer
+	 * @param start  index of the first character
+	 * @param end  index after the last character
+	 * @return the parsed value
+	 * @throws NumberFormatException if this is not a valid number
+	 */
+	public static double parse(ByteBuffer bb, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+		if (i < end && (bb.get(i) == '-' || bb.get(i) == '+'))
+		{
+			negative = bb.get(i) == '-';
+			i++;
+		}
+		long w = 0L;
+		int nd = 0;
+		int q = 0;
+		boolean anyDigit = false;
+		boolean dot = false;
+		for (; i < end; i++)
+		{
+			byte c = bb.get(i);
+			if (isDigit(c))
+			{
+				anyDigit = true;
+				if (nd == 0 && c == '0')
+				{
+					// Leading zero
+					if (dot)
+						q--;
+					continue;
+				}
+				if (nd == 19)
+					return parseSlow(bb, start, end);
+				w = 10L * w + (c - '0');
+				nd++;
+				if (dot)
+					q--;
+			}
+			else if (c == '.' && !dot)
+				dot = true;
+			else
+				break;
+		}
+		if (!anyDigit)
+			return parseSlow(bb, start, end);
+		if (i < end)
+		{
+			byte c = bb.get(i);
+			if (c != 'E' && c != 'e' && c != 'D' && c != 'd')
+				return parseSlow(bb, start, end);
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (bb.get(i) == '-' || bb.get(i) == '+'))
+			{
+				negativeExponent = bb.get(i) == '-';
+				i++;
+			}
+			if (i >= end)
+				return parseSlow(bb, start, end);
+			int exponent = 0;
+			for (; i < end; i++)
+			{
+				c = bb.get(i);
+				if (!isDigit(c))
+					return parseSlow(bb, start, end);
+				if (exponent < 100000)
+					exponent = 10 * exponent + (c - '0');
+			}
+			q += (negativeExponent ? -exponent : exponent);
+		}
+		double ret;
+		if (nd == 0)
+			ret = 0.0;
+		else if (w >= 0L && w <= (1L << 53) && q >= -22 && q <= 22)
+		{
+			// Clinger fast path, w and 10^|q| are exact
+			if (q < 0)
+				ret = ((double) w) / POWERS_OF_10[-q];
+			else
+				ret = ((double) w) * POWERS_OF_10[q];
+		}
+		else
+		{
+			long bits = eiselLemire(w, q);
+			if (bits < 0L)
+				return parseSlow(bb, start, end);
+			ret = Double.longBitsToDouble(bits);
+		}
+		return negative ? -ret : ret;
+	}
+
+	/**
+	 * Compute w * 10^q.
+	 * @return bits of the result, or -1 if it cannot be computed
+	 */
+	private static long eiselLemire(long w, int q)
+	{
+		if (q < SMALLEST_POWER_OF_TEN)
+			return 0L;
+		if (q > LARGEST_POWER_OF_TEN)
+			return 0x7FFL << 52;
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+		long hi = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+		long lo = w * POWERS_OF_FIVE[index];
+		if ((hi & 0x1FFL) == 0x1FFL)
+		{
+			// Product is not accurate enough, use next 64 bits
+			long hi2 = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+			lo += hi2;
+			if (unsignedLess(lo, hi2))
+				hi++;
+		}
+		int upperBit = (int) (hi >>> 63);
+		int shift = upperBit + 9;
+		long mantissa = hi >>> shift;
+		int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+		if (power2 <= 0)
+		{
+			// Subnormal numbers
+			return -1L;
+		}
+		if ((lo == 0L || lo == 1L) && q >= -4 && q <= 23 && (mantissa & 3L) == 1L)
+		{
+			// Round to even
+			if ((mantissa << shift) == hi)
+				mantissa &= ~1L;
+		}
+		mantissa += (mantissa & 1L);
+		mantissa >>>= 1;
+		if (mantissa >= (2L << 52))
+		{
+			mantissa = 1L << 52;
+			power2++;
+		}
+		mantissa &= ~(1L << 52);
+		if (power2 >= 0x7FF)
+			return 0x7FFL << 52;
+		return mantissa | (((long) power2) << 52);
+	}
+
+	private static double parseSlow(ByteBuffer bb, int start, int end)
+	{
+		char [] chars = new char[end - start];
+		for (int i = start; i < end; i++)
+		{
+			char c = (char) (bb.get(i) & 0xFF);
+			if (c == 'D' || c == 'd')
+				c = 'E';
+			chars[i - start] = c;
+		}
+		return Double.parseDouble(new String(chars));
+	}
+}
@@ -25,6 +25,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.Buffer;
 import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -82,7 +83,9 @@ public class IntFileReaderByMmap implements IntFileReader
 
 	public final int get(int index, int[] dst, int offset, int len) throws IOException
 	{
-		fc.position(index * 4L);
+		// Buffer cast to support Java 9 (see https://jira.mongodb.org/browse/JAVA-2559)
+		Buffer tbb = tb;
+		tbb.position(index);
 		return get(dst, offset, len);
 	}
 
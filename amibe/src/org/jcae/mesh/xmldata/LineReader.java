@@ -0,0 +1,72 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.IOException;
+
+/**
+ * Lines of an ASCII file, read one after the other.  Tokens of the
+ * current line are separated by blanks, and numbers may have Fortran
+ * exponents like <code>1.0D+00</code>.
+ */
+interface LineReader
+{
+	/**
+	 * Move to next line.
+	 * @return <code>false</code> if end of file has been reached.
+	 */
+	boolean nextLine() throws IOException;
+
+	/**
+	 * Move to next line.
+	 * @throws java.io.EOFException if end of file has been reached.
+	 */
+	void readLine() throws IOException;
+
+	/**
+	 * Move to the next token of current line.
+	 * @return <code>false</code> if there is no more token.
+	 */
+	boolean hasMoreTokens();
+
+	void skipToken();
+
+	int nextInt();
+
+	double nextDouble();
+
+	/**
+	 * Return first non blank character of current line, or -1 if this
+	 * line is blank.
+	 */
+	int firstNonBlank();
+
+	/**
+	 * Tell whether current line, without leading and trailing blanks,
+	 * is equal to <code>s</code>.
+	 */
+	boolean lineEquals(String s);
+
+	/**
+	 * Return current line.
+	 */
+	String getLine();
+}
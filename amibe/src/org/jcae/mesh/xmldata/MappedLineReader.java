@@ -0,0 +1,255 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2011, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read lines of an ASCII file region by mapping it into memory.  Files
+ * larger than 2GB are mapped by windows.  Numbers are parsed from the
+ * current line without creating objects, lines are converted into
+ * <code>String</code> only when needed.  Several readers can share the
+ * same channel, each reader must be used by a single thread.
+ */
+final class MappedLineReader implements LineReader
+{
+	static final int WINDOW_SIZE = 1 << 28;
+
+	private final FileChannel channel;
+	private final long end;
+	private final int windowSize;
+	private ByteBuffer bb;
+	// Absolute position of window
+	private long windowStart;
+	private int windowLimit;
+	// Bounds of current line and position of the next token,
+	// relative to window
+	private int lineStart, lineEnd, next, tokenPos;
+
+	/**
+	 * Constructor.
+	 * @param channel  file channel
+	 * @param start  position of the first line
+	 * @param end  end of region
+	 */
+	MappedLineReader(FileChannel channel, long start, long end) throws IOException
+	{
+		this(channel, start, end, WINDOW_SIZE);
+	}
+
+	MappedLineReader(FileChannel channel, long start, long end, int windowSize) throws IOException
+	{
+		this.channel = channel;
+		this.end = end;
+		this.windowSize = windowSize;
+		map(start);
+	}
+
+	private void map(long start) throws IOException
+	{
+		windowStart = start;
+		windowLimit = (int) Math.min(windowSize, end - start);
+		bb = channel.map(FileChannel.MapMode.READ_ONLY, start, windowLimit);
+		next = 0;
+		lineStart = lineEnd = tokenPos = 0;
+	}
+
+	/**
+	 * Return the absolute position of the current line.
+	 */
+	long getLineStart()
+	{
+		return windowStart + lineStart;
+	}
+
+	/**
+	 * Return the absolute position after the current line.
+	 */
+	long getPosition()
+	{
+		return windowStart + next;
+	}
+
+	/**
+	 * Move to next line.
+	 * @return <code>false</code> if end of region has been reached.
+	 */
+	public boolean nextLine() throws IOException
+	{
+		while (true)
+		{
+			int i = next;
+			while (i < windowLimit && bb.get(i) != '\n')
+				i++;
+			if (i < windowLimit || (windowStart + windowLimit == end && next < windowLimit))
+			{
+				lineStart = tokenPos = next;
+				next = (i < windowLimit ? i + 1 : i);
+				if (i > lineStart && bb.get(i - 1) == '\r')
+					i--;
+				lineEnd = i;
+				return true;
+			}
+			if (windowStart + next >= end)
+				return false;
+			if (next == 0)
+				throw new IOException("Line too long at offset "+windowStart);
+			map(windowStart + next);
+		}
+	}
+
+	/**
+	 * Move to next line.
+	 * @throws EOFException if end of region has been reached.
+	 */
+	public void readLine() throws IOException
+	{
+		if (!nextLine())
+			throw new EOFException();
+	}
+
+	/**
+	 * Move to the next token of current line.
+	 * @return <code>false</code> if there is no more token.
+	 */
+	public boolean hasMoreTokens()
+	{
+		while (tokenPos < lineEnd && isBlank(bb.get(tokenPos)))
+			tokenPos++;
+		return tokenPos < lineEnd;
+	}
+
+	private static boolean isBlank(byte c)
+	{
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+	}
+
+	private int tokenEnd()
+	{
+		if (!hasMoreTokens())
+			throw new java.util.NoSuchElementException();
+		int i = tokenPos;
+		while (i < lineEnd && !isBlank(bb.get(i)))
+			i++;
+		return i;
+	}
+
+	public void skipToken()
+	{
+		tokenPos = tokenEnd();
+	}
+
+	public int nextInt()
+	{
+		int e = tokenEnd();
+		int i = tokenPos;
+		boolean negative = false;
+		if (bb.get(i) == '-' || bb.get(i) == '+')
+		{
+			negative = bb.get(i) == '-';
+			i++;
+		}
+		if (i == e || e - i > 9)
+			return parseToken(e);
+		int ret = 0;
+		for (; i < e; i++)
+		{
+			int d = bb.get(i) - '0';
+			if (d < 0 || d > 9)
+				return parseToken(e);
+			ret = 10 * ret + d;
+		}
+		tokenPos = e;
+		return negative ? -ret : ret;
+	}
+
+	private int parseToken(int e)
+	{
+		int ret = Integer.parseInt(getToken(e));
+		tokenPos = e;
+		return ret;
+	}
+
+	public double nextDouble()
+	{
+		int e = tokenEnd();
+		double ret = DoubleParser.parse(bb, tokenPos, e);
+		tokenPos = e;
+		return ret;
+	}
+
+	private String getToken(int e)
+	{
+		char [] chars = new char[e - tokenPos];
+		for (int i = tokenPos; i < e; i++)
+			chars[i - tokenPos] = (char) (bb.get(i) & 0xFF);
+		return new String(chars);
+	}
+
+	/**
+	 * Return first non blank character of current line, or -1 if this
+	 * line is blank.
+	 */
+	public int firstNonBlank()
+	{
+		for (int i = lineStart; i < lineEnd; i++)
+		{
+			byte c = bb.get(i);
+			if (!isBlank(c))
+				return c & 0xFF;
+		}
+		return -1;
+	}
+
+	/**
+	 * Tell whether current line, without leading and trailing blanks,
+	 * is equal to <code>s</code>.
+	 */
+	public boolean lineEquals(String s)
+	{
+		int i = lineStart;
+		while (i < lineEnd && isBlank(bb.get(i)))
+			i++;
+		int len = s.length();
+		for (int k = 0; k < len; k++, i++)
+		{
+			if (i >= lineEnd || bb.get(i) != s.charAt(k))
+				return false;
+		}
+		while (i < lineEnd && isBlank(bb.get(i)))
+			i++;
+		return i == lineEnd;
+	}
+
+	/**
+	 * Return current line.
+	 */
+	public String getLine()
+	{
+		byte [] bytes = new byte[lineEnd - lineStart];
+		for (int i = lineStart; i < lineEnd; i++)
+			bytes[i - lineStart] = bb.get(i);
+		return new String(bytes);
+	}
+}
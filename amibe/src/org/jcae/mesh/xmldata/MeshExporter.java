@@ -24,11 +24,15 @@ import gnu.trove.set.hash.TIntHashSet;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TIntIntHashMap;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.DataOutputStream;
 import java.io.BufferedOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.text.FieldPosition;
 import java.text.ParsePosition;
 import java.text.DecimalFormatSymbols;
@@ -36,7 +40,13 @@ import java.text.NumberFormat;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.zip.GZIPOutputStream;
 import javax.xml.parsers.ParserConfigurationException;
@@ -176,12 +186,78 @@ abstract public class MeshExporter
 	private final static String CR=System.getProperty("line.separator");
 	private final static NumberFormat FORMAT_D25_16=new FormatD25_16();
 	private final static NumberFormat FORMAT_I10=new FormatI10();
-	
+	/** Size of output buffers */
+	private final static int BUFFER_SIZE=1 << 20;
+	/** Number of nodes or triangles which are formatted by the same task */
+	private final static int BLOCK_SIZE=1 << 12;
+
 	private AmibeReader.Dim3 amibeReader;
 	protected SubMesh subMesh;
 	protected List<Group> groupsToExport;
 	protected int[][] groups;
 	private int numberOfTriangles;
+	private int threads = 1;
+	/** Writer of PrintStream hooks, reused while target does not change */
+	private ByteBufferWriter printStreamWriter;
+	private PrintStream printStreamWriterTarget;
+	/** PrintStream of fallback hooks, reused while target does not change */
+	private PrintStream fallbackStream;
+	private ByteBufferWriter fallbackStreamTarget;
+
+	/**
+	 * Formatter of a block of nodes or triangles.
+	 * @see #writeBlocks
+	 */
+	protected interface BlockFormatter<T>
+	{
+		/**
+		 * Read data needed to format items from <code>start</code>
+		 * (inclusive) to <code>end</code> (exclusive).  This method is
+		 * called by the writing thread, blocks are read in order.
+		 */
+		T read(int start, int end) throws IOException;
+
+		/**
+		 * Format items from <code>start</code> (inclusive) to
+		 * <code>end</code> (exclusive).  This method may be called by
+		 * worker threads, it must only access <code>data</code>.
+		 */
+		void format(ByteBufferWriter out, T data, int start, int end) throws IOException;
+	}
+
+	/**
+	 * Iterate over exported triangles.  Triangles are numbered in the
+	 * order of exported groups.
+	 */
+	protected final class TriangleIterator
+	{
+		private int group = -1;
+		private int index = 0;
+
+		/**
+		 * Return amibe index of the next triangle.
+		 */
+		public int next()
+		{
+			while (group < 0 || index >= groups[group].length)
+			{
+				group++;
+				index = 0;
+			}
+			index++;
+			return groups[group][index - 1];
+		}
+
+		/**
+		 * Return the group of the last triangle returned by
+		 * {@link #next}.
+		 */
+		public int getGroup()
+		{
+			return group;
+		}
+	}
+
 	/**
 	 * @param directory The directory which contains 3d files
 	 * @param groupIds The list of ids of groups to convert
@@ -217,6 +293,74 @@ abstract public class MeshExporter
 		return subMesh;
 	}
 
+	/**
+	 * Set the number of threads used to format nodes and triangles.
+	 * Output is the same whatever the number of threads is.
+	 * @param threads  number of threads, if this number is not
+	 * positive, all available processors are used
+	 */
+	public final void setThreads(int threads)
+	{
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		this.threads = threads;
+	}
+
+	/**
+	 * Return a writer which writes into a <code>PrintStream</code>.
+	 * It must be flushed before <code>out</code> is used again.  Its
+	 * buffer is allocated once and reused by next calls with the same
+	 * stream, so that <code>PrintStream</code> hooks of an export share
+	 * the same buffer.
+	 */
+	final ByteBufferWriter getWriter(PrintStream out)
+	{
+		out.flush();
+		if (printStreamWriter == null || printStreamWriterTarget != out)
+		{
+			printStreamWriter = new ByteBufferWriter(Channels.newChannel(out), BUFFER_SIZE);
+			printStreamWriterTarget = out;
+		}
+		return printStreamWriter;
+	}
+
+	/**
+	 * Return a <code>PrintStream</code> which writes into a
+	 * {@link ByteBufferWriter}.  It is used by default
+	 * <code>ByteBufferWriter</code> hooks to call <code>PrintStream</code>
+	 * hooks of exporters which only implement them, and must be flushed
+	 * by {@link #flush(PrintStream)}.
+	 */
+	private PrintStream getPrintStream(final ByteBufferWriter out)
+	{
+		if (fallbackStream == null || fallbackStreamTarget != out)
+		{
+			fallbackStream = new PrintStream(new OutputStream() {
+				private final byte[] single = new byte[1];
+				@Override
+				public void write(int b) throws IOException
+				{
+					single[0] = (byte) b;
+					out.put(single, 0, 1);
+				}
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException
+				{
+					out.put(b, off, len);
+				}
+			});
+			fallbackStreamTarget = out;
+		}
+		return fallbackStream;
+	}
+
+	private static void flush(PrintStream out) throws IOException
+	{
+		// PrintStream does not throw exceptions
+		if (out.checkError())
+			throw new IOException("Cannot write mesh");
+	}
+
 	private void readGroups() throws IOException
 	{
 		numberOfTriangles=0;
@@ -246,6 +390,24 @@ abstract public class MeshExporter
 	}	
 	
 	public final void write(PrintStream out) throws ParserConfigurationException, SAXException, IOException
+	{
+		ByteBufferWriter bbw = getWriter(out);
+		write(bbw);
+		bbw.flush();
+		out.flush();
+	}
+
+	/**
+	 * Write mesh into a channel.  Channel is not closed.
+	 */
+	public final void write(WritableByteChannel channel) throws IOException
+	{
+		ByteBufferWriter out = new ByteBufferWriter(channel, BUFFER_SIZE);
+		write(out);
+		out.flush();
+	}
+
+	private void write(ByteBufferWriter out) throws IOException
 	{
 		readGroups();
 		int[] nodeIDs=readTriangles();
@@ -270,7 +432,87 @@ abstract public class MeshExporter
 		writeGroups(out, amibeTriaToUNVTria);
 		writeFinish(out);
 	}
-	
+
+	/**
+	 * Return the total number of triangles in exported groups.
+	 */
+	protected final int getNumberOfTriangles()
+	{
+		return numberOfTriangles;
+	}
+
+	/**
+	 * Format <code>n</code> items by blocks.  Blocks are read in order
+	 * by the calling thread, formatted by worker threads if several threads
+	 * are used, and written in order.
+	 * @see #setThreads
+	 */
+	protected final <T> void writeBlocks(ByteBufferWriter out, int n,
+		final BlockFormatter<T> formatter) throws IOException
+	{
+		if (threads <= 1 || n <= BLOCK_SIZE)
+		{
+			for (int start = 0; start < n; start += BLOCK_SIZE)
+			{
+				int end = Math.min(n, start + BLOCK_SIZE);
+				formatter.format(out, formatter.read(start, end), start, end);
+			}
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// Number of blocks in memory is bounded
+		LinkedList<Future<ByteBufferWriter>> pending = new LinkedList<Future<ByteBufferWriter>>();
+		try
+		{
+			for (int s = 0; s < n; s += BLOCK_SIZE)
+			{
+				final int start = s;
+				final int end = Math.min(n, start + BLOCK_SIZE);
+				final T data = formatter.read(start, end);
+				pending.add(pool.submit(new Callable<ByteBufferWriter>() {
+					public ByteBufferWriter call() throws IOException
+					{
+						ByteBufferWriter block = new ByteBufferWriter(BLOCK_SIZE * 64);
+						formatter.format(block, data, start, end);
+						return block;
+					}
+				}));
+				if (pending.size() > 2 * threads)
+					out.write(getBlock(pending.removeFirst()));
+			}
+			while (!pending.isEmpty())
+				out.write(getBlock(pending.removeFirst()));
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	private static ByteBufferWriter getBlock(Future<ByteBufferWriter> f) throws IOException
+	{
+		try
+		{
+			return f.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException ex)
+		{
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
 	/**
 	 * @param fileName The UNV filename. If the name ends with ".gz" it will
 	 * be zlib compressed.
@@ -284,32 +526,19 @@ abstract public class MeshExporter
 		try
 		{
 			FileOutputStream fos=new FileOutputStream(fileName);
-			BufferedOutputStream bos=new BufferedOutputStream(fos);
-			PrintStream pstream;
-
+			WritableByteChannel channel;
 			if(fileName.endsWith(".gz"))
-				pstream=new PrintStream(new GZIPOutputStream(bos));
+				channel=Channels.newChannel(new GZIPOutputStream(fos, BUFFER_SIZE));
 			else
-				pstream=new PrintStream(bos);
-
-			write(pstream);
-			pstream.close();
+				channel=fos.getChannel();
+			write(channel);
+			channel.close();
 		}
 		catch(IOException e)
 		{
 			e.printStackTrace();
 			throw new RuntimeException(e);
 		}
-		catch (ParserConfigurationException e)
-		{
-			e.printStackTrace();
-			throw new RuntimeException(e);
-		}
-		catch (SAXException e)
-		{
-			e.printStackTrace();
-			throw new RuntimeException(e);
-		}
 	}
 	
 	protected abstract void writeNodes(PrintStream out, int[] nodesID,
@@ -343,7 +572,81 @@ abstract public class MeshExporter
 	{
 		//To be implemented by instanciating class
 	}
-	
+
+	/*
+	 * Hooks with a ByteBufferWriter argument are called by write methods.
+	 * By default they call the PrintStream hooks, exporters override them
+	 * to format directly into the buffer.
+	 */
+
+	protected void writeNodes(ByteBufferWriter out, int[] nodesID,
+		TIntIntHashMap amibeToUNV) throws IOException
+	{
+		PrintStream ps = getPrintStream(out);
+		writeNodes(ps, nodesID, amibeToUNV);
+		flush(ps);
+	}
+
+	protected void writeTriangles(ByteBufferWriter out, int[] triangles,
+		TIntIntHashMap amibeNodeToUNVNode,
+		TIntIntHashMap amibeTriaToUNVTria) throws IOException
+	{
+		PrintStream ps = getPrintStream(out);
+		writeTriangles(ps, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria);
+		flush(ps);
+	}
+
+	void writeInit(ByteBufferWriter out)
+		throws IOException
+	{
+		PrintStream ps = getPrintStream(out);
+		writeInit(ps);
+		flush(ps);
+	}
+
+	void writeFinish(ByteBufferWriter out)
+		throws IOException
+	{
+		PrintStream ps = getPrintStream(out);
+		writeFinish(ps);
+		flush(ps);
+	}
+
+	void writeNormals(ByteBufferWriter out, int[] triangles,
+		TIntIntHashMap amibeNodeToUNVNode,
+		TIntIntHashMap amibeTriaToUNVTria) throws IOException
+	{
+		PrintStream ps = getPrintStream(out);
+		writeNormals(ps, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria);
+		flush(ps);
+	}
+
+	void writeGroups(ByteBufferWriter out,
+		TIntIntHashMap amibeTriaToUNVTria) throws IOException
+	{
+		PrintStream ps = getPrintStream(out);
+		writeGroups(ps, amibeTriaToUNVTria);
+		flush(ps);
+	}
+
+	/**
+	 * Read coordinates of nodes.
+	 * @param dfrN  node reader
+	 * @param nodesID  node indices
+	 * @param start  first node
+	 * @param end  last node (exclusive)
+	 * @return coordinates of nodes from <code>nodesID[start]</code> to
+	 * <code>nodesID[end-1]</code>
+	 */
+	static double[] readCoordinates(DoubleFileReader dfrN, int[] nodesID,
+		int start, int end) throws IOException
+	{
+		double[] xyz = new double[3*(end - start)];
+		for(int i = start; i < end; i++)
+			dfrN.get(3*nodesID[i], xyz, 3*(i - start), 3);
+		return xyz;
+	}
+
 	public static class UNV extends MeshExporter
 	{
 		public static enum Unit
@@ -375,6 +678,13 @@ abstract public class MeshExporter
 			out.println(FORMAT_D25_16.format(x)+FORMAT_D25_16.format(y)+FORMAT_D25_16.format(z));
 		}
 
+		public static void writeSingleNode(ByteBufferWriter out, int count, double x, double y, double z)
+			throws IOException
+		{
+			out.putInt(count, 10).put("         1         1         1").newLine();
+			out.putD25_16(x).putD25_16(y).putD25_16(z).newLine();
+		}
+
 		// We use our own convention for elements:
 		//      2: linear beam
 		//      3: linear triangle
@@ -417,6 +727,14 @@ abstract public class MeshExporter
 			out.println(FORMAT_I10.format(n0)+FORMAT_I10.format(n1)+FORMAT_I10.format(n2));
 		}
 
+		public static void writeSingleTriangle(ByteBufferWriter out, int count, int n0, int n1, int n2, int physical)
+			throws IOException
+		{
+			out.putInt(count, 10).put("        91").putInt(physical, 10)
+				.put("         1         1         3").newLine();
+			out.putInt(n0, 10).putInt(n1, 10).putInt(n2, 10).newLine();
+		}
+
 		/** Write a linear, quad or cubic triangle */
 		public static void writeHOTria(PrintStream out, int count, int[] nodes, int physical) {
 			// element label
@@ -452,110 +770,163 @@ abstract public class MeshExporter
 		@Override
 		public final void writeInit(PrintStream arg0)
 			throws IOException
+		{
+			ByteBufferWriter out = getWriter(arg0);
+			writeInit(out);
+			out.flush();
+		}
+
+		@Override
+		final void writeInit(ByteBufferWriter out)
+			throws IOException
 		{
 			if(unit.equals(Unit.Unknown))
 				return;
 
-			arg0.println("    -1");
-			arg0.println("   164");
+			out.put("    -1").newLine();
+			out.put("   164").newLine();
 			if(unit.equals(Unit.MM))
 			{
-				arg0.println("         5mm (milli-newton)            2");
-				arg0.println("  1.00000000000000000D+03  1.00000000000000000D+03  1.00000000000000000D+00");
+				out.put("         5mm (milli-newton)            2").newLine();
+				out.put("  1.00000000000000000D+03  1.00000000000000000D+03  1.00000000000000000D+00").newLine();
 			}
 			else
 			{
-				arg0.println("         1Meter (newton)               2");
-				arg0.println("  1.00000000000000000D+00  1.00000000000000000D+00  1.00000000000000000D+00");				
+				out.put("         1Meter (newton)               2").newLine();
+				out.put("  1.00000000000000000D+00  1.00000000000000000D+00  1.00000000000000000D+00").newLine();
 			}
-			arg0.println("  2.73149999999999977D+02");
-			arg0.println("    -1");
-		}	
-		
+			out.put("  2.73149999999999977D+02").newLine();
+			out.put("    -1").newLine();
+		}
+
 		@Override
 		public void writeNodes(PrintStream out, int[] nodesID, TIntIntHashMap amibeToUNV) throws IOException
 		{
-			DoubleFileReader dfrN = subMesh.getNodes();
+			ByteBufferWriter bbw = getWriter(out);
+			writeNodes(bbw, nodesID, amibeToUNV);
+			bbw.flush();
+		}
 
-			out.println("    -1"+CR+"  2411");
-			int count =  0;
-			double x,y,z;
-			for(int i=0; i<nodesID.length; i++)
-			{
-				int iid=nodesID[i]*3;
-				x=dfrN.get(iid);
-				y=dfrN.get(iid+1);
-				z=dfrN.get(iid+2);
-				count++;
-				amibeToUNV.put(nodesID[i], count);
-				writeSingleNode(out, count, x, y, z);
-			}
-			out.println("    -1");
+		@Override
+		public void writeNodes(ByteBufferWriter out, final int[] nodesID,
+			final TIntIntHashMap amibeToUNV) throws IOException
+		{
+			final DoubleFileReader dfrN = subMesh.getNodes();
+
+			out.put("    -1").newLine().put("  2411").newLine();
+			writeBlocks(out, nodesID.length, new BlockFormatter<double[]>() {
+				public double[] read(int start, int end) throws IOException
+				{
+					for(int i = start; i < end; i++)
+						amibeToUNV.put(nodesID[i], i+1);
+					return readCoordinates(dfrN, nodesID, start, end);
+				}
+				public void format(ByteBufferWriter out, double[] xyz, int start, int end)
+					throws IOException
+				{
+					for(int i = start, k = 0; i < end; i++, k += 3)
+						writeSingleNode(out, i+1, xyz[k], xyz[k+1], xyz[k+2]);
+				}
+			});
+			out.put("    -1").newLine();
 			dfrN.close();
-			logger.info("Total number of nodes: "+count);
+			logger.info("Total number of nodes: "+nodesID.length);
 		}
-		
+
+		@Override
+		public void writeTriangles(PrintStream out, int[] triangles,
+			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+			throws IOException
+		{
+			ByteBufferWriter bbw = getWriter(out);
+			writeTriangles(bbw, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria);
+			bbw.flush();
+		}
+
 		/**
 		 * @param out
 		 * @param amibeNodeToUNVNode
 		 */
 		@Override
-		public void writeTriangles(PrintStream out, int[] triangles,
-			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+		public void writeTriangles(ByteBufferWriter out, final int[] triangles,
+			final TIntIntHashMap amibeNodeToUNVNode, final TIntIntHashMap amibeTriaToUNVTria)
+			throws IOException
 		{
-			out.println("    -1"+CR+"  2412");
-			int count=0;
-			int triaIndex=0;
-			for(int i=0; i<groups.length; i++)
-			{
-				for(int j=0; j<groups[i].length; j++)
+			out.put("    -1").newLine().put("  2412").newLine();
+			writeBlocks(out, getNumberOfTriangles(), new BlockFormatter<int[]>() {
+				private final TriangleIterator it = new TriangleIterator();
+				public int[] read(int start, int end)
 				{
-					count++;
-					amibeTriaToUNVTria.put(groups[i][j], count);
-					writeSingleTriangle(out, count,
-						amibeNodeToUNVNode.get(triangles[triaIndex++]),
-						amibeNodeToUNVNode.get(triangles[triaIndex++]),
-						amibeNodeToUNVNode.get(triangles[triaIndex++]));
+					int[] ids = new int[3*(end - start)];
+					for(int i = start; i < end; i++)
+					{
+						amibeTriaToUNVTria.put(it.next(), i+1);
+						for (int k = 0; k < 3; k++)
+							ids[3*(i - start)+k] = amibeNodeToUNVNode.get(triangles[3*i+k]);
+					}
+					return ids;
 				}
-			}
-			out.println("    -1");
-			logger.info("Total number of triangles: "+count);
+				public void format(ByteBufferWriter out, int[] ids, int start, int end)
+					throws IOException
+				{
+					for(int i = start, k = 0; i < end; i++, k += 3)
+						writeSingleTriangle(out, i+1, ids[k], ids[k+1], ids[k+2], 1);
+				}
+			});
+			out.put("    -1").newLine();
+			logger.info("Total number of triangles: "+getNumberOfTriangles());
 		}
-		
+
+		@Override
+		public void writeGroups(PrintStream out, TIntIntHashMap amibeTriaToUNVTria)
+			throws IOException
+		{
+			ByteBufferWriter bbw = getWriter(out);
+			writeGroups(bbw, amibeTriaToUNVTria);
+			bbw.flush();
+		}
+
 		/**
 		 * @param out
 		 * @param amibeTriaToUNVTria
 		 */
 		@Override
-		public void writeGroups(PrintStream out, TIntIntHashMap amibeTriaToUNVTria)
+		public void writeGroups(ByteBufferWriter out, TIntIntHashMap amibeTriaToUNVTria)
+			throws IOException
 		{
-			out.println("    -1"+CR+"  2435");
+			out.put("    -1").newLine().put("  2435").newLine();
 			for(int i=0;i<groups.length; i++)
-			{				
-				out.println(FORMAT_I10.format(i+1)+
-					"         0         0         0         0         0         0"+
-					FORMAT_I10.format(groups[i].length));
-				
-				out.println(groupsToExport.get(i).getName());
+			{
+				out.putInt(i+1, 10)
+					.put("         0         0         0         0         0         0")
+					.putInt(groups[i].length, 10).newLine();
+
+				out.put(groupsToExport.get(i).getName()).newLine();
 				int countg=0;
 				for(int j=0; j<groups[i].length; j++)
 				{
-					out.print("         8"
-						+FORMAT_I10.format(amibeTriaToUNVTria.get(groups[i][j]))
-						+"         0         0");
+					out.put("         8")
+						.putInt(amibeTriaToUNVTria.get(groups[i][j]), 10)
+						.put("         0         0");
 					countg++;
 					if ((countg % 2) == 0)
-						out.println("");
+						out.newLine();
 				}
 				if ((countg % 2) !=0 )
-					out.println();
+					out.newLine();
 			}
-			out.println("    -1");
+			out.put("    -1").newLine();
 		}
 	}
 	
+	/**
+	 * Convert an Amibe mesh to a STL file.  ASCII format is written by
+	 * default, binary format can be selected by {@link #setBinary}.
+	 */
 	public static class STL extends MeshExporter
 	{		
+		private boolean binary = false;
+
 		public STL(File directory, String[] groupIds)
 		{
 			super(directory, groupIds);
@@ -565,42 +936,104 @@ abstract public class MeshExporter
 		{
 			super(file);
 		}
-		
+
+		/**
+		 * Write binary STL files: triangles are written with single
+		 * precision, with their unit normal.
+		 */
+		public final void setBinary(boolean binary)
+		{
+			this.binary = binary;
+		}
+
+		@Override
+		public void writeTriangles(PrintStream out, int[] triangles,
+			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+			throws IOException
+		{
+			ByteBufferWriter bbw = getWriter(out);
+			writeTriangles(bbw, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria);
+			bbw.flush();
+		}
+
 		/**
 		 * @param out
 		 * @param amibeNodeToUNVNode
 		 */
 		@Override
-		public void writeTriangles(PrintStream out, int[] triangles,
+		public void writeTriangles(ByteBufferWriter out, final int[] triangles,
 			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
 			throws IOException
 		{
-			DoubleFileReader dfrN = subMesh.getNodes();
-			
-			out.println("solid export");
-			int count=0;
-			double x,y,z;
-			for(int i=0; i<groups.length; i++)
+			final DoubleFileReader dfrN = subMesh.getNodes();
+			int count = getNumberOfTriangles();
+			BlockFormatter<double[]> formatter;
+			if (binary)
 			{
-				for(int j=0; j<groups[i].length; j++)
-				{
-					out.println("facet");
-					out.println("   outer loop");
-					for(int k=0; k < 3; k++)
+				// 80 bytes header, which must not start with "solid"
+				byte[] header = new byte[80];
+				byte[] title = "binary STL export".getBytes();
+				System.arraycopy(title, 0, header, 0, title.length);
+				out.put(header);
+				out.putBinaryInt(count);
+				formatter = new STLBlockFormatter(dfrN, triangles) {
+					public void format(ByteBufferWriter out, double[] xyz, int start, int end)
+						throws IOException
 					{
-						int iid=triangles[count*3+k]*3;
-						x=dfrN.get(iid);
-						y=dfrN.get(iid+1);
-						z=dfrN.get(iid+2);
-						out.println("     vertex "+x+" "+y+" "+z);
+						for(int k = 0; k < xyz.length; k += 9)
+						{
+							double ux = xyz[k+3] - xyz[k];
+							double uy = xyz[k+4] - xyz[k+1];
+							double uz = xyz[k+5] - xyz[k+2];
+							double vx = xyz[k+6] - xyz[k];
+							double vy = xyz[k+7] - xyz[k+1];
+							double vz = xyz[k+8] - xyz[k+2];
+							double nx = uy * vz - uz * vy;
+							double ny = uz * vx - ux * vz;
+							double nz = ux * vy - uy * vx;
+							double norm = Math.sqrt(nx * nx + ny * ny + nz * nz);
+							if (norm > 0.0)
+							{
+								nx /= norm;
+								ny /= norm;
+								nz /= norm;
+							}
+							out.putBinaryFloat((float) nx);
+							out.putBinaryFloat((float) ny);
+							out.putBinaryFloat((float) nz);
+							for (int i = 0; i < 9; i++)
+								out.putBinaryFloat((float) xyz[k+i]);
+							out.putBinaryShort((short) 0);
+						}
 					}
-					out.println("   endloop");
-					out.println("endfacet");
-					count++;
-				}
+				};
 			}
+			else
+			{
+				out.put("solid export").newLine();
+				formatter = new STLBlockFormatter(dfrN, triangles) {
+					public void format(ByteBufferWriter out, double[] xyz, int start, int end)
+						throws IOException
+					{
+						for(int k = 0; k < xyz.length; k += 9)
+						{
+							out.put("facet").newLine();
+							out.put("   outer loop").newLine();
+							for (int i = k; i < k + 9; i += 3)
+							{
+								out.put("     vertex ").putDouble(xyz[i]).put(' ')
+									.putDouble(xyz[i+1]).put(' ').putDouble(xyz[i+2]).newLine();
+							}
+							out.put("   endloop").newLine();
+							out.put("endfacet").newLine();
+						}
+					}
+				};
+			}
+			writeBlocks(out, count, formatter);
 			dfrN.close();
-			out.println("endsolid export");
+			if (!binary)
+				out.put("endsolid export").newLine();
 			logger.info("Total number of triangles: "+count);
 		}
 
@@ -609,6 +1042,32 @@ abstract public class MeshExporter
 		{
 			//Nothing to do
 		}
+
+		@Override
+		protected void writeNodes(ByteBufferWriter out, int[] nodesID, TIntIntHashMap amibeToUNV)
+		{
+			//Nothing to do
+		}
+
+		/**
+		 * Read vertex coordinates of triangles.
+		 */
+		private abstract static class STLBlockFormatter implements BlockFormatter<double[]>
+		{
+			private final DoubleFileReader dfrN;
+			private final int[] triangles;
+
+			STLBlockFormatter(DoubleFileReader dfrN, int[] triangles)
+			{
+				this.dfrN = dfrN;
+				this.triangles = triangles;
+			}
+
+			public double[] read(int start, int end) throws IOException
+			{
+				return readCoordinates(dfrN, triangles, 3*start, 3*end);
+			}
+		}
 	}
 	
 	public static class MESH extends MeshExporter
@@ -622,65 +1081,119 @@ abstract public class MeshExporter
 		{
 			super(file);
 		}		
-		
+
 		@Override
 		public void writeInit(PrintStream out)
 			throws IOException
 		{
-			out.println("\nMeshVersionFormatted 1\n\nDimension\n3");
+			ByteBufferWriter bbw = getWriter(out);
+			writeInit(bbw);
+			bbw.flush();
 		}
+
+		@Override
+		public void writeInit(ByteBufferWriter out)
+			throws IOException
+		{
+			out.put("\nMeshVersionFormatted 1\n\nDimension\n3").newLine();
+		}
+
 		@Override
 		public void writeFinish(PrintStream out)
 			throws IOException
 		{
-			out.println("\nEnd");
+			ByteBufferWriter bbw = getWriter(out);
+			writeFinish(bbw);
+			bbw.flush();
 		}
+
+		@Override
+		public void writeFinish(ByteBufferWriter out)
+			throws IOException
+		{
+			out.put("\nEnd").newLine();
+		}
+
 		@Override
 		public void writeNodes(PrintStream out, int[] nodesID, TIntIntHashMap amibeToUNV) throws IOException
 		{
-			DoubleFileReader dfrN = subMesh.getNodes();
+			ByteBufferWriter bbw = getWriter(out);
+			writeNodes(bbw, nodesID, amibeToUNV);
+			bbw.flush();
+		}
+
+		@Override
+		public void writeNodes(ByteBufferWriter out, final int[] nodesID,
+			final TIntIntHashMap amibeToUNV) throws IOException
+		{
+			final DoubleFileReader dfrN = subMesh.getNodes();
 			
-			int count =  0;
-			double x,y,z;
-			out.println("\nVertices\n"+nodesID.length);
-			for(int i=0; i<nodesID.length; i++)
-			{
-				int iid=nodesID[i]*3;
-				x=dfrN.get(iid);
-				y=dfrN.get(iid+1);
-				z=dfrN.get(iid+2);
-				count++;
-				amibeToUNV.put(nodesID[i], count);
-				out.println(x+" "+y+" "+z+" 0");
-			}
+			out.put("\nVertices\n").putInt(nodesID.length).newLine();
+			writeBlocks(out, nodesID.length, new BlockFormatter<double[]>() {
+				public double[] read(int start, int end) throws IOException
+				{
+					for(int i = start; i < end; i++)
+						amibeToUNV.put(nodesID[i], i+1);
+					return readCoordinates(dfrN, nodesID, start, end);
+				}
+				public void format(ByteBufferWriter out, double[] xyz, int start, int end)
+					throws IOException
+				{
+					for(int k = 0; k < xyz.length; k += 3)
+						out.putDouble(xyz[k]).put(' ').putDouble(xyz[k+1]).put(' ')
+							.putDouble(xyz[k+2]).put(" 0").newLine();
+				}
+			});
 			dfrN.close();
-			logger.info("Total number of nodes: "+count);
+			logger.info("Total number of nodes: "+nodesID.length);
 		}
 		
+		@Override
+		public void writeTriangles(PrintStream out, int[] triangles,
+			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+			throws IOException
+		{
+			ByteBufferWriter bbw = getWriter(out);
+			writeTriangles(bbw, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria);
+			bbw.flush();
+		}
+
 		/**
 		 * @param out
 		 * @param amibeNodeToUNVNode
 		 */
 		@Override
-		public void writeTriangles(PrintStream out, int[] triangles,
-			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+		public void writeTriangles(ByteBufferWriter out, final int[] triangles,
+			final TIntIntHashMap amibeNodeToUNVNode, final TIntIntHashMap amibeTriaToUNVTria)
+			throws IOException
 		{
-			int count=0;
-			for(int i=0; i<groups.length; i++)
-				count += groups[i].length;
-			
-			out.println("\nTriangles\n"+count);
-			int triaIndex=0;
-			count=0;
-			for(int i=0; i<groups.length; i++)
-			{
-				for(int j=0; j<groups[i].length; j++)
+			int count = getNumberOfTriangles();
+			out.put("\nTriangles\n").putInt(count).newLine();
+			writeBlocks(out, count, new BlockFormatter<int[]>() {
+				private final TriangleIterator it = new TriangleIterator();
+				public int[] read(int start, int end)
 				{
-					count++;
-					amibeTriaToUNVTria.put(groups[i][j], count);
-					out.println(amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+(i+1));
+					// Node indices and group number
+					int[] ids = new int[4*(end - start)];
+					for(int i = start; i < end; i++)
+					{
+						amibeTriaToUNVTria.put(it.next(), i+1);
+						int k = 4*(i - start);
+						ids[k] = amibeNodeToUNVNode.get(triangles[3*i]);
+						ids[k+1] = amibeNodeToUNVNode.get(triangles[3*i+1]);
+						ids[k+2] = amibeNodeToUNVNode.get(triangles[3*i+2]);
+						ids[k+3] = it.getGroup() + 1;
+					}
+					return ids;
 				}
-			}
+				public void format(ByteBufferWriter out, int[] ids, int start, int end)
+					throws IOException
+				{
+					for(int k = 0; k < ids.length; k += 4)
+						out.putInt(ids[k]).put(' ').putInt(ids[k+1]).put(' ')
+							.putInt(ids[k+2]).put(' ').putInt(ids[k+3]).newLine();
+				}
+			});
 			logger.info("Total number of triangles: "+count);
 		}
 		
@@ -688,41 +1201,50 @@ abstract public class MeshExporter
 		public void writeNormals(PrintStream out, int[] triangles,
 			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria) throws IOException
 		{
-			DoubleFileReader dfrN = subMesh.getNormals();
-			
-			int count=0;
-			for(int i=0; i<groups.length; i++)
-				count += groups[i].length;
-			
-			out.println("\nNormals\n"+(3*count));
+			ByteBufferWriter bbw = getWriter(out);
+			writeNormals(bbw, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria);
+			bbw.flush();
+		}
 
-			double x,y,z;
-			for(int i=0; i<groups.length; i++)
-			{
-				for(int j=0; j<groups[i].length; j++)
+		@Override
+		public void writeNormals(ByteBufferWriter out, int[] triangles,
+			TIntIntHashMap amibeNodeToUNVNode, final TIntIntHashMap amibeTriaToUNVTria) throws IOException
+		{
+			final DoubleFileReader dfrN = subMesh.getNormals();
+			
+			int count = getNumberOfTriangles();
+			out.put("\nNormals\n").putInt(3*count).newLine();
+			writeBlocks(out, count, new BlockFormatter<double[]>() {
+				private final TriangleIterator it = new TriangleIterator();
+				public double[] read(int start, int end) throws IOException
 				{
-					int iid = (amibeTriaToUNVTria.get(groups[i][j]) - 1)* 9;
-					for (int k = 0; k < 3; k++)
+					double[] normals = new double[9*(end - start)];
+					for(int i = start; i < end; i++)
 					{
-						x=dfrN.get(iid);
-						y=dfrN.get(iid+1);
-						z=dfrN.get(iid+2);
-						out.println(x+" "+y+" "+z);
-						iid += 3;
+						int iid = (amibeTriaToUNVTria.get(it.next()) - 1) * 9;
+						dfrN.get(iid, normals, 9*(i - start), 9);
 					}
+					return normals;
 				}
-			}
+				public void format(ByteBufferWriter out, double[] normals, int start, int end)
+					throws IOException
+				{
+					for(int k = 0; k < normals.length; k += 3)
+						out.putDouble(normals[k]).put(' ').putDouble(normals[k+1]).put(' ')
+							.putDouble(normals[k+2]).newLine();
+				}
+			});
 			dfrN.close();
 
-			out.println("\nNormalAtTriangleVertices\n"+(3*count));
+			out.put("\nNormalAtTriangleVertices\n").putInt(3*count).newLine();
 			for(int i=0; i<groups.length; i++)
 			{
 				for(int j=0; j<groups[i].length; j++)
 				{
 					int nT = amibeTriaToUNVTria.get(groups[i][j]);
-					out.println(nT+" 1 "+(3*nT-2));
-					out.println(nT+" 2 "+(3*nT-1));
-					out.println(nT+" 3 "+(3*nT));
+					out.putInt(nT).put(" 1 ").putInt(3*nT-2).newLine();
+					out.putInt(nT).put(" 2 ").putInt(3*nT-1).newLine();
+					out.putInt(nT).put(" 3 ").putInt(3*nT).newLine();
 				}
 			}
 		}
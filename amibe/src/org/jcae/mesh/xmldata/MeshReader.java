@@ -29,6 +29,7 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.ds.MGroup3D;
 import org.jcae.mesh.amibe.patch.Mesh2D;
 import org.jcae.mesh.amibe.patch.Vertex2D;
+import org.jcae.mesh.amibe.util.ParallelLoop;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -56,6 +57,10 @@ import java.util.logging.Logger;
 public class MeshReader
 {
 	private static final Logger logger=Logger.getLogger(MeshReader.class.getName());
+	// Number of vertices or triangles read at once by readObject3D
+	private static final int SLAB_SIZE = 1 << 20;
+	// Do not split small slabs
+	private static final int MIN_CHUNK_SIZE = 10000;
 	
 	/**
 	 * Loads an Amibe 2D XML file into an existing Mesh2D instance.
@@ -214,6 +219,18 @@ public class MeshReader
 	 */
 	public static void readObject3D(Mesh mesh, String xmlDir, boolean buildAdjacency)
 		throws IOException
+	{
+		readObject3D(mesh, xmlDir, buildAdjacency, SLAB_SIZE, MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Loads an Amibe 3D XML file, nodes and triangles are read by slabs of
+	 * <code>slabSize</code> elements, and slabs are split into chunks of at
+	 * least <code>minChunkSize</code> elements when several threads are used.
+	 */
+	static void readObject3D(Mesh mesh, String xmlDir, boolean buildAdjacency,
+		int slabSize, int minChunkSize)
+		throws IOException
 	{
 		try {
 			AmibeReader.Dim3 reader = new AmibeReader.Dim3(xmlDir);
@@ -224,68 +241,23 @@ public class MeshReader
 				refs = subMesh.getReferences();
 				mesh.setPersistentReferences(true);
 			}
-			DoubleFileReader dfrN = subMesh.getNodes();
 			int numberOfNodes = subMesh.getNumberOfNodes();
+			int numberOfTriangles = subMesh.getNumberOfTrias();
 			Vertex[] nodelist = new Vertex[numberOfNodes + 1];
 			nodelist[numberOfNodes] = mesh.outerVertex;
-			int label;
-			double[] coord = new double[3];
-			double[] bbmin = new double[3];
-			double[] bbmax = new double[3];
-			for (int j = 0; j < 3; j++) {
-				bbmin[j] = Double.MAX_VALUE;
-				bbmax[j] = Double.MIN_VALUE;
-			}
-			mesh.ensureCapacity(2 * numberOfNodes);
-			for (int i = 0; i < numberOfNodes; i++) {
-				dfrN.get(coord);
-				nodelist[i] = mesh.createVertex(coord[0], coord[1], coord[2]);
-				if (i < numberOfNodes - numberOfReferences) {
-					label = 0;
-				} else {
-					assert refs != null;
-					label = refs[i + numberOfReferences - numberOfNodes];
-				}
-				nodelist[i].setRef(label);
-				for (int j = 0; j < 3; j++) {
-					if (coord[j] > bbmax[j]) {
-						bbmax[j] = coord[j];
-					}
-					if (coord[j] < bbmin[j]) {
-						bbmin[j] = coord[j];
-					}
-				}
-			}
-			dfrN.close();
-			if (mesh.hasNodes()) {
-				for (int i = 0; i < numberOfNodes; i++) {
-					mesh.add(nodelist[i]);
-				}
-			}
-
-			int numberOfTriangles = subMesh.getNumberOfTrias();
 			Triangle[] facelist = new Triangle[numberOfTriangles];
-			if(numberOfTriangles > 0)
+			mesh.ensureCapacity(Math.max(numberOfTriangles, 2 * numberOfNodes));
+			ParallelLoop loop = new ParallelLoop(mesh.getMeshParameters().getThreads(), minChunkSize);
+			PrimitiveFileReaderFactory pfrf = new PrimitiveFileReaderFactory("mmap");
+			try
 			{
-				IntFileReader ifrT = subMesh.getTriangles();
-				int[] ind = new int[3];
-				Vertex[] pts = new Vertex[3];
-				for (int i = 0; i < numberOfTriangles; i++) {
-					boolean outer = false;
-					for (int j = 0; j < 3; j++) {
-						ind[j] = ifrT.get();
-						if (ind[j] < 0) {
-							ind[j] = -ind[j];
-							outer = true;
-						}
-						pts[j] = nodelist[ind[j]];
-					}
-					if (!outer) {
-						facelist[i] = mesh.createTriangle(pts[0], pts[1], pts[2]);
-						mesh.add(facelist[i]);
-					}
-				}
-				ifrT.close();
+				readVertices(mesh, subMesh.getNodes(pfrf), nodelist, refs, loop, slabSize);
+				if (numberOfTriangles > 0)
+					readTriangles(mesh, subMesh.getTriangles(pfrf), nodelist, facelist, loop, slabSize);
+			}
+			finally
+			{
+				loop.shutdown();
 			}
 
 			int numberOfBeams = subMesh.getNumberOfBeams();
@@ -332,6 +304,124 @@ public class MeshReader
 		}
 	}
 
+	/**
+	 * Creates vertices.  Coordinates are read by slabs, and vertices of a
+	 * slab are created concurrently.
+	 */
+	private static void readVertices(final Mesh mesh, DoubleFileReader dfrN,
+		final Vertex[] nodelist, final int[] refs, ParallelLoop loop, int slabSize)
+		throws IOException
+	{
+		final int numberOfNodes = nodelist.length - 1;
+		final int numberOfReferences = (refs == null ? 0 : refs.length);
+		final double[] coord = new double[3 * Math.min(slabSize, numberOfNodes)];
+		try
+		{
+			for (int offset = 0; offset < numberOfNodes; offset += slabSize)
+			{
+				final int first = offset;
+				int n = Math.min(slabSize, numberOfNodes - offset);
+				readFully(dfrN, coord, 3 * n);
+				loop.execute(n, new ParallelLoop.Body() {
+					public void run(int start, int end)
+					{
+						for (int k = start; k < end; k++)
+						{
+							int i = first + k;
+							Vertex v = mesh.createVertex(coord[3*k], coord[3*k+1], coord[3*k+2]);
+							if (i >= numberOfNodes - numberOfReferences)
+								v.setRef(refs[i + numberOfReferences - numberOfNodes]);
+							nodelist[i] = v;
+						}
+					}
+				});
+			}
+		}
+		finally
+		{
+			dfrN.close();
+		}
+		if (mesh.hasNodes())
+		{
+			for (int i = 0; i < numberOfNodes; i++)
+				mesh.add(nodelist[i]);
+		}
+	}
+
+	/**
+	 * Creates triangles.  Connectivity is read by slabs, and triangles of
+	 * a slab are created concurrently; they are then added to the mesh in
+	 * file order.  Outer triangles are skipped, their entry in
+	 * <code>facelist</code> is <code>null</code>.
+	 */
+	private static void readTriangles(final Mesh mesh, IntFileReader ifrT,
+		final Vertex[] nodelist, final Triangle[] facelist, ParallelLoop loop,
+		int slabSize)
+		throws IOException
+	{
+		final int numberOfTriangles = facelist.length;
+		final int[] ind = new int[3 * Math.min(slabSize, numberOfTriangles)];
+		try
+		{
+			for (int offset = 0; offset < numberOfTriangles; offset += slabSize)
+			{
+				final int first = offset;
+				int n = Math.min(slabSize, numberOfTriangles - offset);
+				readFully(ifrT, ind, 3 * n);
+				loop.execute(n, new ParallelLoop.Body() {
+					public void run(int start, int end)
+					{
+						for (int k = start; k < end; k++)
+						{
+							int i0 = ind[3*k];
+							int i1 = ind[3*k+1];
+							int i2 = ind[3*k+2];
+							if (i0 < 0 || i1 < 0 || i2 < 0)
+								continue;
+							facelist[first + k] = mesh.createTriangle(
+								nodelist[i0], nodelist[i1], nodelist[i2]);
+						}
+					}
+				});
+				for (int i = offset; i < offset + n; i++)
+				{
+					if (facelist[i] != null)
+						mesh.add(facelist[i]);
+				}
+			}
+		}
+		finally
+		{
+			ifrT.close();
+		}
+	}
+
+	private static void readFully(DoubleFileReader dfr, double[] dst, int len)
+		throws IOException
+	{
+		int offset = 0;
+		while (offset < len)
+		{
+			int nr = dfr.get(dst, offset, len - offset);
+			if (nr <= 0)
+				throw new IOException("Unexpected end of file");
+			offset += nr;
+		}
+	}
+
+	private static void readFully(IntFileReader ifr, int[] dst, int len)
+		throws IOException
+	{
+		int offset = 0;
+		while (offset < len)
+		{
+			int nr = ifr.get(dst, offset, len - offset);
+			if (nr <= 0)
+				throw new IOException("Unexpected end of file");
+			offset += nr;
+		}
+	}
+
 	// Method previously in MMesh3DReader, remove it?
 	public static int [] getInfos(String xmlDir)
 	{
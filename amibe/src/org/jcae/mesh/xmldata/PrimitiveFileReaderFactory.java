@@ -48,15 +48,23 @@ public class PrimitiveFileReaderFactory
 		}
 	}
 
+	/**
+	 * Files are mapped into memory.  A MappedByteBuffer cannot be larger
+	 * than 2GB, larger files are read by direct buffers.
+	 */
 	private static class FactoryByMmap implements FactoryInterface
 	{
 		public IntFileReader getIntFileReader(File file) throws IOException
 		{
+			if (file.length() > Integer.MAX_VALUE)
+				return DIRECT_BUFFER.getIntFileReader(file);
 			return new IntFileReaderByMmap(file);
 		}
 
 		public DoubleFileReader getDoubleFileReader(File file) throws IOException
 		{
+			if (file.length() > Integer.MAX_VALUE)
+				return DIRECT_BUFFER.getDoubleFileReader(file);
 			return new DoubleFileReaderByMmap(file);
 		}
 	}
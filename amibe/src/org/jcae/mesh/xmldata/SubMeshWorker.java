@@ -171,7 +171,7 @@ public class SubMeshWorker
 			mergedNames[groupIdsExtToGlobal[i]] = meshExt.getGroupName(i);
 		// Reset original groupId and groupName
 		for (Triangle t : meshInt.getTriangles())
-			t.setGroupId(groupIdsIntToGlobal[t.getGroupId()]);
+			meshInt.setGroupId(t, groupIdsIntToGlobal[t.getGroupId()]);
 		for (int i = 1; i < mergedNames.length; i++)
 			meshInt.setGroupName(i, mergedNames[i]);
 
@@ -21,11 +21,13 @@
 package org.jcae.mesh.xmldata;
 
 
+import gnu.trove.list.array.TIntArrayList;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
 import java.nio.Buffer;
@@ -33,11 +35,16 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.StringTokenizer;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 
 /**
@@ -55,25 +62,18 @@ import java.util.regex.Pattern;
  */
 public class UNV2Amibe
 {
-	private final static Pattern TOKENIZE = Pattern.compile("\\s+");
 	/** A 2412 element which won't be stored into the amibe file */
-	private abstract class Element
+	private static class Element
 	{
-		String buffer;
-		int[] nodes;
-				
-		protected abstract String parse(BufferedReader in) throws IOException;
-		
-		public Element(String line, BufferedReader in) throws IOException
-		{
-			buffer=line+'\n'+parse(in);
-		}
-		
-		public void write(PrintStream out)
+		final String buffer;
+		final int[] nodes;
+
+		public Element(String buffer, int[] nodes)
 		{
-			out.println(buffer);
+			this.buffer = buffer;
+			this.nodes = nodes;
 		}
-		
+
 		public final int getNode(int id)
 		{
 			return nodes[id];
@@ -84,65 +84,6 @@ public class UNV2Amibe
 			return nodes.length;
 		}
 	}
-	
-	private class Element21 extends Element
-	{		
-		public Element21(String line, BufferedReader in) throws IOException
-		{
-			super(line, in);
-		}
-
-		@Override
-		protected String parse(BufferedReader in) throws IOException
-		{
-			nodes=new int[2];
-			String l1=in.readLine();
-			String l2=in.readLine();
-			StringTokenizer st=new StringTokenizer(l2);
-			nodes[0]=Integer.parseInt(st.nextToken());
-			nodes[1]=Integer.parseInt(st.nextToken());
-			return l1+'\n'+l2;
-		}		
-	}
-
-	private class Element24 extends Element {
-
-		public Element24(String line, BufferedReader in) throws IOException {
-			super(line, in);
-		}
-
-		@Override
-		protected String parse(BufferedReader in) throws IOException {
-			nodes = new int[3];
-			String l1 = in.readLine();
-			String l2 = in.readLine();
-			StringTokenizer st = new StringTokenizer(l2);
-			nodes[0] = Integer.parseInt(st.nextToken());
-			nodes[1] = Integer.parseInt(st.nextToken());
-			nodes[2] = Integer.parseInt(st.nextToken());
-			return l1 + '\n' + l2;
-		}
-	}
-
-	private class Element92 extends Element
-	{		
-		public Element92(String line, BufferedReader in) throws IOException
-		{
-			super(line, in);
-		}
-
-		@Override
-		protected String parse(BufferedReader in) throws IOException
-		{
-			nodes=new int[6];
-			String l1=in.readLine();
-			StringTokenizer st=new StringTokenizer(l1);
-			for(int i=0; i<6; i++)
-				nodes[i]=Integer.parseInt(st.nextToken());
-			
-			return l1;
-		}		
-	}
 
 	/**
 	 * Map an UNV element ID with Amibe element ID.
@@ -159,7 +100,10 @@ public class UNV2Amibe
 		public static int TRIAS = 0, BEAMS = 1;
 		private FileChannel channel;
 		private File file;
-		private ByteBuffer buffer = ByteBuffer.allocate(8);
+		private ByteBuffer buffer = ByteBuffer.allocate(8 * 8192);
+		// Read-only view of the temporary file
+		private ByteBuffer mapped;
+		private int id, type;
 		public IDMapping() throws IOException
 		{
 			file = File.createTempFile("amibe", ".bin");
@@ -169,41 +113,66 @@ public class UNV2Amibe
 
 		public void close() throws IOException
 		{
+			mapped = null;
 			channel.close();
 			file.delete();
 		}
 
 		public void add(int amibeID, int type) throws IOException
 		{
-			((Buffer)buffer).rewind();
+			if (!buffer.hasRemaining())
+				flush();
 			buffer.putInt(amibeID);
 			buffer.putInt(type);
-			buffer.rewind();			
-			channel.write(buffer);
+		}
+
+		private void flush() throws IOException
+		{
+			// Buffer cast is needed with Java 9 (see https://jira.mongodb.org/browse/JAVA-2559)
+			Buffer b = buffer;
+			b.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			b.clear();
+			mapped = null;
 		}
 
 		public void seek(int id) throws IOException
 		{
-			buffer.rewind();
-			channel.read(buffer, 8*id);
+			if (buffer.position() > 0)
+				flush();
+			if (mapped == null)
+				mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+			// Keep previous values if id is out of range
+			if (id >= 0 && 8L * id + 8L <= mapped.capacity())
+			{
+				this.id = mapped.getInt(8 * id);
+				this.type = mapped.getInt(8 * id + 4);
+			}
 		}
 
 		public int getID()
 		{
-			return buffer.getInt(0);
+			return id;
 		}
 
 		public int getType()
 		{
-			return buffer.getInt(4);
+			return type;
 		}
 	}
 	
 	private static final Logger LOGGER=Logger.getLogger(UNV2Amibe.class.getName());
+	/** Number of nodes or elements which are parsed by the same task */
+	private static final int CHUNK_SIZE = 1 << 14;
 	private String unitBlock;	
 	private String stripedUnvFile;
 	private IDMapping idMapping;
 	private double scale = 1.0;
+	private int threads = 1;
+	// Not final for tests
+	int chunkSize = CHUNK_SIZE;
+	int windowSize = MappedLineReader.WINDOW_SIZE;
 
 	/** a list of 2412 elements which won't be store in the amibe file */
 	private final ArrayList<Element> elements=new ArrayList<Element>();
@@ -213,67 +182,104 @@ public class UNV2Amibe
 		importMesh(new File(input), output);
 	}
 
+	/**
+	 * Import a UNV file.  File is mapped into memory, and nodes and
+	 * elements are parsed by several threads if {@link #setThreads}
+	 * had been called.
+	 */
 	public final void importMesh(File input, String output) throws IOException
 	{
-		BufferedReader br=new BufferedReader(new FileReader(input));
-		importMesh(br, output);
-		br.close();
+		AmibeWriter.Dim3 out = new AmibeWriter.Dim3(output);
+		out.setFixNoGroup(true);
+		FileInputStream fis = new FileInputStream(input);
+		try
+		{
+			FileChannel channel = fis.getChannel();
+			importMesh(new MappedLineReader(channel, 0L, channel.size(), windowSize),
+				channel, out);
+		}
+		finally
+		{
+			fis.close();
+		}
+		out.finish();
+		if(stripedUnvFile!=null)
+			writeStripedUnv(out);
 	}
 
 	public final void importMesh(BufferedReader in, String outputDir) throws IOException
 	{
 		AmibeWriter.Dim3 out = new AmibeWriter.Dim3(outputDir);
 		out.setFixNoGroup(true);
-		importMesh(in, out);
+		importMesh(new BufferedLineReader(in), null, out);
 		out.finish();
 		if(stripedUnvFile!=null)
 			writeStripedUnv(out);
 	}
 	
-	private void importMesh(BufferedReader in, AmibeWriter.Dim3 out) throws IOException
+	/**
+	 * @param channel  channel of a memory-mapped file which is read by
+	 * <code>in</code>, or <code>null</code> if nodes and elements must
+	 * be parsed by the calling thread
+	 */
+	private void importMesh(LineReader in, FileChannel channel, AmibeWriter.Dim3 out)
+		throws IOException
 	{
 		idMapping = new IDMapping();
-		double unit = 1.0;
-		String line;
-		while ((line=in.readLine())!=null)
+		ExecutorService pool = null;
+		if (threads > 1 && channel != null)
+			pool = Executors.newFixedThreadPool(threads);
+		try
 		{
-			if (line.trim().equals("-1"))
+			double unit = 1.0;
+			while (in.nextLine())
 			{
-				line = in.readLine().trim();
-				if (line.equals("2411") || line.equals("781"))
+				if (!in.lineEquals("-1"))
+					continue;
+				in.readLine();
+				if (in.lineEquals("2411") || in.lineEquals("781"))
 				{
 					// read nodes
-					convertNodes(in, unit / scale, out);
+					convert(in, channel, new NodeParser(unit / scale, out), pool);
 				}
-				else if (line.equals("2412"))
+				else if (in.lineEquals("2412"))
 				{
 					// read faces
-					convertFaces(in, out);
+					LOGGER.fine("Reading triangles");
+					convert(in, channel, new ElementParser(out), pool);
 				}
-				else if (line.equals("164"))
+				else if (in.lineEquals("164"))
 				{
 					// read unit
 					unit = readUnit(in);
 				}
-				else if ( "2430".equals(line) || "2435".equals(line) ||
-					"2477".equals(line) || "2467".equals(line))
+				else if (in.lineEquals("2430") || in.lineEquals("2435") ||
+					in.lineEquals("2477") || in.lineEquals("2467"))
 				{
 					// read groups
-					convertGroups(in, line, out);
+					convertGroups(in, in.getLine().trim(), out);
 				}
-				/*else if (line.trim().equals("2414"))
+				/*else if (in.lineEquals("2414"))
 				{
 					// read colors
 				}*/
 				else
 				{
-					// default group
 					// read end of group
-					while (!(line=in.readLine().trim()).equals("-1"));
+					do
+					{
+						in.readLine();
+					}
+					while (!in.lineEquals("-1"));
 				}
 			}
 		}
-		idMapping.close();
+		finally
+		{
+			if (pool != null)
+				pool.shutdownNow();
+			idMapping.close();
+		}
 	}
 
 	/** List of nodes used in elements which are not written in the amibe file */
@@ -334,39 +340,384 @@ public class UNV2Amibe
 	{
 		return false;
 	}
+
+	/** Records parsed by a {@link DatasetParser} */
+	private static class Block
+	{
+		int size;
+		/** True if the end of dataset had been read */
+		boolean last;
+		double[] coords;
+		TIntArrayList elements;
+		/** Elements which are not stored into the amibe file */
+		List<Element> striped;
+	}
+
+	/**
+	 * Parse records of a node or element dataset.  Records are either
+	 * parsed by the calling thread, or the calling thread splits the dataset
+	 * into chunks which are parsed by worker threads.
+	 */
+	private abstract static class DatasetParser
+	{
+		/**
+		 * Parse at most <code>max</code> records, and stop at the end
+		 * of dataset.  This method may be called by worker threads.
+		 */
+		abstract Block parse(LineReader in, int max) throws IOException;
+
+		/**
+		 * Skip at most <code>max</code> records.
+		 * @return the number of skipped records, or a negative value
+		 * <code>-n-1</code> if <code>n</code> records have been skipped
+		 * and the end of dataset had been read
+		 */
+		abstract int skip(LineReader in, int max) throws IOException;
+
+		/** Write records, this method is called in order by the calling thread */
+		abstract void write(Block block) throws IOException;
+	}
+
+	/**
+	 * Convert a node or element dataset.
+	 * @param pool  worker threads, or <code>null</code> to parse records
+	 * in the calling thread.  It is only created for memory-mapped files,
+	 * and then <code>in</code> is a {@link MappedLineReader}.
+	 */
+	private void convert(LineReader in, final FileChannel channel,
+		final DatasetParser parser, ExecutorService pool) throws IOException
+	{
+		if (pool == null)
+		{
+			Block block;
+			do
+			{
+				block = parser.parse(in, chunkSize);
+				parser.write(block);
+			}
+			while (!block.last);
+			return;
+		}
+		MappedLineReader mapped = (MappedLineReader) in;
+		// Number of chunks in memory is bounded
+		LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+		boolean last = false;
+		while (!last)
+		{
+			final long start = mapped.getPosition();
+			int n = parser.skip(mapped, chunkSize);
+			last = n < 0;
+			final int count = last ? -n - 1 : n;
+			final long end = last ? mapped.getLineStart() : mapped.getPosition();
+			if (count == 0)
+				continue;
+			pending.add(pool.submit(new Callable<Block>() {
+				public Block call() throws IOException
+				{
+					return parser.parse(new MappedLineReader(channel, start, end, windowSize), count);
+				}
+			}));
+			if (pending.size() > 2 * threads)
+				parser.write(getBlock(pending.removeFirst()));
+		}
+		while (!pending.isEmpty())
+			parser.write(getBlock(pending.removeFirst()));
+	}
+
+	private static Block getBlock(Future<Block> f) throws IOException
+	{
+		try
+		{
+			return f.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException ex)
+		{
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private static class NodeParser extends DatasetParser
+	{
+		private final double unit;
+		private final AmibeWriter.Dim3 out;
+
+		NodeParser(double unit, AmibeWriter.Dim3 out)
+		{
+			this.unit = unit;
+			this.out = out;
+		}
+
+		@Override
+		Block parse(LineReader in, int max) throws IOException
+		{
+			Block block = new Block();
+			double[] coords = new double[3*max];
+			int n = 0;
+			while (n < max)
+			{
+				in.readLine();
+				if (in.lineEquals("-1"))
+				{
+					block.last = true;
+					break;
+				}
+				//next line contains coord x,y,z
+				in.readLine();
+				coords[3*n] = in.nextDouble()/unit;
+				coords[3*n+1] = in.nextDouble()/unit;
+				coords[3*n+2] = (in.hasMoreTokens() ? in.nextDouble() : 0.0)/unit;
+				n++;
+			}
+			block.size = n;
+			block.coords = coords;
+			return block;
+		}
+
+		@Override
+		int skip(LineReader in, int max) throws IOException
+		{
+			for (int n = 0; n < max; n++)
+			{
+				in.readLine();
+				if (in.lineEquals("-1"))
+					return -n - 1;
+				in.readLine();
+			}
+			return max;
+		}
+
+		@Override
+		void write(Block block) throws IOException
+		{
+			double[] coords = block.coords;
+			for (int i = 0; i < block.size; i++)
+				out.addNode(coords[3*i], coords[3*i+1], coords[3*i+2]);
+		}
+	}
+
+	private class ElementParser extends DatasetParser
+	{
+		private final AmibeWriter.Dim3 out;
+		private int nbTrias;
+		private int nbBeams;
+
+		ElementParser(AmibeWriter.Dim3 out)
+		{
+			this.out = out;
+		}
+
+		/**
+		 * Read record header, and return element type and number
+		 * of nodes.
+		 */
+		private boolean readHeader(LineReader in, int[] header) throws IOException
+		{
+			in.readLine();
+			if (in.lineEquals("-1"))
+				return false;
+			in.skipToken(); // element index
+			header[0] = in.nextInt();
+			in.skipToken(); // physical property
+			in.skipToken(); // material property
+			in.skipToken(); // color
+			header[1] = in.nextInt();
+			return true;
+		}
+
+		/** Beams have an additional record */
+		private boolean isBeam(int type)
+		{
+			return type == 11 || (type >= 21 && type <= 24);
+		}
+
+		/** Elements which are written into the striped UNV file */
+		private boolean isStriped(int type)
+		{
+			return type == 11 || type == 21 || type == 22 || type == 24 ||
+				type == 42 || type == 92;
+		}
+
+		@Override
+		Block parse(LineReader in, int max) throws IOException
+		{
+			Block block = new Block();
+			block.elements = new TIntArrayList(4*max);
+			int[] header = new int[2];
+			int[] nodes = new int[32];
+			int n = 0;
+			for (; n < max; n++)
+			{
+				if (!readHeader(in, header))
+				{
+					block.last = true;
+					break;
+				}
+				int type = header[0];
+				int nbNodes = header[1];
+				StringBuilder text = null;
+				if (stripedUnvFile != null && isStriped(type))
+					text = new StringBuilder(in.getLine());
+				if (isBeam(type))
+				{
+					in.readLine();
+					if (text != null)
+						text.append('\n').append(in.getLine());
+				}
+				if (nodes.length < nbNodes)
+					nodes = new int[nbNodes];
+				for (int i = 0; i < nbNodes; i++)
+				{
+					if (i % 8 == 0)
+					{
+						in.readLine();
+						if (text != null)
+							text.append('\n').append(in.getLine());
+					}
+					nodes[i] = in.nextInt();
+				}
+				if (text != null)
+				{
+					if (block.striped == null)
+						block.striped = new ArrayList<Element>();
+					int[] copy = new int[nbNodes];
+					System.arraycopy(nodes, 0, copy, 0, nbNodes);
+					block.striped.add(new Element(text.toString(), copy));
+				}
+				switch(type)
+				{
+					case 41:
+					case 51:
+					case 61:
+					case 74:
+					case 91:
+						// triangle
+						block.elements.add(IDMapping.TRIAS);
+						block.elements.add(nodes[0]-1);
+						block.elements.add(nodes[1]-1);
+						block.elements.add(nodes[2]-1);
+						break;
+					case 42:
+					case 92: //parabolic triangles
+						block.elements.add(IDMapping.TRIAS);
+						block.elements.add(nodes[0]-1);
+						block.elements.add(nodes[2]-1);
+						block.elements.add(nodes[4]-1);
+						break;
+					case 11: //rod
+					case 21: //linear beam
+						block.elements.add(IDMapping.BEAMS);
+						block.elements.add(nodes[0]-1);
+						block.elements.add(nodes[1]-1);
+						break;
+					case 22:
+					case 24:  // parabolic beam
+						block.elements.add(IDMapping.BEAMS);
+						block.elements.add(nodes[0]-1);
+						block.elements.add(nodes[2]-1);
+						break;
+					case 94:
+					case 111:
+					case 118:
+						break; //ignored
+					default:
+						LOGGER.log(Level.WARNING, "Warning: Section 2412, type {0} unknown", type);
+				}
+			}
+			block.size = n;
+			return block;
+		}
+
+		@Override
+		int skip(LineReader in, int max) throws IOException
+		{
+			int[] header = new int[2];
+			for (int n = 0; n < max; n++)
+			{
+				if (!readHeader(in, header))
+					return -n - 1;
+				if (isBeam(header[0]))
+					in.readLine();
+				for (int i = 0; i < header[1]; i += 8)
+					in.readLine();
+			}
+			return max;
+		}
+
+		@Override
+		void write(Block block) throws IOException
+		{
+			TIntArrayList elements = block.elements;
+			int size = elements.size();
+			for (int i = 0; i < size; )
+			{
+				if (elements.getQuick(i) == IDMapping.TRIAS)
+				{
+					out.addTriangle(elements.getQuick(i+1), elements.getQuick(i+2), elements.getQuick(i+3));
+					idMapping.add(nbTrias, IDMapping.TRIAS);
+					nbTrias++;
+					i += 4;
+				}
+				else
+				{
+					out.addBeam(elements.getQuick(i+1), elements.getQuick(i+2));
+					idMapping.add(nbBeams, IDMapping.BEAMS);
+					nbBeams++;
+					i += 3;
+				}
+			}
+			if (block.striped != null)
+				UNV2Amibe.this.elements.addAll(block.striped);
+		}
+	}
+
 	/**
 	 * 
 	 * @param in
 	 * @return ArrayList of Group
 	 * @throws IOException
 	 */
-	private void convertGroups(BufferedReader in, String type, AmibeWriter out) throws IOException
+	private void convertGroups(LineReader in, String type, AmibeWriter out) throws IOException
 	{
-		String line = in.readLine();
-		while(!line.trim().equals("-1"))
+		boolean extraTokens = "2435".equals(type) || "2477".equals(type) || "2467".equals(type);
+		in.readLine();
+		while(!in.lineEquals("-1"))
 		{
-			String[] tokens = TOKENIZE.split(line);
 			// Number of elements
-			int nbelem = Integer.parseInt(tokens[tokens.length-1]);
+			int nbelem = 0;
+			while (in.hasMoreTokens())
+				nbelem = in.nextInt();
 			// Read group name
-			String groupName = in.readLine().trim();
+			in.readLine();
+			String groupName = in.getLine().trim();
 			boolean skipGroup = skipGroup(groupName);
 			boolean groupCreated = false;
-			line = in.readLine().trim();
+			in.readLine();
 			if(nbelem == 0)
 				continue;
-			while (line.charAt(0) == '8' || line.charAt(0) == '7')
+			int c;
+			while ((c = in.firstNonBlank()) == '8' || c == '7')
 			{
-				StringTokenizer st = new StringTokenizer(line);
 				// read one element over two, the first one doesnt matter
-				while(st.hasMoreTokens())
+				while(in.hasMoreTokens())
 				{
-					st.nextToken();
-					int ind = Integer.parseInt(st.nextToken());
+					in.skipToken();
+					int ind = in.nextInt();
 					if (ind != 0 && !skipGroup)
 					{
 						ind --;
-						if(line.charAt(0) == '8')
+						if(c == '8')
 						{
 							if(!groupCreated)
 							{
@@ -379,7 +730,7 @@ public class UNV2Amibe
 							else
 								out.addTriaToGroup(idMapping.getID());
 						}
-						else //line.charAt(0) == '7'
+						else //c == '7'
 						{
 							if(!groupCreated)
 							{
@@ -391,145 +742,37 @@ public class UNV2Amibe
 					}
 					
 					nbelem--;
-					if ("2435".equals(type) || "2477".equals(type) || "2467".equals(type))
+					if (extraTokens)
 					{
-						st.nextToken();
-						st.nextToken();
+						in.skipToken();
+						in.skipToken();
 					}
 				}
-				if  (nbelem <= 0)
-				{
-					line = in.readLine();
+				in.readLine();
+				if (nbelem <= 0)
 					break;
-				}
-				line = in.readLine().trim();
 			}
 		}
 	}
 
-	private double readUnit(BufferedReader rd) throws IOException
+	private double readUnit(LineReader in) throws IOException
 	{
-		double unit = 1.0;
-		String line = "";
 		//retrieve the second line		
-		
-		unitBlock = rd.readLine()+'\n';
-		line = rd.readLine();
-		unitBlock += line +'\n';
-				
+		in.readLine();
+		unitBlock = in.getLine()+'\n';
+		in.readLine();
+		unitBlock += in.getLine()+'\n';
 		// fisrt number : the unit
-		StringTokenizer st = new StringTokenizer(line);
-		String unite = st.nextToken();
-		unite = unite.replace('D','E');
-		unit = Double.parseDouble(unite); 
-		while(!(line=rd.readLine().trim()).equals("-1"))
-			unitBlock += line;
-
-		return unit;
-	}
-
-	private void convertNodes(BufferedReader rd, double unit, AmibeWriter.Dim3 out)
-		throws IOException
-	{
-		double x,y,z;
-		String line = "";		
-		while(!(line=rd.readLine().trim()).equals("-1"))
-		{
-			StringTokenizer st = new StringTokenizer(line);
-			st.nextToken(); //node id
-			line = rd.readLine();
-			
-			//line contains coord x,y,z
-			st = new StringTokenizer(line);
-			String x1 = st.nextToken();
-			String y1 = st.nextToken();
-			String z1;
-			try
-			{
-				z1 = st.nextToken();
-			}
-			catch (java.util.NoSuchElementException ex)
-			{
-				z1="0.0";
-			}
-			
-			x1 = x1.replace('D','E');
-			y1 = y1.replace('D','E');
-			z1 = z1.replace('D','E');			
-			x = Double.parseDouble(x1)/unit;
-			y = Double.parseDouble(y1)/unit;
-			z = Double.parseDouble(z1)/unit;
-			out.addNode(x, y, z);	
+		double unit = in.nextDouble();
+		in.readLine();
+		while(!in.lineEquals("-1"))
+		{
+			unitBlock += in.getLine().trim();
+			in.readLine();
 		}
+		return unit;
 	}
 
-	private void convertFaces(BufferedReader rd, AmibeWriter.Dim3 out) throws IOException
-	{
-		LOGGER.fine("Reading triangles");
-		String line = "";
-		int nbTrias = 0;
-		int nbBeams = 0;
-		while (!(line=rd.readLine()).trim().equals("-1"))
-		{
-			// first line: type of object
-			StringTokenizer st = new StringTokenizer(line);
-			st.nextToken(); // face index
-			int type=Integer.parseInt(st.nextToken());
-			switch(type)
-			{
-				case 41:
-				case 51:
-				case 61:
-				case 74:
-				case 91:
-					line=rd.readLine();
-					// triangle
-					st = new StringTokenizer(line);
-					int p1, p2, p3;
-					p1 = Integer.parseInt(st.nextToken());
-					p2 = Integer.parseInt(st.nextToken());
-					p3 = Integer.parseInt(st.nextToken());
-					out.addTriangle(p1-1, p2-1, p3-1);
-					idMapping.add(nbTrias, IDMapping.TRIAS);
-					nbTrias ++;
-					break;
-				case 94:
-					break; //ignored
-				case 11: //rod
-				case 21: //linear beam
-					Element21 beam = new Element21(line, rd);
-					out.addBeam(beam.getNode(0)-1, beam.getNode(1)-1);
-					idMapping.add(nbBeams, IDMapping.BEAMS);
-					nbBeams ++;
-					break;
-				case 22:
-				case 24:  // parabolic beam
-					Element24 b = new Element24(line, rd);
-					out.addBeam(b.getNode(0) - 1, b.getNode(2) - 1);
-					idMapping.add(nbBeams, IDMapping.BEAMS);
-					nbBeams++;
-					break;
-				case 42:
-				case 92: //parabolic triangles
-					Element92 e=new Element92(line, rd);
-					out.addTriangle(e.getNode(0)-1, e.getNode(2)-1, e.getNode(4)-1);
-					idMapping.add(nbTrias, IDMapping.TRIAS);
-					nbTrias ++;
-					break;
-				case 118: //tetra
-					//skip it
-					rd.readLine();
-					rd.readLine();
-				case 111: //tetra
-					//skip it
-					rd.readLine();
-					break;
-				default:
-					LOGGER.log(Level.WARNING, "Warning: Section 2412, type {0} unknown", type);
-			}			
-		}
-	}
-	
 	public final void setStripedUnv(String file)
 	{
 		stripedUnvFile=file;
@@ -539,6 +782,19 @@ public class UNV2Amibe
 		this.scale = scale;
 	}
 
+	/**
+	 * Set the number of threads used to parse nodes and elements when
+	 * importing a file.
+	 * @param threads  number of threads, if this number is not
+	 * positive, all available processors are used
+	 */
+	public final void setThreads(int threads)
+	{
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		this.threads = threads;
+	}
+
 	public static void main(String[] args)
 	{
 		try
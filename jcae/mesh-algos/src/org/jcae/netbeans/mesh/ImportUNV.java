@@ -63,6 +63,7 @@ public final class ImportUNV extends CookieAction
 					c.getPrimaryFile().getParent(), prefix, "-strp.unv");
 				UNV2Amibe u = new UNV2Amibe();
 				u.setStripedUnv(new File(reference, strp).getPath());
+				u.setThreads(0);
 				u.importMesh(selectedFile, xmlDir);
 				c.refreshGroups();
 			}
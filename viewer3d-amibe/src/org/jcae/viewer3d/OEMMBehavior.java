@@ -41,6 +41,7 @@ import javax.vecmath.Vector3d;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.oemm.LeafCache;
 import org.jcae.mesh.oemm.OEMM;
 import org.jcae.mesh.oemm.MeshReader;
 import org.jcae.viewer3d.bg.ViewableBG;
@@ -54,6 +55,8 @@ public class OEMMBehavior extends Behavior
 {
 	private static Logger logger = Logger.getLogger(OEMMBehavior.class.getName());
 	private static final int DEFAULT_MAX_TRIANGLES_NBR = -1;
+	// Size of leaf cache, in megabytes
+	private static final long DEFAULT_CACHE_SIZE = 64L;
 	private boolean frozen = false;
 	private MeshReader coarseReader;
 	private MeshReader fineReader;
@@ -166,6 +169,9 @@ public class OEMMBehavior extends Behavior
 		canvas.add(new ViewableBG(visibleMeshBranchGroup));
 		boolean cloneBoundaryTriangles = Boolean.getBoolean("org.jcae.viewer3d.OEMMBehavior.cloneBoundaryTriangles");
 		
+		long cacheSize = Long.getLong("org.jcae.viewer3d.OEMMBehavior.cacheSize", DEFAULT_CACHE_SIZE).longValue();
+		if (cacheSize > 0L)
+			oemm.setLeafCache(new LeafCache(oemm, cacheSize << 20));
 		fineReader = new MeshReader(oemm);
 		fineReader.setLoadNonReadableTriangles(true);
 
@@ -0,0 +1,141 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.vtk;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import org.jcae.mesh.TestFiles;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.xmldata.AmibeReader;
+import org.jcae.mesh.xmldata.AmibeReader.Group;
+import org.jcae.mesh.xmldata.AmibeReader.SubMesh;
+import org.jcae.mesh.xmldata.MeshWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AmibeVisuCacheTest
+{
+	private File dir;
+
+	/** Write a 10x10 grid with 3 groups of triangles and a group of beams */
+	@Before public void writeMesh() throws IOException
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		int n = 10;
+		Vertex[] v = new Vertex[(n + 1) * (n + 1)];
+		for (int j = 0; j <= n; j++)
+			for (int i = 0; i <= n; i++)
+				v[i + j * (n + 1)] = mesh.createVertex(i, j, 0.1 * i * j);
+		for (int j = 0; j < n; j++)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				int k = i + j * (n + 1);
+				Triangle t1 = mesh.createTriangle(v[k], v[k + 1], v[k + n + 2]);
+				Triangle t2 = mesh.createTriangle(v[k], v[k + n + 2], v[k + n + 1]);
+				t1.setGroupId(1 + j % 3);
+				t2.setGroupId(1 + j % 3);
+				mesh.add(t1);
+				mesh.add(t2);
+			}
+		}
+		for (int i = 0; i < n; i++)
+			mesh.addBeam(v[i], v[i + 1], 4);
+		mesh.setGroupName(1, "first");
+		mesh.setGroupName(2, "second");
+		mesh.setGroupName(3, "third");
+		mesh.setGroupName(4, "beams");
+		dir = File.createTempFile("visucache", ".dir");
+		dir.delete();
+		MeshWriter.writeObject3D(mesh, dir.getPath(), null);
+	}
+
+	@After public void deleteMesh()
+	{
+		TestFiles.delete(dir);
+	}
+
+	private static void assertBlockEquals(AmibeVisuCache.Block expected,
+		AmibeVisuCache.Block actual)
+	{
+		assertNotNull(actual);
+		assertEquals(expected.count, actual.count);
+		assertArrayEquals(expected.nodes, actual.nodes, 0.0f);
+		assertArrayEquals(expected.cells, actual.cells);
+	}
+
+	@Test public void roundTrip() throws Exception
+	{
+		AmibeReader.Dim3 reader = new AmibeReader.Dim3(dir.getPath());
+		AmibeVisuCache cache = AmibeVisuCache.open(dir.getPath(), reader, true);
+		assertNotNull(cache);
+		SubMesh sm = reader.getSubmeshes().get(0);
+		List<Group> grps = sm.getGroups();
+		assertEquals(4, grps.size());
+		for (int i = 0; i < grps.size(); i++)
+		{
+			assertBlockEquals(AmibeToMesh.readTriangles(sm, grps.get(i)),
+				cache.getTriangles(i));
+			assertBlockEquals(AmibeToMesh.readBeams(sm, grps.get(i)),
+				cache.getBeams(i));
+		}
+		assertNull(cache.getTriangles(grps.size()));
+	}
+
+	@Test public void littleEndian() throws Exception
+	{
+		AmibeReader.Dim3 reader = new AmibeReader.Dim3(dir.getPath());
+		assertNotNull(AmibeVisuCache.open(dir.getPath(), reader, true));
+		DataInputStream in = new DataInputStream(new FileInputStream(
+			new File(dir, AmibeVisuCache.FILE_NAME)));
+		try
+		{
+			assertEquals(Integer.reverseBytes(AmibeVisuCache.MAGIC), in.readInt());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	@Test public void reuse() throws Exception
+	{
+		AmibeReader.Dim3 reader = new AmibeReader.Dim3(dir.getPath());
+		File file = new File(dir, AmibeVisuCache.FILE_NAME);
+		assertNull(AmibeVisuCache.open(dir.getPath(), reader, false));
+		assertFalse(file.exists());
+		assertNotNull(AmibeVisuCache.open(dir.getPath(), reader, true));
+		assertTrue(file.exists());
+		file.setLastModified(0L);
+		// A valid cache is neither rewritten nor ignored
+		assertNotNull(AmibeVisuCache.open(dir.getPath(), reader, false));
+		assertNotNull(AmibeVisuCache.open(dir.getPath(), reader, true));
+		assertEquals(0L, file.lastModified());
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.vtk;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LevelOfDetailGeneratorTest
+{
+	private static final int N = 40;
+
+	/** Nodes of a NxN grid on a smooth surface */
+	private static float[] createNodes()
+	{
+		float[] nodes = new float[3 * (N + 1) * (N + 1)];
+		for (int j = 0; j <= N; j++)
+		{
+			for (int i = 0; i <= N; i++)
+			{
+				int k = 3 * (i + j * (N + 1));
+				nodes[k] = i;
+				nodes[k + 1] = j;
+				nodes[k + 2] = (float) (5.0 * Math.sin(i * 0.1) * Math.cos(j * 0.1));
+			}
+		}
+		return nodes;
+	}
+
+	/** Triangles of the grid, as a VTK cell array */
+	private static int[] createPolys()
+	{
+		int[] polys = new int[8 * N * N];
+		int offset = 0;
+		for (int j = 0; j < N; j++)
+		{
+			for (int i = 0; i < N; i++)
+			{
+				int k = i + j * (N + 1);
+				polys[offset++] = 3;
+				polys[offset++] = k;
+				polys[offset++] = k + 1;
+				polys[offset++] = k + N + 2;
+				polys[offset++] = 3;
+				polys[offset++] = k;
+				polys[offset++] = k + N + 2;
+				polys[offset++] = k + N + 1;
+			}
+		}
+		return polys;
+	}
+
+	private static Set<String> boundaryNodes(float[] nodes)
+	{
+		Set<String> ret = new HashSet<String>();
+		for (int i = 0; i < nodes.length; i += 3)
+		{
+			if (nodes[i] == 0 || nodes[i] == N || nodes[i + 1] == 0 || nodes[i + 1] == N)
+				ret.add(nodes[i]+" "+nodes[i + 1]+" "+nodes[i + 2]);
+		}
+		return ret;
+	}
+
+	@Test public void decimate()
+	{
+		float[] nodes = createNodes();
+		int[] polys = createPolys();
+		LevelOfDetailGenerator generator = new LevelOfDetailGenerator(3, 0.25);
+		generator.setMinTriangles(50);
+		AmibeVisuCache.Block[] levels = generator.decimate(nodes, polys);
+		// 3200, 800 and 200 triangles, the third level is dropped because
+		// the 160 boundary edges prevent decimation
+		assertEquals(2, levels.length);
+
+		Set<String> boundary = boundaryNodes(nodes);
+		assertEquals(4 * N, boundary.size());
+		int previous = 2 * N * N;
+		for (AmibeVisuCache.Block level : levels)
+		{
+			assertEquals(4 * level.count, level.cells.length);
+			// maxtriangles is only an approximate target
+			assertTrue(level.count < previous / 4 + previous / 20);
+			// Boundary vertices are frozen, they are all kept
+			// and no other vertex is moved onto the boundary
+			assertEquals(boundary, boundaryNodes(level.nodes));
+			previous = level.count;
+		}
+	}
+
+	@Test public void minTriangles()
+	{
+		LevelOfDetailGenerator generator = new LevelOfDetailGenerator(3, 0.25);
+		generator.setMinTriangles(500);
+		AmibeVisuCache.Block[] levels = generator.decimate(createNodes(), createPolys());
+		// 3200 triangles, second level would have less than 500
+		assertEquals(1, levels.length);
+		assertTrue(levels[0].count < 880);
+	}
+
+	@Test public void bounds()
+	{
+		double[] bounds = LevelOfDetailGenerator.getBounds(createNodes());
+		assertEquals(0.0, bounds[0], 0.0);
+		assertEquals(N, bounds[1], 0.0);
+		assertEquals(0.0, bounds[2], 0.0);
+		assertEquals(N, bounds[3], 0.0);
+		assertTrue(bounds[4] < 0.0 && bounds[5] > 0.0);
+	}
+}
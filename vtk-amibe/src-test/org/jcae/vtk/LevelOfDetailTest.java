@@ -0,0 +1,49 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.vtk;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LevelOfDetailTest
+{
+	private static final int[] POLYS = { 0, 800, 200, 50 };
+
+	@Test public void selectLevel()
+	{
+		// 10 pixels wide, 4 pixels per polygon: 25 polygons are enough
+		assertEquals(3, LevelOfDetail.selectLevel(POLYS, 10.0, 4.0));
+		assertEquals(2, LevelOfDetail.selectLevel(POLYS, 20.0, 4.0));
+		assertEquals(1, LevelOfDetail.selectLevel(POLYS, 50.0, 4.0));
+		// Finer than all decimated levels
+		assertEquals(0, LevelOfDetail.selectLevel(POLYS, 100.0, 4.0));
+	}
+
+	@Test public void exactCount()
+	{
+		assertEquals(3, LevelOfDetail.selectLevel(POLYS, 10.0, 2.0));
+	}
+
+	@Test public void singleLevel()
+	{
+		assertEquals(0, LevelOfDetail.selectLevel(new int[] { 0 }, 1.0, 4.0));
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.vtk;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UNVIndexTest
+{
+	private File unv;
+
+	@Before public void createFile() throws IOException
+	{
+		unv = File.createTempFile("unvindex", ".unv");
+	}
+
+	@After public void deleteFiles()
+	{
+		unv.delete();
+		new File(unv.getPath()+".index").delete();
+		new File(unv.getPath()+".gz").delete();
+	}
+
+	/**
+	 * Writes a NxM grid in millimeters.  Cells are split into two
+	 * triangles, except every third one which is a quad, and the bottom
+	 * edge is made of beams.  Labels are not contiguous.  Group "left"
+	 * contains cells with i &lt; N/2, "right" the other cells, "beams"
+	 * the beams and "mixed" the first cell of each row and every 3rd
+	 * beam.
+	 */
+	private static void writeGrid(OutputStream os, int n, int m)
+	{
+		PrintStream out = new PrintStream(os);
+		out.println("    -1");
+		out.println("   164");
+		out.println("         5mm (milli-newton)            2");
+		out.println("  1.00000000000000000D+03  1.00000000000000000D+03  1.00000000000000000D+00");
+		out.println("  2.73149999999999977D+02");
+		out.println("    -1");
+		out.println("    -1");
+		out.println("  2411");
+		for (int j = 0; j <= m; j++)
+		{
+			for (int i = 0; i <= n; i++)
+			{
+				out.println(i10(nodeLabel(i, j, n))+"         1         1         1");
+				out.println(d25(17.0 * i)+d25(11.0 * j)+d25(0.5 * i * j));
+			}
+		}
+		out.println("    -1");
+		out.println("    -1");
+		out.println("  2412");
+		List<List<Integer>> groups = new ArrayList<List<Integer>>();
+		for (int g = 0; g < 4; g++)
+			groups.add(new ArrayList<Integer>());
+		int label = 5;
+		for (int j = 0; j < m; j++)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				int n0 = nodeLabel(i, j, n);
+				int n1 = nodeLabel(i + 1, j, n);
+				int n2 = nodeLabel(i + 1, j + 1, n);
+				int n3 = nodeLabel(i, j + 1, n);
+				List<Integer> g = groups.get(2 * i < n ? 0 : 1);
+				if ((i + j) % 3 == 0)
+				{
+					out.println(i10(label)+"        94         1         1         1         4");
+					out.println(i10(n0)+i10(n1)+i10(n2)+i10(n3));
+					g.add(label);
+					if (i == 0)
+						groups.get(3).add(label);
+					label += 3;
+				}
+				else
+				{
+					out.println(i10(label)+"        91         1         1         1         3");
+					out.println(i10(n0)+i10(n1)+i10(n2));
+					g.add(label);
+					if (i == 0)
+						groups.get(3).add(label);
+					label += 3;
+					out.println(i10(label)+"        91         1         1         1         3");
+					out.println(i10(n0)+i10(n2)+i10(n3));
+					g.add(label);
+					label += 3;
+				}
+			}
+		}
+		for (int i = 0; i < n; i++)
+		{
+			out.println(i10(label)+"        21         1         1         1         2");
+			out.println("         0         1         1");
+			out.println(i10(nodeLabel(i, 0, n))+i10(nodeLabel(i + 1, 0, n)));
+			groups.get(2).add(label);
+			if (i % 3 == 0)
+				groups.get(3).add(label);
+			label += 3;
+		}
+		out.println("    -1");
+		out.println("    -1");
+		out.println("  2435");
+		String[] names = new String[] { "left", "right", "beams", "mixed" };
+		for (int g = 0; g < names.length; g++)
+		{
+			List<Integer> ids = groups.get(g);
+			out.println(i10(g + 1)+"         0         0         0         0         0         0"+i10(ids.size()));
+			out.println(names[g]);
+			for (int k = 0; k < ids.size(); k++)
+			{
+				out.print("         8"+i10(ids.get(k))+"         0         0");
+				if (k % 2 == 1 || k == ids.size() - 1)
+					out.println();
+			}
+		}
+		out.println("    -1");
+		out.flush();
+	}
+
+	private static int nodeLabel(int i, int j, int n)
+	{
+		return 2 * (i + j * (n + 1)) + 1;
+	}
+
+	private static String i10(int i)
+	{
+		return String.format("%10d", i);
+	}
+
+	private static String d25(double d)
+	{
+		return String.format("%25.16E", d).replace('E', 'D');
+	}
+
+	private void writeGrid(int n, int m) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(unv);
+		try {
+			writeGrid(out, n, m);
+		} finally {
+			out.close();
+		}
+	}
+
+	private UNVParser parse() throws IOException
+	{
+		UNVParser parser = new UNVParser();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(unv)));
+		try {
+			parser.parse(in);
+		} finally {
+			in.close();
+		}
+		return parser;
+	}
+
+	/** Elements as sorted strings of node indices */
+	private static List<String> elements(int[] indices, int nbNodes)
+	{
+		List<String> toReturn = new ArrayList<String>();
+		for (int i = 0; i < indices.length; i += nbNodes)
+			toReturn.add(Arrays.toString(Arrays.copyOfRange(indices, i, i + nbNodes)));
+		Collections.sort(toReturn);
+		return toReturn;
+	}
+
+	/** Checks that index and parser return the same groups */
+	private static void compare(UNVIndex index, UNVParser parser) throws IOException
+	{
+		assertTrue(index.isSupported());
+		assertArrayEquals(parser.getGroupNames(), index.getGroupNames());
+		int nbNodes = index.getNumberOfNodes();
+		int[] all = new int[nbNodes];
+		for (int i = 0; i < nbNodes; i++)
+			all[i] = i;
+		assertArrayEquals(parser.getNodesCoordinates(), index.readNodes(all), 0.0f);
+		for (int g = 0; g < parser.getGroupNames().length; g++)
+		{
+			assertEquals(elements(parser.getTria3FromGroup(g), 3),
+				elements(index.getTria3FromGroup(g), 3));
+			assertEquals(elements(parser.getQuad4FromGroup(g), 4),
+				elements(index.getQuad4FromGroup(g), 4));
+			assertEquals(elements(parser.getBeam2FromGroup(g), 2),
+				elements(index.getBeam2FromGroup(g), 2));
+		}
+	}
+
+	@Test public void groups() throws IOException
+	{
+		// More than 256 nodes and elements, so that records are read
+		// from several chunks
+		writeGrid(30, 20);
+		UNVIndex index = UNVIndex.open(unv.getPath());
+		UNVParser parser = parse();
+		assertArrayEquals(new String[] { "left", "right", "beams", "mixed" }, index.getGroupNames());
+		assertEquals(31 * 21, index.getNumberOfNodes());
+		assertEquals(30, index.getBeam2FromGroup(2).length / 2);
+		assertTrue(index.getQuad4FromGroup(0).length > 0);
+		assertTrue(index.getTria3FromGroup(3).length > 0);
+		compare(index, parser);
+		// Coordinates are divided by unit
+		float[] xyz = index.readNodes(new int[] { 31 * 21 - 1 });
+		assertEquals(0.017f * 30, xyz[0], 1.e-6f);
+		assertEquals(0.011f * 20, xyz[1], 1.e-6f);
+
+		// Index file is written and read back
+		assertTrue(new File(unv.getPath()+".index").exists());
+		compare(UNVIndex.open(unv.getPath()), parser);
+	}
+
+	@Test public void rebuild() throws IOException
+	{
+		writeGrid(30, 20);
+		UNVIndex.open(unv.getPath());
+		long time = unv.lastModified();
+		// Same file length, different content
+		writeGrid(20, 30);
+		unv.setLastModified(time + 2000L);
+		UNVIndex index = UNVIndex.open(unv.getPath());
+		assertEquals(21 * 31, index.getNumberOfNodes());
+		compare(index, parse());
+	}
+
+	/** Quads used to be built from the triangle array */
+	@Test public void unvToMeshQuads() throws IOException
+	{
+		writeGrid(6, 4);
+		UNVParser parser = parse();
+		float[] coords = parser.getNodesCoordinates();
+		int[] quads = parser.getQuad4FromGroup(0);
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < quads.length; i += 4)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int k = i; k < i + 4; k++)
+				sb.append(coords[3 * quads[k]]).append(' ').append(coords[3 * quads[k] + 1]).append(' ');
+			expected.add(sb.toString());
+		}
+		Collections.sort(expected);
+		assertFalse(expected.isEmpty());
+
+		// Compressed files are read by UNVParser, others through UNVIndex
+		OutputStream gz = new GZIPOutputStream(new FileOutputStream(unv.getPath()+".gz"));
+		try {
+			writeGrid(gz, 6, 4);
+		} finally {
+			gz.close();
+		}
+		for (String path : new String[] { unv.getPath(), unv.getPath()+".gz" })
+		{
+			Map<String, LeafNode.DataProvider> mesh = new UNVToMesh(path, null).getMesh();
+			LeafNode.DataProvider left = mesh.get("left");
+			left.load();
+			float[] nodes = left.getNodes();
+			int[] polys = left.getPolys();
+			List<String> found = new ArrayList<String>();
+			for (int i = 0; i < polys.length; i += polys[i] + 1)
+			{
+				if (polys[i] != 4)
+					continue;
+				StringBuilder sb = new StringBuilder();
+				for (int k = i + 1; k <= i + 4; k++)
+					sb.append(nodes[3 * polys[k]]).append(' ').append(nodes[3 * polys[k] + 1]).append(' ');
+				found.add(sb.toString());
+			}
+			Collections.sort(found);
+			assertEquals(path, expected, found);
+		}
+	}
+}
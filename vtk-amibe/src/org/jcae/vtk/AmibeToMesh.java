@@ -24,11 +24,14 @@ import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 import gnu.trove.map.hash.TIntIntHashMap;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.xmldata.AmibeReader;
@@ -65,7 +68,7 @@ public class AmibeToMesh
 	 * @param trias the triangles which require nodes
 	 * @return the nodes id
 	 */
-	private static int[] makeNodeIDArray(int[] ... ids)
+	static int[] makeNodeIDArray(int[] ... ids)
 	{
 		int n = 0;
 		for(int[] id:ids)
@@ -79,7 +82,7 @@ public class AmibeToMesh
 		return list.toArray();
 	}
 
-	private static  void renumberArray(int[] newIndices, int[] ... arraysToRenumber)
+	static void renumberArray(int[] newIndices, int[] ... arraysToRenumber)
 	{
 		TIntIntHashMap map = new TIntIntHashMap(newIndices.length);
 		for (int i = 0; i < newIndices.length; i++)
@@ -124,28 +127,53 @@ public class AmibeToMesh
 		}
 		return fCells;
 	}
+	/** Read the triangles of a group and convert them to VTK cells */
+	static AmibeVisuCache.Block readTriangles(SubMesh sm, Group g) throws IOException
+	{
+		int[] triangles = g.readTria3();
+		int[] nodesID = makeNodeIDArray(triangles);
+		float[] nodes = sm.readNodes(nodesID);
+		renumberArray(nodesID, triangles);
+		return new AmibeVisuCache.Block(nodes, createTriangleCells(triangles, 0),
+			triangles.length/3);
+	}
+
+	/** Read the beams of a group and convert them to VTK cells */
+	static AmibeVisuCache.Block readBeams(SubMesh sm, Group g) throws IOException
+	{
+		int[] beams = g.readBeams();
+		int[] nodesID = makeNodeIDArray(beams);
+		float[] nodes = sm.readNodes(nodesID);
+		renumberArray(nodesID, beams);
+		return new AmibeVisuCache.Block(nodes, createBeamCells(beams),
+			beams.length/2);
+	}
+
 	private static class TriaData extends LeafNode.DataProvider
 	{
 		private final AmibeReader.Dim3 provider;
+		private final AmibeVisuCache cache;
 		private final String id;
+		private final int cacheId;
 		
-		TriaData(AmibeReader.Dim3  provider, String id)
+		TriaData(AmibeReader.Dim3  provider, AmibeVisuCache cache, String id, int cacheId)
 		{
 			this.provider = provider;
+			this.cache = cache;
 			this.id = id;
+			this.cacheId = cacheId;
 		}
 
 		@Override
 		public void load()
 		{
+			if(cache != null && cache.loadTriangles(cacheId, this))
+				return;
 			try {
 				SubMesh sm = provider.getSubmeshes().get(0);
-				Group g = sm.getGroup(id);
-				int[] triangles = g.readTria3();
-				int[] nodesID = makeNodeIDArray(triangles);
-				setNodes(sm.readNodes(nodesID));
-				renumberArray(nodesID, triangles);
-				setPolys(triangles.length/3, createTriangleCells(triangles, 0));
+				AmibeVisuCache.Block b = readTriangles(sm, sm.getGroup(id));
+				setNodes(b.nodes);
+				setPolys(b.count, b.cells);
 			} catch (IOException ex) {
 				LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
 			}
@@ -155,25 +183,28 @@ public class AmibeToMesh
 	private static class BeamData extends LeafNode.DataProvider
 	{
 		private final AmibeReader.Dim3 provider;
+		private final AmibeVisuCache cache;
 		private final String id;
+		private final int cacheId;
 
-		BeamData(AmibeReader.Dim3  provider, String id)
+		BeamData(AmibeReader.Dim3  provider, AmibeVisuCache cache, String id, int cacheId)
 		{
 			this.provider = provider;
+			this.cache = cache;
 			this.id = id;
+			this.cacheId = cacheId;
 		}
 
 		@Override
 		public void load()
 		{
+			if(cache != null && cache.loadBeams(cacheId, this))
+				return;
 			try {
 				SubMesh sm = provider.getSubmeshes().get(0);
-				Group g = sm.getGroup(id);
-				int[] beams = g.readBeams();
-				int[] nodesID = makeNodeIDArray(beams);
-				setNodes(sm.readNodes(nodesID));
-				renumberArray(nodesID, beams);
-				setLines(createBeamCells(beams));
+				AmibeVisuCache.Block b = readBeams(sm, sm.getGroup(id));
+				setNodes(b.nodes);
+				setLines(b.cells);
 			} catch (IOException ex) {
 				LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
 			}
@@ -185,13 +216,35 @@ public class AmibeToMesh
 		this(filePath, null);
 	}
 
+	/**
+	 * @param filePath directory of the Amibe mesh
+	 * @param groupExtraction names of groups to load, or <code>null</code>
+	 * to load all groups
+	 */
 	public AmibeToMesh(String filePath, String[] groupExtraction)
 		throws SAXException, IOException
+	{
+		this(filePath, groupExtraction, true);
+	}
+
+	/**
+	 * @param filePath directory of the Amibe mesh
+	 * @param groupExtraction names of groups to load, or <code>null</code>
+	 * to load all groups
+	 * @param useCache if <code>true</code>, groups are loaded from a
+	 * visualization cache file stored in <code>filePath</code>, which is
+	 * created or updated if all groups are loaded
+	 */
+	public AmibeToMesh(String filePath, String[] groupExtraction, boolean useCache)
+		throws SAXException, IOException
 	{		
 		triaCount = 0;
 		AmibeReader.Dim3 reader = new AmibeReader.Dim3(filePath);
 		SubMesh sm = reader.getSubmeshes().get(0);
 		List<Group> grps = sm.getGroups();
+		// Only build the cache when all groups are loaded
+		AmibeVisuCache cache = useCache ? AmibeVisuCache.open(filePath, reader,
+			groupExtraction == null) : null;
 		if(groupExtraction == null)
 		{			
 			groupExtraction = new String[grps.size()];
@@ -204,13 +257,14 @@ public class AmibeToMesh
 			Group g = sm.getGroup(id);
 			if(g != null)
 			{
+				int cacheId = grps.indexOf(g);
 				if(g.getNumberOfTrias() > 0)
 				{
 					triaCount += g.getNumberOfTrias();	
-					triangles.put(id, new TriaData(reader, id));
+					triangles.put(id, new TriaData(reader, cache, id, cacheId));
 				}
 				if(g.getNumberOfBeams() > 0)
-					beams.put(id, new BeamData(reader, id));
+					beams.put(id, new BeamData(reader, cache, id, cacheId));
 			}
 		}
 	}
@@ -219,4 +273,30 @@ public class AmibeToMesh
 	{
 		return triaCount;
 	}
+
+	/**
+	 * Compute levels of detail of triangle groups in background.  Each
+	 * group is loaded again by its task, so the data providers returned
+	 * by getTriangles() can be used meanwhile.
+	 * @return one task per group
+	 */
+	public List<Future<?>> computeLevelsOfDetail(ExecutorService executor,
+		final LevelOfDetailGenerator generator)
+	{
+		List<Future<?>> toReturn = new ArrayList<Future<?>>(triangles.size());
+		for(LeafNode.DataProvider dp : triangles.values())
+		{
+			final TriaData data = (TriaData) dp;
+			toReturn.add(executor.submit(new Runnable()
+			{
+				public void run()
+				{
+					TriaData copy = new TriaData(data.provider, data.cache, data.id, data.cacheId);
+					copy.load();
+					generator.compute(data, copy.getNodes(), copy.getPolys());
+				}
+			}));
+		}
+		return toReturn;
+	}
 }
\ No newline at end of file
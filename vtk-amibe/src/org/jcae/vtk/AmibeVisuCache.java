@@ -0,0 +1,359 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.vtk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jcae.mesh.xmldata.AmibeReader;
+import org.jcae.mesh.xmldata.AmibeReader.Group;
+import org.jcae.mesh.xmldata.AmibeReader.SubMesh;
+
+/**
+ * Visualization data of all groups of an Amibe mesh, stored in a file
+ * next to the mesh.  For each group, node coordinates are compacted and
+ * converted to float, and triangles and beams are stored as VTK cell
+ * arrays, so that loading a group only copies a slice of this file.
+ * Slices are memory-mapped when groups are loaded, and the file is
+ * rebuilt when mesh files change.  Groups are identified by their
+ * position in {@link SubMesh#getGroups()}.
+ *
+ * File layout, in little-endian byte order:
+ * <pre>
+ * int magic, int version, long signature, long index offset
+ * for each group: float[] triangle nodes, int[] triangle cells,
+ *                 float[] beam nodes, int[] beam cells
+ * int number of groups
+ * for each group: long offset, int nodes, int triangles,
+ *                 long offset, int nodes, int beams
+ * </pre>
+ */
+class AmibeVisuCache
+{
+	private final static Logger LOGGER=Logger.getLogger(AmibeVisuCache.class.getName());
+	static final String FILE_NAME = "jcae3d.visu";
+	static final int MAGIC = 0x4a564953;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 24;
+	private static final int ENTRY_SIZE = 16;
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/** Nodes and cells of a group, either triangles or beams */
+	static class Block
+	{
+		final float[] nodes;
+		final int[] cells;
+		final int count;
+
+		Block(float[] nodes, int[] cells, int count)
+		{
+			this.nodes = nodes;
+			this.cells = cells;
+			this.count = count;
+		}
+	}
+
+	/** Location of a block in cache file */
+	private static class Entry
+	{
+		final long offset;
+		final int nbNodes;
+		final int count;
+
+		Entry(long offset, int nbNodes, int count)
+		{
+			this.offset = offset;
+			this.nbNodes = nbNodes;
+			this.count = count;
+		}
+	}
+
+	private final File file;
+	private final Entry[][] groups;
+
+	private AmibeVisuCache(File file, Entry[][] groups)
+	{
+		this.file = file;
+		this.groups = groups;
+	}
+
+	/**
+	 * Opens the cache of a mesh.
+	 * @param path directory of the Amibe mesh
+	 * @param create if <code>true</code>, the cache is created if it does
+	 * not exist or is out of date
+	 * @return <code>null</code> if the cache cannot be used
+	 */
+	static AmibeVisuCache open(String path, AmibeReader.Dim3 reader, boolean create)
+	{
+		File file = new File(path, FILE_NAME);
+		try {
+			long signature = signature(path);
+			SubMesh sm = reader.getSubmeshes().get(0);
+			int nbGroups = sm.getGroups().size();
+			if (file.exists() && isValid(file, signature))
+				return read(file, nbGroups);
+			if (!create)
+				return null;
+			write(file, signature, sm);
+			return read(file, nbGroups);
+		} catch (IOException ex) {
+			LOGGER.log(Level.WARNING, "Cannot use "+file+": "+ex.getMessage(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Copies the triangles of a group into a data provider
+	 * @param id position of the group in {@link SubMesh#getGroups()}
+	 * @return <code>false</code> if this group is not in the cache
+	 */
+	boolean loadTriangles(int id, LeafNode.DataProvider data)
+	{
+		Block b = getTriangles(id);
+		if (b == null)
+			return false;
+		data.setNodes(b.nodes);
+		data.setPolys(b.count, b.cells);
+		return true;
+	}
+
+	/**
+	 * Copies the beams of a group into a data provider
+	 * @param id position of the group in {@link SubMesh#getGroups()}
+	 * @return <code>false</code> if this group is not in the cache
+	 */
+	boolean loadBeams(int id, LeafNode.DataProvider data)
+	{
+		Block b = getBeams(id);
+		if (b == null)
+			return false;
+		data.setNodes(b.nodes);
+		data.setLines(b.cells);
+		return true;
+	}
+
+	Block getTriangles(int id)
+	{
+		return get(id, 0, 4);
+	}
+
+	Block getBeams(int id)
+	{
+		return get(id, 1, 3);
+	}
+
+	private Block get(int id, int i, int cellSize)
+	{
+		if (id < 0 || id >= groups.length)
+			return null;
+		Entry e = groups[id][i];
+		Block toReturn = new Block(new float[e.nbNodes],
+			new int[e.count * cellSize], e.count);
+		try {
+			ByteBuffer bb = map(file, e.offset,
+				4L * (toReturn.nodes.length + toReturn.cells.length));
+			bb.asFloatBuffer().get(toReturn.nodes);
+			bb.position(4 * toReturn.nodes.length);
+			bb.asIntBuffer().get(toReturn.cells);
+		} catch (IOException ex) {
+			LOGGER.log(Level.WARNING, "Cannot read "+file+": "+ex.getMessage(), ex);
+			return null;
+		}
+		return toReturn;
+	}
+
+	/** Maps a slice of a file, offsets are not limited to 2GB */
+	private static ByteBuffer map(File file, long offset, long size) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer mbb = raf.getChannel().map(
+				FileChannel.MapMode.READ_ONLY, offset, size);
+			mbb.order(ORDER);
+			return mbb;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/** Returns a value which changes when mesh files are modified */
+	private static long signature(String path)
+	{
+		List<File> files = new ArrayList<File>();
+		files.add(new File(path, "jcae3d"));
+		File[] bin = new File(path, "jcae3d.files").listFiles();
+		if (bin != null)
+		{
+			Arrays.sort(bin);
+			files.addAll(Arrays.asList(bin));
+		}
+		long h = 0;
+		for (File f : files)
+		{
+			h = 31 * h + f.getName().hashCode();
+			h = 31 * h + f.length();
+			h = 31 * h + f.lastModified();
+		}
+		return h;
+	}
+
+	/** Tells whether the header of a cache file matches mesh files */
+	private static boolean isValid(File file, long signature) throws IOException
+	{
+		if (file.length() < HEADER_SIZE)
+			return false;
+		ByteBuffer header = map(file, 0, HEADER_SIZE);
+		return header.getInt(0) == MAGIC && header.getInt(4) == VERSION &&
+			header.getLong(8) == signature;
+	}
+
+	private static AmibeVisuCache read(File file, int nbGroups) throws IOException
+	{
+		long indexOffset = map(file, 0, HEADER_SIZE).getLong(16);
+		ByteBuffer index = map(file, indexOffset, file.length() - indexOffset);
+		int n = index.getInt();
+		if (n != nbGroups || index.remaining() < n * 2 * ENTRY_SIZE)
+			throw new IOException("Corrupted index");
+		Entry[][] groups = new Entry[n][2];
+		for (int i = 0; i < n; i++)
+		{
+			for (int j = 0; j < 2; j++)
+			{
+				long offset = index.getLong();
+				int nbNodes = index.getInt();
+				int count = index.getInt();
+				groups[i][j] = new Entry(offset, nbNodes, count);
+			}
+		}
+		return new AmibeVisuCache(file, groups);
+	}
+
+	/**
+	 * Computes visualization data of all groups in parallel, and writes
+	 * them in group order.
+	 */
+	private static void write(File file, long signature, final SubMesh sm) throws IOException
+	{
+		long time = System.currentTimeMillis();
+		List<Group> grps = sm.getGroups();
+		File tmp = new File(file.getPath()+".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			long offset = HEADER_SIZE;
+			List<Entry[]> written = new ArrayList<Entry[]>(grps.size());
+			// Bound the number of groups kept in memory
+			LinkedList<Future<Block[]>> pending = new LinkedList<Future<Block[]>>();
+			int next = 0;
+			while (next < grps.size() || !pending.isEmpty())
+			{
+				while (next < grps.size() && pending.size() < 2 * threads)
+				{
+					final Group g = grps.get(next++);
+					pending.add(executor.submit(new Callable<Block[]>()
+					{
+						public Block[] call() throws IOException
+						{
+							return new Block[]{
+								AmibeToMesh.readTriangles(sm, g),
+								AmibeToMesh.readBeams(sm, g)};
+						}
+					}));
+				}
+				Block[] blocks = pending.removeFirst().get();
+				Entry[] entries = new Entry[2];
+				for (int j = 0; j < 2; j++)
+				{
+					Block b = blocks[j];
+					entries[j] = new Entry(offset, b.nodes.length, b.count);
+					ByteBuffer bb = ByteBuffer.allocate(4 * (b.nodes.length + b.cells.length));
+					bb.order(ORDER);
+					bb.asFloatBuffer().put(b.nodes);
+					bb.position(4 * b.nodes.length);
+					bb.asIntBuffer().put(b.cells);
+					bb.rewind();
+					writeFully(channel, bb, offset);
+					offset += bb.capacity();
+				}
+				written.add(entries);
+			}
+
+			ByteBuffer index = ByteBuffer.allocate(4 + grps.size() * 2 * ENTRY_SIZE);
+			index.order(ORDER);
+			index.putInt(grps.size());
+			for (Entry[] entries : written)
+			{
+				for (Entry e : entries)
+				{
+					index.putLong(e.offset);
+					index.putInt(e.nbNodes);
+					index.putInt(e.count);
+				}
+			}
+			index.flip();
+			writeFully(channel, index, offset);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.order(ORDER);
+			header.putInt(MAGIC).putInt(VERSION).putLong(signature).putLong(offset);
+			header.flip();
+			writeFully(channel, header, 0);
+		} catch (InterruptedException ex) {
+			throw new IOException(ex.getMessage());
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			throw new RuntimeException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+			raf.close();
+		}
+		if ((file.exists() && !file.delete()) || !tmp.renameTo(file))
+			throw new IOException("Cannot rename "+tmp+" to "+file);
+		LOGGER.fine("Wrote "+file+" in "+(System.currentTimeMillis()-time)+" ms");
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer bb, long offset)
+		throws IOException
+	{
+		while (bb.hasRemaining())
+			offset += channel.write(bb, offset);
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.vtk;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jcae.mesh.amibe.algos3d.QEMDecimateHalfEdge;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+
+/**
+ * Create levels of detail of triangle data with QEMDecimateHalfEdge.
+ * Each level has <code>ratio</code> times the number of triangles of the
+ * previous one, and is computed from the previous one.  Decimation only
+ * uses Amibe classes, so {@link #decimate} does not need VTK.
+ * @see LevelOfDetail
+ */
+public class LevelOfDetailGenerator
+{
+	private final int numberOfLevels;
+	private final double ratio;
+	private int minTriangles = 500;
+
+	/** Create a generator of 3 levels, dividing triangles by 4 */
+	public LevelOfDetailGenerator()
+	{
+		this(3, 0.25);
+	}
+
+	/**
+	 * @param numberOfLevels maximum number of decimated levels
+	 * @param ratio ratio between the number of triangles of two
+	 * consecutive levels
+	 */
+	public LevelOfDetailGenerator(int numberOfLevels, double ratio)
+	{
+		if (ratio <= 0.0 || ratio >= 1.0)
+			throw new IllegalArgumentException("Ratio must be in ]0, 1[: "+ratio);
+		this.numberOfLevels = numberOfLevels;
+		this.ratio = ratio;
+	}
+
+	/**
+	 * Set the minimum number of triangles of a level.  Levels which
+	 * would be smaller are not created.  Default is 500.
+	 */
+	public void setMinTriangles(int minTriangles)
+	{
+		this.minTriangles = minTriangles;
+	}
+
+	/**
+	 * Compute levels of detail of triangles and attach them to a data
+	 * provider.
+	 * @param target the data provider which receives levels of detail
+	 * @param nodes node coordinates
+	 * @param polys triangles, as a VTK cell array
+	 */
+	public void compute(LeafNode.DataProvider target, float[] nodes, int[] polys)
+	{
+		AmibeVisuCache.Block[] blocks = decimate(nodes, polys);
+		LeafNode.DataProvider[] levels = new LeafNode.DataProvider[blocks.length];
+		for (int i = 0; i < blocks.length; i++)
+		{
+			levels[i] = new LeafNode.DataProvider();
+			levels[i].setNodes(blocks[i].nodes);
+			levels[i].setPolys(blocks[i].count, blocks[i].cells);
+		}
+		target.setLevelsOfDetail(getBounds(nodes), levels);
+	}
+
+	/** Return bounds of nodes as {xmin, xmax, ymin, ymax, zmin, zmax} */
+	static double[] getBounds(float[] nodes)
+	{
+		double[] bounds = new double[]{
+			Double.MAX_VALUE, -Double.MAX_VALUE,
+			Double.MAX_VALUE, -Double.MAX_VALUE,
+			Double.MAX_VALUE, -Double.MAX_VALUE};
+		for (int i = 0; i < nodes.length; i++)
+		{
+			int k = 2 * (i % 3);
+			bounds[k] = Math.min(bounds[k], nodes[i]);
+			bounds[k + 1] = Math.max(bounds[k + 1], nodes[i]);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Decimate triangles.
+	 * @param nodes node coordinates
+	 * @param polys triangles, as a VTK cell array.  Other cells are ignored.
+	 * @return levels of detail, from finest to coarsest
+	 */
+	AmibeVisuCache.Block[] decimate(float[] nodes, int[] polys)
+	{
+		List<AmibeVisuCache.Block> levels = new ArrayList<AmibeVisuCache.Block>();
+		int previous = -1;
+		for (int i = 0; i < numberOfLevels; i++)
+		{
+			// QEMDecimateHalfEdge cannot be run twice on the same mesh,
+			// so each level is computed from a new mesh
+			Mesh mesh = createMesh(nodes, polys);
+			if (previous < 0)
+				previous = mesh.getTriangles().size();
+			int target = (int) (previous * ratio);
+			if (target < minTriangles)
+				break;
+			Map<String, String> options = new HashMap<String, String>();
+			options.put("maxtriangles", Integer.toString(target));
+			// Keep group boundaries, so that adjacent groups do not
+			// have gaps, and non-manifold vertices
+			options.put("freezeNonManifold", "true");
+			new QEMDecimateHalfEdge(mesh, options).compute();
+			AmibeVisuCache.Block level = toBlock(mesh);
+			// Stop when boundaries prevent decimation
+			if (level.count > (1.0 + ratio) * previous / 2.0)
+				break;
+			levels.add(level);
+			previous = level.count;
+			nodes = level.nodes;
+			polys = level.cells;
+		}
+		return levels.toArray(new AmibeVisuCache.Block[levels.size()]);
+	}
+
+	private static Mesh createMesh(float[] nodes, int[] polys)
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		Vertex[] vertices = new Vertex[nodes.length / 3];
+		for (int i = 0; i < vertices.length; i++)
+			vertices[i] = mesh.createVertex(nodes[3*i], nodes[3*i+1], nodes[3*i+2]);
+		for (int i = 0; i < polys.length; i += polys[i] + 1)
+		{
+			if (polys[i] == 3)
+				mesh.add(mesh.createTriangle(vertices[polys[i+1]],
+					vertices[polys[i+2]], vertices[polys[i+3]]));
+		}
+		mesh.buildAdjacency();
+		return mesh;
+	}
+
+	private static AmibeVisuCache.Block toBlock(Mesh mesh)
+	{
+		TObjectIntHashMap<Vertex> ids = new TObjectIntHashMap<Vertex>(
+			mesh.getTriangles().size(), 0.5f, -1);
+		float[] nodes = new float[3 * mesh.getTriangles().size()];
+		int[] cells = new int[4 * mesh.getTriangles().size()];
+		int nbrOfNodes = 0;
+		int nbrOfTriangles = 0;
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			cells[4 * nbrOfTriangles] = 3;
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex v = t.getV(i);
+				int id = ids.putIfAbsent(v, nbrOfNodes);
+				if (id == -1)
+				{
+					id = nbrOfNodes++;
+					if (3 * nbrOfNodes > nodes.length)
+					{
+						float[] larger = new float[2 * nodes.length];
+						System.arraycopy(nodes, 0, larger, 0, nodes.length);
+						nodes = larger;
+					}
+					nodes[3 * id] = (float) v.getX();
+					nodes[3 * id + 1] = (float) v.getY();
+					nodes[3 * id + 2] = (float) v.getZ();
+				}
+				cells[4 * nbrOfTriangles + i + 1] = id;
+			}
+			nbrOfTriangles++;
+		}
+		float[] n = new float[3 * nbrOfNodes];
+		System.arraycopy(nodes, 0, n, 0, n.length);
+		int[] c = new int[4 * nbrOfTriangles];
+		System.arraycopy(cells, 0, c, 0, c.length);
+		return new AmibeVisuCache.Block(n, c, nbrOfTriangles);
+	}
+}
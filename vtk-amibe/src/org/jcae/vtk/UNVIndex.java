@@ -0,0 +1,745 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.vtk;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jcae.mesh.xmldata.DoubleParser;
+
+/**
+ * Random access to the groups of a UNV file.  The file is scanned once to
+ * record labels and byte offsets of nodes, elements and groups, and this
+ * index is stored next to the UNV file.  Elements and nodes of a group are
+ * then read by positional reads, so that the whole file is never kept in
+ * memory.
+ *
+ * Nodes and elements are indexed by their position in the file.  Every
+ * {@value #CHUNK_SIZE} records, the offset of the record is stored, and a
+ * record is read by parsing its chunk from this offset.
+ *
+ * Compressed files cannot be read by offsets, and load sets (dataset 790)
+ * are not indexed, {@link UNVParser} must be used in these cases.
+ *
+ * Index file layout:
+ * <pre>
+ * int magic, int version, long UNV length, long UNV modification time
+ * double unit
+ * int number of nodes, int[] node labels
+ * int number of node chunks, (int first node, long offset)[]
+ * int number of elements, int[] element labels, byte[] element types
+ * int number of element chunks, (int first element, long offset)[]
+ * int number of groups, for each group: UTF name, int dataset,
+ *     long offset, int number of entities
+ * </pre>
+ */
+public class UNVIndex
+{
+	private final static Logger LOGGER=Logger.getLogger(UNVIndex.class.getName());
+	private static final int MAGIC = 0x554e5649;
+	private static final int VERSION = 1;
+	private static final int CHUNK_SIZE = 256;
+
+	private static final byte OTHER = 0;
+	private static final byte TRIA3 = 1;
+	private static final byte QUAD4 = 2;
+	private static final byte BEAM2 = 3;
+
+	/** First record and file offset of each chunk of records */
+	private static class Chunks
+	{
+		final TIntArrayList first = new TIntArrayList();
+		final TLongArrayList offset = new TLongArrayList();
+
+		void add(int index, long o)
+		{
+			first.add(index);
+			offset.add(o);
+		}
+
+		/** Returns the chunk containing a record */
+		int find(int index)
+		{
+			int c = first.binarySearch(index);
+			return c >= 0 ? c : -c - 2;
+		}
+
+		/** Returns the first record after a chunk */
+		int end(int c, int total)
+		{
+			return c + 1 < first.size() ? first.get(c + 1) : total;
+		}
+
+		void write(DataOutputStream out) throws IOException
+		{
+			out.writeInt(first.size());
+			for (int i = 0; i < first.size(); i++)
+			{
+				out.writeInt(first.get(i));
+				out.writeLong(offset.get(i));
+			}
+		}
+
+		void read(DataInputStream in) throws IOException
+		{
+			int n = in.readInt();
+			for (int i = 0; i < n; i++)
+				add(in.readInt(), in.readLong());
+		}
+	}
+
+	private static class Group
+	{
+		final String name;
+		final int dataset;
+		final long offset;
+		final int size;
+
+		Group(String name, int dataset, long offset, int size)
+		{
+			this.name = name;
+			this.dataset = dataset;
+			this.offset = offset;
+			this.size = size;
+		}
+	}
+
+	private final File file;
+	private double unit = 1.0;
+	private boolean supported = true;
+	private int[] nodeLabels;
+	private final Chunks nodeChunks = new Chunks();
+	private int[] elementLabels;
+	private byte[] elementTypes;
+	private final Chunks elementChunks = new Chunks();
+	private final List<Group> groups = new ArrayList<Group>();
+	private TIntIntHashMap nodeIndices;
+	private TIntIntHashMap elementIndices;
+
+	private UNVIndex(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Opens the index of a UNV file.  The index is read from
+	 * <code>filePath.index</code> if it is up to date, otherwise the
+	 * UNV file is scanned and the index is written.
+	 */
+	public static UNVIndex open(String filePath) throws IOException
+	{
+		File unv = new File(filePath);
+		File indexFile = new File(filePath+".index");
+		UNVIndex index = new UNVIndex(unv);
+		if (indexFile.exists() && index.read(indexFile))
+			return index;
+		long time = System.currentTimeMillis();
+		index.scan();
+		LOGGER.fine("Indexed "+unv+" in "+(System.currentTimeMillis()-time)+" ms");
+		try {
+			index.write(indexFile);
+		} catch (IOException ex) {
+			// The index is only an optimization for next sessions
+			LOGGER.log(Level.INFO, "Cannot write "+indexFile+": "+ex.getMessage());
+			indexFile.delete();
+		}
+		return index;
+	}
+
+	/**
+	 * Returns <code>false</code> if this file contains data which are not
+	 * indexed, like load sets.
+	 */
+	public boolean isSupported()
+	{
+		return supported;
+	}
+
+	public int getNumberOfNodes()
+	{
+		return nodeLabels.length;
+	}
+
+	public String[] getGroupNames()
+	{
+		String[] toReturn = new String[groups.size()];
+		for (int i = 0; i < toReturn.length; i++)
+			toReturn[i] = groups.get(i).name;
+		return toReturn;
+	}
+
+	/**
+	 * Returns triangles of a group, as node indices.  Node indices are
+	 * positions of nodes in file, see {@link #readNodes}.
+	 */
+	public int[] getTria3FromGroup(int groupId) throws IOException
+	{
+		return readElements(getGroupElements(groupId, TRIA3), 3);
+	}
+
+	public int[] getQuad4FromGroup(int groupId) throws IOException
+	{
+		return readElements(getGroupElements(groupId, QUAD4), 4);
+	}
+
+	public int[] getBeam2FromGroup(int groupId) throws IOException
+	{
+		return readElements(getGroupElements(groupId, BEAM2), 2);
+	}
+
+	/**
+	 * Reads node coordinates.
+	 * @param indices node indices, in increasing order
+	 * @return coordinates, divided by the unit of the file
+	 */
+	public float[] readNodes(int[] indices) throws IOException
+	{
+		float[] toReturn = new float[3 * indices.length];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			int i = 0;
+			while (i < indices.length)
+			{
+				int c = nodeChunks.find(indices[i]);
+				int end = nodeChunks.end(c, nodeLabels.length);
+				Lines lines = new Lines(raf, nodeChunks.offset.get(c));
+				for (int n = nodeChunks.first.get(c); i < indices.length && indices[i] < end; n++)
+				{
+					lines.next();
+					lines.next();
+					if (n != indices[i])
+						continue;
+					for (int k = 0; k < 3 && lines.hasMoreTokens(); k++)
+						toReturn[3 * i + k] = (float) (lines.nextDouble() / unit);
+					i++;
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		return toReturn;
+	}
+
+	/** Returns sorted indices of elements of a given type in a group */
+	private int[] getGroupElements(int groupId, byte type) throws IOException
+	{
+		Group g = groups.get(groupId);
+		TIntArrayList toReturn = new TIntArrayList();
+		if (g.offset < 0)
+		{
+			// No groups in file, all elements are displayed
+			for (int i = 0; i < elementTypes.length; i++)
+				if (elementTypes[i] == type)
+					toReturn.add(i);
+			return toReturn.toArray();
+		}
+		TIntIntHashMap map = getElementIndices();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			Lines lines = new Lines(raf, g.offset);
+			for (int i = 0; i < g.size; i++)
+			{
+				if (!lines.hasMoreTokens())
+					lines.next();
+				int entityType = lines.nextInt();
+				int label = lines.nextInt();
+				if (g.dataset == 2435)
+				{
+					lines.nextInt();
+					lines.nextInt();
+				}
+				// Only finite elements, which have type 8
+				if (entityType != 8 || !map.containsKey(label))
+					continue;
+				int e = map.get(label);
+				if (elementTypes[e] == type)
+					toReturn.add(e);
+			}
+		} finally {
+			raf.close();
+		}
+		toReturn.sort();
+		return toReturn.toArray();
+	}
+
+	/** Reads connectivity of elements, as node indices */
+	private int[] readElements(int[] elements, int nbNodes) throws IOException
+	{
+		int[] toReturn = new int[nbNodes * elements.length];
+		if (elements.length == 0)
+			return toReturn;
+		TIntIntHashMap map = getNodeIndices();
+		int[] labels = new int[32];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			int i = 0;
+			while (i < elements.length)
+			{
+				int c = elementChunks.find(elements[i]);
+				int end = elementChunks.end(c, elementLabels.length);
+				Lines lines = new Lines(raf, elementChunks.offset.get(c));
+				for (int e = elementChunks.first.get(c); i < elements.length && elements[i] < end; e++)
+				{
+					lines.next();
+					int n = readElementHeader(lines);
+					if (n > labels.length)
+						labels = new int[n];
+					readInts(lines, labels, n);
+					if (e != elements[i])
+						continue;
+					for (int k = 0; k < nbNodes; k++)
+						toReturn[nbNodes * i + k] = map.get(labels[k]);
+					i++;
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		return toReturn;
+	}
+
+	private synchronized TIntIntHashMap getNodeIndices()
+	{
+		if (nodeIndices == null)
+			nodeIndices = createIndices(nodeLabels);
+		return nodeIndices;
+	}
+
+	private synchronized TIntIntHashMap getElementIndices()
+	{
+		if (elementIndices == null)
+			elementIndices = createIndices(elementLabels);
+		return elementIndices;
+	}
+
+	private static TIntIntHashMap createIndices(int[] labels)
+	{
+		TIntIntHashMap toReturn = new TIntIntHashMap(labels.length);
+		for (int i = 0; i < labels.length; i++)
+			toReturn.put(labels[i], i);
+		return toReturn;
+	}
+
+	private static byte getType(int feType)
+	{
+		switch (feType)
+		{
+			case 41:
+			case 74:
+			case 91:
+				return TRIA3;
+			case 94:
+				return QUAD4;
+			case 21:
+				return BEAM2;
+			default:
+				return OTHER;
+		}
+	}
+
+	/** Beam elements have an additional record for orientation */
+	private static boolean isBeam(int feType)
+	{
+		return feType == 11 || (feType >= 21 && feType <= 24) ||
+			feType == 31 || feType == 32;
+	}
+
+	/**
+	 * Parses the first record of an element, and skips its beam record.
+	 * @return the number of nodes of this element
+	 */
+	private static int readElementHeader(Lines lines) throws IOException
+	{
+		lines.nextInt();
+		int feType = lines.nextInt();
+		lines.nextInt();
+		lines.nextInt();
+		lines.nextInt();
+		int n = lines.nextInt();
+		if (isBeam(feType))
+			lines.next();
+		return n;
+	}
+
+	/** Reads integers from next lines */
+	private static void readInts(Lines lines, int[] dest, int n) throws IOException
+	{
+		lines.next();
+		for (int i = 0; i < n; i++)
+		{
+			while (!lines.hasMoreTokens())
+				if (!lines.next())
+					throw new EOFException();
+			dest[i] = lines.nextInt();
+		}
+	}
+
+	private void scan() throws IOException
+	{
+		TIntArrayList nodes = new TIntArrayList();
+		TIntArrayList elements = new TIntArrayList();
+		TByteArrayList types = new TByteArrayList();
+		InputStream in = new FileInputStream(file);
+		try {
+			Lines lines = new Lines(in, 0L);
+			while (lines.next())
+			{
+				if (!lines.isDelimiter() || !lines.next())
+					continue;
+				if (!lines.hasMoreTokens())
+					continue;
+				int dataset = lines.nextInt();
+				switch (dataset)
+				{
+					case 2411:
+					case 781:
+						scanNodes(lines, nodes);
+						break;
+					case 2412:
+						scanElements(lines, elements, types);
+						break;
+					case 164:
+						lines.next();
+						lines.next();
+						unit = lines.nextDouble();
+						skipDataset(lines);
+						break;
+					case 2435:
+					case 2430:
+						scanGroups(lines, dataset);
+						break;
+					case 790:
+						supported = false;
+						skipDataset(lines);
+						break;
+					default:
+						skipDataset(lines);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		nodeLabels = nodes.toArray();
+		elementLabels = elements.toArray();
+		elementTypes = types.toArray();
+		if (groups.isEmpty())
+		{
+			for (byte t : elementTypes)
+			{
+				if (t != OTHER)
+				{
+					groups.add(new Group("", 0, -1L, 0));
+					break;
+				}
+			}
+		}
+	}
+
+	private void scanNodes(Lines lines, TIntArrayList nodes) throws IOException
+	{
+		int first = nodes.size();
+		while (lines.next() && !lines.isDelimiter())
+		{
+			// A new chunk at each dataset, as they are not contiguous
+			if ((nodes.size() - first) % CHUNK_SIZE == 0)
+				nodeChunks.add(nodes.size(), lines.offset());
+			nodes.add(lines.nextInt());
+			lines.next();
+		}
+	}
+
+	private void scanElements(Lines lines, TIntArrayList elements,
+		TByteArrayList types) throws IOException
+	{
+		int first = elements.size();
+		int[] labels = new int[32];
+		while (lines.next() && !lines.isDelimiter())
+		{
+			if ((elements.size() - first) % CHUNK_SIZE == 0)
+				elementChunks.add(elements.size(), lines.offset());
+			elements.add(lines.nextInt());
+			int feType = lines.nextInt();
+			types.add(getType(feType));
+			lines.nextInt();
+			lines.nextInt();
+			lines.nextInt();
+			int n = lines.nextInt();
+			if (isBeam(feType))
+				lines.next();
+			if (n > labels.length)
+				labels = new int[n];
+			readInts(lines, labels, n);
+		}
+	}
+
+	private void scanGroups(Lines lines, int dataset) throws IOException
+	{
+		if (!lines.next())
+			return;
+		while (!lines.isDelimiter())
+		{
+			// Number of entities is the last field of first record
+			int n = 0;
+			while (lines.hasMoreTokens())
+				n = lines.nextInt();
+			lines.next();
+			String name = lines.toString().trim();
+			if (!lines.next())
+				return;
+			long offset = lines.offset();
+			// 2 entities per line
+			for (int i = 1; i < (n + 1) / 2; i++)
+				lines.next();
+			if (n > 0 && !lines.next())
+				return;
+			groups.add(new Group(name, dataset, offset, n));
+		}
+	}
+
+	private static void skipDataset(Lines lines) throws IOException
+	{
+		while (lines.next() && !lines.isDelimiter());
+	}
+
+	private boolean read(File indexFile) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(indexFile)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+				in.readLong() != file.length() || in.readLong() != file.lastModified())
+				return false;
+			unit = in.readDouble();
+			nodeLabels = new int[in.readInt()];
+			for (int i = 0; i < nodeLabels.length; i++)
+				nodeLabels[i] = in.readInt();
+			nodeChunks.read(in);
+			elementLabels = new int[in.readInt()];
+			for (int i = 0; i < elementLabels.length; i++)
+				elementLabels[i] = in.readInt();
+			elementTypes = new byte[elementLabels.length];
+			in.readFully(elementTypes);
+			elementChunks.read(in);
+			int n = in.readInt();
+			for (int i = 0; i < n; i++)
+				groups.add(new Group(in.readUTF(), in.readInt(), in.readLong(), in.readInt()));
+			return true;
+		} catch (EOFException ex) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+
+	private void write(File indexFile) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(indexFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			out.writeDouble(unit);
+			out.writeInt(nodeLabels.length);
+			for (int l : nodeLabels)
+				out.writeInt(l);
+			nodeChunks.write(out);
+			out.writeInt(elementLabels.length);
+			for (int l : elementLabels)
+				out.writeInt(l);
+			out.write(elementTypes);
+			elementChunks.write(out);
+			out.writeInt(groups.size());
+			for (Group g : groups)
+			{
+				out.writeUTF(g.name);
+				out.writeInt(g.dataset);
+				out.writeLong(g.offset);
+				out.writeInt(g.size);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Line reader which keeps track of file offsets, and parses fields
+	 * without creating strings.
+	 */
+	private static class Lines
+	{
+		private final InputStream in;
+		private byte[] buf = new byte[1 << 16];
+		private ByteBuffer bb = ByteBuffer.wrap(buf);
+		private long bufferOffset;
+		private int pos, limit;
+		/** Current line, without end of line */
+		private int start, end;
+		/** Position of next token in current line */
+		private int token;
+
+		Lines(InputStream in, long offset)
+		{
+			this.in = in;
+			this.bufferOffset = offset;
+		}
+
+		/** Reads from a file offset */
+		Lines(RandomAccessFile raf, long offset) throws IOException
+		{
+			this(Channels.newInputStream(raf.getChannel().position(offset)), offset);
+		}
+
+		/** Returns file offset of current line */
+		long offset()
+		{
+			return bufferOffset + start;
+		}
+
+		boolean next() throws IOException
+		{
+			int i = pos;
+			while (true)
+			{
+				while (i < limit && buf[i] != '\n')
+					i++;
+				if (i < limit)
+					break;
+				if (pos > 0)
+				{
+					System.arraycopy(buf, pos, buf, 0, limit - pos);
+					bufferOffset += pos;
+					i -= pos;
+					limit -= pos;
+					pos = 0;
+				}
+				if (limit == buf.length)
+				{
+					buf = Arrays.copyOf(buf, 2 * buf.length);
+					bb = ByteBuffer.wrap(buf);
+				}
+				int n = in.read(buf, limit, buf.length - limit);
+				if (n < 0)
+				{
+					if (limit == pos)
+					{
+						start = end = token = limit;
+						return false;
+					}
+					// Last line has no end of line
+					break;
+				}
+				limit += n;
+			}
+			start = pos;
+			end = i;
+			pos = i < limit ? i + 1 : limit;
+			if (end > start && buf[end - 1] == '\r')
+				end--;
+			token = start;
+			return true;
+		}
+
+		/** Returns <code>true</code> if current line is <code>-1</code> */
+		boolean isDelimiter()
+		{
+			int s = start;
+			while (s < end && buf[s] <= ' ')
+				s++;
+			int e = end;
+			while (e > s && buf[e - 1] <= ' ')
+				e--;
+			return e - s == 2 && buf[s] == '-' && buf[s + 1] == '1';
+		}
+
+		boolean hasMoreTokens()
+		{
+			while (token < end && buf[token] <= ' ')
+				token++;
+			return token < end;
+		}
+
+		/** Moves to next token and returns its start */
+		private int nextToken() throws IOException
+		{
+			if (!hasMoreTokens())
+				throw new IOException("Missing field at offset "+offset());
+			int s = token;
+			while (token < end && buf[token] > ' ')
+				token++;
+			return s;
+		}
+
+		int nextInt() throws IOException
+		{
+			int s = nextToken();
+			boolean negative = buf[s] == '-';
+			if (negative || buf[s] == '+')
+				s++;
+			int toReturn = 0;
+			for (; s < token; s++)
+			{
+				int d = buf[s] - '0';
+				if (d < 0 || d > 9)
+					throw new IOException("Invalid integer at offset "+offset());
+				toReturn = 10 * toReturn + d;
+			}
+			return negative ? -toReturn : toReturn;
+		}
+
+		double nextDouble() throws IOException
+		{
+			int s = nextToken();
+			return DoubleParser.parse(bb, s, token);
+		}
+
+		@Override
+		public String toString()
+		{
+			try {
+				return new String(buf, start, end - start, "ISO-8859-1");
+			} catch (UnsupportedEncodingException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+}
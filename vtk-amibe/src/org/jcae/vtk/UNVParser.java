@@ -224,6 +224,9 @@ public class UNVParser
 			int type = Integer.parseInt(st.nextToken());
 
 			line = rd.readLine(); //RECORD 2			
+			// Beams have a record for orientation before their nodes
+			if (type == 11 || (type >= 21 && type <= 24) || type == 31 || type == 32)
+				line = rd.readLine();
 			
 			switch(type)
 			{
@@ -22,13 +22,15 @@ package org.jcae.vtk;
 
 import java.io.BufferedReader;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -37,6 +39,7 @@ import java.util.zip.GZIPInputStream;
  */
 public class UNVToMesh
 {
+	private final static Logger LOGGER=Logger.getLogger(UNVToMesh.class.getName());
 	private Map<String, LeafNode.DataProvider> mesh;
 
 	private static class GroupData extends LeafNode.DataProvider
@@ -67,15 +70,73 @@ public class UNVToMesh
 		}
 		
 	}
+
+	/** A group which is read from a UNV file when it is displayed */
+	private static class IndexedGroupData extends LeafNode.DataProvider
+	{
+		private final UNVIndex index;
+		private final int id;
+
+		IndexedGroupData(UNVIndex index, int id)
+		{
+			this.index = index;
+			this.id = id;
+		}
+
+		@Override
+		public float[] getNormals()
+		{
+			return null;
+		}
+
+		@Override
+		public void load()
+		{
+			try {
+				int[] triangles = index.getTria3FromGroup(id);
+				int[] quads = index.getQuad4FromGroup(id);
+				int[] beams = index.getBeam2FromGroup(id);
+				// Only nodes of this group are read
+				int[] nodesID = AmibeToMesh.makeNodeIDArray(triangles, quads, beams);
+				AmibeToMesh.renumberArray(nodesID, triangles, quads, beams);
+				setNodes(index.readNodes(nodesID));
+				setLines(createBeamCells(beams));
+				setPolys(triangles.length / 3 + quads.length / 4,
+					createPolys(triangles, quads));
+			} catch (IOException ex) {
+				LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+			}
+		}
+	}
 	
 	/**
-	 * 
+	 * Groups of uncompressed files are read on demand through a
+	 * {@link UNVIndex}, other files are fully parsed.
 	 * @param filePath
 	 * @param groupExtraction indicate wish groups will be extracted. if groupExtraction == null
 	 * all the groups are extracted
 	 */
 	public UNVToMesh(String filePath, Collection<Integer> groupExtraction)
 	{
+		mesh = new HashMap<String, LeafNode.DataProvider>();
+		if(!filePath.endsWith(".gz") && !filePath.endsWith(".GZ"))
+		{
+			try
+			{
+				UNVIndex index = UNVIndex.open(filePath);
+				if(index.isSupported())
+				{
+					String[] groupNames = index.getGroupNames();
+					for(Integer id : getGroups(groupExtraction, groupNames.length))
+						mesh.put(groupNames[id], new IndexedGroupData(index, id));
+					return;
+				}
+			} catch (IOException e)
+			{
+				LOGGER.log(Level.WARNING, "Cannot index "+filePath+": "+e.getMessage(), e);
+			}
+		}
+
 		UNVParser parser = new UNVParser();
 		try
 		{
@@ -91,63 +152,72 @@ public class UNVToMesh
 		}
 
 		String[] groupNames = parser.getGroupNames();
-		// If the set is empty it means that all the groups have to be extracted
-		if(groupExtraction == null || groupExtraction.isEmpty())
-		{
-			int nbOfGroups = groupNames.length;
-			groupExtraction = new ArrayList<Integer>(nbOfGroups);
-			for(int i = 0 ; i < nbOfGroups ; ++i)
-				groupExtraction.add(i);
-		}
-		
 		float[] nodes = parser.getNodesCoordinates();
-		mesh = new HashMap<String, LeafNode.DataProvider>();
 		//mesh.setBeams(parser.getBeam2FromGroup(UNVProvider.OTHERS_GROUP));
 		
-		for(Integer id : groupExtraction)
+		for(Integer id : getGroups(groupExtraction, groupNames.length))
 		{
 			int[] triangles =parser.getTria3FromGroup(id);
 			int[] quads = parser.getQuad4FromGroup(id);
 			int[] beams = parser.getBeam2FromGroup(id);
 			
-			int[] indices = new int[4 * (triangles.length / 3) +  5 * (quads.length / 4)];
-			
-			int offset = 0;
-			for(int i = 0 ; i < triangles.length ; )
-			{
-				indices[offset++] = 3;
-				indices[offset++] = triangles[i++];
-				indices[offset++] = triangles[i++];
-				indices[offset++] = triangles[i++];
-			}
-			
-			for(int i = 0 ; i < quads.length ; )
-			{
-				indices[offset++] = 4;
-				indices[offset++] = triangles[i++];
-				indices[offset++] = triangles[i++];
-				indices[offset++] = triangles[i++];
-				indices[offset++] = triangles[i++];
-			}
-
-			if (beams.length > 0)
-			{
-				int[] newBeams = new int[3 * beams.length / 2];
-				offset = 0;
-				for(int i = 0 ; i < beams.length ; )
-				{
-					newBeams[offset++] = 2;
-					newBeams[offset++] = beams[i++];
-					newBeams[offset++] = beams[i++];
-				}
-				beams = newBeams;
-			}
-			
-			GroupData groupData = new GroupData(nodes, beams, indices, triangles.length / 3 + quads.length / 4);
+			GroupData groupData = new GroupData(nodes, createBeamCells(beams),
+				createPolys(triangles, quads), triangles.length / 3 + quads.length / 4);
 			mesh.put(groupNames[id], groupData);
 		}
 	}
 
+	/** If the set is empty it means that all the groups have to be extracted */
+	private static Collection<Integer> getGroups(Collection<Integer> groupExtraction,
+		int nbOfGroups)
+	{
+		if(groupExtraction != null && !groupExtraction.isEmpty())
+			return groupExtraction;
+		ArrayList<Integer> toReturn = new ArrayList<Integer>(nbOfGroups);
+		for(int i = 0 ; i < nbOfGroups ; ++i)
+			toReturn.add(i);
+		return toReturn;
+	}
+
+	private static int[] createPolys(int[] triangles, int[] quads)
+	{
+		int[] indices = new int[4 * (triangles.length / 3) +  5 * (quads.length / 4)];
+
+		int offset = 0;
+		for(int i = 0 ; i < triangles.length ; )
+		{
+			indices[offset++] = 3;
+			indices[offset++] = triangles[i++];
+			indices[offset++] = triangles[i++];
+			indices[offset++] = triangles[i++];
+		}
+
+		for(int i = 0 ; i < quads.length ; )
+		{
+			indices[offset++] = 4;
+			indices[offset++] = quads[i++];
+			indices[offset++] = quads[i++];
+			indices[offset++] = quads[i++];
+			indices[offset++] = quads[i++];
+		}
+		return indices;
+	}
+
+	private static int[] createBeamCells(int[] beams)
+	{
+		if (beams.length == 0)
+			return beams;
+		int[] newBeams = new int[3 * beams.length / 2];
+		int offset = 0;
+		for(int i = 0 ; i < beams.length ; )
+		{
+			newBeams[offset++] = 2;
+			newBeams[offset++] = beams[i++];
+			newBeams[offset++] = beams[i++];
+		}
+		return newBeams;
+	}
+
 	public Map<String, LeafNode.DataProvider> getMesh()
 	{
 		return mesh;
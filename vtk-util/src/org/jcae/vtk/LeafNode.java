@@ -57,6 +57,9 @@ public class LeafNode extends AbstractNode
 		protected int nbrOfLines;
 		protected int nbrOfVertices;
 		private Transform3D transform;
+		// Decimated representations, from finest to coarsest
+		private volatile DataProvider[] levels = new DataProvider[0];
+		private volatile double[] bounds;
 		
 		public static final DataProvider EMPTY = new DataProvider()
 		{
@@ -83,6 +86,12 @@ public class LeafNode extends AbstractNode
 			{
 				throw new RuntimeException("DataProvider.EMPTY is immutable");
 			}
+
+			@Override
+			public void setLevelsOfDetail(double[] bounds, DataProvider... levels)
+			{
+				throw new RuntimeException("DataProvider.EMPTY is immutable");
+			}
 		};
 
 		public void setVertices(int[] vertices)
@@ -137,6 +146,54 @@ public class LeafNode extends AbstractNode
 			this.transform = transform;
 			
 			makeTransform();
+			for(DataProvider level : levels)
+				level.setTransform(transform);
+		}
+
+		/**
+		 * Set decimated representations of these data.  They must be
+		 * already loaded, and are used by {@link LevelOfDetail} to display
+		 * far leaves without loading this data provider.  This method can
+		 * be called from any thread.  A leaf with selected cells keeps its
+		 * displayed level, see {@link LeafNode#setLevel}.
+		 * @param bounds the bounding box of nodes, as
+		 * {xmin, xmax, ymin, ymax, zmin, zmax}
+		 * @param levels data sorted from finest to coarsest
+		 */
+		public void setLevelsOfDetail(double[] bounds, DataProvider... levels)
+		{
+			if(transform != null)
+				for(DataProvider level : levels)
+					level.setTransform(transform);
+			this.bounds = bounds.clone();
+			this.levels = levels.clone();
+		}
+
+		/** Return the number of levels of detail, including this one */
+		public int getNumberOfLevels()
+		{
+			return levels.length + 1;
+		}
+
+		/**
+		 * Return a level of detail
+		 * @param level 0 for this data provider, higher values for
+		 * coarser data
+		 */
+		public DataProvider getLevel(int level)
+		{
+			if(level == 0)
+				return this;
+			return levels[level - 1];
+		}
+
+		/**
+		 * Return the bounding box given to setLevelsOfDetail, or
+		 * <code>null</code> if there are no levels of detail.
+		 */
+		public double[] getBounds()
+		{
+			return bounds;
 		}
 		
 		public void setPolys(int nbrOfPolys, int[] polys)
@@ -225,6 +282,7 @@ public class LeafNode extends AbstractNode
 	private int [] selection = new int[0];
 	private Color color;
 	private DataProvider dataProvider;
+	private int level;
 	
 	public LeafNode(Node parent, DataProvider dataProvider, Color color)
 	{
@@ -261,6 +319,7 @@ public class LeafNode extends AbstractNode
 	public void setDataProvider(LeafNode.DataProvider data)
 	{
 		this.dataProvider = data;
+		level = 0;
 		// When data provider is modified, we must ensure that
 		// dataTime <= data.getModifiedTime(), and parent
 		// has also to be notified.
@@ -273,6 +332,34 @@ public class LeafNode extends AbstractNode
 		return dataProvider;
 	}
 
+	/** Return the level of detail which is displayed */
+	public int getLevel()
+	{
+		return level;
+	}
+
+	/**
+	 * Change the level of detail which is displayed.  The level is not
+	 * changed while cells are selected, because cell ids are those of
+	 * displayed data.
+	 * @see DataProvider#getLevel
+	 */
+	public void setLevel(int level)
+	{
+		level = Math.max(0, Math.min(level, dataProvider.getNumberOfLevels() - 1));
+		if(this.level == level || selection.length > 0)
+			return;
+		this.level = level;
+		timeStampData();
+		dataTime = Long.MIN_VALUE;
+	}
+
+	/** Return the data of the displayed level of detail */
+	DataProvider getDisplayedDataProvider()
+	{
+		return dataProvider.getLevel(Math.min(level, dataProvider.getNumberOfLevels() - 1));
+	}
+
 	public void setTransform(Transform3D transform)
 	{
 		dataProvider.setTransform(transform);
@@ -291,7 +378,7 @@ public class LeafNode extends AbstractNode
 			LOGGER.log(Level.FINER, "Refreshing leaf: "+this);
 		
 		// Were data modified?
-		if (dataTime <= dataProvider.getModifiedTime())
+		if (dataTime <= getDisplayedDataProvider().getModifiedTime())
 			refreshData();
 
 		// Was actor modified?
@@ -310,9 +397,10 @@ public class LeafNode extends AbstractNode
 		if (LOGGER.isLoggable(Level.FINEST))
 			LOGGER.log(Level.FINEST, "Refresh data for "+this);
 
-		dataProvider.load();
-		createData(dataProvider);
-		dataProvider.unLoad();
+		DataProvider displayed = getDisplayedDataProvider();
+		displayed.load();
+		createData(displayed);
+		displayed.unLoad();
 		
 		timeStampData();
 
@@ -0,0 +1,116 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+package org.jcae.vtk;
+
+import vtk.vtkRenderer;
+
+/**
+ * Choose the level of detail of leaves from the size of their bounding box
+ * projected on screen.  The coarsest level which still has enough polygons
+ * for its projected area is displayed.  Levels of detail are given to
+ * data providers by {@link LeafNode.DataProvider#setLevelsOfDetail}, and
+ * this policy is attached to a node by {@link Node#setLevelOfDetail}.
+ * Levels are chosen again each time the node is refreshed.
+ */
+public class LevelOfDetail
+{
+	private final vtkRenderer renderer;
+	private double pixelsPerPolygon = 4.0;
+
+	/**
+	 * @param renderer the renderer whose camera is used to project
+	 * bounding boxes
+	 */
+	public LevelOfDetail(vtkRenderer renderer)
+	{
+		this.renderer = renderer;
+	}
+
+	/**
+	 * Set the screen area, in pixels, which should be covered by a
+	 * polygon.  Higher values display coarser levels.  Default is 4.
+	 */
+	public void setPixelsPerPolygon(double pixelsPerPolygon)
+	{
+		this.pixelsPerPolygon = pixelsPerPolygon;
+	}
+
+	public double getPixelsPerPolygon()
+	{
+		return pixelsPerPolygon;
+	}
+
+	/** Return the level of detail to display for a data provider */
+	public int getLevel(LeafNode.DataProvider dataProvider)
+	{
+		int n = dataProvider.getNumberOfLevels();
+		double[] bounds = dataProvider.getBounds();
+		if (n == 1 || bounds == null)
+			return 0;
+		int[] nbrOfPolys = new int[n];
+		for (int i = 1; i < n; i++)
+			nbrOfPolys[i] = dataProvider.getLevel(i).getNbrOfPolys();
+		return selectLevel(nbrOfPolys, getProjectedSize(bounds), pixelsPerPolygon);
+	}
+
+	/**
+	 * Return the largest extent, in pixels, of a bounding box projected
+	 * on screen.
+	 * @param bounds {xmin, xmax, ymin, ymax, zmin, zmax}
+	 */
+	public double getProjectedSize(double[] bounds)
+	{
+		double xmin = Double.MAX_VALUE, xmax = -Double.MAX_VALUE;
+		double ymin = Double.MAX_VALUE, ymax = -Double.MAX_VALUE;
+		for (int i = 0; i < 8; i++)
+		{
+			renderer.SetWorldPoint(bounds[i & 1], bounds[2 + ((i >> 1) & 1)],
+				bounds[4 + ((i >> 2) & 1)], 1.0);
+			renderer.WorldToDisplay();
+			double[] p = renderer.GetDisplayPoint();
+			xmin = Math.min(xmin, p[0]);
+			xmax = Math.max(xmax, p[0]);
+			ymin = Math.min(ymin, p[1]);
+			ymax = Math.max(ymax, p[1]);
+		}
+		return Math.max(xmax - xmin, ymax - ymin);
+	}
+
+	/**
+	 * Choose a level of detail.
+	 * @param nbrOfPolys number of polygons of each level, from finest to
+	 * coarsest.  The first value is not used, because level 0 is the
+	 * fallback.
+	 * @param projectedSize size on screen in pixels
+	 * @param pixelsPerPolygon screen area to cover by a polygon
+	 * @return the coarsest level with enough polygons
+	 */
+	static int selectLevel(int[] nbrOfPolys, double projectedSize,
+		double pixelsPerPolygon)
+	{
+		double target = projectedSize * projectedSize / pixelsPerPolygon;
+		for (int i = nbrOfPolys.length - 1; i > 0; i--)
+		{
+			if (nbrOfPolys[i] >= target)
+				return i;
+		}
+		return 0;
+	}
+}
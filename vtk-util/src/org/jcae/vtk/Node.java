@@ -63,6 +63,8 @@ public class Node extends AbstractNode
 	
 	private final ArrayList<ChildCreationListener> childCreationListeners = new ArrayList<ChildCreationListener>();
 
+	private LevelOfDetail levelOfDetail;
+
 	private static class NodeData extends LeafNode.DataProvider
 	{
 		NodeData(float[] nodes, float[] normals, int nbrOfVertices, int[] vertices, int nbrOfLines, int[] lines, int nbrOfPolys, int[] polys)
@@ -216,9 +218,41 @@ public class Node extends AbstractNode
 		super.setVisible(visible);
 	}
 
+	/**
+	 * Set the policy used to choose the level of detail of leaves of
+	 * this node and of its descendants which do not have their own.
+	 * Leaves with selected cells keep their level until their selection
+	 * is cleared and this node is refreshed, see {@link LeafNode#setLevel}.
+	 * @param levelOfDetail the policy, or <code>null</code> to use the
+	 * one of the parent node
+	 */
+	public void setLevelOfDetail(LevelOfDetail levelOfDetail)
+	{
+		this.levelOfDetail = levelOfDetail;
+	}
+
+	public LevelOfDetail getLevelOfDetail()
+	{
+		if (levelOfDetail == null && getParent() != null)
+			return getParent().getLevelOfDetail();
+		return levelOfDetail;
+	}
+
 	@Override
 	public void refresh()
 	{
+		LevelOfDetail lod = getLevelOfDetail();
+		if (lod != null)
+		{
+			for (AbstractNode child : children)
+			{
+				if (child instanceof LeafNode)
+				{
+					LeafNode leaf = (LeafNode) child;
+					leaf.setLevel(lod.getLevel(leaf.getDataProvider()));
+				}
+			}
+		}
 		for (AbstractNode child : children)
 			child.refresh();
 		if (!isManager())
@@ -234,7 +268,7 @@ public class Node extends AbstractNode
 			//refreshHighlight
 			leaves = getLeaves();
 			for (LeafNode leaf : leaves)
-				leaf.getDataProvider().load();
+				leaf.getDisplayedDataProvider().load();
 		}
 
 		// Were data modified?
@@ -251,7 +285,7 @@ public class Node extends AbstractNode
 
 		if(leaves != null)
 			for (LeafNode leaf : leaves)
-				leaf.getDataProvider().unLoad();
+				leaf.getDisplayedDataProvider().unLoad();
 
 		lastUpdate = System.nanoTime();
 	}
@@ -284,7 +318,7 @@ public class Node extends AbstractNode
 			if (!leaf.isVisible())
 				continue;
 
-			LeafNode.DataProvider dataProvider = leaf.getDataProvider();
+			LeafNode.DataProvider dataProvider = leaf.getDisplayedDataProvider();
 			nodesSize += dataProvider.getNodes().length;
 			verticesSize += dataProvider.getVertices().length;
 			linesSize += dataProvider.getLines().length;
@@ -328,7 +362,7 @@ public class Node extends AbstractNode
 			if (!leaf.isVisible())
 				continue;
 
-			LeafNode.DataProvider dataProvider = leaf.getDataProvider();
+			LeafNode.DataProvider dataProvider = leaf.getDisplayedDataProvider();
 
 			final int numberOfNode = offsetNode / 3;
 			float[] nodesNode = dataProvider.getNodes();
@@ -597,7 +631,7 @@ public class Node extends AbstractNode
 
 	private final int leafIndexToNodeIndex(LeafNode leaf, int leafIndex, int index)
 	{
-		LeafNode.DataProvider leafDataProvider = leaf.getDataProvider();
+		LeafNode.DataProvider leafDataProvider = leaf.getDisplayedDataProvider();
 		int numberOfVerticesLeaf = leafDataProvider.getNbrOfVertices();
 		int numberOfLinesLeaf = leafDataProvider.getNbrOfLines();
 		int numberOfPolysLeaf = leafDataProvider.getNbrOfPolys();